@@ -38,6 +38,7 @@ android {
 
 dependencies {
 
+    implementation(project(":core"))
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.mpandroidchart) // Add MPAndroidChart dependency
@@ -0,0 +1,128 @@
+package com.example.thesis;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.OpenableColumns;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Imports backup or CSV files picked from another tablet (e.g. after a
+ * patient moved rooms) on a background executor.
+ *
+ * The picked documents are copied into the cache directory, grouped by the
+ * patient named in the file name ("patient_2_backup.txt", "patient_2.csv")
+ * and handed to DataManager#importFiles, which parses, merges, deduplicates
+ * and commits them (see EventImporter). Files without a patient number in
+ * their name are skipped.
+ */
+public class BackupImporter {
+
+    private static final String TAG = "BackupImporter";
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Import callbacks, delivered on the main thread.
+     */
+    public interface ImportListener {
+        void onFinished(int imported, int duplicates, int rejected, int skippedFiles);
+
+        void onFailed(Exception e);
+    }
+
+    public static void importUris(Context context, List<Uri> uris, ImportListener listener) {
+        Context app = context.getApplicationContext();
+        executor.execute(() -> {
+            File dir = new File(app.getCacheDir(), "import");
+            List<File> copies = new ArrayList<>();
+            try {
+                if (!dir.exists() && !dir.mkdirs()) {
+                    throw new IOException("Could not create " + dir.getAbsolutePath());
+                }
+                Map<Integer, List<File>> byPatient = new TreeMap<>();
+                int skipped = 0;
+                for (Uri uri : uris) {
+                    String name = displayName(app, uri);
+                    int patient = EventImporter.patientIndexOf(name);
+                    if (patient < 0 || patient >= 3) {
+                        CoreLog.d(TAG, "Skipping {}: no patient number in the name", name);
+                        skipped++;
+                        continue;
+                    }
+                    File copy = new File(dir, copies.size() + "_" + name);
+                    copyTo(app, uri, copy);
+                    copies.add(copy);
+                    List<File> files = byPatient.get(patient);
+                    if (files == null) {
+                        files = new ArrayList<>();
+                        byPatient.put(patient, files);
+                    }
+                    files.add(copy);
+                }
+
+                int imported = 0;
+                int duplicates = 0;
+                int rejected = 0;
+                DataManager dm = DataManager.getInstance(app);
+                for (Map.Entry<Integer, List<File>> e : byPatient.entrySet()) {
+                    EventImporter.Result result = dm.importFiles(e.getKey(), e.getValue());
+                    imported += result.imported;
+                    duplicates += result.duplicates;
+                    rejected += result.rejected;
+                }
+                int importedTotal = imported;
+                int duplicateTotal = duplicates;
+                int rejectedTotal = rejected;
+                int skippedTotal = skipped;
+                mainHandler.post(() -> listener.onFinished(
+                        importedTotal, duplicateTotal, rejectedTotal, skippedTotal));
+            } catch (IOException | RuntimeException e) {
+                CoreLog.e(TAG, "Import failed: {}", e.getMessage());
+                mainHandler.post(() -> listener.onFailed(e));
+            } finally {
+                for (File f : copies) {
+                    f.delete();
+                }
+            }
+        });
+    }
+
+    private static String displayName(Context context, Uri uri) {
+        try (Cursor c = context.getContentResolver().query(uri,
+                new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null)) {
+            if (c != null && c.moveToFirst()) {
+                return c.getString(0);
+            }
+        }
+        return uri.getLastPathSegment();
+    }
+
+    private static void copyTo(Context context, Uri uri, File file) throws IOException {
+        try (InputStream in = context.getContentResolver().openInputStream(uri);
+             OutputStream out = new FileOutputStream(file)) {
+            if (in == null) {
+                throw new IOException("Could not open " + uri);
+            }
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+        }
+    }
+}
@@ -1,30 +1,28 @@
 package com.example.thesis;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.os.Environment;
-import android.util.Log;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Handles persistence of water events to simple text files under
- * /Download/Scale Water/patient_X_backup.txt.
+ * Handles persistence of water events under /Download/Scale Water/.
  *
- * - When saving: event types "I"/"R" are written as "Intake"/"Refill".
- * - When loading: "Intake"/"Refill" are mapped back to "I"/"R".
- * - Also exposes helpers to delete a single backup or all backups.
+ * The storage itself (day segments, snapshot, rollups, legacy migration,
+ * retention and cold tier) is the core module's PatientStore; this class
+ * only resolves the public Downloads directory, keeps one open store per
+ * patient and exposes helpers to delete a single backup or all backups.
  */
 public class BackupManager {
 
     private static final String TAG = "BackupManager";
 
+    private static final PatientStore[] stores = new PatientStore[3];
+    private static CupRegistry cupRegistry;
+
     /**
      * Returns the app's backup directory inside the public Downloads folder.
      * Creates the directory on first use.
@@ -39,34 +37,79 @@ public class BackupManager {
     }
 
     /**
-     * Persists all events for a given patient index as a CSV-like text file.
-     * Types "I"/"R" are written as "Intake"/"Refill" for readability.
+     * Directory for BLE trace captures (see TraceWriter), created on first use.
+     */
+    static File getTraceDirectory() {
+        return getSubdirectory("traces");
+    }
+
+    /**
+     * Directory for metrics dumps (see Metrics), created on first use.
+     */
+    static File getMetricsDirectory() {
+        return getSubdirectory("metrics");
+    }
+
+    /**
+     * Directory for the rotating CoreLog files and log dumps, created on first use.
+     */
+    static File getLogDirectory() {
+        return getSubdirectory("logs");
+    }
+
+    /**
+     * Optional per-patient alert rules (see DataManager#loadAlertRules); may not exist.
+     */
+    static File getAlertRulesFile() {
+        return new File(getBackupDirectory(), "alert_rules.txt");
+    }
+
+    private static File getSubdirectory(String name) {
+        File dir = new File(getBackupDirectory(), name);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    /**
+     * Returns the store of a patient, opening it (and migrating an old
+     * single-file backup) on first use. Returns null for unknown indices or
+     * if the directory cannot be opened.
+     */
+    static synchronized PatientStore getStore(int patientIndex) {
+        if (patientIndex < 0 || patientIndex >= stores.length) {
+            return null;
+        }
+        if (stores[patientIndex] == null) {
+            try {
+                stores[patientIndex] = new PatientStore(getBackupDirectory(), patientIndex);
+            } catch (IOException e) {
+                CoreLog.e(TAG, "Error opening segments for patient {}: {}",
+                        patientIndex + 1, e.getMessage());
+            }
+        }
+        return stores[patientIndex];
+    }
+
+    /**
+     * Returns the ward's cup dictionary (cups.txt), opening it on first use.
+     * Falls back to an in-memory registry if the file cannot be read.
      */
-    public static void saveBackup(Context context, int patientIndex) {
-        File backupDir = getBackupDirectory();
-        // Use patientIndex+1 in the file name so the UI numbering matches the file names.
-        String filename = "patient_" + (patientIndex + 1) + "_backup.txt";
-        File file = new File(backupDir, filename);
-
-        try (PrintWriter writer = new PrintWriter(file)) {
-            List<WaterEvent> events = DataManager.getInstance(context).getEventsForPatient(patientIndex);
-
-            for (WaterEvent event : events) {
-                String displayType = event.type.equals("I") ? "Intake"
-                        : event.type.equals("R") ? "Refill"
-                        : event.type;
-
-                @SuppressLint("DefaultLocale")
-                String line = String.format("%s,%s,%.2f,%s",
-                        event.timestamp, displayType, event.amount, event.cupName);
-                writer.println(line);
+    static synchronized CupRegistry getCupRegistry() {
+        if (cupRegistry == null) {
+            try {
+                cupRegistry = new CupRegistry(new File(getBackupDirectory(), "cups.txt"));
+            } catch (IOException e) {
+                CoreLog.e(TAG, "Error opening cup registry cups.txt: {}", e.getMessage());
+                try {
+                    cupRegistry = new CupRegistry(null);
+                } catch (IOException impossible) {
+                    throw new IllegalStateException(impossible);
+                }
             }
-            Log.d(TAG, "Backup saved for patient " + (patientIndex + 1)
-                    + " => " + file.getAbsolutePath());
-        } catch (IOException e) {
-            Log.e(TAG, "Error saving backup for patient "
-                    + (patientIndex + 1) + ": " + e.getMessage());
         }
+        return cupRegistry;
     }
 
     /**
@@ -74,64 +117,31 @@ public class BackupManager {
      * Currently only used from manual calls, not on startup.
      */
     public static void loadBackup(Context context, int patientIndex) {
-        Log.v(TAG, "loadBackup for pkg=" + context.getPackageName());
+        CoreLog.d(TAG, "loadBackup for pkg={}", context.getPackageName());
         List<WaterEvent> events = readBackupFile(context, patientIndex);
         for (WaterEvent ev : events) {
             DataManager.getInstance(context).getEventsForPatient(patientIndex).add(ev);
         }
-        Log.d(TAG, "Backup loaded into DataManager for patient "
-                + (patientIndex + 1) + " => " + events.size() + " events");
+        CoreLog.d(TAG, "Backup loaded into DataManager for patient {} => {} events",
+                patientIndex + 1, events.size());
     }
 
     /**
-     * Reads one backup file from disk and converts "Intake"/"Refill" back to "I"/"R".
-     * Called on startup by DataManager.loadAllBackupsOnce().
+     * Reads all segments of a patient from disk, converting "Intake"/"Refill" back to "I"/"R".
      */
     public static List<WaterEvent> readBackupFile(Context context, int patientIndex) {
-        List<WaterEvent> result = new ArrayList<>();
-
-        File backupDir = getBackupDirectory();
-        // Use patientIndex+1 to align with filenames created in saveBackup().
-        File file = new File(backupDir, "patient_" + (patientIndex + 1) + "_backup.txt");
-
-        if (!file.exists()) {
-            Log.d(TAG, "No backup file found for patient "
-                    + (patientIndex + 1) + " at " + file.getAbsolutePath());
-            return result;
-        }
+        PatientStore store = getStore(patientIndex);
+        return store != null ? store.readAll() : new ArrayList<>();
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length == 4) {
-                    String timestamp = parts[0];
-                    String displayType = parts[1];
-                    float amount = Float.parseFloat(parts[2]);
-                    String cupName = parts[3];
-
-                    String shortType;
-                    if ("Intake".equalsIgnoreCase(displayType)) {
-                        shortType = "I";
-                    } else if ("Refill".equalsIgnoreCase(displayType)) {
-                        shortType = "R";
-                    } else {
-                        shortType = displayType;
-                    }
-                    WaterEvent event = new WaterEvent(timestamp, shortType, amount, cupName);
-                    result.add(event);
-                }
-            }
-            Log.d(TAG, "File: " + file.getAbsolutePath()
-                    + " => exists=" + file.exists()
-                    + ", length=" + file.length());
-            Log.d(TAG, "readBackupFile => " + result.size()
-                    + " lines from " + file.getAbsolutePath());
-        } catch (IOException e) {
-            Log.e(TAG, "Error reading backup for patient "
-                    + (patientIndex + 1) + ": " + e.getMessage());
-        }
-        return result;
+    /**
+     * Reads only the events with fromMillis <= time < toMillis, opening just
+     * the day segments that overlap the window (e.g. "last 24h", "this week").
+     */
+    public static List<WaterEvent> readRange(Context context, int patientIndex,
+                                             long fromMillis, long toMillis) {
+        PatientStore store = getStore(patientIndex);
+        return store != null ? store.readRange(fromMillis, toMillis) : new ArrayList<>();
     }
 
     /**
@@ -144,18 +154,14 @@ public class BackupManager {
     }
 
     /**
-     * Deletes the backup file for a single patient if it exists.
+     * Deletes the segments, rollups and snapshot for a single patient if they
+     * exist. Archived segments are kept.
      */
     public static void deleteBackup(Context context, int patientIndex) {
-        Log.v(TAG, "deleteBackup for pkg=" + context.getPackageName());
-        File backupDir = getBackupDirectory();
-        File file = new File(backupDir, "patient_" + (patientIndex + 1) + "_backup.txt");
-        if (file.exists()) {
-            if (file.delete()) {
-                Log.d(TAG, "Backup file deleted for patient " + (patientIndex + 1));
-            } else {
-                Log.e(TAG, "Failed to delete backup file for patient " + (patientIndex + 1));
-            }
+        CoreLog.d(TAG, "deleteBackup for pkg={}", context.getPackageName());
+        PatientStore store = getStore(patientIndex);
+        if (store != null) {
+            store.delete();
         }
     }
 }
@@ -22,18 +22,20 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
-import android.util.Log;
+import android.os.Process;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 
-import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Manages BLE discovery, connection and communication for one scale.
@@ -42,13 +44,50 @@ import java.util.Locale;
  * - Scan for devices advertising a specific service UUID.
  * - Connect and automatically retry when disconnected.
  * - Subscribe once to the TX characteristic (notifications from scale).
- * - Debounce duplicate notifications that arrive within a short time window.
+ * - Pass notifications through ScaleIngest (duplicate filter + parser) into DataManager.
+ * - Optionally record raw notifications and connection changes to a trace (see TraceWriter).
+ * - Keep connection-health telemetry (RSSI every RSSI_INTERVAL_MS while connected,
+ *   notification rate, sequence gaps, duplicate drops, uptime, time to reconnect;
+ *   see ConnectionHealth).
  * - Handle Bluetooth OFF/ON transitions via BroadcastReceiver.
  * - Expose connection state callbacks for the UI and a helper to send reminders.
+ *
+ * Threading:
+ * - GATT thread (one HandlerThread per scale): scanning, connectGatt, all GATT
+ *   callbacks (connectGatt is given this thread's Handler), reconnects, RSSI
+ *   polls and reminder writes. The GATT fields below are confined to it.
+ * - Ingest thread (one, shared by all scales): parsing and
+ *   DataManager.addWaterEvent, so storage never blocks a GATT thread and each
+ *   scale's events keep their order.
+ * - Main thread: only receives the coalesced state (status plus the latest
+ *   notice) through the state channel, at most every STATE_INTERVAL_MS;
+ *   public methods may be called from any thread.
+ * Confinement is checked with ThreadGuard; queueing delays are recorded in
+ * the per-scale "gattQueue", "ingestQueue" and "stateQueue" histograms.
  */
 public class BleDeviceManager {
     private static final String TAG = "BleDeviceManager";
 
+    /**
+     * How often the signal strength is read while connected.
+     */
+    private static final long RSSI_INTERVAL_MS = 10_000;
+
+    /**
+     * Minimum time between two state deliveries to the main thread.
+     */
+    private static final long STATE_INTERVAL_MS = 250;
+
+    private static final ThreadGuard INGEST_GUARD = new ThreadGuard("scale-ingest");
+
+    // Shared by all scales; never shut down (lives as long as the process).
+    private static final ExecutorService INGEST = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "scale-ingest");
+        t.setDaemon(true);
+        INGEST_GUARD.bind(t);
+        return t;
+    });
+
     private final Activity activity;
     private final String deviceName;
     private final java.util.UUID serviceUuid;
@@ -56,6 +95,13 @@ public class BleDeviceManager {
     private final java.util.UUID rxUuid; // Write => from phone
     private final int patientIndex;
 
+    private final HandlerThread gattThread;
+    private final Handler gattHandler;
+    private final ThreadGuard gattGuard;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadGuard mainGuard = new ThreadGuard("main");
+
+    // GATT thread only.
     private BluetoothAdapter bluetoothAdapter;
     private BluetoothLeScanner bluetoothLeScanner;
     private ScanCallback leScanCallback;
@@ -64,33 +110,78 @@ public class BleDeviceManager {
     private BluetoothGattCharacteristic txCharacteristic; // for notifications
     private BluetoothGattCharacteristic rxCharacteristic; // for writes
 
-    private Handler reconnectHandler = new Handler(Looper.getMainLooper());
-    private volatile boolean isReconnecting = false;
+    private boolean isReconnecting = false;
 
-    // Used to filter out duplicate payloads arriving in quick succession.
-    private long lastDataTime = 0;
-    private String lastDataValue = "";
+    // Filters duplicate payloads and parses the rest into DataManager (ingest thread).
+    private final ScaleIngest ingest;
+
+    // Reconnect duration: set on the first disconnect, cleared on reconnect.
+    private long disconnectedAtNanos = 0;
+    private final LatencyHistogram reconnectLatency;
+    private final LatencyHistogram gattQueueLatency;
+    private final LatencyHistogram ingestQueueLatency;
+    private final LatencyHistogram stateQueueLatency;
+    private final Metrics.Counter disconnects;
+    private final Metrics.Gauge connectedGauge;
+    private final Metrics.Gauge rssiGauge;
+
+    // Per-minute radio and link statistics, shown on the central screen.
+    private final ConnectionHealth health = new ConnectionHealth();
+
+    // Reads the RSSI periodically while connected (result in onReadRemoteRssi).
+    private final Runnable rssiPoll = new Runnable() {
+        @Override
+        public void run() {
+            gattGuard.check("rssiPoll");
+            if (bluetoothGatt == null || !currentlyConnected) {
+                return;
+            }
+            if (ActivityCompat.checkSelfPermission(activity, Manifest.permission.BLUETOOTH_CONNECT)
+                    == PackageManager.PERMISSION_GRANTED) {
+                bluetoothGatt.readRemoteRssi();
+            }
+            gattHandler.postDelayed(this, RSSI_INTERVAL_MS);
+        }
+    };
+
+    // Non-null while a BLE trace is being captured.
+    private volatile TraceWriter traceWriter;
 
     // Ensures we only subscribe to notifications once per connection.
     private boolean didSubscribeTx = false;
 
-    // Last known connection status, used by the UI.
-    private String lastKnownStatus = "Disconnected";
-    private boolean currentlyConnected = false;
+    // Last known connection status, written on the GATT thread, read by the UI.
+    private volatile String lastKnownStatus = "Disconnected";
+    private volatile boolean currentlyConnected = false;
+
+    // State channel: the latest notice (older ones are dropped) and when the
+    // oldest undelivered change was published.
+    private final AtomicReference<String> pendingNotice = new AtomicReference<>();
+    private volatile long statePublishedNanos = 0;
+    private final CoalescingRefresher stateChannel;
 
     /**
      * Listener for connection status changes so the UI can be updated.
+     * Always called on the main thread.
      */
     public interface ConnectionStatusListener {
         void onConnectionStatusChanged(int patientIndex, String status, boolean isConnected);
     }
 
-    private ConnectionStatusListener connectionStatusListener;
+    private volatile ConnectionStatusListener connectionStatusListener;
 
     public void setConnectionStatusListener(ConnectionStatusListener listener) {
         this.connectionStatusListener = listener;
     }
 
+    /**
+     * Starts (non-null) or stops (null) recording raw notifications and
+     * connection changes of this scale. The writer is not closed here.
+     */
+    public void setTraceWriter(TraceWriter writer) {
+        this.traceWriter = writer;
+    }
+
     public BleDeviceManager(Activity activity,
                             String deviceName,
                             java.util.UUID serviceUuid,
@@ -103,15 +194,81 @@ public class BleDeviceManager {
         this.txUuid = txUuid;
         this.rxUuid = rxUuid;
         this.patientIndex = patientIndex;
+        // Add events to DataManager => triggers backup and UI refresh.
+        this.ingest = new ScaleIngest(patientIndex,
+                (index, ev) -> DataManager.getInstance(activity).addWaterEvent(index, ev));
+        String prefix = Metrics.scale(patientIndex);
+        this.reconnectLatency = Metrics.histogram(prefix + "reconnect");
+        this.gattQueueLatency = Metrics.histogram(prefix + "gattQueue");
+        this.ingestQueueLatency = Metrics.histogram(prefix + "ingestQueue");
+        this.stateQueueLatency = Metrics.histogram(prefix + "stateQueue");
+        this.disconnects = Metrics.counter(prefix + "disconnects");
+        this.connectedGauge = Metrics.gauge(prefix + "connected");
+        this.rssiGauge = Metrics.gauge(prefix + "rssi");
+
+        gattThread = new HandlerThread("gatt-" + deviceName, Process.THREAD_PRIORITY_FOREGROUND);
+        gattThread.start();
+        gattHandler = new Handler(gattThread.getLooper());
+        gattGuard = new ThreadGuard(gattThread.getName());
+        gattGuard.bind(gattThread);
+        mainGuard.bind(Looper.getMainLooper().getThread());
+        stateChannel = new CoalescingRefresher(prefix + "state", STATE_INTERVAL_MS,
+                mainHandler::postDelayed, rows -> deliverState());
 
         BluetoothManager bm = (BluetoothManager) activity.getSystemService(Activity.BLUETOOTH_SERVICE);
         if (bm != null) {
             bluetoothAdapter = bm.getAdapter();
         }
 
-        // Listen for global Bluetooth state changes (OFF/ON).
+        // Listen for global Bluetooth state changes (OFF/ON); delivered on the GATT thread.
         IntentFilter filter = new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED);
-        activity.registerReceiver(bluetoothReceiver, filter);
+        activity.registerReceiver(bluetoothReceiver, filter, null, gattHandler);
+    }
+
+    // --------------------------------------------------------------------
+    // THREADING HELPERS
+    // --------------------------------------------------------------------
+
+    /**
+     * Runs task on this scale's GATT thread, recording the queueing delay.
+     */
+    private void runOnGatt(Runnable task) {
+        long posted = System.nanoTime();
+        gattHandler.post(() -> {
+            Metrics.recordSince(gattQueueLatency, posted);
+            task.run();
+        });
+    }
+
+    /**
+     * Publishes the current status (and an optional notice for a Toast) to the
+     * main thread. Bursts are coalesced: the UI sees the latest state only.
+     */
+    private void publishState(String notice) {
+        if (notice != null) {
+            pendingNotice.set(notice);
+        }
+        if (statePublishedNanos == 0) {
+            statePublishedNanos = System.nanoTime();
+        }
+        stateChannel.markDirty(0);
+    }
+
+    private void deliverState() {
+        mainGuard.check("deliverState");
+        long published = statePublishedNanos;
+        statePublishedNanos = 0;
+        if (published != 0) {
+            Metrics.recordSince(stateQueueLatency, published);
+        }
+        String notice = pendingNotice.getAndSet(null);
+        if (notice != null) {
+            Toast.makeText(activity, notice, Toast.LENGTH_SHORT).show();
+        }
+        ConnectionStatusListener listener = connectionStatusListener;
+        if (listener != null) {
+            listener.onConnectionStatusChanged(patientIndex, lastKnownStatus, currentlyConnected);
+        }
     }
 
     // --------------------------------------------------------------------
@@ -121,17 +278,18 @@ public class BleDeviceManager {
         @Override
         public void onReceive(Context context, Intent intent) {
             if (!BluetoothAdapter.ACTION_STATE_CHANGED.equals(intent.getAction())) return;
+            gattGuard.check("bluetoothReceiver");
 
             int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR);
             if (state == BluetoothAdapter.STATE_ON) {
-                Log.d(TAG, "Bluetooth ON => re-scan for " + deviceName);
-                startScan();
+                CoreLog.i(TAG, "Bluetooth ON => re-scan for {}", deviceName);
+                startScanOnGatt();
             } else if (state == BluetoothAdapter.STATE_OFF) {
-                Log.d(TAG, "Bluetooth OFF => close GATT for " + deviceName);
+                CoreLog.i(TAG, "Bluetooth OFF => close GATT for {}", deviceName);
 
                 // Defensive check: only stop scan if adapter is still reported as enabled.
                 if (bluetoothAdapter != null && bluetoothAdapter.isEnabled()) {
-                    stopScan();
+                    stopScanOnGatt();
                 }
 
                 // Close any active GATT connection so we do not keep stale references.
@@ -139,6 +297,9 @@ public class BleDeviceManager {
                     bluetoothGatt.close();
                     bluetoothGatt = null;
                 }
+                // A closed GATT reports no disconnect, so count the downtime from here.
+                gattHandler.removeCallbacks(rssiPoll);
+                health.onDisconnected(System.currentTimeMillis());
             }
         }
     };
@@ -147,6 +308,15 @@ public class BleDeviceManager {
     // SCANNING
     // --------------------------------------------------------------------
     public void startScan() {
+        runOnGatt(this::startScanOnGatt);
+    }
+
+    public void stopScan() {
+        runOnGatt(this::stopScanOnGatt);
+    }
+
+    private void startScanOnGatt() {
+        gattGuard.check("startScan");
         if (bluetoothAdapter == null) return;
         if (!bluetoothAdapter.isEnabled()) return;
 
@@ -156,6 +326,7 @@ public class BleDeviceManager {
         }
 
         bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
+        // Scan results arrive on the main thread; the connection is made on the GATT thread.
         leScanCallback = new ScanCallback() {
             @Override
             public void onScanResult(int callbackType, ScanResult result) {
@@ -164,12 +335,11 @@ public class BleDeviceManager {
                     List<android.os.ParcelUuid> uuids = result.getScanRecord().getServiceUuids();
                     if (uuids != null && uuids.contains(new android.os.ParcelUuid(serviceUuid))) {
                         BluetoothDevice device = result.getDevice();
-                        activity.runOnUiThread(() -> {
-                            Toast.makeText(activity,
-                                    "Found device: " + deviceName, Toast.LENGTH_SHORT).show();
-                            stopScan();
+                        runOnGatt(() -> {
+                            stopScanOnGatt();
                             connectGatt(device);
                         });
+                        publishState("Found device: " + deviceName);
                     }
                 }
             }
@@ -177,14 +347,12 @@ public class BleDeviceManager {
             @Override
             public void onScanFailed(int errorCode) {
                 super.onScanFailed(errorCode);
-                Log.e(TAG, "Scan failed with error=" + errorCode);
+                CoreLog.e(TAG, "Scan failed for {} with error={}", deviceName, errorCode);
             }
         };
 
         // Simple feedback that scanning has started.
-        activity.runOnUiThread(() ->
-                Toast.makeText(activity, "Scanning for: " + deviceName, Toast.LENGTH_SHORT).show()
-        );
+        publishState("Scanning for: " + deviceName);
 
         // Restrict scan to the service we care about.
         ScanFilter filter = new ScanFilter.Builder()
@@ -200,7 +368,8 @@ public class BleDeviceManager {
         bluetoothLeScanner.startScan(filters, settings, leScanCallback);
     }
 
-    public void stopScan() {
+    private void stopScanOnGatt() {
+        gattGuard.check("stopScan");
         if (bluetoothLeScanner != null && leScanCallback != null) {
             if (ActivityCompat.checkSelfPermission(activity, Manifest.permission.BLUETOOTH_SCAN)
                     != PackageManager.PERMISSION_GRANTED) {
@@ -214,6 +383,7 @@ public class BleDeviceManager {
     // GATT CONNECTION
     // --------------------------------------------------------------------
     private void connectGatt(BluetoothDevice device) {
+        gattGuard.check("connectGatt");
         if (device == null) return;
 
         // Close any previous connection before opening a new one.
@@ -227,52 +397,54 @@ public class BleDeviceManager {
         }
 
         isReconnecting = false;
+        // Callbacks are delivered on the GATT thread.
         bluetoothGatt = device.connectGatt(activity, false, gattCallback,
-                BluetoothDevice.TRANSPORT_LE);
+                BluetoothDevice.TRANSPORT_LE, BluetoothDevice.PHY_LE_1M_MASK, gattHandler);
     }
 
     /**
      * Schedules a re-scan and reconnect attempt a few seconds after a disconnect.
      */
     private void scheduleReconnect() {
+        gattGuard.check("scheduleReconnect");
         lastKnownStatus = "Reconnecting";
         currentlyConnected = false;
-        if (connectionStatusListener != null) {
-            activity.runOnUiThread(() ->
-                    connectionStatusListener.onConnectionStatusChanged(
-                            patientIndex, "Reconnecting", false
-                    )
-            );
-        }
+        publishState(null);
         isReconnecting = true;
-
-        reconnectHandler.postDelayed(() -> {
-            if (bluetoothAdapter != null && bluetoothAdapter.isEnabled()) {
-                // Re-scan to find the device again.
-                startScan();
-            }
-        }, 5000);
+        gattHandler.postDelayed(reconnectScan, 5000);
     }
 
+    private final Runnable reconnectScan = () -> {
+        if (bluetoothAdapter != null && bluetoothAdapter.isEnabled()) {
+            // Re-scan to find the device again.
+            startScanOnGatt();
+        }
+    };
+
     // --------------------------------------------------------------------
-    // GATT CALLBACK
+    // GATT CALLBACK (GATT thread)
     // --------------------------------------------------------------------
     private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
         @Override
         public void onConnectionStateChange(final BluetoothGatt gatt, int status, int newState) {
+            gattGuard.check("onConnectionStateChange");
             String tmpStatus;
             boolean tmpIsConnected = false;
+            String notice = null;
 
             if (newState == BluetoothProfile.STATE_CONNECTED) {
                 tmpStatus = "Connected";
                 tmpIsConnected = true;
                 isReconnecting = false;
-                reconnectHandler.removeCallbacksAndMessages(null);
+                gattHandler.removeCallbacks(reconnectScan);
                 didSubscribeTx = false; // always resubscribe on a fresh connection
-
-                activity.runOnUiThread(() ->
-                        Toast.makeText(activity, deviceName + " Connected", Toast.LENGTH_SHORT).show()
-                );
+                if (disconnectedAtNanos != 0) {
+                    Metrics.recordSince(reconnectLatency, disconnectedAtNanos);
+                    disconnectedAtNanos = 0;
+                }
+                health.onConnected(System.currentTimeMillis());
+                gattHandler.postDelayed(rssiPoll, RSSI_INTERVAL_MS);
+                notice = deviceName + " Connected";
 
                 if (ActivityCompat.checkSelfPermission(activity, Manifest.permission.BLUETOOTH_CONNECT)
                         == PackageManager.PERMISSION_GRANTED) {
@@ -280,9 +452,15 @@ public class BleDeviceManager {
                 }
             } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
                 tmpStatus = "Disconnected";
-                activity.runOnUiThread(() ->
-                        Toast.makeText(activity, deviceName + " Disconnected", Toast.LENGTH_SHORT).show()
-                );
+                disconnects.inc();
+                if (disconnectedAtNanos == 0) {
+                    disconnectedAtNanos = System.nanoTime();
+                }
+                gattHandler.removeCallbacks(rssiPoll);
+                health.onDisconnected(System.currentTimeMillis());
+                // Queued behind the notifications received before the disconnect.
+                INGEST.execute(ingest::onDisconnected);
+                notice = deviceName + " Disconnected";
 
                 if (!isReconnecting) {
                     scheduleReconnect();
@@ -291,21 +469,23 @@ public class BleDeviceManager {
                 tmpStatus = "Unknown State " + newState;
             }
 
+            CoreLog.i(TAG, "{} => {} (gatt status {})", deviceName, tmpStatus, status);
             lastKnownStatus = tmpStatus;
             currentlyConnected = tmpIsConnected;
+            connectedGauge.set(tmpIsConnected ? 1 : 0);
 
-            // Push status to UI.
-            if (connectionStatusListener != null) {
-                final String finalMsg = tmpStatus;
-                final boolean finalConnected = tmpIsConnected;
-                activity.runOnUiThread(() ->
-                        connectionStatusListener.onConnectionStatusChanged(patientIndex, finalMsg, finalConnected)
-                );
+            TraceWriter trace = traceWriter;
+            if (trace != null) {
+                trace.recordConnection(patientIndex, tmpStatus, System.currentTimeMillis());
             }
+
+            // Push status to UI.
+            publishState(notice);
         }
 
         @Override
         public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            gattGuard.check("onServicesDiscovered");
             if (status != BluetoothGatt.GATT_SUCCESS) return;
 
             BluetoothGattService service = gatt.getService(serviceUuid);
@@ -332,65 +512,78 @@ public class BleDeviceManager {
             }
         }
 
+        @Override
+        public void onReadRemoteRssi(BluetoothGatt gatt, int rssi, int status) {
+            gattGuard.check("onReadRemoteRssi");
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                health.onRssi(rssi, System.currentTimeMillis());
+                rssiGauge.set(rssi);
+            }
+        }
+
+        // API 31/32: the value is read from the characteristic, which the next
+        // notification overwrites, so it is copied before leaving this thread.
         @Override
         public void onCharacteristicChanged(BluetoothGatt gatt,
                                             BluetoothGattCharacteristic characteristic) {
             if (characteristic.getUuid().equals(txUuid)) {
-                final String val = new String(characteristic.getValue(),
-                        StandardCharsets.UTF_8);
-                Log.d(TAG, deviceName + " => " + val);
-
-                // Basic debounce: drop identical packets within 500 ms.
-                long now = System.currentTimeMillis();
-                if (val.equals(lastDataValue) && (now - lastDataTime < 500)) {
-                    Log.w(TAG, "Skipping duplicate data: " + val);
-                    return;
-                }
-                lastDataValue = val;
-                lastDataTime = now;
+                onNotification(characteristic.getValue().clone());
+            }
+        }
 
-                parseScaleData(val);
+        // API 33+: the value is passed in and no longer shared.
+        @Override
+        public void onCharacteristicChanged(@NonNull BluetoothGatt gatt,
+                                            @NonNull BluetoothGattCharacteristic characteristic,
+                                            @NonNull byte[] value) {
+            if (characteristic.getUuid().equals(txUuid)) {
+                onNotification(value);
             }
         }
     };
 
-    // --------------------------------------------------------------------
-    // Parse payload from the scale and update DataManager
-    // --------------------------------------------------------------------
-    private void parseScaleData(String data) {
-        // expected format: "I 45.23 x"
-        String[] tokens = data.split("\\s+");
-        if (tokens.length < 3) return;
-
-        String type = tokens[0];  // "I" or "R"
-        String amtStr = tokens[1];
-        String cup = tokens[2];
-
-        try {
-            float amt = Float.parseFloat(amtStr);
-            String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss",
-                    Locale.getDefault()).format(new Date());
-
-            // Add event to DataManager => triggers backup and UI refresh.
-            WaterEvent ev = new WaterEvent(timestamp, type, amt, cup);
-            DataManager.getInstance(activity).addWaterEvent(patientIndex, ev);
-
-        } catch (NumberFormatException e) {
-            e.printStackTrace();
+    /**
+     * Records a TX notification and hands it to the shared ingest thread.
+     */
+    private void onNotification(byte[] value) {
+        gattGuard.check("onNotification");
+        long now = System.currentTimeMillis();
+        TraceWriter trace = traceWriter;
+        if (trace != null) {
+            trace.recordNotification(patientIndex, value, now);
+        }
+        health.onNotification(now);
+        // An optional " #<n>" suffix numbers the notifications; strip it before parsing.
+        int seqAt = ConnectionHealth.sequenceAt(value);
+        if (seqAt >= 0) {
+            health.onSequence(ConnectionHealth.parseSequence(value, seqAt), now);
+            value = Arrays.copyOf(value, seqAt);
         }
+        byte[] payload = value;
+        long queued = System.nanoTime();
+        INGEST.execute(() -> {
+            INGEST_GUARD.check("ingest");
+            Metrics.recordSince(ingestQueueLatency, queued);
+            // Duplicates within 500 ms are dropped, "I 45.23 x" payloads become events.
+            if (ingest.onNotification(payload, now) == ScaleIngest.Decision.DUPLICATE) {
+                health.onDuplicate(now);
+            }
+        });
     }
 
     // --------------------------------------------------------------------
     // SEND REMINDER => write a single byte (1) to RX characteristic
     // --------------------------------------------------------------------
     public void sendReminder() {
-        if (rxCharacteristic == null || bluetoothGatt == null) return;
-        if (ActivityCompat.checkSelfPermission(activity, Manifest.permission.BLUETOOTH_CONNECT)
-                != PackageManager.PERMISSION_GRANTED) {
-            return;
-        }
-        rxCharacteristic.setValue(new byte[]{1});
-        bluetoothGatt.writeCharacteristic(rxCharacteristic);
+        runOnGatt(() -> {
+            if (rxCharacteristic == null || bluetoothGatt == null) return;
+            if (ActivityCompat.checkSelfPermission(activity, Manifest.permission.BLUETOOTH_CONNECT)
+                    != PackageManager.PERMISSION_GRANTED) {
+                return;
+            }
+            rxCharacteristic.setValue(new byte[]{1});
+            bluetoothGatt.writeCharacteristic(rxCharacteristic);
+        });
     }
 
     // --------------------------------------------------------------------
@@ -405,15 +598,32 @@ public class BleDeviceManager {
     }
 
     /**
-     * Releases BLE resources. Should be called from MainActivity.onDestroy().
+     * Connection-health telemetry of this scale (thread-safe).
+     */
+    public ConnectionHealth getHealth() {
+        return health;
+    }
+
+    /**
+     * Releases BLE resources and stops the GATT thread. Should be called from
+     * MainActivity.onDestroy().
      */
     public void cleanup() {
-        if (bluetoothGatt != null) {
-            bluetoothGatt.close();
-        }
         try {
             activity.unregisterReceiver(bluetoothReceiver);
         } catch (Exception ignored) {
         }
+        connectionStatusListener = null;
+        mainHandler.removeCallbacksAndMessages(null);
+        stateChannel.cancel();
+        gattHandler.removeCallbacksAndMessages(null);
+        gattHandler.post(() -> {
+            stopScanOnGatt();
+            if (bluetoothGatt != null) {
+                bluetoothGatt.close();
+                bluetoothGatt = null;
+            }
+        });
+        gattThread.quitSafely();
     }
 }
@@ -1,68 +1,542 @@
 package com.example.thesis;
 
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.core.content.FileProvider;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
- * Builds a temporary CSV file from the in-memory events for one patient
- * and launches a share intent so it can be exported (mail, Drive, etc.).
+ * Streams a patient's events into a CSV file in the cache directory on a
+ * background executor and launches a share intent so it can be exported
+ * (mail, Drive, etc.).
+ *
+ * The export iterates a consistent copy of the patient's events (see
+ * DataManager#snapshotEventsForPatient), writes through a large buffered
+ * writer (see EventCsvWriter for the row formatting), reports progress on
+ * the main thread and can be cancelled.
+ *
+ * The ward export writes all patients into one ZIP with a manifest in a
+ * single pass (see WardZipWriter).
+ *
+ * The ward report writes per-patient daily and hourly summaries instead of
+ * raw rows (see WardReport).
+ *
+ * The columnar ward export writes typed, block-compressed binary files
+ * (see ColumnarWriter / ColumnarReader) for analysis tools.
+ *
+ * Exports can be incremental: given a destination id, only the events added
+ * since the last delivered export to that destination are written (see
+ * ExportWatermarks), so a daily export costs as much as the day's data. The
+ * watermarks of a finished file are only staged; share() commits them once
+ * the user picked a target in the share sheet (DeliveryReceiver). A
+ * dismissed share sheet keeps the previous marks, so the next export
+ * re-sends those rows.
  */
 public class CSVExporter {
 
+    private static final String TAG = "CSVExporter";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Destination ids of the share-sheet exports in the UI. The patient and
+     * the ward flow keep separate watermarks, so exporting a patient on its
+     * own does not hide those rows from the next ward export (and vice versa).
+     */
+    public static final String DEST_SHARE_PATIENT = "share.patient";
+    public static final String DEST_SHARE_WARD = "share.ward";
+
+    private static final String EXTRA_STAGE = "com.example.thesis.extra.EXPORT_STAGE";
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static ExportWatermarks watermarks;
+    // Exported file path => staged watermark id, committed by share().
+    private static final Map<String, Integer> stagedByFile = new ConcurrentHashMap<>();
+
+    /**
+     * Export callbacks, all delivered on the main thread.
+     */
+    public interface ExportListener {
+        void onProgress(int rowsWritten, int totalRows);
+
+        void onFinished(File file, int rows);
+
+        void onCancelled();
+
+        void onFailed(Exception e);
+    }
+
+    /**
+     * Handle of a running export.
+     */
+    public static final class ExportTask {
+        private volatile boolean cancelled;
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
     /**
      * Exports all events for a patient index to a CSV file in the cache
-     * directory and triggers the Android share sheet.
+     * directory and triggers the Android share sheet when done.
      */
     public static void export(Context context, int patientIndex) {
-        List<WaterEvent> events = DataManager.getInstance(context).getEventsForPatient(patientIndex);
-        if (events.isEmpty()) {
-            return;
+        Context app = context.getApplicationContext();
+        export(context, patientIndex, new ExportListener() {
+            @Override
+            public void onProgress(int rowsWritten, int totalRows) {
+            }
+
+            @Override
+            public void onFinished(File csvFile, int rows) {
+                share(app, csvFile);
+            }
+
+            @Override
+            public void onCancelled() {
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+            }
+        });
+    }
+
+    /**
+     * Starts exporting all events for a patient index on the export executor.
+     * Returns null (and reports nothing) if the patient has no events.
+     */
+    public static ExportTask export(Context context, int patientIndex, ExportListener listener) {
+        return export(context, patientIndex, null, listener);
+    }
+
+    /**
+     * Starts exporting a patient's events on the export executor. With a
+     * destination, only events after that destination's watermark are written
+     * and the new watermark is staged until share() confirms delivery of the
+     * file; with null, all
+     * events are written. Returns null (and reports nothing) if there is
+     * nothing to export.
+     */
+    public static ExportTask export(Context context, int patientIndex, String destination,
+                                    ExportListener listener) {
+        PatientEventList events = DataManager.getInstance(context).snapshotEventsForPatient(patientIndex);
+        ExportWatermarks marks = destination != null ? getWatermarks(context) : null;
+        int from = marks != null
+                ? ExportWatermarks.startIndex(events, marks.get(destination, patientIndex)) : 0;
+        if (from >= events.size()) {
+            return null;
         }
-        File cacheDir = context.getCacheDir();
         // patientIndex+1 in the CSV filename to match UI numbering.
-        File csvFile = new File(cacheDir, "patient_" + (patientIndex + 1) + ".csv");
-        FileWriter writer = null;
+        String name = "patient_" + (patientIndex + 1) + (from > 0 ? "_new" : "") + ".csv";
+        File csvFile = new File(context.getCacheDir(), name);
+        ExportTask task = new ExportTask();
+        executor.execute(() -> {
+            // Staged before the listener hears about the file, so share() finds it.
+            int stage = stageWatermarks(marks, destination, csvFile,
+                    Collections.singletonMap(patientIndex, ExportWatermarks.endOf(events)));
+            if (!runExport(events, from, csvFile, task, listener)) {
+                discardStage(marks, csvFile, stage);
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Starts exporting the events of one cup of a patient (all time, no
+     * watermark) to patient_X_cup_<name>.csv. Returns null if the patient
+     * has no events.
+     */
+    public static ExportTask exportCup(Context context, int patientIndex, String cupName,
+                                       ExportListener listener) {
+        PatientEventList events = DataManager.getInstance(context).snapshotEventsForPatient(patientIndex);
+        if (events.isEmpty()) {
+            return null;
+        }
+        String name = "patient_" + (patientIndex + 1) + "_cup_"
+                + cupName.replaceAll("[^A-Za-z0-9_-]", "_") + ".csv";
+        File csvFile = new File(context.getCacheDir(), name);
+        ExportTask task = new ExportTask();
+        executor.execute(() -> runExport(events, 0, cupName, csvFile, task, listener));
+        return task;
+    }
+
+    private static boolean runExport(PatientEventList events, int from, File csvFile,
+                                     ExportTask task, ExportListener listener) {
+        return runExport(events, from, null, csvFile, task, listener);
+    }
+
+    private static boolean runExport(PatientEventList events, int from, String cupName, File csvFile,
+                                     ExportTask task, ExportListener listener) {
+        File tmp = new File(csvFile.getPath() + ".tmp");
+        long start = System.nanoTime();
         try {
-            writer = new FileWriter(csvFile);
-            writer.write("Timestamp,Event,Weight (g),Cup\n");
-
-            for (WaterEvent e : events) {
-                String displayType = e.type.equals("I") ? "Intake"
-                        : e.type.equals("R") ? "Refill"
-                        : e.type;
-                writer.write(e.timestamp + "," + displayType + ","
-                        + e.amount + "," + e.cupName + "\n");
-            }
-            writer.flush();
-            writer.close();
-
-            Uri uri = FileProvider.getUriForFile(
-                    context,
-                    context.getPackageName() + ".provider",
-                    csvFile
-            );
-            Intent shareIntent = new Intent(Intent.ACTION_SEND);
-            shareIntent.setType("text/csv");
-            shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
-            shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-            context.startActivity(Intent.createChooser(shareIntent, "Share CSV File"));
+            int rows;
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(tmp), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                writer.write(EventCsvWriter.HEADER);
+                rows = new EventCsvWriter().setCupFilter(cupName).writeRows(
+                        events, from, events.size(), writer, (written, total) -> {
+                            mainHandler.post(() -> listener.onProgress(written, total));
+                            return !task.isCancelled();
+                        });
+            }
+            if (!tmp.renameTo(csvFile)) {
+                throw new IOException("Could not replace " + csvFile.getName());
+            }
+            CoreLog.d(TAG, "Exported {} rows to {} in {} ms",
+                    rows, csvFile.getName(), (System.nanoTime() - start) / 1_000_000);
+            mainHandler.post(() -> listener.onFinished(csvFile, rows));
+            return true;
+        } catch (CancellationException e) {
+            tmp.delete();
+            CoreLog.d(TAG, "{}", e.getMessage());
+            mainHandler.post(listener::onCancelled);
         } catch (Exception e) {
-            Log.e("CSVExporter", "Export failed", e);
-        } finally {
-            if (writer != null) {
-                try {
-                    writer.close();
-                } catch (Exception ignore) {
+            tmp.delete();
+            CoreLog.e(TAG, "Export failed", e);
+            mainHandler.post(() -> listener.onFailed(e));
+        }
+        return false;
+    }
+
+    /**
+     * Starts exporting all patients into one ZIP (patient_X.csv entries plus
+     * manifest.csv) in the cache directory. With a destination, only events
+     * after that destination's watermarks are included (see export()).
+     * Returns null if there is nothing to export.
+     */
+    public static ExportTask exportWard(Context context, String destination, ExportListener listener) {
+        DataManager dm = DataManager.getInstance(context);
+        ExportWatermarks marks = destination != null ? getWatermarks(context) : null;
+        List<PatientEventList> events = new ArrayList<>();
+        int[] from = new int[3];
+        boolean any = false;
+        for (int i = 0; i < 3; i++) {
+            PatientEventList list = dm.snapshotEventsForPatient(i);
+            from[i] = marks != null ? ExportWatermarks.startIndex(list, marks.get(destination, i)) : 0;
+            any |= from[i] < list.size();
+            events.add(list);
+        }
+        if (!any) {
+            return null;
+        }
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmm", Locale.US).format(new Date());
+        File zipFile = new File(context.getCacheDir(),
+                "ward_" + (marks != null ? "new_" : "") + stamp + ".zip");
+        ExportTask task = new ExportTask();
+        executor.execute(() -> {
+            Map<Integer, ExportWatermarks.Mark> ends = new HashMap<>();
+            for (int i = 0; i < events.size(); i++) {
+                ends.put(i, ExportWatermarks.endOf(events.get(i)));
+            }
+            int stage = stageWatermarks(marks, destination, zipFile, ends);
+            if (!runWardExport(events, from, zipFile, task, listener)) {
+                discardStage(marks, zipFile, stage);
+            }
+        });
+        return task;
+    }
+
+    private static boolean runWardExport(List<PatientEventList> events, int[] from, File zipFile,
+                                         ExportTask task, ExportListener listener) {
+        File tmp = new File(zipFile.getPath() + ".tmp");
+        long start = System.nanoTime();
+        try {
+            List<WardZipWriter.Entry> entries;
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE)) {
+                entries = WardZipWriter.write(events, from, out, (written, total) -> {
+                    mainHandler.post(() -> listener.onProgress(written, total));
+                    return !task.isCancelled();
+                });
+            }
+            if (!tmp.renameTo(zipFile)) {
+                throw new IOException("Could not replace " + zipFile.getName());
+            }
+            int rows = 0;
+            for (WardZipWriter.Entry e : entries) {
+                rows += e.rows;
+            }
+            int total = rows;
+            CoreLog.d(TAG, "Exported ward ({} rows) to {} in {} ms",
+                    total, zipFile.getName(), (System.nanoTime() - start) / 1_000_000);
+            mainHandler.post(() -> listener.onFinished(zipFile, total));
+            return true;
+        } catch (CancellationException e) {
+            tmp.delete();
+            CoreLog.d(TAG, "{}", e.getMessage());
+            mainHandler.post(listener::onCancelled);
+        } catch (Exception e) {
+            tmp.delete();
+            CoreLog.e(TAG, "Ward export failed", e);
+            mainHandler.post(() -> listener.onFailed(e));
+        }
+        return false;
+    }
+
+    /**
+     * Starts exporting all patients in the columnar format (patient_X.swcf,
+     * see ColumnarReader) packed into one ZIP. The blocks are deflated
+     * already, so the archive only stores them. Returns null if there is
+     * nothing to export.
+     */
+    public static ExportTask exportWardColumnar(Context context, ExportListener listener) {
+        DataManager dm = DataManager.getInstance(context);
+        List<PatientEventList> events = new ArrayList<>();
+        int totalRows = 0;
+        for (int i = 0; i < 3; i++) {
+            PatientEventList list = dm.snapshotEventsForPatient(i);
+            totalRows += list.size();
+            events.add(list);
+        }
+        if (totalRows == 0) {
+            return null;
+        }
+        int total = totalRows;
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmm", Locale.US).format(new Date());
+        File zipFile = new File(context.getCacheDir(), "ward_columnar_" + stamp + ".zip");
+        ExportTask task = new ExportTask();
+        executor.execute(() -> {
+            File tmp = new File(zipFile.getPath() + ".tmp");
+            long start = System.nanoTime();
+            try {
+                int rows = 0;
+                try (ZipOutputStream zip = new ZipOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE))) {
+                    zip.setLevel(Deflater.NO_COMPRESSION);
+                    for (int i = 0; i < events.size(); i++) {
+                        PatientEventList list = events.get(i);
+                        int before = rows;
+                        zip.putNextEntry(new ZipEntry("patient_" + (i + 1) + ".swcf"));
+                        rows += new ColumnarWriter().write(list, 0, list.size(), zip,
+                                (written, patientRows) -> {
+                                    mainHandler.post(() -> listener.onProgress(before + written, total));
+                                    return !task.isCancelled();
+                                });
+                        zip.closeEntry();
+                    }
+                }
+                if (!tmp.renameTo(zipFile)) {
+                    throw new IOException("Could not replace " + zipFile.getName());
                 }
+                CoreLog.d(TAG, "Exported ward columnar ({} rows, {} bytes) in {} ms",
+                        rows, zipFile.length(), (System.nanoTime() - start) / 1_000_000);
+                mainHandler.post(() -> listener.onFinished(zipFile, total));
+            } catch (CancellationException e) {
+                tmp.delete();
+                CoreLog.d(TAG, "{}", e.getMessage());
+                mainHandler.post(listener::onCancelled);
+            } catch (Exception e) {
+                tmp.delete();
+                CoreLog.e(TAG, "Columnar export failed", e);
+                mainHandler.post(() -> listener.onFailed(e));
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Starts exporting the ward report (daily and hourly intake, refill and
+     * balance per patient) for the last `days` calendar days, including today.
+     */
+    public static ExportTask exportReport(Context context, int days, ExportListener listener) {
+        DataManager dm = DataManager.getInstance(context);
+        AggregateIndex live = dm.getAggregateIndex(0);
+        long now = System.currentTimeMillis();
+        long to = live.startOfNextDay(now);
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(live.startOfDay(now));
+        c.add(Calendar.DAY_OF_MONTH, -(days - 1));
+        long from = c.getTimeInMillis();
+        List<AggregateIndex> indexes = new ArrayList<>();
+        List<PatientEventList> events = new ArrayList<>();
+        dm.snapshotForReport(from, to, indexes, events);
+
+        String stamp = new SimpleDateFormat("yyyyMMdd", Locale.US).format(new Date(now));
+        File reportFile = new File(context.getCacheDir(), "ward_report_" + stamp + ".csv");
+        ExportTask task = new ExportTask();
+        executor.execute(() -> {
+            File tmp = new File(reportFile.getPath() + ".tmp");
+            long start = System.nanoTime();
+            try {
+                List<WardReport.PatientReport> reports = WardReport.build(
+                        indexes, events, from, to, ForkJoinPool.commonPool(), task::isCancelled);
+                long built = System.nanoTime();
+                if (task.isCancelled()) {
+                    mainHandler.post(listener::onCancelled);
+                    return;
+                }
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(tmp), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                    WardReport.writeCsv(reports, writer);
+                }
+                if (!tmp.renameTo(reportFile)) {
+                    throw new IOException("Could not replace " + reportFile.getName());
+                }
+                int rows = 0;
+                for (WardReport.PatientReport r : reports) {
+                    rows += r.days.size() + r.hours.size() + 1;
+                }
+                int total = rows;
+                CoreLog.d(TAG, "Ward report ({} days) built in {} ms, written in {} ms",
+                        days, (built - start) / 1_000_000, (System.nanoTime() - built) / 1_000_000);
+                mainHandler.post(() -> listener.onFinished(reportFile, total));
+            } catch (CancellationException e) {
+                tmp.delete();
+                CoreLog.d(TAG, "{}", e.getMessage());
+                mainHandler.post(listener::onCancelled);
+            } catch (Exception e) {
+                tmp.delete();
+                CoreLog.e(TAG, "Ward report failed", e);
+                mainHandler.post(() -> listener.onFailed(e));
+            }
+        });
+        return task;
+    }
+
+    // ------------------------------------------------------------------
+    // WATERMARKS
+    // ------------------------------------------------------------------
+    private static synchronized ExportWatermarks getWatermarks(Context context) {
+        if (watermarks == null) {
+            try {
+                watermarks = new ExportWatermarks(
+                        new File(context.getFilesDir(), "export_watermarks.txt"));
+            } catch (IOException e) {
+                CoreLog.e(TAG, "Error loading export watermarks: {}", e.getMessage());
+                return null;
+            }
+        }
+        return watermarks;
+    }
+
+    /**
+     * Stages the end marks of an export into file; returns 0 without a
+     * destination.
+     */
+    private static int stageWatermarks(ExportWatermarks marks, String destination, File file,
+                                       Map<Integer, ExportWatermarks.Mark> ends) {
+        if (marks == null) {
+            return 0;
+        }
+        int stage = marks.stage(destination, ends);
+        stagedByFile.put(file.getPath(), stage);
+        return stage;
+    }
+
+    private static void discardStage(ExportWatermarks marks, File file, int stage) {
+        if (stage != 0) {
+            stagedByFile.remove(file.getPath(), stage);
+            marks.discard(stage);
+        }
+    }
+
+    private static void commitWatermarks(Context context, int stage) {
+        ExportWatermarks marks = getWatermarks(context);
+        if (marks == null) return;
+        try {
+            if (!marks.commit(stage)) {
+                CoreLog.d(TAG, "Export {} was already committed", stage);
             }
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error saving export watermarks: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Receives the share sheet's choice for an incremental export and commits
+     * its staged watermarks. Registered non-exported in the manifest; only
+     * the explicit PendingIntent built by share() reaches it.
+     */
+    public static class DeliveryReceiver extends BroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            int stage = intent.getIntExtra(EXTRA_STAGE, 0);
+            if (stage != 0) {
+                commitWatermarks(context, stage);
+            }
+        }
+    }
+
+    /**
+     * Forgets the watermarks of a destination, so its next export is full.
+     */
+    public static void resetWatermarks(Context context, String destination) {
+        ExportWatermarks marks = getWatermarks(context);
+        if (marks == null) return;
+        try {
+            marks.reset(destination);
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error resetting export watermarks: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the Android share sheet for an exported file (.csv or .zip). For
+     * an incremental export, picking a target commits the file's staged
+     * watermarks; dismissing the sheet keeps the previous ones.
+     */
+    public static void share(Context context, File file) {
+        Uri uri = FileProvider.getUriForFile(
+                context,
+                context.getPackageName() + ".provider",
+                file
+        );
+        boolean zip = file.getName().endsWith(".zip");
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType(zip ? "application/zip" : "text/csv");
+        shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
+        shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        String title = zip ? "Share Ward Export" : "Share CSV File";
+        Integer stage = stagedByFile.remove(file.getPath());
+        Intent chooser;
+        if (stage == null) {
+            chooser = Intent.createChooser(shareIntent, title);
+        } else {
+            // Mutable so the chooser can add the chosen component; the intent is explicit.
+            Intent delivered = new Intent(context, DeliveryReceiver.class).putExtra(EXTRA_STAGE, stage);
+            PendingIntent callback = PendingIntent.getBroadcast(context, stage, delivered,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_MUTABLE);
+            chooser = Intent.createChooser(shareIntent, title, callback.getIntentSender());
         }
+        chooser.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        context.startActivity(chooser);
     }
 }
@@ -1,6 +1,9 @@
 package com.example.thesis;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -11,11 +14,41 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
- * Central overview fragment showing the connection status of all three scales
- * and exposing "Remind" buttons for each device.
+ * Central overview fragment showing the connection status of all three scales,
+ * a live ward dashboard (1 h / 24 h intake, last drink and alert state per
+ * patient), the link health of each scale (RSSI, notification rate, gaps,
+ * duplicates, uptime, time to reconnect; see ConnectionHealth), the active
+ * hydration alerts and "Remind" buttons for each device.
+ *
+ * Data updates only mark a patient's row dirty; a CoalescingRefresher
+ * rebuilds the dirty rows at most every REFRESH_INTERVAL_MS, so the
+ * dashboard's cost does not grow with the event rate. The rows are computed
+ * on a background thread (DataManager's getters take its lock, which an
+ * import or removal may hold for a while) and only the finished texts are
+ * posted to the main thread.
  */
-public class CentralFragment extends Fragment {
+public class CentralFragment extends Fragment implements DataManager.DataUpdateListener {
+
+    private static final int PATIENT_COUNT = 3;
+
+    /**
+     * Minimum time between two dashboard redraws (at most 2 Hz).
+     */
+    private static final long REFRESH_INTERVAL_MS = 500;
+
+    /**
+     * All rows are redrawn this often so sliding windows and "min ago" advance
+     * without new events.
+     */
+    private static final long TICK_MS = 30_000;
 
     /**
      * Callback into MainActivity when a "Remind" button is pressed.
@@ -27,6 +60,27 @@ public class CentralFragment extends Fragment {
     private CentralListener centralListener;
     private View scale1Dot, scale2Dot, scale3Dot;
     private TextView scale1Status, scale2Status, scale3Status;
+    private TextView scale1Overview, scale2Overview, scale3Overview;
+    private TextView scale1Health, scale2Health, scale3Health;
+    private TextView alertsView;
+
+    private static final ScheduledExecutorService dashboardExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final CoalescingRefresher refresher = new CoalescingRefresher("dashboard", REFRESH_INTERVAL_MS,
+            (task, delayMillis) -> dashboardExecutor.schedule(task, delayMillis, TimeUnit.MILLISECONDS),
+            this::refreshDashboard);
+    // Set while resumed; read by the dashboard thread.
+    private volatile DataManager dataManager;
+    private volatile ConnectionHealth[] health = new ConnectionHealth[PATIENT_COUNT];
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            refresher.markAllDirty(PATIENT_COUNT);
+            handler.postDelayed(this, TICK_MS);
+        }
+    };
 
     public static CentralFragment newInstance() {
         return new CentralFragment();
@@ -57,6 +111,13 @@ public class CentralFragment extends Fragment {
         scale1Status = view.findViewById(R.id.scale1_status);
         scale2Status = view.findViewById(R.id.scale2_status);
         scale3Status = view.findViewById(R.id.scale3_status);
+        scale1Overview = view.findViewById(R.id.scale1_overview);
+        scale2Overview = view.findViewById(R.id.scale2_overview);
+        scale3Overview = view.findViewById(R.id.scale3_overview);
+        scale1Health = view.findViewById(R.id.scale1_health);
+        scale2Health = view.findViewById(R.id.scale2_health);
+        scale3Health = view.findViewById(R.id.scale3_health);
+        alertsView = view.findViewById(R.id.tv_alerts);
 
         Button btnRemind1 = view.findViewById(R.id.btn_remind_scale1);
         Button btnRemind2 = view.findViewById(R.id.btn_remind_scale2);
@@ -84,6 +145,12 @@ public class CentralFragment extends Fragment {
         super.onResume();
         // When returning to the central screen, requery the latest statuses.
         MainActivity activity = (MainActivity) getActivity();
+        ConnectionHealth[] scales = new ConnectionHealth[PATIENT_COUNT];
+        for (int i = 0; activity != null && i < PATIENT_COUNT; i++) {
+            BleDeviceManager scale = activity.getScaleManager(i);
+            scales[i] = scale != null ? scale.getHealth() : null;
+        }
+        health = scales;
         if (activity != null) {
             BleDeviceManager scale1 = activity.getScaleManager(0);
             if (scale1 != null) {
@@ -98,6 +165,149 @@ public class CentralFragment extends Fragment {
                 updateConnectionStatus(2, scale3.getLastKnownStatus(), scale3.isCurrentlyConnected());
             }
         }
+        if (getContext() != null) {
+            dataManager = DataManager.getInstance(getContext());
+            dataManager.addDataUpdateListener(this);
+        }
+        handler.post(tick);
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        if (dataManager != null) {
+            dataManager.removeDataUpdateListener(this);
+            dataManager = null;
+        }
+        handler.removeCallbacksAndMessages(null);
+        refresher.cancel();
+    }
+
+    /**
+     * Called from any thread, once per event; only marks the row dirty.
+     */
+    @Override
+    public void onDataUpdated(int patientIndex) {
+        if (patientIndex >= 0 && patientIndex < PATIENT_COUNT) {
+            refresher.markDirty(patientIndex);
+        }
+    }
+
+    /**
+     * Called when an alert of a patient is raised or cleared (see AlertEngine).
+     */
+    public void updateAlerts(int patientIndex) {
+        onDataUpdated(patientIndex);
+    }
+
+    // ------------------------------------------------------------------
+    // DASHBOARD
+    // ------------------------------------------------------------------
+
+    /**
+     * Builds the texts of the dirty dashboard rows, the link health of all
+     * scales and the alert list on the dashboard thread, then posts them to
+     * the main thread.
+     */
+    private void refreshDashboard(BitSet dirtyRows) {
+        DataManager dm = dataManager;
+        if (dm == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String[] overviews = new String[PATIENT_COUNT];
+        for (int i = dirtyRows.nextSetBit(0); i >= 0 && i < PATIENT_COUNT; i = dirtyRows.nextSetBit(i + 1)) {
+            DataManager.Overview overview = dm.getOverview(i);
+            if (overview != null) {
+                overviews[i] = formatOverview(overview, now);
+            }
+        }
+
+        ConnectionHealth[] scales = health;
+        String[] healthTexts = new String[PATIENT_COUNT];
+        for (int i = 0; i < PATIENT_COUNT; i++) {
+            if (scales[i] != null) {
+                healthTexts[i] = formatHealth(scales[i].summarize(now));
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < PATIENT_COUNT; i++) {
+            List<AlertEngine.Alert> active = dm.getActiveAlerts(i);
+            for (AlertEngine.Alert alert : active) {
+                if (sb.length() > 0) {
+                    sb.append('\n');
+                }
+                sb.append("\u26A0 ").append(alert.message);
+            }
+        }
+        String alertText = sb.length() > 0 ? sb.toString() : "No active alerts";
+        handler.post(() -> showDashboard(overviews, healthTexts, alertText));
+    }
+
+    /**
+     * Sets the texts built by refreshDashboard; null entries stay as they are.
+     */
+    private void showDashboard(String[] overviews, String[] healthTexts, String alertText) {
+        if (alertsView == null || !isResumed()) {
+            return;
+        }
+        for (int i = 0; i < PATIENT_COUNT; i++) {
+            if (overviews[i] != null) {
+                overviewView(i).setText(overviews[i]);
+            }
+            if (healthTexts[i] != null) {
+                healthView(i).setText(healthTexts[i]);
+            }
+        }
+        alertsView.setText(alertText);
+    }
+
+    private TextView overviewView(int patientIndex) {
+        switch (patientIndex) {
+            case 0:
+                return scale1Overview;
+            case 1:
+                return scale2Overview;
+            default:
+                return scale3Overview;
+        }
+    }
+
+    private TextView healthView(int patientIndex) {
+        switch (patientIndex) {
+            case 0:
+                return scale1Health;
+            case 1:
+                return scale2Health;
+            default:
+                return scale3Health;
+        }
+    }
+
+    private static String formatHealth(ConnectionHealth.Summary h) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(h.lastRssi == Integer.MIN_VALUE ? "RSSI: -" : "RSSI: " + h.lastRssi + " dBm");
+        sb.append(String.format(Locale.US, "\n%.1f notif/min", h.notificationsPerMinute));
+        sb.append("\nGaps: ").append(h.gaps).append(", dup: ").append(h.duplicates);
+        sb.append("\nUp: ").append(DateUtils.formatElapsedTime(h.currentUptimeMillis / 1000));
+        if (h.reconnects > 0) {
+            sb.append(String.format(Locale.US, "\nReconnect: %.1f s (p95 %.1f s, n=%d)",
+                    h.reconnectP50Millis / 1000.0, h.reconnectP95Millis / 1000.0, h.reconnects));
+        }
+        return sb.toString();
+    }
+
+    private static String formatOverview(DataManager.Overview o, long now) {
+        String last = o.lastIntakeMillis == Long.MIN_VALUE
+                ? "never"
+                : DateUtils.getRelativeTimeSpanString(o.lastIntakeMillis, now,
+                        DateUtils.MINUTE_IN_MILLIS).toString();
+        String alerts = o.alerts.isEmpty()
+                ? "OK"
+                : "\u26A0 " + o.alerts.size() + (o.alerts.size() == 1 ? " alert" : " alerts");
+        return String.format(Locale.US, "1h: %.0f g\n24h: %.0f g\nLast drink: %s\n%s",
+                o.intake1h, o.intake24h, last, alerts);
     }
 
     /**
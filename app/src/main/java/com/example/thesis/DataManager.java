@@ -1,29 +1,89 @@
 package com.example.thesis;
 
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.util.Log;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Central in-memory store for all water events across patients.
  * Events are stored with compact types ("I"/"R") and backed by simple
  * text files on disk via BackupManager.
  *
- * On first initialization, all backup files are loaded into memory so that
- * sums and charts work across app restarts.
+ * The per-patient logic (event list, aggregate index, journal and snapshot
+ * cadence, queries) lives in the core module's PatientData; this class is the
+ * Android adapter around it: a process-wide singleton that serializes access,
+ * notifies UI listeners and runs the background rollups.
+ *
+ * On first initialization, all backups are loaded (from the binary snapshot
+ * plus the journal tail where possible) so that sums and charts work across
+ * app restarts. Hourly and daily totals are served from a per-patient
+ * AggregateIndex, seeded from durable rollups that a background worker
+ * refreshes after startup and whenever the day rolls over.
+ *
+ * Cup names are interned through the ward's CupRegistry, which also keeps
+ * per-cup running totals.
+ *
+ * Hydration alerts (AlertEngine) are updated with every added event and
+ * re-evaluated every ALERT_TICK_MS for the time-based rules; the rules come
+ * from Download/Scale Water/alert_rules.txt or DEFAULT_ALERT_RULES.
  */
 public class DataManager {
     private static final String TAG = "DataManager";
+
+    // How often the CoreLog ring is written to the rotating log file.
+    private static final long LOG_FLUSH_MS = 5000;
+
+    // Time-based alert rules (no intake, window expiry) are checked this often.
+    private static final long ALERT_TICK_MS = 60_000;
+
+    // Rules of every patient unless alert_rules.txt says otherwise.
+    private static final List<AlertRule> DEFAULT_ALERT_RULES = Arrays.asList(
+            AlertRule.lowIntake(4, 200f, false),
+            AlertRule.noIntake(120, false));
     private static DataManager instance;
     private final Context context;
 
-    // In-memory lists per patient.
-    private final List<WaterEvent> patient0Events = new ArrayList<>();
-    private final List<WaterEvent> patient1Events = new ArrayList<>();
-    private final List<WaterEvent> patient2Events = new ArrayList<>();
+    // Per-patient events + index, snapshot-backed after startup.
+    private final PatientData[] patients = new PatientData[3];
+
+    // Per-patient stage latencies and event counts (see Metrics).
+    private final LatencyHistogram[] storeLatency = new LatencyHistogram[3];
+    private final LatencyHistogram[] dispatchLatency = new LatencyHistogram[3];
+    private final Metrics.Gauge[] eventCount = new Metrics.Gauge[3];
+
+    // Rolls sealed day segments up off the main thread.
+    private final ExecutorService rollupExecutor = Executors.newSingleThreadExecutor();
+    private long lastRollupDay;
+
+    // Sliding-window hydration alerts, evaluated incrementally.
+    private final AlertEngine alerts = new AlertEngine(3);
+    private final ScheduledExecutorService alertTimer = Executors.newSingleThreadScheduledExecutor();
+    private final List<AlertEngine.Listener> alertListeners = new CopyOnWriteArrayList<>();
+
+    // Streaming sip size, rate and trend statistics per patient.
+    private final PatientStats[] stats = new PatientStats[3];
+
+    // Per-cup refill/intake reconciliation per patient.
+    private final FluidLedger[] ledgers = new FluidLedger[3];
+
+    // Ward-wide cup dictionary with per-cup running totals.
+    private final CupRegistry cups = BackupManager.getCupRegistry();
 
     /**
      * Listener notified whenever a patient’s data changes.
@@ -32,11 +92,39 @@ public class DataManager {
         void onDataUpdated(int patientIndex);
     }
 
-    private final List<DataUpdateListener> listeners = new ArrayList<>();
+    // Notified from the BLE and rollup threads as well as the main thread.
+    private final List<DataUpdateListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * One patient's row of the ward dashboard (see getOverview).
+     */
+    public static class Overview {
+        public final float intake1h;
+        public final float intake24h;
+        // Long.MIN_VALUE if there is no intake in the seeded history.
+        public final long lastIntakeMillis;
+        public final List<AlertEngine.Alert> alerts;
+
+        Overview(float intake1h, float intake24h, long lastIntakeMillis, List<AlertEngine.Alert> alerts) {
+            this.intake1h = intake1h;
+            this.intake24h = intake24h;
+            this.lastIntakeMillis = lastIntakeMillis;
+            this.alerts = alerts;
+        }
+    }
 
     private DataManager(Context ctx) {
         this.context = ctx.getApplicationContext();
+        setUpLogging();
+        for (int i = 0; i < 3; i++) {
+            String prefix = Metrics.scale(i);
+            storeLatency[i] = Metrics.histogram(prefix + "store");
+            dispatchLatency[i] = Metrics.histogram(prefix + "dispatch");
+            eventCount[i] = Metrics.gauge(prefix + "events");
+        }
         loadAllBackupsOnce();
+        scheduleRollup();
+        setUpAlerts();
     }
 
     public static synchronized DataManager getInstance(Context ctx) {
@@ -47,16 +135,131 @@ public class DataManager {
     }
 
     /**
-     * Called once at startup: loads backup files for all patients and
-     * converts textual types ("Intake"/"Refill") back to "I"/"R".
+     * Routes CoreLog to Logcat (DEBUG in debuggable builds, INFO otherwise)
+     * and flushes its ring to Download/Scale Water/logs/ingest.log every
+     * LOG_FLUSH_MS, so recent ingest logs survive a crash or a restart.
+     */
+    private void setUpLogging() {
+        CoreLog.setSink((level, tag, msg, t) -> {
+            if (t != null) {
+                msg = msg + '\n' + Log.getStackTraceString(t);
+            }
+            Log.println(level, tag, msg);
+        });
+        boolean debuggable = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        CoreLog.setSinkLevel(debuggable ? CoreLog.DEBUG : CoreLog.INFO);
+        CoreLog.startFileLogging(BackupManager.getLogDirectory(), "ingest", LOG_FLUSH_MS);
+    }
+
+    /**
+     * Called once at startup: loads each patient's snapshot (rows are faulted in
+     * lazily) and replays the journal tail, or falls back to the full text
+     * backup. Textual types ("Intake"/"Refill") are converted back to "I"/"R".
      */
     private void loadAllBackupsOnce() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            patients[i] = new PatientData(BackupManager.getStore(i));
+            patients[i].load(now);
+            stats[i] = new PatientStats();
+            stats[i].seed(patients[i].getEvents(), now);
+            ledgers[i] = new FluidLedger();
+            ledgers[i].seedRecent(patients[i].getEvents(), now);
+            cups.seed(rollupsOf(i), patients[i].getEvents());
+            CoreLog.i(TAG, "Loaded {} events for patient {}", patients[i].getEvents().size(), i);
+        }
+    }
+
+    /**
+     * Loads the alert rules, seeds the engine from each patient's recent
+     * history and starts the evaluation timer.
+     */
+    private void setUpAlerts() {
+        alerts.setListener((alert, raised) -> {
+            for (AlertEngine.Listener l : alertListeners) {
+                l.onAlertChanged(alert, raised);
+            }
+        });
+        List<List<AlertRule>> rules = loadAlertRules(BackupManager.getAlertRulesFile());
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (int i = 0; i < 3; i++) {
+                alerts.setRules(i, rules.get(i));
+                alerts.seed(i, patients[i].getEvents(), now);
+            }
+        }
+        alertTimer.scheduleWithFixedDelay(() -> alerts.evaluate(System.currentTimeMillis()),
+                ALERT_TICK_MS, ALERT_TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads per-patient rules, one per line: "<patient|*> <rule>", e.g.
+     * "* low_intake 4 200", "2 day_limit 1500 remind" (see AlertRule#parse).
+     * Lines starting with '#' are comments. Patients without a valid line
+     * keep DEFAULT_ALERT_RULES.
+     */
+    private static List<List<AlertRule>> loadAlertRules(File file) {
+        List<List<AlertRule>> rules = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            rules.add(new ArrayList<>());
+        }
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    int space = line.indexOf(' ');
+                    AlertRule rule = space > 0 ? AlertRule.parse(line.substring(space + 1)) : null;
+                    String target = space > 0 ? line.substring(0, space) : "";
+                    if (rule == null || !target.matches("[*123]")) {
+                        CoreLog.w(TAG, "Ignoring alert rule '{}'", line);
+                        continue;
+                    }
+                    for (int i = 0; i < 3; i++) {
+                        if (target.equals("*") || target.equals(String.valueOf(i + 1))) {
+                            rules.get(i).add(rule);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                CoreLog.e(TAG, "Error reading alert rules", e);
+            }
+        }
         for (int i = 0; i < 3; i++) {
-            List<WaterEvent> fromFile = BackupManager.readBackupFile(context, i);
-            getEventsForPatient(i).addAll(fromFile);
-            Log.d(TAG, "Loaded " + fromFile.size() + " events for patient " + i);
+            if (rules.get(i).isEmpty()) {
+                rules.set(i, DEFAULT_ALERT_RULES);
+            }
+            CoreLog.i(TAG, "Alert rules for patient {}: {}", i + 1, rules.get(i));
         }
-        Log.d(TAG, "All backups loaded into memory => sums & chart will see I/R codes.");
+        return rules;
+    }
+
+    private PatientData patient(int index) {
+        return index >= 0 && index < patients.length ? patients[index] : null;
+    }
+
+    /**
+     * Rolls up sealed day segments of all patients on the background worker,
+     * then reseeds the indexes from the fresh rollups.
+     */
+    private void scheduleRollup() {
+        lastRollupDay = patients[0].getIndex().startOfDay(System.currentTimeMillis());
+        rollupExecutor.execute(() -> {
+            for (int i = 0; i < 3; i++) {
+                PatientStore store = patients[i].getStore();
+                if (store == null || store.rollUp(System.currentTimeMillis()) == 0) {
+                    continue;
+                }
+                synchronized (DataManager.this) {
+                    patients[i].rebuildIndex();
+                }
+                notifyDataUpdated(i);
+            }
+        });
     }
 
     // ------------------------------------------------------------------
@@ -72,25 +275,118 @@ public class DataManager {
         listeners.remove(listener);
     }
 
+    public void addAlertListener(AlertEngine.Listener listener) {
+        if (!alertListeners.contains(listener)) {
+            alertListeners.add(listener);
+        }
+    }
+
+    public void removeAlertListener(AlertEngine.Listener listener) {
+        alertListeners.remove(listener);
+    }
+
     private void notifyDataUpdated(int patientIndex) {
+        long start = System.nanoTime();
         for (DataUpdateListener l : listeners) {
             l.onDataUpdated(patientIndex);
         }
+        if (patientIndex >= 0 && patientIndex < patients.length) {
+            Metrics.recordSince(dispatchLatency[patientIndex], start);
+            eventCount[patientIndex].set(patients[patientIndex].getEvents().size());
+        }
     }
 
     // ------------------------------------------------------------------
     // ACCESSORS
     // ------------------------------------------------------------------
+    /**
+     * Current sip, rate and trend statistics of a patient (O(1), see
+     * PatientStats), or null for unknown indices.
+     */
+    public PatientStats.Summary getStats(int index) {
+        return patient(index) != null ? stats[index].summarize(System.currentTimeMillis()) : null;
+    }
+
+    /**
+     * Reconciled refills, intake, spills and unexplained loss of a patient
+     * over the last hours (see FluidLedger), or null for unknown indices.
+     */
+    public FluidLedger.Balance getBalanceHours(int index, int hours) {
+        if (patient(index) == null) {
+            return null;
+        }
+        return ledgers[index].getBalance(System.currentTimeMillis() - hours * 3600_000L, Long.MAX_VALUE);
+    }
+
+    public CupRegistry getCupRegistry() {
+        return cups;
+    }
+
+    public List<AlertEngine.Alert> getActiveAlerts(int index) {
+        return alerts.getActiveAlerts(index);
+    }
+
     public List<WaterEvent> getEventsForPatient(int index) {
-        switch (index) {
-            case 0:
-                return patient0Events;
-            case 1:
-                return patient1Events;
-            case 2:
-                return patient2Events;
-            default:
-                return new ArrayList<>();
+        PatientData p = patient(index);
+        return p != null ? p.getEvents() : new ArrayList<>();
+    }
+
+    /**
+     * Live hourly/daily index of a patient (thread-safe), or null for unknown indices.
+     */
+    public AggregateIndex getAggregateIndex(int index) {
+        PatientData p = patient(index);
+        return p != null ? p.getIndex() : null;
+    }
+
+    /**
+     * Events of a patient matching a filter, answered by the patient's
+     * EventIndex: positions into a consistent copy of the list that the UI can
+     * bind lazily while new events arrive.
+     */
+    public synchronized EventIndex.Result queryEvents(int index, EventIndex.Filter filter) {
+        PatientData p = patient(index);
+        return p != null ? p.query(filter) : new PatientData(null).query(filter);
+    }
+
+    /**
+     * Events appended to a patient's list at positions >= from since a
+     * queryEvents result of that generation, or null if the list changed
+     * otherwise since (see PatientData#getEventsAppendedSince).
+     */
+    public synchronized List<WaterEvent> getEventsAppendedSince(int index, int from, long generation) {
+        PatientData p = patient(index);
+        return p != null ? p.getEventsAppendedSince(from, generation) : null;
+    }
+
+    /**
+     * Cup names that occur in a patient's events, sorted.
+     */
+    public synchronized List<String> getCupNames(int index) {
+        PatientData p = patient(index);
+        return p != null ? new ArrayList<>(p.getCupNames()) : new ArrayList<>();
+    }
+
+    /**
+     * Consistent copy of a patient's events that background readers (export)
+     * can iterate while new events keep arriving.
+     */
+    public synchronized PatientEventList snapshotEventsForPatient(int index) {
+        PatientData p = patient(index);
+        return p != null ? p.getEvents().copy() : new PatientEventList();
+    }
+
+    /**
+     * Consistent inputs for a ward report: for every patient, a copy of the
+     * index buckets in [fromMillis, toMillis) and a copy of the events, all
+     * taken under one lock so the tables and the raw rows agree.
+     */
+    public synchronized void snapshotForReport(long fromMillis, long toMillis,
+                                               List<AggregateIndex> indexes,
+                                               List<PatientEventList> events) {
+        for (PatientData p : patients) {
+            indexes.add(p.getIndex().copy(fromMillis, toMillis));
+            events.add(p.getEvents().copy());
         }
     }
 
@@ -98,9 +394,23 @@ public class DataManager {
     // MUTATORS
     // ------------------------------------------------------------------
     public synchronized void addWaterEvent(int index, WaterEvent event) {
-        getEventsForPatient(index).add(event);
-        // Persist new state; file stores "Intake"/"Refill".
-        BackupManager.saveBackup(context, index);
+        PatientData p = patient(index);
+        if (p == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        // One shared name per cup instead of one parsed copy per event.
+        event.cupName = cups.intern(event.cupName);
+        p.add(event);
+        Metrics.recordSince(storeLatency[index], start);
+        alerts.onEvent(index, event.getTimeMillis(), event.type, event.amount, System.currentTimeMillis());
+        stats[index].add(event.getTimeMillis(), event.type, event.amount);
+        ledgers[index].add(event.getTimeMillis(), event.type, event.amount, event.cupName);
+        cups.record(event.cupName, event.getTimeMillis(), event.type, event.amount);
+        // Yesterday's segment is sealed once the day rolls over.
+        if (p.getIndex().startOfDay(System.currentTimeMillis()) != lastRollupDay) {
+            scheduleRollup();
+        }
         notifyDataUpdated(index);
     }
 
@@ -108,10 +418,11 @@ public class DataManager {
      * Removes an event by list position (legacy path).
      */
     public synchronized void removeEvent(int index, int position) {
-        List<WaterEvent> lst = getEventsForPatient(index);
-        if (position >= 0 && position < lst.size()) {
-            lst.remove(position);
-            BackupManager.saveBackup(context, index);
+        PatientData p = patient(index);
+        WaterEvent removed = p != null ? p.remove(position) : null;
+        if (removed != null) {
+            cups.unrecord(removed.cupName, removed.type, removed.amount);
+            reseedDerivedState(index);
             notifyDataUpdated(index);
         }
     }
@@ -120,17 +431,11 @@ public class DataManager {
      * Removes an event by its stable unique ID.
      */
     public synchronized void removeEvent(int index, long eventId) {
-        List<WaterEvent> lst = getEventsForPatient(index);
-        int foundPos = -1;
-        for (int i = 0; i < lst.size(); i++) {
-            if (lst.get(i).getUniqueId() == eventId) {
-                foundPos = i;
-                break;
-            }
-        }
-        if (foundPos >= 0) {
-            lst.remove(foundPos);
-            BackupManager.saveBackup(context, index);
+        PatientData p = patient(index);
+        WaterEvent removed = p != null ? p.removeById(eventId) : null;
+        if (removed != null) {
+            cups.unrecord(removed.cupName, removed.type, removed.amount);
+            reseedDerivedState(index);
             notifyDataUpdated(index);
         }
     }
@@ -139,61 +444,134 @@ public class DataManager {
      * Clears all events for a single patient and persists the empty list.
      */
     public synchronized void clearEvents(int index) {
-        getEventsForPatient(index).clear();
-        BackupManager.saveBackup(context, index);
-        notifyDataUpdated(index);
+        PatientData p = patient(index);
+        if (p != null) {
+            // Before the rollups are cleared with the events.
+            cups.unseed(rollupsOf(index), p.getEvents());
+            p.clear();
+            reseedDerivedState(index);
+            notifyDataUpdated(index);
+        }
+    }
+
+    /**
+     * Imports backup or CSV files of another tablet into a patient. The files
+     * are parsed in parallel outside the lock; the merge, the batch commit of
+     * the touched day segments and the reload from the fresh snapshot happen
+     * under it. Blocking: call off the main thread.
+     */
+    public EventImporter.Result importFiles(int index, List<File> files) throws IOException {
+        PatientData p = patient(index);
+        if (p == null) {
+            throw new IOException("Unknown patient " + (index + 1));
+        }
+        List<EventImporter.Chunk> chunks = EventImporter.parse(files, ForkJoinPool.commonPool());
+        EventImporter.Result result;
+        synchronized (this) {
+            result = p.applyImport(chunks, System.currentTimeMillis());
+            if (result.imported > 0) {
+                // Without a store the merged list is not adopted (see applyImport).
+                if (p.getStore() != null) {
+                    cups.recordAll(result.added);
+                }
+                reseedDerivedState(index);
+            }
+        }
+        CoreLog.i(TAG, "Imported {} events for patient {} ({} duplicates, {} rejected lines)",
+                result.imported, index, result.duplicates, result.rejected);
+        if (result.imported > 0) {
+            notifyDataUpdated(index);
+            // Sealed days that gained events are rolled up again.
+            scheduleRollup();
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds a patient's alert, statistics and ledger state after an edit
+     * they cannot apply incrementally (removal, clear, import). The ward-wide
+     * cup totals are adjusted by the callers (decrements, no rescans). Call
+     * with the lock held.
+     */
+    private void reseedDerivedState(int index) {
+        long now = System.currentTimeMillis();
+        alerts.seed(index, patients[index].getEvents(), now);
+        stats[index].seed(patients[index].getEvents(), now);
+        ledgers[index].seedRecent(patients[index].getEvents(), now);
+    }
+
+    private RollupStore rollupsOf(int index) {
+        PatientStore store = patients[index].getStore();
+        return store != null ? store.getRollups() : null;
+    }
+
+    /**
+     * Writes a snapshot if events were appended or removed since the last one.
+     * Cheap to call from lifecycle hooks such as onPause().
+     *
+     * @return the number of events the patient has (read under the lock,
+     *         while ingest may be appending on another thread)
+     */
+    public synchronized int checkpoint(int index) {
+        PatientData p = patient(index);
+        if (p == null) {
+            return 0;
+        }
+        p.checkpoint();
+        return p.getEvents().size();
     }
 
     /**
      * Removes all backup files on disk. In-memory data is not touched here.
      */
     public void clearAllBackups() {
-        // This removes all .txt files in /Download/Scale Water.
+        // This removes all day segments and snapshots in /Download/Scale Water.
         BackupManager.deleteAllBackups(context);
     }
 
     // ------------------------------------------------------------------
     // AGGREGATION LOGIC
     // ------------------------------------------------------------------
-    public float getIntakeSumHours(int index, int hours) {
-        long now = System.currentTimeMillis();
-        long cutoff = now - (hours * 3600_000L);
-        float sum = 0f;
-        for (WaterEvent w : getEventsForPatient(index)) {
-            if ("I".equals(w.type)) {
-                long t = w.getTimeMillis();
-                if (t >= cutoff) {
-                    sum += w.amount;
-                }
-            }
+    /**
+     * Intake of all events at or after now - hours (future-dated events included).
+     * See AggregateIndex#getIntakeSince: only the partial first hour is read
+     * from the raw events, so the cost does not grow with the window.
+     */
+    public synchronized float getIntakeSumHours(int index, int hours) {
+        PatientData p = patient(index);
+        if (p == null) {
+            return 0f;
         }
-        return sum;
+        return p.getIntakeSince(System.currentTimeMillis() - (hours * 3600_000L));
+    }
+
+    /**
+     * Dashboard row of a patient: 1 h and 24 h intake from the aggregate
+     * index, the last drink from the streaming stats and the active alerts.
+     * Bounded cost per call, independent of the history; null for unknown indices.
+     */
+    public synchronized Overview getOverview(int index) {
+        PatientData p = patient(index);
+        if (p == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        return new Overview(
+                p.getIntakeSince(now - 3600_000L),
+                p.getIntakeSince(now - 24 * 3600_000L),
+                stats[index].summarize(now).lastIntakeMillis,
+                alerts.getActiveAlerts(index));
     }
 
     /**
      * Returns the intake sum for one calendar day.
      * dayOffset=0 => today, 1 => yesterday, etc.
      */
-    public float getIntakeSumDayOffset(int index, int dayOffset) {
-        Calendar c = Calendar.getInstance();
-        c.set(Calendar.HOUR_OF_DAY, 0);
-        c.set(Calendar.MINUTE, 0);
-        c.set(Calendar.SECOND, 0);
-        c.set(Calendar.MILLISECOND, 0);
-
-        // Midnight of "today - dayOffset".
-        long startOfDayMs = c.getTimeInMillis() - (dayOffset * 24L * 3600_000L);
-        long endOfDayMs = startOfDayMs + (24L * 3600_000L);
-
-        float sum = 0f;
-        for (WaterEvent w : getEventsForPatient(index)) {
-            if ("I".equals(w.type)) {
-                long t = w.getTimeMillis();
-                if (t >= startOfDayMs && t < endOfDayMs) {
-                    sum += w.amount;
-                }
-            }
+    public synchronized float getIntakeSumDayOffset(int index, int dayOffset) {
+        PatientData p = patient(index);
+        if (p == null) {
+            return 0f;
         }
-        return sum;
+        return p.getIntakeForDayOffset(System.currentTimeMillis(), dayOffset);
     }
 }
@@ -1,5 +1,7 @@
 package com.example.thesis;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.ActionBarDrawerToggle;
 import androidx.appcompat.app.AppCompatActivity;
@@ -9,13 +11,22 @@ import androidx.fragment.app.FragmentTransaction;
 import android.Manifest;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothManager;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.net.Uri;
 import android.os.Bundle;
 import android.view.MenuItem;
 import android.widget.Toast;
 
 import com.google.android.material.navigation.NavigationView;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
 /**
  * Main entry activity hosting the navigation drawer and all fragments.
  * Wires up DataManager, BLE managers and navigation between central and
@@ -24,7 +35,8 @@ import com.google.android.material.navigation.NavigationView;
 public class MainActivity extends AppCompatActivity
         implements CentralFragment.CentralListener,
         BleDeviceManager.ConnectionStatusListener,
-        PatientFragment.PatientFragmentListener {
+        PatientFragment.PatientFragmentListener,
+        AlertEngine.Listener {
 
     private DrawerLayout drawerLayout;
     private ActionBarDrawerToggle drawerToggle;
@@ -36,13 +48,26 @@ public class MainActivity extends AppCompatActivity
     // Permission request code for BLE-related permissions.
     private static final int REQ_BLE_PERMISSIONS = 1001;
 
+    // Number of calendar days (including today) covered by the ward report.
+    private static final int REPORT_DAYS = 30;
+
+    // Non-null while raw BLE notifications are recorded for later replay.
+    private TraceWriter traceWriter;
+
+    // Document picker for importing another tablet's backup or CSV files.
+    private final ActivityResultLauncher<String[]> importLauncher = registerForActivityResult(
+            new ActivityResultContracts.OpenMultipleDocuments(), this::importBackups);
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        // Debug builds fail fast when BLE state is touched from the wrong thread.
+        ThreadGuard.setStrict((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+
         // Initialize DataManager once for the entire app.
-        DataManager.getInstance(getApplicationContext());
+        DataManager.getInstance(getApplicationContext()).addAlertListener(this);
 
         drawerLayout = findViewById(R.id.drawer_layout);
         navigationView = findViewById(R.id.navigation_view);
@@ -63,6 +88,20 @@ public class MainActivity extends AppCompatActivity
                 showPatientFragment(1);
             } else if (itemId == R.id.menu_patient2) {
                 showPatientFragment(2);
+            } else if (itemId == R.id.menu_export_ward) {
+                exportWard(null);
+            } else if (itemId == R.id.menu_export_ward_new) {
+                exportWard(CSVExporter.DEST_SHARE_WARD);
+            } else if (itemId == R.id.menu_export_columnar) {
+                exportWardColumnar();
+            } else if (itemId == R.id.menu_export_report) {
+                exportReport();
+            } else if (itemId == R.id.menu_import) {
+                importLauncher.launch(new String[]{"text/*", "application/octet-stream"});
+            } else if (itemId == R.id.menu_metrics) {
+                showMetricsFragment();
+            } else if (itemId == R.id.menu_trace) {
+                toggleTraceCapture(item);
             }
             drawerLayout.closeDrawers();
             return true;
@@ -76,6 +115,160 @@ public class MainActivity extends AppCompatActivity
         }
     }
 
+    // ------------------------------------------------------------------
+    // WARD EXPORT
+    // ------------------------------------------------------------------
+    // destination == null => full export, otherwise only events since the last one.
+    private void exportWard(String destination) {
+        CSVExporter.ExportTask task = CSVExporter.exportWard(this, destination, new CSVExporter.ExportListener() {
+            @Override
+            public void onProgress(int rowsWritten, int totalRows) {
+            }
+
+            @Override
+            public void onFinished(File file, int rows) {
+                CSVExporter.share(MainActivity.this, file);
+            }
+
+            @Override
+            public void onCancelled() {
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                Toast.makeText(MainActivity.this, "Ward export failed", Toast.LENGTH_LONG).show();
+            }
+        });
+        if (task == null) {
+            Toast.makeText(this, destination == null ? "No events to export"
+                    : "No new events since the last export", Toast.LENGTH_SHORT).show();
+        } else {
+            Toast.makeText(this, "Exporting ward...", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void exportWardColumnar() {
+        CSVExporter.ExportTask task = CSVExporter.exportWardColumnar(this, new CSVExporter.ExportListener() {
+            @Override
+            public void onProgress(int rowsWritten, int totalRows) {
+            }
+
+            @Override
+            public void onFinished(File file, int rows) {
+                CSVExporter.share(MainActivity.this, file);
+            }
+
+            @Override
+            public void onCancelled() {
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                Toast.makeText(MainActivity.this, "Columnar export failed", Toast.LENGTH_LONG).show();
+            }
+        });
+        if (task == null) {
+            Toast.makeText(this, "No events to export", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void exportReport() {
+        CSVExporter.exportReport(this, REPORT_DAYS, new CSVExporter.ExportListener() {
+            @Override
+            public void onProgress(int rowsWritten, int totalRows) {
+            }
+
+            @Override
+            public void onFinished(File file, int rows) {
+                CSVExporter.share(MainActivity.this, file);
+            }
+
+            @Override
+            public void onCancelled() {
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                Toast.makeText(MainActivity.this, "Ward report failed", Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    // ------------------------------------------------------------------
+    // IMPORT
+    // ------------------------------------------------------------------
+    private void importBackups(List<Uri> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return;
+        }
+        Toast.makeText(this, "Importing " + uris.size() + " file(s)...", Toast.LENGTH_SHORT).show();
+        BackupImporter.importUris(this, uris, new BackupImporter.ImportListener() {
+            @Override
+            public void onFinished(int imported, int duplicates, int rejected, int skippedFiles) {
+                String msg = "Imported " + imported + " events, " + duplicates + " duplicates skipped";
+                if (rejected > 0) {
+                    msg += ", " + rejected + " unreadable lines";
+                }
+                if (skippedFiles > 0) {
+                    msg += ", " + skippedFiles + " files without patient number";
+                }
+                Toast.makeText(MainActivity.this, msg, Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                Toast.makeText(MainActivity.this, "Import failed", Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    // ------------------------------------------------------------------
+    // BLE TRACE CAPTURE
+    // ------------------------------------------------------------------
+    // Records raw notifications of all scales to Download/Scale Water/traces/
+    // until toggled off; replay them with TraceReplay (see README).
+    private void toggleTraceCapture(MenuItem item) {
+        if (traceWriter == null) {
+            String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+            File file = new File(BackupManager.getTraceDirectory(), "trace_" + stamp + ".txt");
+            try {
+                traceWriter = new TraceWriter(file);
+            } catch (IOException e) {
+                Toast.makeText(this, "Could not start trace capture", Toast.LENGTH_LONG).show();
+                return;
+            }
+            setTraceWriter(traceWriter);
+            item.setTitle("Stop BLE Trace");
+            Toast.makeText(this, "Recording BLE trace to " + file.getName(), Toast.LENGTH_SHORT).show();
+        } else {
+            stopTraceCapture();
+            item.setTitle("Record BLE Trace");
+        }
+    }
+
+    private void stopTraceCapture() {
+        if (traceWriter == null) {
+            return;
+        }
+        setTraceWriter(null);
+        try {
+            traceWriter.close();
+        } catch (IOException ignored) {
+        }
+        Toast.makeText(this, "Saved BLE trace " + traceWriter.getFile().getName()
+                + " (" + traceWriter.getRecordCount() + " records)", Toast.LENGTH_LONG).show();
+        traceWriter = null;
+    }
+
+    private void setTraceWriter(TraceWriter writer) {
+        for (int i = 0; i < 3; i++) {
+            BleDeviceManager manager = getScaleManager(i);
+            if (manager != null) {
+                manager.setTraceWriter(writer);
+            }
+        }
+    }
+
     // ------------------------------------------------------------------
     // PERMISSIONS
     // ------------------------------------------------------------------
@@ -151,6 +344,9 @@ public class MainActivity extends AppCompatActivity
                 2
         );
 
+        // Keep recording if capture was started before the managers existed.
+        setTraceWriter(traceWriter);
+
         // Listen for connection status updates so the central fragment can be refreshed.
         scale1Manager.setConnectionStatusListener(this);
         scale2Manager.setConnectionStatusListener(this);
@@ -168,6 +364,8 @@ public class MainActivity extends AppCompatActivity
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        DataManager.getInstance(getApplicationContext()).removeAlertListener(this);
+        stopTraceCapture();
         // Ensure all BLE resources are released.
         if (scale1Manager != null) {
             scale1Manager.cleanup();
@@ -209,6 +407,12 @@ public class MainActivity extends AppCompatActivity
         ft.commit();
     }
 
+    private void showMetricsFragment() {
+        FragmentTransaction ft = getSupportFragmentManager().beginTransaction();
+        ft.replace(R.id.fragment_container, MetricsFragment.newInstance(), "MetricsFragment");
+        ft.commit();
+    }
+
     @Override
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
         if (drawerToggle.onOptionsItemSelected(item)) {
@@ -243,7 +447,25 @@ public class MainActivity extends AppCompatActivity
         }
     }
 
-    // 3) PatientFragment.PatientFragmentListener => clearing all backups from the menu.
+    // 3) AlertEngine.Listener => refresh the dashboard, remind automatically if the rule says so.
+    @Override
+    public void onAlertChanged(AlertEngine.Alert alert, boolean raised) {
+        runOnUiThread(() -> {
+            CentralFragment central = (CentralFragment) getSupportFragmentManager()
+                    .findFragmentByTag("CentralFragment");
+            if (central != null) {
+                central.updateAlerts(alert.patientIndex);
+            }
+            if (raised) {
+                Toast.makeText(this, alert.message, Toast.LENGTH_LONG).show();
+                if (alert.rule.autoRemind) {
+                    onRemindButtonClicked(alert.patientIndex);
+                }
+            }
+        });
+    }
+
+    // 4) PatientFragment.PatientFragmentListener => clearing all backups from the menu.
     @Override
     public void onClearAllBackupsSelected() {
         DataManager.getInstance(getApplicationContext()).clearAllBackups();
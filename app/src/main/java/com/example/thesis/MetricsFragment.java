@@ -0,0 +1,110 @@
+package com.example.thesis;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Debug screen showing all Metrics (counters, gauges and p50/p99/max of
+ * every pipeline stage), refreshed once per second, with actions to reset
+ * them, to dump them to Download/Scale Water/metrics/ and to dump the last
+ * LOG_DUMP_MINUTES of CoreLog records to Download/Scale Water/logs/.
+ */
+public class MetricsFragment extends Fragment {
+
+    private static final String TAG = "MetricsFragment";
+    private static final long REFRESH_MS = 1000;
+    private static final int LOG_DUMP_MINUTES = 30;
+
+    private TextView tvMetrics;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            tvMetrics.setText(Metrics.dump());
+            handler.postDelayed(this, REFRESH_MS);
+        }
+    };
+
+    public static MetricsFragment newInstance() {
+        return new MetricsFragment();
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater,
+                             @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        return inflater.inflate(R.layout.fragment_metrics, container, false);
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        tvMetrics = view.findViewById(R.id.tv_metrics);
+
+        Button btnReset = view.findViewById(R.id.btn_metrics_reset);
+        Button btnDump = view.findViewById(R.id.btn_metrics_dump);
+        btnReset.setOnClickListener(v -> {
+            Metrics.reset();
+            tvMetrics.setText(Metrics.dump());
+        });
+        btnDump.setOnClickListener(v -> dumpToFile());
+        Button btnLogs = view.findViewById(R.id.btn_metrics_logs);
+        btnLogs.setOnClickListener(v -> dumpLogs());
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        handler.post(refresh);
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        handler.removeCallbacks(refresh);
+    }
+
+    private void dumpLogs() {
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        File file = new File(BackupManager.getLogDirectory(), "dump_" + stamp + ".txt");
+        try {
+            CoreLog.dumpRecentTo(file, LOG_DUMP_MINUTES * 60_000L);
+            Toast.makeText(getContext(), "Saved " + file.getName(), Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error dumping logs: {}", e.getMessage());
+            Toast.makeText(getContext(), "Could not save logs", Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private void dumpToFile() {
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        File file = new File(BackupManager.getMetricsDirectory(), "metrics_" + stamp + ".txt");
+        try {
+            Metrics.dumpTo(file);
+            CoreLog.d(TAG, "Metrics dumped to {}", file.getAbsolutePath());
+            Toast.makeText(getContext(), "Saved " + file.getName(), Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error dumping metrics: {}", e.getMessage());
+            Toast.makeText(getContext(), "Could not save metrics", Toast.LENGTH_LONG).show();
+        }
+    }
+}
@@ -40,7 +40,7 @@ public class MySwipeCallback extends ItemTouchHelper.SimpleCallback {
                 .setMessage("Are you sure you want to delete?")
                 .setPositiveButton("Yes", (dialog, which) -> {
                     // Remove by stable ID so both adapter and DataManager stay in sync.
-                    adapter.deleteEventById(eventId);
+                    adapter.deleteEventById(eventId, position);
                 })
                 .setNegativeButton("No", (dialog, which) -> {
                     // Revert swipe if user cancels.
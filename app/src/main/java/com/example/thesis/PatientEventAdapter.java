@@ -11,43 +11,102 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * RecyclerView adapter showing the list of WaterEvent entries
  * for a single patient. Uses stable IDs based on a uniqueId per event
  * so swipe deletion can refer to a consistent identifier.
+ *
+ * The adapter holds the result of an indexed query (see EventIndex): the
+ * matching positions plus a copy of the patient's list. Rows are only
+ * turned into WaterEvent objects when RecyclerView binds them, so applying
+ * a filter to a long history does not copy or fault in the whole list.
+ * Events appended after the query are added by appendNew() without querying
+ * (or copying the list) again.
  */
 public class PatientEventAdapter extends RecyclerView.Adapter<PatientEventAdapter.ViewHolder> {
 
     private final Context adapterContext;
     private final int patientIndex;
-    private List<WaterEvent> data; // local snapshot of the DataManager list
+    private EventIndex.Filter filter = new EventIndex.Filter();
+    private EventIndex.Result data; // matches in a snapshot of the DataManager list
+    // Matching events appended after the query, shown after data's rows.
+    private final List<WaterEvent> appended = new ArrayList<>();
+    // List positions covered by data plus the appended events checked since.
+    private int seen;
 
     public PatientEventAdapter(Context context, int patientIndex) {
         this.adapterContext = context.getApplicationContext();
         this.patientIndex = patientIndex;
         // Initial load from DataManager.
-        data = new ArrayList<>(DataManager.getInstance(adapterContext)
-                .getEventsForPatient(patientIndex));
+        setData(DataManager.getInstance(adapterContext).queryEvents(patientIndex, filter));
 
         // Each item has a stable uniqueId.
         setHasStableIds(true);
     }
 
     /**
-     * Reloads the adapter data from the DataManager snapshot.
+     * Shows only the events matching the filter.
+     */
+    public void setFilter(EventIndex.Filter filter) {
+        this.filter = filter;
+        refreshData();
+    }
+
+    /**
+     * Reloads the matching events from DataManager.
      */
     public void refreshData() {
-        data.clear();
-        data.addAll(DataManager.getInstance(adapterContext)
-                .getEventsForPatient(patientIndex));
+        setData(DataManager.getInstance(adapterContext).queryEvents(patientIndex, filter));
         notifyDataSetChanged();
     }
 
+    /**
+     * Adds the events appended since the last query that match the filter.
+     * Returns false (and changes nothing) if the list was changed otherwise,
+     * e.g. by a removal or an import; call refreshData() then.
+     */
+    public boolean appendNew() {
+        List<WaterEvent> more = DataManager.getInstance(adapterContext)
+                .getEventsAppendedSince(patientIndex, seen, data.generation);
+        if (more == null) {
+            return false;
+        }
+        seen += more.size();
+        int first = getItemCount();
+        for (WaterEvent e : more) {
+            if (filter.matches(e)) {
+                appended.add(e);
+            }
+        }
+        if (getItemCount() > first) {
+            notifyItemRangeInserted(first, getItemCount() - first);
+        }
+        return true;
+    }
+
+    private void setData(EventIndex.Result result) {
+        data = result;
+        appended.clear();
+        seen = result.total();
+    }
+
+    private WaterEvent item(int position) {
+        return position < data.size() ? data.get(position) : appended.get(position - data.size());
+    }
+
+    /**
+     * Number of events of the patient, before filtering.
+     */
+    public int getTotalCount() {
+        return seen;
+    }
+
     @Override
     public long getItemId(int position) {
         // Use each event’s uniqueId to keep IDs stable across updates.
-        return data.get(position).getUniqueId();
+        return item(position).getUniqueId();
     }
 
     @Override
@@ -60,7 +119,7 @@ public class PatientEventAdapter extends RecyclerView.Adapter<PatientEventAdapte
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        WaterEvent e = data.get(position);
+        WaterEvent e = item(position);
 
         // Convert "I" => "Intake", "R" => "Refill" for display.
         String displayType = e.type.equals("I") ? "Intake"
@@ -69,34 +128,45 @@ public class PatientEventAdapter extends RecyclerView.Adapter<PatientEventAdapte
 
         holder.tvTimestamp.setText(e.timestamp);
         holder.tvType.setText(displayType);
-        holder.tvAmount.setText(String.format("%.2f", e.amount));
+        holder.tvAmount.setText(String.format(Locale.US, "%.2f", e.amount));
         holder.tvCup.setText(e.cupName);
     }
 
     @Override
     public int getItemCount() {
-        return data.size();
+        return data.size() + appended.size();
     }
 
     /**
      * Deletes an event based on its unique ID and updates both
-     * DataManager and the local adapter list.
+     * DataManager and the adapter. positionHint is where the event was
+     * shown (e.g. the swiped row); only if it no longer holds the event are
+     * the matches searched, which faults their rows in.
      */
-    public void deleteEventById(long eventId) {
-        // 1) Remove from DataManager.
-        DataManager.getInstance(adapterContext).removeEvent(patientIndex, eventId);
-
-        // 2) Remove from the local list for the adapter.
+    public void deleteEventById(long eventId, int positionHint) {
         int foundPos = -1;
-        for (int i = 0; i < data.size(); i++) {
-            if (data.get(i).getUniqueId() == eventId) {
-                foundPos = i;
-                break;
+        if (positionHint >= 0 && positionHint < getItemCount()
+                && item(positionHint).getUniqueId() == eventId) {
+            foundPos = positionHint;
+        } else {
+            for (int i = 0; i < getItemCount(); i++) {
+                if (item(i).getUniqueId() == eventId) {
+                    foundPos = i;
+                    break;
+                }
             }
         }
-        if (foundPos >= 0) {
-            data.remove(foundPos);
+
+        // 1) Remove from DataManager.
+        DataManager.getInstance(adapterContext).removeEvent(patientIndex, eventId);
+
+        // 2) Requery; the positions behind the removed event have shifted.
+        int before = getItemCount();
+        setData(DataManager.getInstance(adapterContext).queryEvents(patientIndex, filter));
+        if (foundPos >= 0 && getItemCount() == before - 1) {
             notifyItemRemoved(foundPos);
+        } else {
+            notifyDataSetChanged();
         }
     }
 
@@ -3,15 +3,20 @@ package com.example.thesis;
 import android.app.AlertDialog;
 import android.content.res.Configuration;
 import android.os.Bundle;
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -29,10 +34,12 @@ import com.github.mikephil.charting.data.BarDataSet;
 import com.github.mikephil.charting.data.BarEntry;
 import com.github.mikephil.charting.formatter.IndexAxisValueFormatter;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Detail fragment for a single patient:
@@ -51,15 +58,44 @@ public class PatientFragment extends Fragment implements DataManager.DataUpdateL
     }
 
     private static final String ARG_PATIENT_INDEX = "patientIndex";
+
+    /**
+     * Minimum time between two list/summary refreshes after data updates.
+     */
+    private static final long REFRESH_INTERVAL_MS = 250;
+
+    /**
+     * A time filter ("last 1h") is requeried at least this often so events
+     * slide out of the window; otherwise new events are only appended.
+     */
+    private static final long FILTER_SLIDE_MS = 60_000;
+
     private int patientIndex;
 
     private TextView tvSummaries;
+    private TextView tvStats;
     private BarChart barChart;
     private RecyclerView recyclerView;
     private PatientEventAdapter adapter;
     private Button btnDeleteAll, btnExportCsv;
     private PatientFragmentListener patientFragmentListener;
     private Spinner sumModeSpinner;
+    private Spinner spFilterType, spFilterCup, spFilterTime;
+    private EditText etFilterMin, etFilterMax;
+    private TextView tvFilterCount;
+    private ArrayAdapter<String> cupAdapter;
+    private CSVExporter.ExportTask exportTask;
+
+    // Time from the first data update to its refresh (queueing plus
+    // coalescing) and the redraw time (see Metrics).
+    private LatencyHistogram uiQueueLatency;
+    private LatencyHistogram renderLatency;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private CoalescingRefresher refresher;
+    private final AtomicLong dirtySince = new AtomicLong();
+    private EventIndex.Filter currentFilter;
+    private long lastFilterMillis;
 
     public void setPatientFragmentListener(PatientFragmentListener listener) {
         this.patientFragmentListener = listener;
@@ -79,6 +115,11 @@ public class PatientFragment extends Fragment implements DataManager.DataUpdateL
         if (getArguments() != null) {
             patientIndex = getArguments().getInt(ARG_PATIENT_INDEX, 0);
         }
+        String prefix = Metrics.scale(patientIndex);
+        uiQueueLatency = Metrics.histogram(prefix + "ui_queue");
+        renderLatency = Metrics.histogram(prefix + "render");
+        refresher = new CoalescingRefresher(prefix + "list", REFRESH_INTERVAL_MS,
+                handler::postDelayed, dirty -> refreshAfterUpdate());
     }
 
     @Nullable
@@ -95,6 +136,7 @@ public class PatientFragment extends Fragment implements DataManager.DataUpdateL
         super.onViewCreated(view, savedInstanceState);
 
         tvSummaries = view.findViewById(R.id.tv_summaries);
+        tvStats = view.findViewById(R.id.tv_stats);
         barChart = view.findViewById(R.id.bar_chart);
         recyclerView = view.findViewById(R.id.recycler_entries);
         btnDeleteAll = view.findViewById(R.id.btn_delete_all);
@@ -125,6 +167,7 @@ public class PatientFragment extends Fragment implements DataManager.DataUpdateL
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         adapter = new PatientEventAdapter(getContext(), patientIndex);
         recyclerView.setAdapter(adapter);
+        setUpFilters(view);
 
         // Swipe to delete individual entries.
         ItemTouchHelper helper = new ItemTouchHelper(
@@ -146,23 +189,190 @@ public class PatientFragment extends Fragment implements DataManager.DataUpdateL
                         BackupManager.deleteBackup(getContext(), patientIndex);
 
                         // 3) Refresh UI.
-                        adapter.refreshData();
+                        applyFilter();
                         updateSummariesAndChart();
                     })
                     .setNegativeButton("No", null)
                     .show();
         });
 
-        btnExportCsv.setOnClickListener(v -> {
-            CSVExporter.export(getContext(), patientIndex);
+        // Export runs in the background; tapping again while it runs cancels it.
+        // A long press exports only the events added since the last export.
+        btnExportCsv.setOnClickListener(v -> startExport(null));
+        btnExportCsv.setOnLongClickListener(v -> {
+            startExport(CSVExporter.DEST_SHARE_PATIENT);
+            return true;
         });
     }
 
+    private void startExport(String destination) {
+        if (exportTask != null) {
+            exportTask.cancel();
+            return;
+        }
+        // With a cup selected, the export holds all of that cup's events.
+        String cup = spFilterCup.getSelectedItemPosition() > 0
+                ? (String) spFilterCup.getSelectedItem() : null;
+        CSVExporter.ExportListener listener = new CSVExporter.ExportListener() {
+            @Override
+            public void onProgress(int rowsWritten, int totalRows) {
+                if (exportTask != null && totalRows > 0) {
+                    btnExportCsv.setText(String.format(Locale.US,
+                            "Exporting %d%% (tap to cancel)", rowsWritten * 100L / totalRows));
+                }
+            }
+
+            @Override
+            public void onFinished(File csvFile, int rows) {
+                resetExportButton();
+                if (getContext() != null) {
+                    CSVExporter.share(getContext(), csvFile);
+                }
+            }
+
+            @Override
+            public void onCancelled() {
+                resetExportButton();
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                resetExportButton();
+            }
+        };
+        exportTask = cup != null
+                ? CSVExporter.exportCup(getContext(), patientIndex, cup, listener)
+                : CSVExporter.export(getContext(), patientIndex, destination, listener);
+        if (exportTask == null && destination != null && cup == null) {
+            Toast.makeText(getContext(), "No new events since the last export",
+                    Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // EVENT LIST FILTERS
+    // ------------------------------------------------------------------
+    private void setUpFilters(View view) {
+        spFilterType = view.findViewById(R.id.sp_filter_type);
+        spFilterCup = view.findViewById(R.id.sp_filter_cup);
+        spFilterTime = view.findViewById(R.id.sp_filter_time);
+        etFilterMin = view.findViewById(R.id.et_filter_min);
+        etFilterMax = view.findViewById(R.id.et_filter_max);
+        tvFilterCount = view.findViewById(R.id.tv_filter_count);
+
+        cupAdapter = new ArrayAdapter<>(getContext(), android.R.layout.simple_spinner_item);
+        cupAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spFilterCup.setAdapter(cupAdapter);
+        updateCupChoices();
+
+        AdapterView.OnItemSelectedListener onSelect = new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View v, int position, long id) {
+                applyFilter();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        };
+        spFilterType.setOnItemSelectedListener(onSelect);
+        spFilterCup.setOnItemSelectedListener(onSelect);
+        spFilterTime.setOnItemSelectedListener(onSelect);
+
+        TextWatcher onEdit = new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                applyFilter();
+            }
+        };
+        etFilterMin.addTextChangedListener(onEdit);
+        etFilterMax.addTextChangedListener(onEdit);
+    }
+
+    /**
+     * Refills the cup spinner from the patient's EventIndex, keeping the selection.
+     */
+    private void updateCupChoices() {
+        List<String> cups = DataManager.getInstance(getContext()).getCupNames(patientIndex);
+        if (cupAdapter.getCount() == cups.size() + 1) {
+            return;
+        }
+        Object selected = spFilterCup.getSelectedItem();
+        cupAdapter.clear();
+        cupAdapter.add("All cups");
+        cupAdapter.addAll(cups);
+        int position = selected != null ? cupAdapter.getPosition((String) selected) : 0;
+        spFilterCup.setSelection(Math.max(0, position));
+    }
+
+    /**
+     * Requeries the event list with the current filter controls; time ranges
+     * are relative to now, so this also slides them forward.
+     */
+    private void applyFilter() {
+        EventIndex.Filter f = new EventIndex.Filter();
+        int type = spFilterType.getSelectedItemPosition();
+        f.type = type == 1 ? "I" : type == 2 ? "R" : null;
+        f.cup = spFilterCup.getSelectedItemPosition() > 0 ? (String) spFilterCup.getSelectedItem() : null;
+        long[] windows = {0L, 3600_000L, 24 * 3600_000L, 7 * 24 * 3600_000L, 30 * 24 * 3600_000L};
+        int time = spFilterTime.getSelectedItemPosition();
+        if (time > 0 && time < windows.length) {
+            f.fromMillis = System.currentTimeMillis() - windows[time];
+        }
+        f.minAmount = parseGrams(etFilterMin);
+        f.maxAmount = parseGrams(etFilterMax);
+
+        long start = System.nanoTime();
+        adapter.setFilter(f);
+        currentFilter = f;
+        lastFilterMillis = System.currentTimeMillis();
+        tvFilterCount.setText(String.format(Locale.US, "%d of %d (%.1f ms)",
+                adapter.getItemCount(), adapter.getTotalCount(), (System.nanoTime() - start) / 1e6));
+    }
+
+    /**
+     * Brings the list up to date after data updates: appended events that
+     * match are added to the current result; a removal or import, or a time
+     * window that is due to slide, requeries.
+     */
+    private void updateList() {
+        boolean sliding = currentFilter != null && currentFilter.fromMillis != Long.MIN_VALUE
+                && System.currentTimeMillis() - lastFilterMillis >= FILTER_SLIDE_MS;
+        if (sliding || currentFilter == null || !adapter.appendNew()) {
+            applyFilter();
+            return;
+        }
+        tvFilterCount.setText(String.format(Locale.US, "%d of %d",
+                adapter.getItemCount(), adapter.getTotalCount()));
+    }
+
+    private static float parseGrams(EditText field) {
+        try {
+            return Float.parseFloat(field.getText().toString().trim());
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+
+    private void resetExportButton() {
+        exportTask = null;
+        btnExportCsv.setText("Export CSV");
+    }
+
     @Override
     public void onResume() {
         super.onResume();
         DataManager.getInstance(getContext()).addDataUpdateListener(this);
-        adapter.refreshData();
+        updateCupChoices();
+        applyFilter();
         updateSummariesAndChart();
     }
 
@@ -171,55 +381,110 @@ public class PatientFragment extends Fragment implements DataManager.DataUpdateL
         super.onPause();
         DataManager dm = DataManager.getInstance(getContext());
         dm.removeDataUpdateListener(this);
+        handler.removeCallbacksAndMessages(null);
+        refresher.cancel();
 
-        // Only persist on pause if we currently have events.
-        int size = dm.getEventsForPatient(patientIndex).size();
-        if (size > 0) {
-            BackupManager.saveBackup(getContext(), patientIndex);
-            Log.d("PatientFragment", "onPause => saved " + size + " events for patient " + patientIndex);
-        } else {
-            Log.d("PatientFragment", "onPause => 0 events, skipping save to prevent overwriting file");
-        }
+        // Events are already appended to the journal as they arrive; on pause we
+        // only refresh the snapshot so the next cold start replays a short tail.
+        int size = dm.checkpoint(patientIndex);
+        CoreLog.d("PatientFragment", "onPause => checkpointed {} events for patient {}", size, patientIndex);
     }
 
+    /**
+     * Called from any thread, once per event; the refresh itself is
+     * coalesced to at most one per REFRESH_INTERVAL_MS on the main thread.
+     */
     @Override
     public void onDataUpdated(int updatedIndex) {
-        if (updatedIndex == patientIndex && getActivity() != null) {
-            getActivity().runOnUiThread(() -> {
-                adapter.refreshData();
-                updateSummariesAndChart();
-            });
+        if (updatedIndex == patientIndex) {
+            dirtySince.compareAndSet(0L, System.nanoTime());
+            refresher.markDirty(0);
+        }
+    }
+
+    private void refreshAfterUpdate() {
+        if (!isResumed()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long since = dirtySince.getAndSet(0L);
+        if (since != 0L) {
+            uiQueueLatency.record(start - since);
         }
+        updateCupChoices();
+        updateList();
+        updateSummariesAndChart();
+        Metrics.recordSince(renderLatency, start);
     }
 
     // ------------------------------------------------------------------
     // CHART + SUMMARY LOGIC
     // ------------------------------------------------------------------
+    /**
+     * Fluid balance of the selected window plus sip size, intake rate and
+     * trend, all from DataManager's incrementally maintained state (constant
+     * time, independent of the number of events).
+     */
+    private void updateStats(int hours) {
+        DataManager dm = DataManager.getInstance(getContext());
+        StringBuilder sb = new StringBuilder();
+        FluidLedger.Balance b = dm.getBalanceHours(patientIndex, hours);
+        if (b != null && hours > 0) {
+            // Hour resolution, so the window can start up to an hour earlier than the sum's.
+            sb.append(String.format(Locale.US,
+                    "Poured %.0f g, drunk %.0f g, spilled %.0f g, unexplained %.0f g%n",
+                    b.poured, b.drunk, b.spilled, b.unexplained));
+        }
+        PatientStats.Summary s = dm.getStats(patientIndex);
+        if (s == null || s.sipCount == 0) {
+            sb.append("No intake in the last 7 days");
+            tvStats.setText(sb.toString());
+            return;
+        }
+        sb.append(String.format(Locale.US, "Sip: avg %.0f g", s.meanSip));
+        if (!Double.isNaN(s.sipStdDev)) {
+            sb.append(String.format(Locale.US, " \u00B1 %.0f", s.sipStdDev));
+        }
+        sb.append(String.format(Locale.US, ", median %.0f g, p90 %.0f g%n", s.medianSip, s.p90Sip));
+        sb.append(String.format(Locale.US, "Rate: %.0f g/h (baseline %.0f g/h", s.ratePerHour, s.baselinePerHour));
+        if (!Double.isNaN(s.trend())) {
+            sb.append(String.format(Locale.US, ", %+.0f %%", s.trend() * 100));
+        }
+        long minutes = (System.currentTimeMillis() - s.lastIntakeMillis) / 60_000L;
+        sb.append(String.format(Locale.US, ")%nLast drink: %d min ago", Math.max(0, minutes)));
+        tvStats.setText(sb.toString());
+    }
+
     private void updateSummariesAndChart() {
         String selectedMode = (String) sumModeSpinner.getSelectedItem();
         if (selectedMode == null) return;
 
-        float sumVal = 0f;
+        int hours = 0;
         switch (selectedMode) {
             case "1h":
-                sumVal = DataManager.getInstance(getContext())
-                        .getIntakeSumHours(patientIndex, 1);
+                hours = 1;
                 break;
             case "1d":
-                sumVal = DataManager.getInstance(getContext())
-                        .getIntakeSumHours(patientIndex, 24);
+                hours = 24;
                 break;
             case "1w":
-                sumVal = DataManager.getInstance(getContext())
-                        .getIntakeSumHours(patientIndex, 24 * 7);
+                hours = 24 * 7;
                 break;
             case "1m":
-                sumVal = DataManager.getInstance(getContext())
-                        .getIntakeSumHours(patientIndex, 24 * 30);
+                hours = 24 * 30;
+                break;
+            case "3m":
+                hours = 24 * 90;
+                break;
+            case "1y":
+                hours = 24 * 365;
                 break;
         }
+        DataManager dm = DataManager.getInstance(getContext());
+        float sumVal = hours > 0 ? dm.getIntakeSumHours(patientIndex, hours) : 0f;
         tvSummaries.setText(String.format(Locale.US,
                 "Sum (%s): %.2f g", selectedMode, sumVal));
+        updateStats(hours);
 
         // Build Mon...Sun bar chart for daily intake.
         String[] dayLabels = {"Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"};
@@ -231,8 +496,7 @@ public class PatientFragment extends Fragment implements DataManager.DataUpdateL
 
         for (int x = 0; x < 7; x++) {
             int offset = indexOfToday - x; // dayOffset=0 => "today"
-            float dayIntake = DataManager.getInstance(getContext())
-                    .getIntakeSumDayOffset(patientIndex, offset);
+            float dayIntake = dm.getIntakeSumDayOffset(patientIndex, offset);
             entries.add(new BarEntry(x, dayIntake));
             if (offset == 0) {
                 highlightX = x;
@@ -0,0 +1,35 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Same source encoding as :core.
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+dependencies {
+    implementation(project(":core"))
+}
+
+// ./gradlew :benchmarks:jmh                       => all benchmarks
+// ./gradlew :benchmarks:jmh -PjmhIncludes=Export  => only matching ones
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    // Throughput plus sampled latency (p50/p90/p99/p99.9 per benchmark).
+    benchmarkMode.set(listOf("thrpt", "sample"))
+    timeUnit.set("us")
+    // Allocation rate (gc.alloc.rate and gc.alloc.rate.norm per op).
+    profilers.set(listOf("gc"))
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    jvmArgs.set(listOf("-Xmx2g"))
+    resultFormat.set("JSON")
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes.set(listOf(it)) }
+}
@@ -0,0 +1,97 @@
+package com.example.thesis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The summary queries behind DataManager#getIntakeSumHours and
+ * #getIntakeSumDayOffset, against the state the app is in after startup:
+ * a snapshot-backed list with today's events in the tail and an index
+ * seeded from the snapshot day table.
+ */
+@State(Scope.Benchmark)
+public class AggregationBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int events;
+
+    private File dir;
+    private PatientEventList list;
+    private AggregateIndex index;
+    private long now;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        now = System.currentTimeMillis();
+        long today = new AggregateIndex().startOfDay(now);
+        List<WaterEvent> all = BenchmarkData.events(events, now);
+
+        dir = BenchmarkData.tempDir("aggregation");
+        File snapshotFile = new File(dir, "snapshot.bin");
+        int sealed = 0;
+        while (sealed < all.size() && all.get(sealed).getTimeMillis() < today) {
+            sealed++;
+        }
+        EventSnapshot.write(snapshotFile, all.subList(0, sealed),
+                Collections.<String, Long>emptyMap());
+        EventSnapshot snapshot = EventSnapshot.open(snapshotFile);
+
+        list = new PatientEventList(snapshot);
+        index = new AggregateIndex();
+        index.addSnapshotDays(snapshot, Long.MIN_VALUE);
+        for (WaterEvent e : all.subList(sealed, all.size())) {
+            list.add(e);
+            index.add(e.getTimeMillis(), e.type, e.amount);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public float intakeSumHours24() {
+        return index.getIntakeSince(list, now - 24 * 3600_000L);
+    }
+
+    @Benchmark
+    public float intakeSumHoursWeek() {
+        return index.getIntakeSince(list, now - 7 * 24 * 3600_000L);
+    }
+
+    @Benchmark
+    public float intakeSumHoursYear() {
+        return index.getIntakeSince(list, now - 365 * 24 * 3600_000L);
+    }
+
+    @Benchmark
+    public float intakeSumDayOffset() {
+        return index.getIntakeForDayOffset(now, 1);
+    }
+
+    /**
+     * Baseline: the same 24h window by scanning the primitive columns.
+     */
+    @Benchmark
+    public float intakeSumHours24FullScan() {
+        long cutoff = now - 24 * 3600_000L;
+        float sum = 0f;
+        for (int i = 0; i < list.size(); i++) {
+            if (list.getTimeMillisAt(i) >= cutoff && "I".equals(list.getTypeAt(i))) {
+                sum += list.getAmountAt(i);
+            }
+        }
+        return sum;
+    }
+}
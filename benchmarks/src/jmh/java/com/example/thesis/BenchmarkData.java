@@ -0,0 +1,50 @@
+package com.example.thesis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic ward data shared by the benchmarks.
+ */
+final class BenchmarkData {
+
+    private static final String[] CUPS = {"a", "b", "c"};
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * count events spread evenly over the year before endMillis, roughly
+     * four intakes per refill, with amounts like those the scales send.
+     */
+    static List<WaterEvent> events(int count, long endMillis) {
+        List<WaterEvent> events = new ArrayList<>(count);
+        long span = 365L * 24 * 3600_000L;
+        long step = Math.max(1000, span / count / 1000 * 1000);
+        long t = endMillis / 1000 * 1000 - step * (long) count;
+        for (int i = 0; i < count; i++) {
+            boolean refill = i % 5 == 4;
+            float amount = refill ? 150f + (i % 100) : 5f + (i % 40) * 0.37f;
+            events.add(new WaterEvent(t, refill ? "R" : "I", amount, CUPS[i % CUPS.length]));
+            t += step;
+        }
+        return events;
+    }
+
+    static File tempDir(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                deleteRecursively(c);
+            }
+        }
+        file.delete();
+    }
+}
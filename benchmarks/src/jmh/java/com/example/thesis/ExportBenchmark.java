@@ -0,0 +1,54 @@
+package com.example.thesis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Export formatting of a snapshot-backed patient list, written to a
+ * discarding sink so only formatting and compression are measured.
+ */
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int events;
+
+    private File dir;
+    private PatientEventList list;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<WaterEvent> all = BenchmarkData.events(events, System.currentTimeMillis());
+        dir = BenchmarkData.tempDir("export");
+        File snapshotFile = new File(dir, "snapshot.bin");
+        EventSnapshot.write(snapshotFile, all, Collections.<String, Long>emptyMap());
+        list = new PatientEventList(EventSnapshot.open(snapshotFile));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public int csv() throws IOException {
+        return new EventCsvWriter().writeRows(list, 0, list.size(), Writer.nullWriter(), null);
+    }
+
+    @Benchmark
+    public int columnar() throws IOException {
+        return new ColumnarWriter().write(list, 0, list.size(), OutputStream.nullOutputStream(), null);
+    }
+}
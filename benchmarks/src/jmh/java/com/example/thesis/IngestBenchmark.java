@@ -0,0 +1,32 @@
+package com.example.thesis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-notification costs on the BLE thread: payload parsing and the first
+ * timestamp parse of a new event (later calls hit the cached value).
+ */
+@State(Scope.Thread)
+public class IngestBenchmark {
+
+    private final String payload = "I 45.23 a";
+    private final String timestamp = "2025-01-01 12:00:00";
+    private final WaterEvent parsed = new WaterEvent(timestamp, "I", 45.23f, "a");
+
+    @Benchmark
+    public WaterEvent parseScalePayload() {
+        return WaterEvent.fromScalePayload(payload, timestamp);
+    }
+
+    @Benchmark
+    public long getTimeMillisFirstCall() {
+        return new WaterEvent(timestamp, "I", 45.23f, "a").getTimeMillis();
+    }
+
+    @Benchmark
+    public long getTimeMillisCached() {
+        return parsed.getTimeMillis();
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.thesis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The storage work BackupManager does for one patient: a full save (all day
+ * segments plus the snapshot), a full read of the segments, the fast
+ * startup load (map the snapshot and read the journal tail) and a single
+ * append. BackupManager itself only adds Android paths and logging.
+ */
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int events;
+
+    private File dir;
+    private SegmentStore store;
+    private List<WaterEvent> all;
+    private WaterEvent next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        long now = System.currentTimeMillis();
+        all = BenchmarkData.events(events, now);
+        next = new WaterEvent(now / 1000 * 1000, "I", 12.5f, "a");
+        dir = BenchmarkData.tempDir("persistence");
+        store = new SegmentStore(new File(dir, "patient_1"));
+        save();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public SegmentStore save() throws IOException {
+        store.rewriteAll(all);
+        EventSnapshot.write(new File(dir, "patient_1_snapshot.bin"), all, store.getLengths());
+        return store;
+    }
+
+    @Benchmark
+    public List<WaterEvent> readAllSegments() throws IOException {
+        return new SegmentStore(new File(dir, "patient_1")).readAll();
+    }
+
+    @Benchmark
+    public PatientEventList loadFromSnapshot() throws IOException {
+        EventSnapshot snapshot = EventSnapshot.open(new File(dir, "patient_1_snapshot.bin"));
+        PatientEventList list = new PatientEventList(snapshot);
+        List<WaterEvent> tail = store.readAfter(snapshot.getJournalWatermarks());
+        if (tail != null) {
+            list.addAll(tail);
+        }
+        return list;
+    }
+
+    /**
+     * One journal append. The appended events are dropped again after each
+     * iteration (see restore()).
+     */
+    @Benchmark
+    public SegmentStore append() throws IOException {
+        store.append(next);
+        return store;
+    }
+
+    @TearDown(Level.Iteration)
+    public void restore() throws IOException {
+        store.rewriteAll(all);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.thesis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Raw-sample mode: one op is one second of load-cell readings from every
+ * coaster at the given rate, parsed and run through each coaster's
+ * SipDetector (10 readings per notification). An ops/s figure above 1 is
+ * real-time; its inverse is the share of one core the stage needs.
+ * gc.alloc.rate.norm should stay near 0 apart from the derived events.
+ */
+@State(Scope.Thread)
+public class SipDetectorBenchmark {
+
+    private static final int READINGS_PER_NOTIFICATION = 10;
+
+    @Param({"3", "30", "100"})
+    public int coasters;
+
+    @Param({"10", "80"})
+    public int hz;
+
+    private ScaleIngest[] ingest;
+    // Per coaster, one minute of notifications (lift, sip, put back, refill).
+    private byte[][][] payloads;
+    private int second;
+    private long now;
+    private int events;
+
+    private final SipDetector detector = new SipDetector(new SipDetector.Config(),
+            (intake, grams, t) -> events++);
+    private float[] signal;
+    private int sample;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        int perSecond = hz / READINGS_PER_NOTIFICATION;
+        long interval = 1000 / hz;
+        ingest = new ScaleIngest[coasters];
+        payloads = new byte[coasters][60 * perSecond][];
+        for (int c = 0; c < coasters; c++) {
+            ingest[c] = new ScaleIngest(c, (index, event) -> events++);
+            for (int n = 0; n < payloads[c].length; n++) {
+                StringBuilder sb = new StringBuilder("W cup_" + c + " " + interval);
+                for (int k = 0; k < READINGS_PER_NOTIFICATION; k++) {
+                    int s = n / perSecond;
+                    sb.append(String.format(Locale.US, " %.2f",
+                            level(s) + (random.nextFloat() - 0.5f) * 0.6f));
+                }
+                payloads[c][n] = sb.toString().getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        signal = new float[60 * hz];
+        for (int i = 0; i < signal.length; i++) {
+            signal[i] = level(i / hz) + (random.nextFloat() - 0.5f) * 0.6f;
+        }
+        now = 1_735_725_600_000L;
+    }
+
+    /**
+     * Cup level in grams during a one-minute cycle: placed, lifted, 20 g
+     * lighter, lifted, refilled.
+     */
+    private static float level(int second) {
+        if (second < 15) {
+            return 300f;
+        } else if (second < 20) {
+            return 0f;
+        } else if (second < 40) {
+            return 280f;
+        } else if (second < 45) {
+            return 0f;
+        }
+        return 300f;
+    }
+
+    @Benchmark
+    public int oneSecondAllCoasters() {
+        int perSecond = hz / READINGS_PER_NOTIFICATION;
+        int first = (second % 60) * perSecond;
+        for (int n = 0; n < perSecond; n++) {
+            now += 1000 / perSecond;
+            for (int c = 0; c < coasters; c++) {
+                ingest[c].onNotification(payloads[c][first + n], now);
+            }
+        }
+        second++;
+        return events;
+    }
+
+    @Benchmark
+    public float detectorPerReading() {
+        float g = signal[sample];
+        sample = (sample + 1) % signal.length;
+        now += 1000 / hz;
+        detector.process(g, now);
+        return detector.getCommittedLevel();
+    }
+}
@@ -0,0 +1,33 @@
+plugins {
+    `java-library`
+}
+
+// Storage, aggregation, ingest and export logic with no Android dependencies,
+// so it can be unit-tested and benchmarked on a plain JVM.
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Sources contain non-ASCII comments; don't depend on the platform charset.
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+// Replays a recorded BLE trace through the ingest path:
+// ./gradlew :core:replayTrace -Ptrace=trace_20250101_120000.txt [-Pspeed=1|100|max] [-PstoreDir=build/replay]
+tasks.register<JavaExec>("replayTrace") {
+    group = "verification"
+    description = "Replays a BLE trace captured on a tablet and prints the replay report."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.example.thesis.TraceReplay")
+    args = listOfNotNull(
+        providers.gradleProperty("trace").orNull,
+        providers.gradleProperty("speed").getOrElse("max"),
+        providers.gradleProperty("storeDir").orNull
+    )
+}
@@ -0,0 +1,372 @@
+package com.example.thesis;
+
+import java.util.Calendar;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Incrementally maintained hourly and daily totals for one patient.
+ *
+ * Keys are local hour starts and local midnights. The index is seeded from
+ * durable rollups (see RollupStore) and from the precomputed day table of an
+ * {@link EventSnapshot}, then updated for every event added or removed, so
+ * sums for the chart and the summary windows never rescan the raw list.
+ *
+ * Days seeded from the snapshot only carry daily totals; a day bucket's
+ * {@link Bucket#hourly} flag says whether its hourly buckets are complete.
+ */
+public class AggregateIndex {
+
+    /**
+     * Totals for one bucket (an hour or a day).
+     */
+    public static class Bucket {
+        public float intakeSum;
+        public float refillSum;
+        public int intakeCount;
+        public int refillCount;
+        public float intakeMin = Float.NaN;
+        public float intakeMax = Float.NaN;
+        public float refillMin = Float.NaN;
+        public float refillMax = Float.NaN;
+        // Ledger buckets only (see FluidLedger): suspected spills ("S") and
+        // weight loss not covered by refills of the same cup ("U").
+        public float spillSum;
+        public float unexplainedSum;
+        // Day buckets only: true if hourly buckets for this day are complete.
+        public boolean hourly = true;
+
+        public void add(String type, float amount) {
+            if ("I".equals(type)) {
+                intakeSum += amount;
+                intakeCount++;
+                intakeMin = Float.isNaN(intakeMin) ? amount : Math.min(intakeMin, amount);
+                intakeMax = Float.isNaN(intakeMax) ? amount : Math.max(intakeMax, amount);
+            } else if ("R".equals(type)) {
+                refillSum += amount;
+                refillCount++;
+                refillMin = Float.isNaN(refillMin) ? amount : Math.min(refillMin, amount);
+                refillMax = Float.isNaN(refillMax) ? amount : Math.max(refillMax, amount);
+            } else if ("S".equals(type)) {
+                spillSum += amount;
+            } else if ("U".equals(type)) {
+                unexplainedSum += amount;
+            }
+        }
+
+        public void merge(Bucket other) {
+            intakeSum += other.intakeSum;
+            refillSum += other.refillSum;
+            intakeCount += other.intakeCount;
+            refillCount += other.refillCount;
+            intakeMin = minOf(intakeMin, other.intakeMin);
+            intakeMax = maxOf(intakeMax, other.intakeMax);
+            refillMin = minOf(refillMin, other.refillMin);
+            refillMax = maxOf(refillMax, other.refillMax);
+            spillSum += other.spillSum;
+            unexplainedSum += other.unexplainedSum;
+        }
+
+        public Bucket copy() {
+            Bucket copy = new Bucket();
+            copy.merge(this);
+            copy.hourly = hourly;
+            return copy;
+        }
+
+        private static float minOf(float a, float b) {
+            return Float.isNaN(a) ? b : Float.isNaN(b) ? a : Math.min(a, b);
+        }
+
+        private static float maxOf(float a, float b) {
+            return Float.isNaN(a) ? b : Float.isNaN(b) ? a : Math.max(a, b);
+        }
+    }
+
+    private final TreeMap<Long, Bucket> days = new TreeMap<>();
+    private final TreeMap<Long, Bucket> hours = new TreeMap<>();
+    private final Calendar calendar = Calendar.getInstance();
+
+    public synchronized void add(long timeMillis, String type, float amount) {
+        dayBucket(startOfDayLocked(timeMillis), true).add(type, amount);
+        hourBucket(startOfHourLocked(timeMillis)).add(type, amount);
+    }
+
+    /**
+     * Subtracts an event from the sums and counts. Min/max cannot be narrowed
+     * incrementally; callers that need exact extremes rebuild the day via
+     * {@link #clearDay} and re-add its events.
+     */
+    public synchronized void remove(long timeMillis, String type, float amount) {
+        Bucket d = days.get(startOfDayLocked(timeMillis));
+        Bucket h = hours.get(startOfHourLocked(timeMillis));
+        for (Bucket b : new Bucket[]{d, h}) {
+            if (b == null) continue;
+            if ("I".equals(type)) {
+                b.intakeSum -= amount;
+                b.intakeCount--;
+            } else if ("R".equals(type)) {
+                b.refillSum -= amount;
+                b.refillCount--;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        days.clear();
+        hours.clear();
+    }
+
+    /**
+     * Drops the day bucket and its hourly buckets for the day starting at dayStartMillis.
+     */
+    public synchronized void clearDay(long dayStartMillis) {
+        days.remove(dayStartMillis);
+        hours.subMap(dayStartMillis, true, startOfNextDayLocked(dayStartMillis), false).clear();
+    }
+
+    /**
+     * Seeds the index from the snapshot's day table, skipping days before fromMillis.
+     * These days get daily totals only.
+     */
+    public synchronized void addSnapshotDays(EventSnapshot snapshot, long fromMillis) {
+        for (int d = 0; d < snapshot.getDayCount(); d++) {
+            long day = snapshot.getDayStart(d);
+            if (day < fromMillis) {
+                continue;
+            }
+            Bucket b = dayBucket(day, false);
+            b.hourly = false;
+            b.intakeSum += snapshot.getDayIntake(d);
+            b.refillSum += snapshot.getDayRefill(d);
+            b.intakeCount += snapshot.getDayIntakeCount(d);
+            b.refillCount += snapshot.getDayRefillCount(d);
+        }
+    }
+
+    /**
+     * Seeds hourly and daily buckets from durable rollups.
+     */
+    public synchronized void addRollups(Map<Long, Bucket> rolledDays, Map<Long, Bucket> rolledHours) {
+        for (Map.Entry<Long, Bucket> e : rolledDays.entrySet()) {
+            dayBucket(e.getKey(), true).merge(e.getValue());
+        }
+        for (Map.Entry<Long, Bucket> e : rolledHours.entrySet()) {
+            hourBucket(e.getKey()).merge(e.getValue());
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // QUERIES
+    // ------------------------------------------------------------------
+
+    /**
+     * Intake of the day starting at the given local midnight.
+     */
+    public synchronized float getDayIntake(long dayStartMillis) {
+        Bucket b = days.get(dayStartMillis);
+        return b != null ? b.intakeSum : 0f;
+    }
+
+    /**
+     * Intake of the calendar day dayOffset days before the one containing
+     * nowMillis (0 => today, 1 => yesterday, ...). Calendar arithmetic keeps
+     * DST days right.
+     */
+    public synchronized float getIntakeForDayOffset(long nowMillis, int dayOffset) {
+        calendar.setTimeInMillis(startOfDayLocked(nowMillis));
+        calendar.add(Calendar.DAY_OF_MONTH, -dayOffset);
+        return getDayIntake(calendar.getTimeInMillis());
+    }
+
+    /**
+     * Intake of all events at or after cutoff (future-dated events included).
+     *
+     * Only the partial first hour is read from the raw events (located by
+     * binary search when the list is time-ordered); the rest of the first day
+     * comes from hourly buckets and all later days from daily buckets. Days
+     * that only have daily totals (seeded from the snapshot) fall back to a
+     * raw scan up to midnight.
+     */
+    public float getIntakeSince(PatientEventList list, long cutoff) {
+        long nextHour = startOfNextHour(cutoff);
+        long nextMidnight = startOfNextDay(cutoff);
+        float sum;
+        if (hasHourly(cutoff)) {
+            sum = list.sumIntake(cutoff, Math.min(nextHour, nextMidnight))
+                    + getHourlyIntake(nextHour, nextMidnight);
+        } else {
+            sum = list.sumIntake(cutoff, nextMidnight);
+        }
+        return sum + getIntakeFromDay(nextMidnight);
+    }
+
+    /**
+     * Intake of all days starting at or after the given local midnight.
+     */
+    public synchronized float getIntakeFromDay(long dayStartMillis) {
+        float sum = 0f;
+        for (Bucket b : days.tailMap(dayStartMillis, true).values()) {
+            sum += b.intakeSum;
+        }
+        return sum;
+    }
+
+    /**
+     * Intake of the hours in [fromHourMillis, toMillis).
+     */
+    public synchronized float getHourlyIntake(long fromHourMillis, long toMillis) {
+        float sum = 0f;
+        for (Bucket b : hours.subMap(fromHourMillis, true, toMillis, false).values()) {
+            sum += b.intakeSum;
+        }
+        return sum;
+    }
+
+    /**
+     * Totals of [fromMillis, toMillis) at hour resolution: days inside the
+     * window come from daily buckets, the partial days at its edges from the
+     * hourly buckets overlapping it. A partial day without hourly buckets
+     * (seeded from the snapshot) is counted whole.
+     */
+    public synchronized Bucket getTotals(long fromMillis, long toMillis) {
+        Bucket out = new Bucket();
+        long firstHour = startOfHourLocked(fromMillis);
+        for (Map.Entry<Long, Bucket> e
+                : days.subMap(startOfDayLocked(fromMillis), true, toMillis, false).entrySet()) {
+            long day = e.getKey();
+            long nextDay = startOfNextDayLocked(day);
+            Bucket b = e.getValue();
+            if ((day >= fromMillis && nextDay <= toMillis) || !b.hourly) {
+                out.merge(b);
+                continue;
+            }
+            for (Bucket h : hours.subMap(Math.max(day, firstHour), true,
+                    Math.min(nextDay, toMillis), false).values()) {
+                out.merge(h);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * True if hourly buckets are complete for the day containing the given time.
+     */
+    public synchronized boolean hasHourly(long timeMillis) {
+        Bucket b = days.get(startOfDayLocked(timeMillis));
+        return b == null || b.hourly;
+    }
+
+    /**
+     * Copy of the day bucket starting at the given midnight, or null.
+     */
+    public synchronized Bucket getDay(long dayStartMillis) {
+        Bucket b = days.get(dayStartMillis);
+        return b != null ? b.copy() : null;
+    }
+
+    /**
+     * Copies of the day buckets starting in [fromMillis, toMillis).
+     */
+    public synchronized TreeMap<Long, Bucket> getDays(long fromMillis, long toMillis) {
+        return copyRange(days, fromMillis, toMillis);
+    }
+
+    /**
+     * Copies of the hour buckets starting in [fromMillis, toMillis). Days whose
+     * day bucket is not {@link Bucket#hourly} have no (or partial) hour buckets.
+     */
+    public synchronized TreeMap<Long, Bucket> getHours(long fromMillis, long toMillis) {
+        return copyRange(hours, fromMillis, toMillis);
+    }
+
+    /**
+     * Independent copy of the day and hour buckets starting in
+     * [fromMillis, toMillis), e.g. for a report built on another thread.
+     */
+    public synchronized AggregateIndex copy(long fromMillis, long toMillis) {
+        AggregateIndex copy = new AggregateIndex();
+        copy.days.putAll(copyRange(days, fromMillis, toMillis));
+        copy.hours.putAll(copyRange(hours, fromMillis, toMillis));
+        return copy;
+    }
+
+    private static TreeMap<Long, Bucket> copyRange(TreeMap<Long, Bucket> src, long from, long to) {
+        TreeMap<Long, Bucket> out = new TreeMap<>();
+        for (Map.Entry<Long, Bucket> e : src.subMap(from, true, to, false).entrySet()) {
+            out.put(e.getKey(), e.getValue().copy());
+        }
+        return out;
+    }
+
+    // ------------------------------------------------------------------
+    // CALENDAR HELPERS
+    // ------------------------------------------------------------------
+
+    /**
+     * Local midnight of the day containing the given time.
+     */
+    public synchronized long startOfDay(long timeMillis) {
+        return startOfDayLocked(timeMillis);
+    }
+
+    /**
+     * Local midnight of the day after the one containing the given time.
+     */
+    public synchronized long startOfNextDay(long timeMillis) {
+        return startOfNextDayLocked(timeMillis);
+    }
+
+    /**
+     * Start of the local hour containing the given time.
+     */
+    public synchronized long startOfHour(long timeMillis) {
+        return startOfHourLocked(timeMillis);
+    }
+
+    /**
+     * Start of the local hour after the one containing the given time.
+     */
+    public synchronized long startOfNextHour(long timeMillis) {
+        calendar.setTimeInMillis(startOfHourLocked(timeMillis));
+        calendar.add(Calendar.HOUR_OF_DAY, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    private long startOfDayLocked(long timeMillis) {
+        return EventSnapshot.startOfDay(calendar, timeMillis);
+    }
+
+    private long startOfNextDayLocked(long timeMillis) {
+        EventSnapshot.startOfDay(calendar, timeMillis);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    private long startOfHourLocked(long timeMillis) {
+        calendar.setTimeInMillis(timeMillis);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    private Bucket dayBucket(long dayStart, boolean hourly) {
+        Bucket b = days.get(dayStart);
+        if (b == null) {
+            b = new Bucket();
+            b.hourly = hourly;
+            days.put(dayStart, b);
+        }
+        return b;
+    }
+
+    private Bucket hourBucket(long hourStart) {
+        Bucket b = hours.get(hourStart);
+        if (b == null) {
+            b = new Bucket();
+            hours.put(hourStart, b);
+        }
+        return b;
+    }
+}
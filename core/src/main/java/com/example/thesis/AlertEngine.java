@@ -0,0 +1,305 @@
+package com.example.thesis;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Incremental evaluation of hydration alert rules (see AlertRule).
+ *
+ * Every rule keeps its own running state, so an ingested event or a timer
+ * tick costs O(1) per rule and history is never rescanned:
+ *
+ * - LOW_INTAKE: a SlidingWindowSum of per-minute intake buckets.
+ * - NO_INTAKE: the time of the last intake.
+ * - DAY_LIMIT: today's intake, reset at local midnight.
+ *
+ * The history is read once per patient (seed) at startup and after edits
+ * that cannot be applied incrementally (removals, imports). Alerts are edge
+ * triggered: the listener hears about an alert when it is raised and again
+ * when it clears. Patients without any event in the last ACTIVE_MILLIS
+ * (empty bed, coaster unused) raise no alerts, and LOW_INTAKE only fires once
+ * the patient has been monitored for the whole window.
+ *
+ * Thread-safe: events arrive from the BLE threads, ticks from a timer.
+ */
+public class AlertEngine {
+
+    private static final String TAG = "AlertEngine";
+
+    /**
+     * Resolution of the LOW_INTAKE sliding windows.
+     */
+    public static final long SLOT_MILLIS = 60_000L;
+
+    /**
+     * A patient is monitored while their last event is younger than this.
+     */
+    public static final long ACTIVE_MILLIS = 24 * 3600_000L;
+
+    /**
+     * A raised alert; the same instance is passed when it clears.
+     */
+    public static class Alert {
+        public final int patientIndex;
+        public final AlertRule rule;
+        public final long sinceMillis;
+        public final String message;
+
+        Alert(int patientIndex, AlertRule rule, long sinceMillis, String message) {
+            this.patientIndex = patientIndex;
+            this.rule = rule;
+            this.sinceMillis = sinceMillis;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return message;
+        }
+    }
+
+    public interface Listener {
+        void onAlertChanged(Alert alert, boolean raised);
+    }
+
+    private static class RuleState {
+        final AlertRule rule;
+        final SlidingWindowSum window;
+        Alert active;
+
+        RuleState(AlertRule rule) {
+            this.rule = rule;
+            this.window = rule.kind == AlertRule.Kind.LOW_INTAKE
+                    ? new SlidingWindowSum(rule.windowMillis, SLOT_MILLIS) : null;
+        }
+    }
+
+    private static class PatientState {
+        RuleState[] rules = new RuleState[0];
+        long firstEventMillis = Long.MIN_VALUE;
+        long lastEventMillis = Long.MIN_VALUE;
+        long lastIntakeMillis = Long.MIN_VALUE;
+        float dayIntake;
+        long dayStart = Long.MIN_VALUE;
+        long nextDayStart = Long.MIN_VALUE;
+
+        void reset() {
+            firstEventMillis = Long.MIN_VALUE;
+            lastEventMillis = Long.MIN_VALUE;
+            lastIntakeMillis = Long.MIN_VALUE;
+            dayIntake = 0f;
+            dayStart = Long.MIN_VALUE;
+            nextDayStart = Long.MIN_VALUE;
+            for (RuleState rs : rules) {
+                if (rs.window != null) {
+                    rs.window.clear();
+                }
+            }
+        }
+    }
+
+    private final PatientState[] patients;
+    private final Calendar calendar = Calendar.getInstance();
+    private final Metrics.Counter raisedCount = Metrics.counter("alerts.raised");
+    private Listener listener;
+
+    public AlertEngine(int patientCount) {
+        patients = new PatientState[patientCount];
+        for (int i = 0; i < patientCount; i++) {
+            patients[i] = new PatientState();
+        }
+    }
+
+    public synchronized void setListener(Listener l) {
+        listener = l;
+    }
+
+    /**
+     * Replaces the rules of a patient. Active alerts of the old rules are
+     * cleared; call seed() afterwards to evaluate the new ones.
+     */
+    public synchronized void setRules(int patientIndex, List<AlertRule> rules) {
+        PatientState ps = patient(patientIndex);
+        if (ps == null) {
+            return;
+        }
+        for (RuleState rs : ps.rules) {
+            if (rs.active != null) {
+                notify(rs.active, false);
+            }
+        }
+        ps.rules = new RuleState[rules.size()];
+        for (int i = 0; i < ps.rules.length; i++) {
+            ps.rules[i] = new RuleState(rules.get(i));
+        }
+    }
+
+    public synchronized List<AlertRule> getRules(int patientIndex) {
+        List<AlertRule> out = new ArrayList<>();
+        PatientState ps = patient(patientIndex);
+        if (ps != null) {
+            for (RuleState rs : ps.rules) {
+                out.add(rs.rule);
+            }
+        }
+        return out;
+    }
+
+    // ------------------------------------------------------------------
+    // INPUT
+    // ------------------------------------------------------------------
+
+    /**
+     * Rebuilds a patient's rule state from the recent part of its history
+     * (the last ACTIVE_MILLIS or the longest rule window) and evaluates it.
+     * Alerts that are still firing stay raised without a new notification.
+     */
+    public synchronized void seed(int patientIndex, PatientEventList events, long nowMillis) {
+        PatientState ps = patient(patientIndex);
+        if (ps == null) {
+            return;
+        }
+        ps.reset();
+        rollDay(ps, nowMillis);
+
+        long from = nowMillis - ACTIVE_MILLIS;
+        for (RuleState rs : ps.rules) {
+            from = Math.min(from, nowMillis - rs.rule.windowMillis);
+        }
+        int start = events.isTimeOrdered() ? events.lowerBound(from) : 0;
+        for (int i = start; i < events.size(); i++) {
+            long t = events.getTimeMillisAt(i);
+            if (t >= from) {
+                apply(ps, t, events.getTypeAt(i), events.getAmountAt(i));
+            }
+        }
+        evaluate(patientIndex, ps, nowMillis);
+    }
+
+    /**
+     * Applies one new event and re-evaluates the patient's rules.
+     */
+    public synchronized void onEvent(int patientIndex, long timeMillis, String type,
+                                     float amount, long nowMillis) {
+        PatientState ps = patient(patientIndex);
+        if (ps == null) {
+            return;
+        }
+        rollDay(ps, nowMillis);
+        apply(ps, timeMillis, type, amount);
+        evaluate(patientIndex, ps, nowMillis);
+    }
+
+    /**
+     * Re-evaluates all rules at nowMillis; called from a timer so that
+     * time-based alerts (no intake, window expiry) fire without new events.
+     */
+    public synchronized void evaluate(long nowMillis) {
+        for (int i = 0; i < patients.length; i++) {
+            rollDay(patients[i], nowMillis);
+            evaluate(i, patients[i], nowMillis);
+        }
+    }
+
+    public synchronized List<Alert> getActiveAlerts(int patientIndex) {
+        List<Alert> out = new ArrayList<>();
+        PatientState ps = patient(patientIndex);
+        if (ps != null) {
+            for (RuleState rs : ps.rules) {
+                if (rs.active != null) {
+                    out.add(rs.active);
+                }
+            }
+        }
+        return out;
+    }
+
+    // ------------------------------------------------------------------
+    // STATE
+    // ------------------------------------------------------------------
+
+    private PatientState patient(int index) {
+        return index >= 0 && index < patients.length ? patients[index] : null;
+    }
+
+    private void apply(PatientState ps, long t, String type, float amount) {
+        if (ps.firstEventMillis == Long.MIN_VALUE || t < ps.firstEventMillis) {
+            ps.firstEventMillis = t;
+        }
+        ps.lastEventMillis = Math.max(ps.lastEventMillis, t);
+        if (!"I".equals(type)) {
+            return;
+        }
+        ps.lastIntakeMillis = Math.max(ps.lastIntakeMillis, t);
+        if (t >= ps.dayStart && t < ps.nextDayStart) {
+            ps.dayIntake += amount;
+        }
+        for (RuleState rs : ps.rules) {
+            if (rs.window != null) {
+                rs.window.add(t, amount);
+            }
+        }
+    }
+
+    private void rollDay(PatientState ps, long nowMillis) {
+        if (nowMillis >= ps.dayStart && nowMillis < ps.nextDayStart) {
+            return;
+        }
+        ps.dayStart = EventSnapshot.startOfDay(calendar, nowMillis);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        ps.nextDayStart = calendar.getTimeInMillis();
+        ps.dayIntake = 0f;
+    }
+
+    private void evaluate(int patientIndex, PatientState ps, long nowMillis) {
+        boolean monitored = ps.lastEventMillis != Long.MIN_VALUE
+                && nowMillis - ps.lastEventMillis < ACTIVE_MILLIS;
+        for (RuleState rs : ps.rules) {
+            String detail = monitored ? check(ps, rs, nowMillis) : null;
+            if (detail != null && rs.active == null) {
+                rs.active = new Alert(patientIndex, rs.rule, nowMillis, String.format(Locale.US,
+                        "Patient %d: %s (%s)", patientIndex + 1, rs.rule.describe(), detail));
+                raisedCount.inc();
+                CoreLog.i(TAG, "Raised {}", rs.active);
+                notify(rs.active, true);
+            } else if (detail == null && rs.active != null) {
+                Alert cleared = rs.active;
+                rs.active = null;
+                CoreLog.i(TAG, "Cleared {}", cleared);
+                notify(cleared, false);
+            }
+        }
+    }
+
+    /**
+     * Returns a short detail text if the rule fires, else null.
+     */
+    private static String check(PatientState ps, RuleState rs, long nowMillis) {
+        AlertRule rule = rs.rule;
+        switch (rule.kind) {
+            case LOW_INTAKE: {
+                if (nowMillis - ps.firstEventMillis < rule.windowMillis) {
+                    return null;
+                }
+                double sum = rs.window.sum(nowMillis);
+                return sum < rule.grams ? String.format(Locale.US, "%.0f g", sum) : null;
+            }
+            case NO_INTAKE: {
+                long ref = ps.lastIntakeMillis != Long.MIN_VALUE ? ps.lastIntakeMillis : ps.firstEventMillis;
+                long idle = nowMillis - ref;
+                return idle >= rule.windowMillis ? (idle / 60_000L) + " min" : null;
+            }
+            default:
+                return ps.dayIntake > rule.grams
+                        ? String.format(Locale.US, "%.0f g", ps.dayIntake) : null;
+        }
+    }
+
+    private void notify(Alert alert, boolean raised) {
+        if (listener != null) {
+            listener.onAlertChanged(alert, raised);
+        }
+    }
+}
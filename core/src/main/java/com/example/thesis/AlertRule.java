@@ -0,0 +1,95 @@
+package com.example.thesis;
+
+import java.util.Locale;
+
+/**
+ * One hydration threshold evaluated by the AlertEngine:
+ *
+ * - LOW_INTAKE: less than grams of intake within the last windowMillis.
+ * - NO_INTAKE: no intake at all for windowMillis.
+ * - DAY_LIMIT: more than grams of intake today (fluid-restricted patients).
+ *
+ * Rules are immutable; autoRemind asks the app to send a reminder to the
+ * patient's coaster when the alert is raised.
+ */
+public class AlertRule {
+
+    public enum Kind { LOW_INTAKE, NO_INTAKE, DAY_LIMIT }
+
+    public final Kind kind;
+    public final long windowMillis;
+    public final float grams;
+    public final boolean autoRemind;
+
+    private AlertRule(Kind kind, long windowMillis, float grams, boolean autoRemind) {
+        this.kind = kind;
+        this.windowMillis = windowMillis;
+        this.grams = grams;
+        this.autoRemind = autoRemind;
+    }
+
+    public static AlertRule lowIntake(int hours, float grams, boolean autoRemind) {
+        return new AlertRule(Kind.LOW_INTAKE, hours * 3600_000L, grams, autoRemind);
+    }
+
+    public static AlertRule noIntake(int minutes, boolean autoRemind) {
+        return new AlertRule(Kind.NO_INTAKE, minutes * 60_000L, 0f, autoRemind);
+    }
+
+    public static AlertRule dayLimit(float grams, boolean autoRemind) {
+        return new AlertRule(Kind.DAY_LIMIT, 0L, grams, autoRemind);
+    }
+
+    /**
+     * Parses one rule, e.g. "low_intake 4 200", "no_intake 120 remind" or
+     * "day_limit 1500". Returns null if the line is not a valid rule.
+     */
+    public static AlertRule parse(String spec) {
+        String[] parts = spec.trim().split("\\s+");
+        if (parts.length < 2) {
+            return null;
+        }
+        boolean remind = "remind".equalsIgnoreCase(parts[parts.length - 1]);
+        int argc = parts.length - 1 - (remind ? 1 : 0);
+        try {
+            switch (parts[0].toLowerCase(Locale.ROOT)) {
+                case "low_intake":
+                    if (argc != 2) return null;
+                    int hours = Integer.parseInt(parts[1]);
+                    float grams = Float.parseFloat(parts[2]);
+                    return hours > 0 && grams > 0 ? lowIntake(hours, grams, remind) : null;
+                case "no_intake":
+                    if (argc != 1) return null;
+                    int minutes = Integer.parseInt(parts[1]);
+                    return minutes > 0 ? noIntake(minutes, remind) : null;
+                case "day_limit":
+                    if (argc != 1) return null;
+                    float limit = Float.parseFloat(parts[1]);
+                    return limit > 0 ? dayLimit(limit, remind) : null;
+                default:
+                    return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Short text for the dashboard, e.g. "< 200 g in 4 h".
+     */
+    public String describe() {
+        switch (kind) {
+            case LOW_INTAKE:
+                return String.format(Locale.US, "< %.0f g in %d h", grams, windowMillis / 3600_000L);
+            case NO_INTAKE:
+                return String.format(Locale.US, "no intake for %d min", windowMillis / 60_000L);
+            default:
+                return String.format(Locale.US, "> %.0f g today", grams);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return describe() + (autoRemind ? " (remind)" : "");
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.thesis;
+
+import java.util.BitSet;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate-limits UI refreshes of a set of rows (e.g. one per bed, or one per
+ * scale for the BLE state channel).
+ *
+ * markDirty() may be called from any thread and for every event; it only
+ * sets a bit and, if no refresh is pending, schedules one no earlier than
+ * minIntervalMillis after the previous one. The refresh receives the rows
+ * that changed since the last one, so its cost depends on the number of
+ * changed rows and the refresh rate, not on the event volume.
+ */
+public class CoalescingRefresher {
+
+    /**
+     * Runs a task after a delay, e.g. Handler#postDelayed on the main thread.
+     */
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    public interface Target {
+        void refresh(BitSet dirtyRows);
+    }
+
+    private final long minIntervalMillis;
+    private final Scheduler scheduler;
+    private final Target target;
+    private final LongSupplier clock;
+
+    private final BitSet dirty = new BitSet();
+    private boolean scheduled;
+    private long lastRunMillis = Long.MIN_VALUE;
+
+    private final Metrics.Counter refreshes;
+    private final Metrics.Counter coalesced;
+
+    /**
+     * name prefixes the metrics, e.g. "dashboard" => "dashboard.refreshes"
+     * and "dashboard.coalesced".
+     */
+    public CoalescingRefresher(String name, long minIntervalMillis, Scheduler scheduler, Target target) {
+        this(name, minIntervalMillis, scheduler, target, () -> System.nanoTime() / 1_000_000L);
+    }
+
+    CoalescingRefresher(String name, long minIntervalMillis, Scheduler scheduler, Target target,
+                        LongSupplier clock) {
+        this.refreshes = Metrics.counter(name + ".refreshes");
+        this.coalesced = Metrics.counter(name + ".coalesced");
+        this.minIntervalMillis = minIntervalMillis;
+        this.scheduler = scheduler;
+        this.target = target;
+        this.clock = clock;
+    }
+
+    public synchronized void markDirty(int row) {
+        dirty.set(row);
+        scheduleLocked();
+    }
+
+    public synchronized void markAllDirty(int rows) {
+        dirty.set(0, rows);
+        scheduleLocked();
+    }
+
+    /**
+     * Forgets the pending refresh, e.g. after the scheduler's queue was
+     * cleared when the screen was paused. Dirty rows are kept for the next one.
+     */
+    public synchronized void cancel() {
+        scheduled = false;
+    }
+
+    private void scheduleLocked() {
+        if (scheduled) {
+            coalesced.inc();
+            return;
+        }
+        scheduled = true;
+        long delay = lastRunMillis == Long.MIN_VALUE
+                ? 0 : Math.max(0, lastRunMillis + minIntervalMillis - clock.getAsLong());
+        scheduler.schedule(this::run, delay);
+    }
+
+    private void run() {
+        BitSet batch;
+        synchronized (this) {
+            if (!scheduled) {
+                return;
+            }
+            scheduled = false;
+            lastRunMillis = clock.getAsLong();
+            batch = (BitSet) dirty.clone();
+            dirty.clear();
+        }
+        refreshes.inc();
+        target.refresh(batch);
+    }
+}
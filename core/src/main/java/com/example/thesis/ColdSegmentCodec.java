@@ -0,0 +1,167 @@
+package com.example.thesis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact encoding for cold (old, sealed) day segments.
+ *
+ * Each event is stored as:
+ * - timestamp: zigzag varint delta in seconds to the previous event
+ *   (the first one relative to the segment start),
+ * - type and cup: varint ids into a per-segment string dictionary,
+ * - amount: zigzag varint in hundredths of a gram (the text format keeps
+ *   two decimals, so this is lossless with respect to the text segment).
+ * The whole stream is then deflated.
+ *
+ * A typical 35-byte text line shrinks to a few bytes before compression.
+ */
+public final class ColdSegmentCodec {
+
+    private static final int MAGIC = 0x53574353; // "SWCS"
+    private static final int VERSION = 1;
+
+    private ColdSegmentCodec() {
+    }
+
+    /**
+     * True if every event round-trips through the compact encoding, i.e. its
+     * timestamp parses and has whole-second precision.
+     */
+    public static boolean canEncode(List<WaterEvent> events) {
+        for (WaterEvent e : events) {
+            long t = e.getTimeMillis();
+            if (t == 0 || t % 1000 != 0
+                    || !WaterEvent.formatTimestamp(t).equals(e.timestamp)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the events of one segment. baseMillis is the segment start.
+     */
+    public static void write(File file, List<WaterEvent> events, long baseMillis)
+            throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        for (WaterEvent e : events) {
+            intern(ids, dictionary, e.type);
+            intern(ids, dictionary, e.cupName);
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)), deflater))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(baseMillis);
+            writeVarint(out, events.size());
+            writeVarint(out, dictionary.size());
+            for (String s : dictionary) {
+                out.writeUTF(s);
+            }
+
+            long prevSeconds = baseMillis / 1000;
+            for (WaterEvent e : events) {
+                long seconds = e.getTimeMillis() / 1000;
+                writeVarint(out, zigzag(seconds - prevSeconds));
+                prevSeconds = seconds;
+                writeVarint(out, ids.get(key(e.type)));
+                writeVarint(out, ids.get(key(e.cupName)));
+                writeVarint(out, zigzag(Math.round(e.amount * 100.0)));
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decodes a cold segment and appends its events to out.
+     */
+    public static void read(File file, List<WaterEvent> out) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new BufferedInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Not a cold segment: " + file.getName());
+            }
+            long baseMillis = in.readLong();
+            int count = (int) readVarint(in);
+            int dictSize = (int) readVarint(in);
+            String[] dictionary = new String[dictSize];
+            for (int i = 0; i < dictSize; i++) {
+                dictionary[i] = in.readUTF();
+            }
+
+            long seconds = baseMillis / 1000;
+            for (int i = 0; i < count; i++) {
+                seconds += unzigzag(readVarint(in));
+                String type = dictionary[(int) readVarint(in)];
+                String cup = dictionary[(int) readVarint(in)];
+                float amount = unzigzag(readVarint(in)) / 100f;
+                out.add(new WaterEvent(seconds * 1000, type, amount, cup));
+            }
+        }
+    }
+
+    private static String key(String value) {
+        return value != null ? value : "";
+    }
+
+    private static void intern(Map<String, Integer> ids, List<String> dictionary, String value) {
+        String k = key(value);
+        if (!ids.containsKey(k)) {
+            ids.put(k, dictionary.size());
+            dictionary.add(k);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // VARINTS
+    // ------------------------------------------------------------------
+    static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarint(DataInputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
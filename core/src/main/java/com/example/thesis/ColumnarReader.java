@@ -0,0 +1,242 @@
+package com.example.thesis;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reader for the columnar event export (".swcf"), written by ColumnarWriter.
+ *
+ * Depends on java.* only, so analysis jobs can copy this one file. The
+ * footer is read on open; block payloads are inflated only when asked for,
+ * and the per-block time and amount ranges let callers skip blocks that
+ * cannot match (see {@link #scan}).
+ *
+ * Layout (big endian):
+ * - Header: magic "SWCF", version byte.
+ * - Blocks of up to BLOCK_ROWS rows, each deflated, holding the columns one
+ *   after another: time (int64 epoch millis, first row absolute and the rest
+ *   as deltas to the previous row), amount (float32 grams), type id and cup
+ *   id (uint16 into the dictionary).
+ * - Footer: dictionary (count + modified UTF-8 strings), block count, and per
+ *   block its file offset, compressed length, row count, min/max time and
+ *   min/max amount.
+ * - Trailer: footer offset (int64) and the magic again.
+ */
+public class ColumnarReader implements Closeable {
+
+    public static final int MAGIC = 0x53574346; // "SWCF"
+    public static final int VERSION = 1;
+    public static final int BLOCK_ROWS = 4096;
+
+    // Uncompressed bytes per row: int64 time, float32 amount, two uint16 ids.
+    static final int ROW_BYTES = 16;
+    static final int HEADER_SIZE = 5;
+    static final int TRAILER_SIZE = 12;
+
+    /**
+     * Location and statistics of one block, from the footer.
+     */
+    public static class BlockInfo {
+        public final long offset;
+        public final int compressedLength;
+        public final int rows;
+        public final long minMillis;
+        public final long maxMillis;
+        public final float minAmount;
+        public final float maxAmount;
+
+        BlockInfo(long offset, int compressedLength, int rows, long minMillis, long maxMillis,
+                  float minAmount, float maxAmount) {
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+            this.rows = rows;
+            this.minMillis = minMillis;
+            this.maxMillis = maxMillis;
+            this.minAmount = minAmount;
+            this.maxAmount = maxAmount;
+        }
+
+        /**
+         * True if some row of this block may lie in [fromMillis, toMillis).
+         */
+        public boolean overlaps(long fromMillis, long toMillis) {
+            return maxMillis >= fromMillis && minMillis < toMillis;
+        }
+    }
+
+    /**
+     * Decoded columns of one block; ids index into {@link #getDictionary()}.
+     */
+    public static class Block {
+        public final int rows;
+        public final long[] timeMillis;
+        public final float[] amount;
+        public final int[] typeId;
+        public final int[] cupId;
+
+        Block(int rows) {
+            this.rows = rows;
+            this.timeMillis = new long[rows];
+            this.amount = new float[rows];
+            this.typeId = new int[rows];
+            this.cupId = new int[rows];
+        }
+    }
+
+    /**
+     * Row callback for {@link #scan}.
+     */
+    public interface RowVisitor {
+        void visit(long timeMillis, float amount, String type, String cup);
+    }
+
+    private final RandomAccessFile file;
+    private final String[] dictionary;
+    private final List<BlockInfo> blocks;
+    private final long rowCount;
+
+    public ColumnarReader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        try {
+            long length = this.file.length();
+            if (length < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("Not a columnar export: " + file.getName());
+            }
+            this.file.seek(0);
+            if (this.file.readInt() != MAGIC || this.file.readByte() != VERSION) {
+                throw new IOException("Not a columnar export: " + file.getName());
+            }
+            this.file.seek(length - TRAILER_SIZE);
+            long footerOffset = this.file.readLong();
+            if (this.file.readInt() != MAGIC || footerOffset < HEADER_SIZE
+                    || footerOffset > length - TRAILER_SIZE) {
+                throw new IOException("Truncated columnar export: " + file.getName());
+            }
+            byte[] footer = new byte[(int) (length - TRAILER_SIZE - footerOffset)];
+            this.file.seek(footerOffset);
+            this.file.readFully(footer);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer));
+            dictionary = new String[in.readInt()];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = in.readUTF();
+            }
+            int count = in.readInt();
+            List<BlockInfo> list = new ArrayList<>(count);
+            long rows = 0;
+            for (int i = 0; i < count; i++) {
+                BlockInfo b = new BlockInfo(in.readLong(), in.readInt(), in.readInt(),
+                        in.readLong(), in.readLong(), in.readFloat(), in.readFloat());
+                list.add(b);
+                rows += b.rows;
+            }
+            blocks = Collections.unmodifiableList(list);
+            rowCount = rows;
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    public String[] getDictionary() {
+        return dictionary.clone();
+    }
+
+    public List<BlockInfo> getBlocks() {
+        return blocks;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Reads and inflates one block.
+     */
+    public Block readBlock(int index) throws IOException {
+        BlockInfo info = blocks.get(index);
+        byte[] compressed = new byte[info.compressedLength];
+        synchronized (file) {
+            file.seek(info.offset);
+            file.readFully(compressed);
+        }
+        int rows = info.rows;
+        byte[] raw = new byte[rows * ROW_BYTES];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int n = 0;
+            while (n < raw.length && !inflater.finished()) {
+                int got = inflater.inflate(raw, n, raw.length - n);
+                if (got == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += got;
+            }
+            if (n != raw.length) {
+                throw new IOException("Short block " + index + ": " + n + " of " + raw.length + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block " + index, e);
+        } finally {
+            inflater.end();
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+        Block block = new Block(rows);
+        long t = 0;
+        for (int i = 0; i < rows; i++) {
+            t += in.readLong();
+            block.timeMillis[i] = t;
+        }
+        for (int i = 0; i < rows; i++) {
+            block.amount[i] = in.readFloat();
+        }
+        for (int i = 0; i < rows; i++) {
+            block.typeId[i] = in.readUnsignedShort();
+        }
+        for (int i = 0; i < rows; i++) {
+            block.cupId[i] = in.readUnsignedShort();
+        }
+        return block;
+    }
+
+    /**
+     * Visits the rows with fromMillis <= time < toMillis, in file order.
+     * Blocks whose time range does not overlap are never read.
+     *
+     * @return number of rows visited
+     */
+    public int scan(long fromMillis, long toMillis, RowVisitor visitor) throws IOException {
+        int visited = 0;
+        for (int b = 0; b < blocks.size(); b++) {
+            if (!blocks.get(b).overlaps(fromMillis, toMillis)) {
+                continue;
+            }
+            Block block = readBlock(b);
+            for (int i = 0; i < block.rows; i++) {
+                long t = block.timeMillis[i];
+                if (t >= fromMillis && t < toMillis) {
+                    visitor.visit(t, block.amount[i],
+                            dictionary[block.typeId[i]], dictionary[block.cupId[i]]);
+                    visited++;
+                }
+            }
+        }
+        return visited;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
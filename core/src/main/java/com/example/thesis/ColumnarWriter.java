@@ -0,0 +1,152 @@
+package com.example.thesis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a patient's events in the columnar export format (see
+ * ColumnarReader for the layout).
+ *
+ * Rows are read through the primitive column accessors of PatientEventList,
+ * so snapshot rows are never materialized, and each block of
+ * ColumnarReader.BLOCK_ROWS rows is deflated and written as soon as it is
+ * full. Only the dictionary and the block directory are kept until the end.
+ */
+public class ColumnarWriter {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+    private final List<ColumnarReader.BlockInfo> blocks = new ArrayList<>();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final ByteBuffer raw =
+            ByteBuffer.allocate(ColumnarReader.BLOCK_ROWS * ColumnarReader.ROW_BYTES);
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    private final byte[] deflateBuffer = new byte[16 * 1024];
+
+    private final long[] time = new long[ColumnarReader.BLOCK_ROWS];
+    private final float[] amount = new float[ColumnarReader.BLOCK_ROWS];
+    private final int[] typeId = new int[ColumnarReader.BLOCK_ROWS];
+    private final int[] cupId = new int[ColumnarReader.BLOCK_ROWS];
+
+    /**
+     * Writes rows [from, to) of the list as one complete file. The stream is
+     * not closed. Progress is reported once per block.
+     *
+     * @return number of rows written
+     * @throws CancellationException if progress asks to stop
+     */
+    public int write(PatientEventList events, int from, int to, OutputStream out,
+                     EventCsvWriter.Progress progress) throws IOException {
+        try {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(ColumnarReader.MAGIC);
+            data.writeByte(ColumnarReader.VERSION);
+            long offset = ColumnarReader.HEADER_SIZE;
+
+            int total = to - from;
+            int rows = 0;
+            for (int i = from; i < to; i++) {
+                time[rows] = events.getTimeMillisAt(i);
+                amount[rows] = events.getAmountAt(i);
+                typeId[rows] = intern(events.getTypeAt(i));
+                cupId[rows] = intern(events.getCupNameAt(i));
+                if (++rows == ColumnarReader.BLOCK_ROWS || i == to - 1) {
+                    offset += writeBlock(data, offset, rows);
+                    rows = 0;
+                    int written = i - from + 1;
+                    if (progress != null && !progress.onProgress(written, total)) {
+                        throw new CancellationException("Export cancelled after " + written + " rows");
+                    }
+                }
+            }
+
+            data.writeInt(dictionary.size());
+            for (String s : dictionary) {
+                data.writeUTF(s);
+            }
+            data.writeInt(blocks.size());
+            for (ColumnarReader.BlockInfo b : blocks) {
+                data.writeLong(b.offset);
+                data.writeInt(b.compressedLength);
+                data.writeInt(b.rows);
+                data.writeLong(b.minMillis);
+                data.writeLong(b.maxMillis);
+                data.writeFloat(b.minAmount);
+                data.writeFloat(b.maxAmount);
+            }
+            data.writeLong(offset);
+            data.writeInt(ColumnarReader.MAGIC);
+            data.flush();
+            return total;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private int intern(String value) throws IOException {
+        String key = value != null ? value : "";
+        Integer id = ids.get(key);
+        if (id == null) {
+            if (dictionary.size() > 0xFFFF) {
+                throw new IOException("More than 65536 distinct types and cups");
+            }
+            id = dictionary.size();
+            ids.put(key, id);
+            dictionary.add(key);
+        }
+        return id;
+    }
+
+    /**
+     * Deflates and writes one block of buffered rows.
+     *
+     * @return compressed size in bytes
+     */
+    private int writeBlock(DataOutputStream out, long offset, int rows) throws IOException {
+        raw.clear();
+        long minMillis = Long.MAX_VALUE;
+        long maxMillis = Long.MIN_VALUE;
+        float minAmount = Float.POSITIVE_INFINITY;
+        float maxAmount = Float.NEGATIVE_INFINITY;
+        long prev = 0;
+        for (int i = 0; i < rows; i++) {
+            raw.putLong(time[i] - prev);
+            prev = time[i];
+            minMillis = Math.min(minMillis, time[i]);
+            maxMillis = Math.max(maxMillis, time[i]);
+        }
+        for (int i = 0; i < rows; i++) {
+            raw.putFloat(amount[i]);
+            minAmount = Math.min(minAmount, amount[i]);
+            maxAmount = Math.max(maxAmount, amount[i]);
+        }
+        for (int i = 0; i < rows; i++) {
+            raw.putShort((short) typeId[i]);
+        }
+        for (int i = 0; i < rows; i++) {
+            raw.putShort((short) cupId[i]);
+        }
+
+        compressed.reset();
+        deflater.reset();
+        deflater.setInput(raw.array(), 0, raw.position());
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(deflateBuffer);
+            compressed.write(deflateBuffer, 0, n);
+        }
+        compressed.writeTo(out);
+        blocks.add(new ColumnarReader.BlockInfo(offset, compressed.size(), rows,
+                minMillis, maxMillis, minAmount, maxAmount));
+        return compressed.size();
+    }
+}
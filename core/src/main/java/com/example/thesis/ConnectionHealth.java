@@ -0,0 +1,246 @@
+package com.example.thesis;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Connection-health telemetry of one scale: RSSI readings, notifications,
+ * sequence gaps, dropped duplicates, connection uptime and time to reconnect.
+ *
+ * Per-minute counts are kept in a fixed ring of HISTORY_MINUTES slots
+ * (parallel arrays, overwritten as time moves on), so recording is O(1) and
+ * the memory does not grow with uptime. Reconnect durations go into a
+ * LatencyHistogram.
+ *
+ * Sequence numbers are optional: coasters may end a payload with a
+ * " #<n>" token (n counting up modulo 65536, see sequenceAt). A jump ahead
+ * counts the skipped numbers as gaps, i.e. notifications lost over the air;
+ * the count restarts on every connection because the coaster may have reset.
+ *
+ * Thread-safe; summarize() returns an immutable snapshot for the UI.
+ */
+public class ConnectionHealth {
+
+    public static final int HISTORY_MINUTES = 60;
+
+    /**
+     * Full minutes averaged for the notification rate.
+     */
+    public static final int RATE_MINUTES = 5;
+
+    static final long MINUTE_MILLIS = 60_000L;
+    private static final int SEQUENCE_MOD = 1 << 16;
+
+    /**
+     * Point-in-time view; window values cover the last HISTORY_MINUTES.
+     */
+    public static class Summary {
+        public final boolean connected;
+        // Integer.MIN_VALUE while no reading is available.
+        public final int lastRssi;
+        public final double meanRssi;
+        public final double notificationsPerMinute;
+        public final long gaps;
+        public final long duplicates;
+        public final long currentUptimeMillis;
+        public final long totalUptimeMillis;
+        public final long connections;
+        public final long reconnects;
+        public final long reconnectP50Millis;
+        public final long reconnectP95Millis;
+
+        Summary(boolean connected, int lastRssi, double meanRssi, double notificationsPerMinute,
+                long gaps, long duplicates, long currentUptimeMillis, long totalUptimeMillis,
+                long connections, long reconnects, long reconnectP50Millis, long reconnectP95Millis) {
+            this.connected = connected;
+            this.lastRssi = lastRssi;
+            this.meanRssi = meanRssi;
+            this.notificationsPerMinute = notificationsPerMinute;
+            this.gaps = gaps;
+            this.duplicates = duplicates;
+            this.currentUptimeMillis = currentUptimeMillis;
+            this.totalUptimeMillis = totalUptimeMillis;
+            this.connections = connections;
+            this.reconnects = reconnects;
+            this.reconnectP50Millis = reconnectP50Millis;
+            this.reconnectP95Millis = reconnectP95Millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "rssi=%d mean=%.1f rate=%.1f/min gaps=%d dup=%d up=%ds total=%ds conn=%d"
+                            + " reconnect n=%d p50=%dms p95=%dms",
+                    lastRssi, meanRssi, notificationsPerMinute, gaps, duplicates,
+                    currentUptimeMillis / 1000, totalUptimeMillis / 1000, connections,
+                    reconnects, reconnectP50Millis, reconnectP95Millis);
+        }
+    }
+
+    // Ring of per-minute counts; minutes[i] is the minute (millis / MINUTE_MILLIS)
+    // slot i currently holds, or -1.
+    private final long[] minutes = new long[HISTORY_MINUTES];
+    private final int[] notifications = new int[HISTORY_MINUTES];
+    private final int[] duplicates = new int[HISTORY_MINUTES];
+    private final int[] gaps = new int[HISTORY_MINUTES];
+    private final int[] rssiCount = new int[HISTORY_MINUTES];
+    private final long[] rssiSum = new long[HISTORY_MINUTES];
+
+    private final LatencyHistogram reconnect = new LatencyHistogram();
+
+    private int lastRssi = Integer.MIN_VALUE;
+    private int lastSequence = -1;
+    private long connectedSince = Long.MIN_VALUE;
+    private long disconnectedSince = Long.MIN_VALUE;
+    private long totalUptimeMillis;
+    private long connections;
+
+    public ConnectionHealth() {
+        Arrays.fill(minutes, -1);
+    }
+
+    // ------------------------------------------------------------------
+    // RECORDING
+    // ------------------------------------------------------------------
+
+    public synchronized void onConnected(long nowMillis) {
+        if (connectedSince != Long.MIN_VALUE) {
+            return;
+        }
+        connectedSince = nowMillis;
+        connections++;
+        lastSequence = -1;
+        if (disconnectedSince != Long.MIN_VALUE) {
+            reconnect.record(Math.max(0, nowMillis - disconnectedSince) * 1_000_000L);
+            disconnectedSince = Long.MIN_VALUE;
+        }
+    }
+
+    public synchronized void onDisconnected(long nowMillis) {
+        if (connectedSince != Long.MIN_VALUE) {
+            totalUptimeMillis += Math.max(0, nowMillis - connectedSince);
+            connectedSince = Long.MIN_VALUE;
+        }
+        if (disconnectedSince == Long.MIN_VALUE) {
+            disconnectedSince = nowMillis;
+        }
+    }
+
+    public synchronized void onNotification(long nowMillis) {
+        notifications[slot(nowMillis)]++;
+    }
+
+    public synchronized void onDuplicate(long nowMillis) {
+        duplicates[slot(nowMillis)]++;
+    }
+
+    public synchronized void onRssi(int rssi, long nowMillis) {
+        int i = slot(nowMillis);
+        rssiCount[i]++;
+        rssiSum[i] += rssi;
+        lastRssi = rssi;
+    }
+
+    /**
+     * Records the sequence number of a notification; a repeated number (a
+     * duplicate) or one behind the last (reordering) is not a gap.
+     */
+    public synchronized void onSequence(int sequence, long nowMillis) {
+        if (lastSequence >= 0) {
+            int ahead = (sequence - lastSequence + SEQUENCE_MOD) % SEQUENCE_MOD;
+            if (ahead == 0 || ahead >= SEQUENCE_MOD / 2) {
+                return;
+            }
+            gaps[slot(nowMillis)] += ahead - 1;
+        }
+        lastSequence = sequence;
+    }
+
+    private int slot(long nowMillis) {
+        long minute = nowMillis / MINUTE_MILLIS;
+        int i = (int) (minute % HISTORY_MINUTES);
+        if (minutes[i] != minute) {
+            minutes[i] = minute;
+            notifications[i] = 0;
+            duplicates[i] = 0;
+            gaps[i] = 0;
+            rssiCount[i] = 0;
+            rssiSum[i] = 0;
+        }
+        return i;
+    }
+
+    // ------------------------------------------------------------------
+    // SEQUENCE SUFFIX
+    // ------------------------------------------------------------------
+
+    /**
+     * Position of a trailing " #<n>" sequence token in a payload (the index
+     * of its space), or -1 if the payload has none.
+     */
+    public static int sequenceAt(byte[] value) {
+        int end = value.length;
+        while (end > 0 && (value[end - 1] == '\r' || value[end - 1] == '\n')) {
+            end--;
+        }
+        int i = end;
+        while (i > 0 && value[i - 1] >= '0' && value[i - 1] <= '9') {
+            i--;
+        }
+        if (i == end || end - i > 5 || i < 2 || value[i - 1] != '#' || value[i - 2] != ' ') {
+            return -1;
+        }
+        return i - 2;
+    }
+
+    /**
+     * The number of the sequence token at (see sequenceAt).
+     */
+    public static int parseSequence(byte[] value, int at) {
+        int n = 0;
+        for (int i = at + 2; i < value.length && value[i] >= '0' && value[i] <= '9'; i++) {
+            n = n * 10 + (value[i] - '0');
+        }
+        return n % SEQUENCE_MOD;
+    }
+
+    // ------------------------------------------------------------------
+    // SUMMARY
+    // ------------------------------------------------------------------
+
+    public synchronized Summary summarize(long nowMillis) {
+        long minute = nowMillis / MINUTE_MILLIS;
+        long windowNotifications = 0;
+        long windowDuplicates = 0;
+        long windowGaps = 0;
+        long readings = 0;
+        long rssiTotal = 0;
+        for (int i = 0; i < HISTORY_MINUTES; i++) {
+            long age = minute - minutes[i];
+            if (minutes[i] < 0 || age < 0 || age >= HISTORY_MINUTES) {
+                continue;
+            }
+            windowDuplicates += duplicates[i];
+            windowGaps += gaps[i];
+            readings += rssiCount[i];
+            rssiTotal += rssiSum[i];
+            if (age >= 1 && age <= RATE_MINUTES) {
+                windowNotifications += notifications[i];
+            }
+        }
+        boolean connected = connectedSince != Long.MIN_VALUE;
+        long current = connected ? Math.max(0, nowMillis - connectedSince) : 0;
+        return new Summary(connected,
+                lastRssi,
+                readings > 0 ? (double) rssiTotal / readings : Double.NaN,
+                windowNotifications / (double) RATE_MINUTES,
+                windowGaps,
+                windowDuplicates,
+                current,
+                totalUptimeMillis + current,
+                connections,
+                reconnect.getCount(),
+                reconnect.getPercentile(50) / 1_000_000L,
+                reconnect.getPercentile(95) / 1_000_000L);
+    }
+}
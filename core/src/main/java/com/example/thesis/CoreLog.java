@@ -0,0 +1,300 @@
+package com.example.thesis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Level-gated structured logger for the core module (which cannot use
+ * android.util.Log) and the app's ingest path.
+ *
+ * Messages are templates with "{}" placeholders and their arguments, e.g.
+ * CoreLog.d(TAG, "Scale {} => {}", scale, payload); calls with more than
+ * three arguments go through the varargs overloads. Nothing is built
+ * for levels below both thresholds, so disabled calls cost a volatile read:
+ *
+ * - Records at or above the ring level (DEBUG by default) are kept
+ *   unformatted in an in-memory ring of RING_CAPACITY records, which a
+ *   background thread flushes to rotating log files (startFileLogging) and
+ *   dumpRecent() renders after an incident.
+ * - Records at or above the sink level (INFO by default) are formatted
+ *   right away and passed to the sink; the app routes it to Logcat (see
+ *   DataManager), on a plain JVM warnings and errors go to stderr.
+ */
+public final class CoreLog {
+
+    // Same values as android.util.Log.
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int OFF = 8;
+
+    /**
+     * Records held in memory; at a few records per event this covers well
+     * over an hour of ward traffic.
+     */
+    public static final int RING_CAPACITY = 8192;
+
+    /**
+     * Rotating log files: size of one file and number of files kept.
+     */
+    public static final long LOG_FILE_BYTES = 1024 * 1024;
+    public static final int LOG_FILES = 4;
+
+    /**
+     * Destination for formatted log messages.
+     */
+    public interface Sink {
+        void log(int level, String tag, String msg, Throwable t);
+    }
+
+    private static volatile Sink sink = (level, tag, msg, t) -> {
+        if (level >= WARN) {
+            System.err.println(tag + ": " + msg);
+            if (t != null) {
+                t.printStackTrace();
+            }
+        }
+    };
+
+    private static final LogRing ring = new LogRing(RING_CAPACITY);
+
+    private static volatile int ringLevel = DEBUG;
+    private static volatile int sinkLevel = INFO;
+    // min(ringLevel, sinkLevel): the only check on the disabled path.
+    private static volatile int minLevel = DEBUG;
+
+    private static ScheduledExecutorService flusher;
+    private static RotatingLogWriter fileWriter;
+    private static long flushedSeq;
+
+    private CoreLog() {
+    }
+
+    public static void setSink(Sink s) {
+        sink = s;
+    }
+
+    /**
+     * Minimum level kept in the ring (and written to the log files); OFF disables it.
+     */
+    public static void setRingLevel(int level) {
+        ringLevel = level;
+        minLevel = Math.min(ringLevel, sinkLevel);
+    }
+
+    /**
+     * Minimum level formatted and passed to the sink; OFF disables it.
+     */
+    public static void setSinkLevel(int level) {
+        sinkLevel = level;
+        minLevel = Math.min(ringLevel, sinkLevel);
+    }
+
+    public static boolean isLoggable(int level) {
+        return level >= minLevel;
+    }
+
+    // ------------------------------------------------------------------
+    // LOGGING
+    // ------------------------------------------------------------------
+
+    public static void d(String tag, String msg) {
+        log(DEBUG, tag, msg, null, null, null, null);
+    }
+
+    public static void d(String tag, String template, Object a) {
+        log(DEBUG, tag, template, a, null, null, null);
+    }
+
+    public static void d(String tag, String template, Object a, Object b) {
+        log(DEBUG, tag, template, a, b, null, null);
+    }
+
+    public static void d(String tag, String template, Object a, Object b, Object c) {
+        log(DEBUG, tag, template, a, b, c, null);
+    }
+
+    public static void d(String tag, String template, Object... args) {
+        logAll(DEBUG, tag, template, args);
+    }
+
+    public static void i(String tag, String msg) {
+        log(INFO, tag, msg, null, null, null, null);
+    }
+
+    public static void i(String tag, String template, Object a) {
+        log(INFO, tag, template, a, null, null, null);
+    }
+
+    public static void i(String tag, String template, Object a, Object b) {
+        log(INFO, tag, template, a, b, null, null);
+    }
+
+    public static void i(String tag, String template, Object a, Object b, Object c) {
+        log(INFO, tag, template, a, b, c, null);
+    }
+
+    public static void i(String tag, String template, Object... args) {
+        logAll(INFO, tag, template, args);
+    }
+
+    public static void w(String tag, String template, Object a) {
+        log(WARN, tag, template, a, null, null, null);
+    }
+
+    public static void w(String tag, String template, Object a, Object b) {
+        log(WARN, tag, template, a, b, null, null);
+    }
+
+    public static void w(String tag, String template, Object... args) {
+        logAll(WARN, tag, template, args);
+    }
+
+    public static void e(String tag, String msg) {
+        log(ERROR, tag, msg, null, null, null, null);
+    }
+
+    public static void e(String tag, String msg, Throwable t) {
+        log(ERROR, tag, msg, null, null, null, t);
+    }
+
+    public static void e(String tag, String template, Object a) {
+        log(ERROR, tag, template, a, null, null, null);
+    }
+
+    public static void e(String tag, String template, Object a, Object b) {
+        log(ERROR, tag, template, a, b, null, null);
+    }
+
+    public static void e(String tag, String template, Object a, Object b, Object c) {
+        log(ERROR, tag, template, a, b, c, null);
+    }
+
+    public static void e(String tag, String template, Object... args) {
+        logAll(ERROR, tag, template, args);
+    }
+
+    // Arguments past the second travel as one MoreArgs in the third slot.
+    private static void logAll(int level, String tag, String template, Object[] args) {
+        if (level < minLevel) {
+            return;
+        }
+        Object a0 = args.length > 0 ? args[0] : null;
+        Object a1 = args.length > 1 ? args[1] : null;
+        Object a2 = args.length > 3 ? new MoreArgs(args) : args.length > 2 ? args[2] : null;
+        log(level, tag, template, a0, a1, a2, null);
+    }
+
+    private static final class MoreArgs {
+        final Object[] args;
+
+        MoreArgs(Object[] args) {
+            this.args = args;
+        }
+    }
+
+    private static void log(int level, String tag, String template,
+                            Object a0, Object a1, Object a2, Throwable t) {
+        if (level < minLevel) {
+            return;
+        }
+        if (level >= ringLevel) {
+            ring.add(System.currentTimeMillis(), level, tag, template, a0, a1, a2, t);
+        }
+        if (level >= sinkLevel) {
+            StringBuilder sb = new StringBuilder(template.length() + 32);
+            formatTo(sb, template, a0, a1, a2);
+            sink.log(level, tag, sb.toString(), t);
+        }
+    }
+
+    /**
+     * Replaces the "{}" placeholders of a template with the arguments in order.
+     */
+    static void formatTo(StringBuilder out, String template, Object a0, Object a1, Object a2) {
+        Object[] all = a2 instanceof MoreArgs ? ((MoreArgs) a2).args : null;
+        int argCount = all != null ? all.length : 3;
+        int argIndex = 0;
+        int from = 0;
+        int at;
+        while (argIndex < argCount && (at = template.indexOf("{}", from)) >= 0) {
+            out.append(template, from, at);
+            out.append(all != null ? all[argIndex] : argIndex == 0 ? a0 : argIndex == 1 ? a1 : a2);
+            argIndex++;
+            from = at + 2;
+        }
+        out.append(template, from, template.length());
+    }
+
+    // ------------------------------------------------------------------
+    // RING ACCESS
+    // ------------------------------------------------------------------
+
+    /**
+     * The ring's records from the last windowMillis as text, oldest first,
+     * e.g. the last 15 minutes of ingest logs after an incident.
+     */
+    public static String dumpRecent(long windowMillis) {
+        StringBuilder sb = new StringBuilder();
+        ring.read(0).format(sb, System.currentTimeMillis() - windowMillis);
+        return sb.toString();
+    }
+
+    public static void dumpRecentTo(File file, long windowMillis) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(dumpRecent(windowMillis));
+        }
+    }
+
+    /**
+     * Starts appending the ring's records to dir/name.log every
+     * flushIntervalMillis on a background thread, rotating the file at
+     * LOG_FILE_BYTES and keeping LOG_FILES files. Records logged before the
+     * call that are still in the ring are written on the first flush.
+     */
+    public static synchronized void startFileLogging(File dir, String name, long flushIntervalMillis) {
+        if (flusher != null) {
+            return;
+        }
+        fileWriter = new RotatingLogWriter(dir, name, LOG_FILE_BYTES, LOG_FILES);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "CoreLog-flush");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(CoreLog::flush,
+                flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the records logged since the last flush to the log file, if
+     * file logging was started. Blocking; normally runs on the flush thread.
+     */
+    public static synchronized void flush() {
+        if (fileWriter == null) {
+            return;
+        }
+        LogRing.Batch batch = ring.read(flushedSeq);
+        if (batch.size() == 0 && batch.dropped == 0) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder(batch.size() * 80);
+        batch.format(sb, Long.MIN_VALUE);
+        try {
+            fileWriter.append(sb.toString());
+            flushedSeq = batch.endSeq();
+        } catch (IOException e) {
+            // Not through log(): that would only add records to the ring we cannot write.
+            sink.log(ERROR, "CoreLog", "Error writing log file: " + e.getMessage(), null);
+        }
+    }
+}
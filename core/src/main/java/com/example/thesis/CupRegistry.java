@@ -0,0 +1,339 @@
+package com.example.thesis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Ward-wide dictionary of cup names.
+ *
+ * Every cup name seen gets a small, stable integer id; intern() returns one
+ * shared String per cup, so events no longer each hold their own copy of the
+ * name parsed from a notification. The dictionary (id, tare, name) is
+ * stored as "id,tareGrams,name" lines in cups.txt next to the patient
+ * directories and survives restarts; ids are never reused. A line that cannot
+ * be read leaves a gap at its id (saved as a bare "id" line) instead of
+ * shifting the ids of the cups after it.
+ *
+ * Each cup also carries running aggregates over all patients (counts, sums,
+ * last use), updated in O(1) per event and per removal, and seeded at
+ * startup from each patient's rollups plus the events after them (see
+ * seed), and an optional tare weight (NaN while unknown).
+ */
+public class CupRegistry {
+
+    private static final String TAG = "CupRegistry";
+
+    public static final int UNKNOWN = -1;
+
+    /**
+     * One registered cup.
+     */
+    public static class Cup {
+        public final int id;
+        public final String name;
+        public float tareGrams = Float.NaN;
+        public int intakeCount;
+        public float intakeSum;
+        public int refillCount;
+        public float refillSum;
+        public long lastSeenMillis = Long.MIN_VALUE;
+
+        Cup(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        Cup copy() {
+            Cup c = new Cup(id, name);
+            c.tareGrams = tareGrams;
+            c.intakeCount = intakeCount;
+            c.intakeSum = intakeSum;
+            c.refillCount = refillCount;
+            c.refillSum = refillSum;
+            c.lastSeenMillis = lastSeenMillis;
+            return c;
+        }
+    }
+
+    private final File file;
+    private final HashMap<String, Cup> byName = new HashMap<>();
+    // Index = id; null for ids whose line was damaged.
+    private final List<Cup> byId = new ArrayList<>();
+
+    /**
+     * Opens the registry stored in file (created on the first new cup); with
+     * a null file the registry lives in memory only.
+     */
+    public CupRegistry(File file) throws IOException {
+        this.file = file;
+        if (file != null) {
+            load();
+        }
+    }
+
+    /**
+     * Id of a cup name, registering (and persisting) it on first sight.
+     */
+    public synchronized int register(String name) {
+        return cup(name).id;
+    }
+
+    /**
+     * The shared String instance of a cup name, registering it if needed.
+     */
+    public synchronized String intern(String name) {
+        return cup(name).name;
+    }
+
+    /**
+     * Id of a known cup name, or UNKNOWN.
+     */
+    public synchronized int idOf(String name) {
+        Cup c = byName.get(name);
+        return c != null ? c.id : UNKNOWN;
+    }
+
+    public synchronized String nameOf(int id) {
+        Cup c = id >= 0 && id < byId.size() ? byId.get(id) : null;
+        return c != null ? c.name : null;
+    }
+
+    public synchronized int size() {
+        return byName.size();
+    }
+
+    /**
+     * Copies of all cups, ordered by id.
+     */
+    public synchronized List<Cup> getCups() {
+        List<Cup> out = new ArrayList<>(byName.size());
+        for (Cup c : byId) {
+            if (c != null) {
+                out.add(c.copy());
+            }
+        }
+        return out;
+    }
+
+    // ------------------------------------------------------------------
+    // AGGREGATES
+    // ------------------------------------------------------------------
+
+    /**
+     * Adds one event to its cup's running aggregates (registering the cup).
+     */
+    public synchronized void record(String name, long timeMillis, String type, float amount) {
+        Cup c = cup(name);
+        if ("I".equals(type)) {
+            c.intakeCount++;
+            c.intakeSum += amount;
+        } else if ("R".equals(type)) {
+            c.refillCount++;
+            c.refillSum += amount;
+        }
+        c.lastSeenMillis = Math.max(c.lastSeenMillis, timeMillis);
+    }
+
+    /**
+     * Takes one removed event out of its cup's aggregates. The last use is
+     * not narrowed (it may still point at the removed event).
+     */
+    public synchronized void unrecord(String name, String type, float amount) {
+        Cup c = cup(name);
+        if ("I".equals(type)) {
+            c.intakeCount--;
+            c.intakeSum -= amount;
+        } else if ("R".equals(type)) {
+            c.refillCount--;
+            c.refillSum -= amount;
+        }
+    }
+
+    /**
+     * Adds a batch of events, e.g. the ones an import added.
+     */
+    public synchronized void recordAll(List<WaterEvent> events) {
+        for (WaterEvent e : events) {
+            record(e.cupName, e.getTimeMillis(), e.type, e.amount);
+        }
+    }
+
+    /**
+     * Adds all events of a list, reading the primitive columns (snapshot rows
+     * are not faulted in).
+     */
+    public synchronized void recordAll(PatientEventList events) {
+        for (int i = 0; i < events.size(); i++) {
+            record(events.getCupNameAt(i), events.getTimeMillisAt(i),
+                    events.getTypeAt(i), events.getAmountAt(i));
+        }
+    }
+
+    /**
+     * Adds a patient's history: rolled-up days from the per-cup rollups (last
+     * use to the hour), later events from the list. Bounded by the number of
+     * cups plus the events after the rollups, like PatientData#rebuildIndex.
+     * With null rollups all events are read.
+     */
+    public synchronized void seed(RollupStore rollups, PatientEventList events) {
+        apply(rollups, events, 1);
+    }
+
+    /**
+     * Takes a patient's history out again (the inverse of seed), e.g. before
+     * the patient is cleared.
+     */
+    public synchronized void unseed(RollupStore rollups, PatientEventList events) {
+        apply(rollups, events, -1);
+    }
+
+    private void apply(RollupStore rollups, PatientEventList events, int sign) {
+        long rolledEnd = rollups != null ? rollups.getRolledThroughMillis() : Long.MIN_VALUE;
+        if (rolledEnd != Long.MIN_VALUE) {
+            for (String key : rollups.getCups()) {
+                AggregateIndex.Bucket b = rollups.getTotal(key);
+                // The rollups store empty cup names as "-".
+                Cup c = cup("-".equals(key) ? "" : key);
+                c.intakeCount += sign * b.intakeCount;
+                c.intakeSum += sign * b.intakeSum;
+                c.refillCount += sign * b.refillCount;
+                c.refillSum += sign * b.refillSum;
+                if (sign > 0) {
+                    c.lastSeenMillis = Math.max(c.lastSeenMillis, rollups.getLastHourMillis(key));
+                }
+            }
+        }
+        boolean ordered = events.isTimeOrdered();
+        int from = ordered && rolledEnd != Long.MIN_VALUE ? events.lowerBound(rolledEnd) : 0;
+        for (int i = from; i < events.size(); i++) {
+            long t = events.getTimeMillisAt(i);
+            if (t < rolledEnd) {
+                continue;
+            }
+            if (sign > 0) {
+                record(events.getCupNameAt(i), t, events.getTypeAt(i), events.getAmountAt(i));
+            } else {
+                unrecord(events.getCupNameAt(i), events.getTypeAt(i), events.getAmountAt(i));
+            }
+        }
+    }
+
+    /**
+     * Resets the running aggregates of all cups; ids, names and tares stay.
+     */
+    public synchronized void clearStats() {
+        for (Cup c : byId) {
+            if (c == null) {
+                continue;
+            }
+            c.intakeCount = 0;
+            c.intakeSum = 0f;
+            c.refillCount = 0;
+            c.refillSum = 0f;
+            c.lastSeenMillis = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Stores the empty weight of a cup (NaN to forget it).
+     */
+    public synchronized void setTare(String name, float grams) throws IOException {
+        cup(name).tareGrams = grams;
+        save();
+    }
+
+    // ------------------------------------------------------------------
+    // PERSISTENCE
+    // ------------------------------------------------------------------
+
+    private Cup cup(String name) {
+        if (name == null) {
+            name = "";
+        }
+        Cup c = byName.get(name);
+        if (c == null) {
+            c = add(name);
+            try {
+                save();
+            } catch (IOException e) {
+                // The id stays valid for this run; the next new cup retries the save.
+                CoreLog.e(TAG, "Error saving cup registry", e);
+            }
+        }
+        return c;
+    }
+
+    private Cup add(String name) {
+        Cup c = new Cup(byId.size(), name);
+        byId.add(c);
+        byName.put(name, c);
+        return c;
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // The name comes last and may contain commas.
+                String[] p = line.split(",", 3);
+                try {
+                    int id = Integer.parseInt(p[0]);
+                    if (id < 0) {
+                        continue;
+                    }
+                    // Reserve the id even if the rest of the line is damaged.
+                    while (byId.size() <= id) {
+                        byId.add(null);
+                    }
+                    if (p.length != 3 || byId.get(id) != null || byName.containsKey(p[2])) {
+                        continue;
+                    }
+                    float tare = p[1].isEmpty() ? Float.NaN : Float.parseFloat(p[1]);
+                    Cup c = new Cup(id, p[2]);
+                    c.tareGrams = tare;
+                    byId.set(id, c);
+                    byName.put(c.name, c);
+                } catch (NumberFormatException ignored) {
+                    // A line without a readable id cannot reserve it.
+                }
+            }
+        }
+    }
+
+    private void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            for (int id = 0; id < byId.size(); id++) {
+                Cup c = byId.get(id);
+                if (c == null) {
+                    writer.write(id + "\n");
+                    continue;
+                }
+                writer.write(c.id + "," + (Float.isNaN(c.tareGrams) ? "" : Float.toString(c.tareGrams))
+                        + "," + c.name + "\n");
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file.getName());
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.thesis;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Calendar;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Streams a patient's events as CSV rows ("Timestamp,Event,Weight (g),Cup").
+ *
+ * Rows are assembled in a reused char buffer and written with one call each,
+ * so exporting does not allocate per row:
+ * - snapshot rows are read from the primitive columns (no fault-in), and their
+ *   timestamps are formatted from millis using a cached "yyyy-MM-dd HH:" prefix
+ *   that only changes once per hour of data,
+ * - amounts are written as fixed two-decimal numbers without String.format.
+ *
+ * Progress is reported every PROGRESS_STEP rows scanned, against the rows
+ * in the range, so a cup filter that skips most rows still moves the bar
+ * to 100%; returning false from the callback cancels the export with a
+ * CancellationException.
+ */
+public class EventCsvWriter {
+
+    public static final String HEADER = "Timestamp,Event,Weight (g),Cup\n";
+
+    /**
+     * Number of scanned rows between two progress callbacks.
+     */
+    public static final int PROGRESS_STEP = 2048;
+
+    /**
+     * Progress callback. Return false to cancel the export.
+     */
+    public interface Progress {
+        boolean onProgress(int rowsScanned, int totalRows);
+    }
+
+    private final Calendar calendar = Calendar.getInstance();
+    private final char[] hourPrefix = new char[14]; // "yyyy-MM-dd HH:"
+    private long hourStart = Long.MAX_VALUE;
+    private long hourEnd = Long.MIN_VALUE;
+    private char[] line = new char[128];
+    private String cupFilter;
+
+    /**
+     * Restricts writeRows() to the rows of one cup; null writes all rows.
+     */
+    public EventCsvWriter setCupFilter(String cupName) {
+        this.cupFilter = cupName;
+        return this;
+    }
+
+    /**
+     * Writes rows [from, to) of the list. The list must not change while this
+     * runs; pass a {@link PatientEventList#copy()} when exporting off the UI thread.
+     *
+     * @return number of rows written
+     */
+    public int writeRows(PatientEventList events, int from, int to, Writer out, Progress progress)
+            throws IOException {
+        int total = to - from;
+        int written = 0;
+        for (int i = from; i < to; i++) {
+            int scanned = i - from + 1;
+            if (progress != null && scanned % PROGRESS_STEP == 0 && scanned < total
+                    && !progress.onProgress(scanned, total)) {
+                throw new CancellationException("Export cancelled after " + written + " rows");
+            }
+            if (cupFilter != null && !cupFilter.equals(events.getCupNameAt(i))) {
+                continue;
+            }
+            int n;
+            if (events.isSnapshotRow(i)) {
+                n = formatRow(events.getTimeMillisAt(i), events.getTypeAt(i),
+                        events.getAmountAt(i), events.getCupNameAt(i));
+            } else {
+                WaterEvent e = events.get(i);
+                n = formatRow(e.timestamp, e.type, e.amount, e.cupName);
+            }
+            out.write(line, 0, n);
+            written++;
+        }
+        if (progress != null && !progress.onProgress(total, total)) {
+            throw new CancellationException("Export cancelled after " + written + " rows");
+        }
+        return written;
+    }
+
+    // ------------------------------------------------------------------
+    // ROW FORMATTING
+    // ------------------------------------------------------------------
+    private int formatRow(long millis, String type, float amount, String cupName) {
+        String displayType = displayType(type);
+        ensureCapacity(19, displayType, cupName);
+        int n = formatTimestamp(millis);
+        return finishRow(n, displayType, amount, cupName);
+    }
+
+    private int formatRow(String timestamp, String type, float amount, String cupName) {
+        String displayType = displayType(type);
+        ensureCapacity(timestamp.length(), displayType, cupName);
+        timestamp.getChars(0, timestamp.length(), line, 0);
+        return finishRow(timestamp.length(), displayType, amount, cupName);
+    }
+
+    private static String displayType(String type) {
+        return "I".equals(type) ? "Intake" : "R".equals(type) ? "Refill" : type;
+    }
+
+    private int finishRow(int n, String displayType, float amount, String cupName) {
+        line[n++] = ',';
+        if (displayType != null) {
+            displayType.getChars(0, displayType.length(), line, n);
+            n += displayType.length();
+        }
+        line[n++] = ',';
+        n = formatAmount(amount, n);
+        line[n++] = ',';
+        if (cupName != null) {
+            cupName.getChars(0, cupName.length(), line, n);
+            n += cupName.length();
+        }
+        line[n++] = '\n';
+        return n;
+    }
+
+    /**
+     * Writes "yyyy-MM-dd HH:mm:ss" into the line buffer.
+     */
+    private int formatTimestamp(long millis) {
+        if (millis < hourStart || millis >= hourEnd) {
+            calendar.setTimeInMillis(millis);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            hourStart = calendar.getTimeInMillis();
+            putDigits(hourPrefix, 0, calendar.get(Calendar.YEAR), 4);
+            hourPrefix[4] = '-';
+            putDigits(hourPrefix, 5, calendar.get(Calendar.MONTH) + 1, 2);
+            hourPrefix[7] = '-';
+            putDigits(hourPrefix, 8, calendar.get(Calendar.DAY_OF_MONTH), 2);
+            hourPrefix[10] = ' ';
+            putDigits(hourPrefix, 11, calendar.get(Calendar.HOUR_OF_DAY), 2);
+            hourPrefix[13] = ':';
+            calendar.add(Calendar.HOUR_OF_DAY, 1);
+            hourEnd = calendar.getTimeInMillis();
+        }
+        System.arraycopy(hourPrefix, 0, line, 0, hourPrefix.length);
+        long seconds = (millis - hourStart) / 1000;
+        putDigits(line, 14, (int) (seconds / 60), 2);
+        line[16] = ':';
+        putDigits(line, 17, (int) (seconds % 60), 2);
+        return 19;
+    }
+
+    /**
+     * Writes the amount with two decimals ("45.23", "-0.50") at position n.
+     */
+    private int formatAmount(float amount, int n) {
+        long hundredths = Math.round(amount * 100.0);
+        if (hundredths < 0) {
+            line[n++] = '-';
+            hundredths = -hundredths;
+        }
+        long whole = hundredths / 100;
+        int digits = 1;
+        for (long v = whole; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            line[n + i] = (char) ('0' + whole % 10);
+            whole /= 10;
+        }
+        n += digits;
+        line[n++] = '.';
+        putDigits(line, n, (int) (hundredths % 100), 2);
+        return n + 2;
+    }
+
+    private static void putDigits(char[] buf, int pos, int value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            buf[pos + i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    // Room for timestamp, type and cup plus amount and separators.
+    private void ensureCapacity(int timestampChars, String displayType, String cupName) {
+        int needed = timestampChars + 32
+                + (displayType != null ? displayType.length() : 0)
+                + (cupName != null ? cupName.length() : 0);
+        if (line.length < needed) {
+            char[] bigger = new char[Math.max(needed, line.length * 2)];
+            System.arraycopy(line, 0, bigger, 0, line.length);
+            line = bigger;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.thesis;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Imports events from another tablet's files (patient_X_backup.txt, day
+ * segments or exported patient_X.csv) into an existing event list.
+ *
+ * Every file is cut into byte ranges that are parsed in parallel; each range
+ * becomes a time-ordered run. The runs and the existing events are then
+ * k-way merged by timestamp. Events carry no device or sequence number, so
+ * duplicates are detected by content: an imported event whose stored line
+ * (timestamp, type, amount, cup) equals one already merged is dropped. Only
+ * events of the same second are compared, so the set stays small.
+ */
+public class EventImporter {
+
+    // Files smaller than this per worker are not split further.
+    private static final long MIN_CHUNK_BYTES = 256 * 1024;
+
+    private static final Pattern PATIENT_FILE = Pattern.compile("patient_(\\d+)");
+
+    private static final Comparator<WaterEvent> BY_TIME =
+            Comparator.comparingLong(WaterEvent::getTimeMillis);
+
+    /**
+     * Events parsed from one byte range of a file, sorted by time.
+     */
+    public static class Chunk {
+        public final List<WaterEvent> events = new ArrayList<>();
+        public int rejected;
+    }
+
+    /**
+     * Outcome of a merge: the full merged list, the imported events alone
+     * (in time order) and the day segments ("yyyyMMdd" => events of that
+     * day) that gained imported events.
+     */
+    public static class Result {
+        public final List<WaterEvent> merged = new ArrayList<>();
+        public final Map<String, List<WaterEvent>> touchedDays = new TreeMap<>();
+        public final List<WaterEvent> added = new ArrayList<>();
+        public int imported;
+        public int duplicates;
+        public int rejected;
+    }
+
+    /**
+     * Patient index (0-based) from a file name like "patient_2_backup.txt",
+     * or -1 if the name does not say.
+     */
+    public static int patientIndexOf(String fileName) {
+        if (fileName == null) {
+            return -1;
+        }
+        Matcher m = PATIENT_FILE.matcher(fileName);
+        if (!m.find()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(m.group(1)) - 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses all files on the pool, up to one chunk per core for large files.
+     */
+    public static List<Chunk> parse(List<File> files, ExecutorService pool) throws IOException {
+        int workers = Runtime.getRuntime().availableProcessors();
+        List<Future<Chunk>> futures = new ArrayList<>();
+        for (File file : files) {
+            long length = file.length();
+            int n = (int) Math.max(1, Math.min(workers, length / MIN_CHUNK_BYTES));
+            for (int i = 0; i < n; i++) {
+                long start = length * i / n;
+                long end = length * (i + 1) / n;
+                futures.add(pool.submit(() -> parseChunk(file, start, end)));
+            }
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        try {
+            for (Future<Chunk> f : futures) {
+                chunks.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Import failed", e.getCause());
+        } finally {
+            for (Future<Chunk> f : futures) {
+                f.cancel(true);
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Parses the lines that start within [start, end) of a file. A line that
+     * started in the previous range belongs to that range and is skipped.
+     * Framed records, plain backup lines and CSV rows are accepted; the CSV
+     * header is ignored and anything else that does not parse is counted as
+     * rejected.
+     */
+    static Chunk parseChunk(File file, long start, long end) throws IOException {
+        Chunk chunk = new Chunk();
+        try (FileInputStream fin = new FileInputStream(file)) {
+            long pos = Math.max(0, start - 1);
+            fin.getChannel().position(pos);
+            InputStream in = new BufferedInputStream(fin, 64 * 1024);
+            if (start > 0) {
+                int b;
+                while ((b = in.read()) >= 0) {
+                    pos++;
+                    if (b == '\n') {
+                        break;
+                    }
+                }
+            }
+            byte[] line = new byte[128];
+            boolean eof = false;
+            while (pos < end && !eof) {
+                int length = 0;
+                int b;
+                while ((b = in.read()) >= 0 && b != '\n') {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, length * 2);
+                    }
+                    line[length++] = (byte) b;
+                    pos++;
+                }
+                if (b < 0) {
+                    eof = true;
+                } else {
+                    pos++;
+                }
+                if (length > 0) {
+                    accept(chunk, line, length);
+                }
+            }
+        }
+        chunk.events.sort(BY_TIME);
+        return chunk;
+    }
+
+    private static void accept(Chunk chunk, byte[] line, int length) {
+        WaterEvent event = SegmentStore.decodeRecord(line, length);
+        if (event == null) {
+            if (!startsWith(line, length, EventCsvWriter.HEADER.substring(0, 10))) {
+                chunk.rejected++;
+            }
+            return;
+        }
+        if (event.getTimeMillis() == 0) {
+            chunk.rejected++;
+            return;
+        }
+        chunk.events.add(event);
+    }
+
+    private static boolean startsWith(byte[] line, int length, String prefix) {
+        if (length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * K-way merges the existing events with the parsed chunks by timestamp.
+     * Existing events are always kept (and win ties, so their relative order
+     * is preserved); imported duplicates are dropped.
+     */
+    public static Result merge(List<WaterEvent> existing, List<Chunk> chunks) {
+        Result result = new Result();
+        List<List<WaterEvent>> runs = new ArrayList<>();
+        List<WaterEvent> base = new ArrayList<>(existing);
+        base.sort(BY_TIME);
+        runs.add(base);
+        for (Chunk c : chunks) {
+            runs.add(c.events);
+            result.rejected += c.rejected;
+        }
+
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, runs.size()));
+        for (int r = 0; r < runs.size(); r++) {
+            if (!runs.get(r).isEmpty()) {
+                heap.add(new Cursor(r, runs.get(r).get(0).getTimeMillis()));
+            }
+        }
+        Set<String> touched = new HashSet<>();
+        Set<String> sameSecond = new HashSet<>();
+        long currentMillis = Long.MIN_VALUE;
+        while (!heap.isEmpty()) {
+            Cursor c = heap.poll();
+            List<WaterEvent> run = runs.get(c.run);
+            WaterEvent event = run.get(c.pos);
+            if (c.timeMillis != currentMillis) {
+                sameSecond.clear();
+                currentMillis = c.timeMillis;
+            }
+            boolean fresh = sameSecond.add(SegmentStore.formatLine(event));
+            if (c.run == 0) {
+                result.merged.add(event);
+            } else if (fresh) {
+                result.merged.add(event);
+                result.added.add(event);
+                result.imported++;
+                touched.add(SegmentStore.dayKey(event));
+            } else {
+                result.duplicates++;
+            }
+            if (++c.pos < run.size()) {
+                c.timeMillis = run.get(c.pos).getTimeMillis();
+                heap.add(c);
+            }
+        }
+
+        for (WaterEvent e : result.merged) {
+            String key = SegmentStore.dayKey(e);
+            if (touched.contains(key)) {
+                List<WaterEvent> day = result.touchedDays.get(key);
+                if (day == null) {
+                    day = new ArrayList<>();
+                    result.touchedDays.put(key, day);
+                }
+                day.add(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Head of one run in the merge heap; ties go to the lower run index.
+     */
+    private static class Cursor implements Comparable<Cursor> {
+        final int run;
+        int pos;
+        long timeMillis;
+
+        Cursor(int run, long timeMillis) {
+            this.run = run;
+            this.timeMillis = timeMillis;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int byTime = Long.compare(timeMillis, other.timeMillis);
+            return byTime != 0 ? byTime : Integer.compare(run, other.run);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.thesis;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Secondary indexes over one patient's PatientEventList for filtering the
+ * event list by type, cup, amount and time:
+ *
+ * - per-type and per-cup posting lists of list positions (ascending);
+ * - time ranges by binary search over the list itself while it is
+ *   time-ordered (see PatientEventList#lowerBound).
+ *
+ * A query walks the shortest posting list within the time range and checks
+ * the remaining conditions on the primitive columns, so its cost depends on
+ * the candidates, not on the history, and snapshot rows are not faulted in.
+ * Appends are indexed in O(1); removals and imports rebuild the postings
+ * from the columns.
+ *
+ * Not thread-safe: PatientData calls it under the caller's lock.
+ */
+public class EventIndex {
+
+    /**
+     * Filter conditions; null, NaN and the Long extremes match everything.
+     */
+    public static class Filter {
+        public String type;
+        public String cup;
+        public float minAmount = Float.NaN;
+        public float maxAmount = Float.NaN;
+        public long fromMillis = Long.MIN_VALUE;
+        public long toMillis = Long.MAX_VALUE;
+
+        boolean matches(PatientEventList events, int i) {
+            if (type != null && !type.equals(events.getTypeAt(i))) {
+                return false;
+            }
+            if (cup != null && !cup.equals(events.getCupNameAt(i))) {
+                return false;
+            }
+            float amount = events.getAmountAt(i);
+            if ((!Float.isNaN(minAmount) && amount < minAmount)
+                    || (!Float.isNaN(maxAmount) && amount > maxAmount)) {
+                return false;
+            }
+            long t = events.getTimeMillisAt(i);
+            return t >= fromMillis && t < toMillis;
+        }
+
+        /**
+         * Same test for a single event, e.g. one appended after a query.
+         */
+        public boolean matches(WaterEvent e) {
+            if ((type != null && !type.equals(e.type)) || (cup != null && !cup.equals(e.cupName))) {
+                return false;
+            }
+            if ((!Float.isNaN(minAmount) && e.amount < minAmount)
+                    || (!Float.isNaN(maxAmount) && e.amount > maxAmount)) {
+                return false;
+            }
+            long t = e.getTimeMillis();
+            return t >= fromMillis && t < toMillis;
+        }
+    }
+
+    /**
+     * Matching list positions plus the point-in-time copy they refer to, so
+     * the UI can bind rows lazily while new events keep arriving. generation
+     * identifies the list state for PatientData#getEventsAppendedSince.
+     */
+    public static class Result {
+        public final PatientEventList events;
+        public final int[] positions;
+        public final long generation;
+
+        Result(PatientEventList events, int[] positions, long generation) {
+            this.events = events;
+            this.positions = positions;
+            this.generation = generation;
+        }
+
+        public int size() {
+            return positions.length;
+        }
+
+        /**
+         * The i-th match (faults only that row in).
+         */
+        public WaterEvent get(int i) {
+            return events.get(positions[i]);
+        }
+
+        /**
+         * Number of events in the unfiltered list.
+         */
+        public int total() {
+            return events.size();
+        }
+    }
+
+    /**
+     * Growable ascending list of positions.
+     */
+    private static final class Postings {
+        int[] items = new int[16];
+        int size;
+
+        void add(int position) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = position;
+        }
+
+        // First index whose position is >= value.
+        int lowerBound(int value) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (items[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    private final Map<String, Postings> byType = new HashMap<>();
+    private final Map<String, Postings> byCup = new HashMap<>();
+    // Positions [0, indexed) are in the postings.
+    private int indexed;
+
+    public void clear() {
+        byType.clear();
+        byCup.clear();
+        indexed = 0;
+    }
+
+    /**
+     * Rebuilds all postings from the primitive columns.
+     */
+    public void rebuild(PatientEventList events) {
+        clear();
+        for (int i = 0; i < events.size(); i++) {
+            append(events, i);
+        }
+    }
+
+    /**
+     * Indexes the event at position, which must be the next unindexed one
+     * (the list only grew at its end).
+     */
+    public void append(PatientEventList events, int position) {
+        postings(byType, events.getTypeAt(position)).add(position);
+        postings(byCup, events.getCupNameAt(position)).add(position);
+        indexed = position + 1;
+    }
+
+    private static Postings postings(Map<String, Postings> map, String key) {
+        Postings p = map.get(key);
+        if (p == null) {
+            p = new Postings();
+            map.put(key, p);
+        }
+        return p;
+    }
+
+    /**
+     * Cup names that occur in the list, sorted.
+     */
+    public TreeSet<String> getCupNames() {
+        return new TreeSet<>(byCup.keySet());
+    }
+
+    /**
+     * List positions of the events matching the filter, in list order.
+     */
+    public int[] query(PatientEventList events, Filter f) {
+        if (indexed != events.size()) {
+            rebuild(events);
+        }
+        int lo = 0;
+        int hi = events.size();
+        if (events.isTimeOrdered()) {
+            if (f.fromMillis != Long.MIN_VALUE) {
+                lo = events.lowerBound(f.fromMillis);
+            }
+            if (f.toMillis != Long.MAX_VALUE) {
+                hi = events.lowerBound(f.toMillis);
+            }
+        }
+
+        Postings source = null;
+        if (f.type != null) {
+            source = byType.get(f.type);
+            if (source == null) {
+                return new int[0];
+            }
+        }
+        if (f.cup != null) {
+            Postings cup = byCup.get(f.cup);
+            if (cup == null) {
+                return new int[0];
+            }
+            if (source == null || cup.size < source.size) {
+                source = cup;
+            }
+        }
+
+        int from = source != null ? source.lowerBound(lo) : lo;
+        int to = source != null ? source.lowerBound(hi) : hi;
+        int[] out = new int[Math.max(0, to - from)];
+        int n = 0;
+        for (int k = from; k < to; k++) {
+            int i = source != null ? source.items[k] : k;
+            if (f.matches(events, i)) {
+                out[n++] = i;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+}
@@ -0,0 +1,361 @@
+package com.example.thesis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary, memory-mappable snapshot of one patient's events.
+ *
+ * Layout (big endian):
+ * - Header: magic, version, watermark/record/day/string counts, flags.
+ * - Records: fixed 16 bytes each (epoch millis, amount, type id, cup id).
+ * - Day aggregates: fixed 24 bytes each (local midnight, intake/refill sums and counts).
+ * - String table: types and cup names referenced by the records.
+ * - Watermarks: segment key and byte length covered, per journal segment.
+ * - Trailer: CRC32 over everything before it.
+ *
+ * The snapshot covers the first {@link #getJournalWatermarks()} bytes of each
+ * journal segment, so startup only has to parse the lines appended after it.
+ */
+public class EventSnapshot {
+
+    private static final int MAGIC = 0x5357534E; // "SWSN"
+    private static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 16;
+    private static final int DAY_SIZE = 24;
+    private static final int TRAILER_SIZE = 8;
+
+    private static final int FLAG_TIME_ORDERED = 1;
+
+    private final ByteBuffer buffer;
+    private final Map<String, Long> watermarks;
+    private final int recordCount;
+    private final int dayCount;
+    private final int daysOffset;
+    private final String[] strings;
+    private final boolean timeOrdered;
+    // Row i is faulted in with uniqueId firstId + i.
+    private final long firstId;
+
+    private EventSnapshot(ByteBuffer buffer, Map<String, Long> watermarks, int recordCount,
+                          int dayCount, String[] strings, boolean timeOrdered) {
+        this.buffer = buffer;
+        this.watermarks = watermarks;
+        this.recordCount = recordCount;
+        this.dayCount = dayCount;
+        this.daysOffset = HEADER_SIZE + recordCount * RECORD_SIZE;
+        this.strings = strings;
+        this.timeOrdered = timeOrdered;
+        this.firstId = WaterEvent.reserveIds(recordCount);
+    }
+
+    // ------------------------------------------------------------------
+    // WRITING
+    // ------------------------------------------------------------------
+
+    /**
+     * Writes a snapshot of the given events. The file is written to a temporary
+     * sibling first and renamed, so a crash never leaves a half-written snapshot.
+     */
+    public static void write(File file, List<WaterEvent> events, Map<String, Long> watermarks)
+            throws IOException {
+        int count = events.size();
+
+        // Intern types and cups into one small string table.
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> table = new ArrayList<>();
+
+        // Aggregate per local day while walking the events once.
+        Map<Long, float[]> daySums = new HashMap<>();
+        Map<Long, int[]> dayCounts = new HashMap<>();
+        List<Long> dayOrder = new ArrayList<>();
+        Calendar cal = Calendar.getInstance();
+
+        ByteBuffer records = ByteBuffer.allocate(count * RECORD_SIZE);
+        boolean ordered = true;
+        long prevMillis = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            WaterEvent e = events.get(i);
+            long millis = e.getTimeMillis();
+            if (millis < prevMillis) {
+                ordered = false;
+            }
+            prevMillis = millis;
+
+            records.putLong(millis);
+            records.putFloat(e.amount);
+            records.putShort((short) intern(ids, table, e.type));
+            records.putShort((short) intern(ids, table, e.cupName));
+
+            long day = startOfDay(cal, millis);
+            float[] sums = daySums.get(day);
+            int[] counts = dayCounts.get(day);
+            if (sums == null) {
+                sums = new float[2];
+                counts = new int[2];
+                daySums.put(day, sums);
+                dayCounts.put(day, counts);
+                dayOrder.add(day);
+            }
+            if ("I".equals(e.type)) {
+                sums[0] += e.amount;
+                counts[0]++;
+            } else if ("R".equals(e.type)) {
+                sums[1] += e.amount;
+                counts[1]++;
+            }
+        }
+        Collections.sort(dayOrder);
+
+        byte[][] encoded = new byte[table.size()][];
+        int stringBytes = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = table.get(i).getBytes(StandardCharsets.UTF_8);
+            stringBytes += 2 + encoded[i].length;
+        }
+        List<String> segmentKeys = new ArrayList<>(watermarks.keySet());
+        Collections.sort(segmentKeys);
+        for (String key : segmentKeys) {
+            stringBytes += 2 + key.getBytes(StandardCharsets.UTF_8).length + 8;
+        }
+
+        int size = HEADER_SIZE + count * RECORD_SIZE + dayOrder.size() * DAY_SIZE
+                + stringBytes + TRAILER_SIZE;
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(segmentKeys.size());
+        out.putInt(0); // reserved
+        out.putInt(count);
+        out.putInt(dayOrder.size());
+        out.putInt(table.size());
+        out.putInt(ordered ? FLAG_TIME_ORDERED : 0);
+
+        records.flip();
+        out.put(records);
+
+        for (long day : dayOrder) {
+            float[] sums = daySums.get(day);
+            int[] counts = dayCounts.get(day);
+            out.putLong(day);
+            out.putFloat(sums[0]);
+            out.putFloat(sums[1]);
+            out.putInt(counts[0]);
+            out.putInt(counts[1]);
+        }
+
+        for (byte[] s : encoded) {
+            out.putShort((short) s.length);
+            out.put(s);
+        }
+
+        for (String key : segmentKeys) {
+            byte[] name = key.getBytes(StandardCharsets.UTF_8);
+            out.putShort((short) name.length);
+            out.put(name);
+            out.putLong(watermarks.get(key));
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, out.position());
+        out.putLong(crc.getValue());
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            fos.write(out.array());
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace snapshot " + file.getName());
+        }
+    }
+
+    private static int intern(Map<String, Integer> ids, List<String> table, String value) {
+        String key = value != null ? value : "";
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = table.size();
+            ids.put(key, id);
+            table.add(key);
+        }
+        return id;
+    }
+
+    // ------------------------------------------------------------------
+    // READING
+    // ------------------------------------------------------------------
+
+    /**
+     * Memory-maps and validates a snapshot file.
+     * Returns null if the file is missing, truncated, of an unknown version
+     * or fails the checksum; callers then fall back to the text backup.
+     */
+    public static EventSnapshot open(File file) throws IOException {
+        if (!file.exists() || file.length() < HEADER_SIZE + TRAILER_SIZE) {
+            return null;
+        }
+        MappedByteBuffer buf;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        int size = buf.capacity();
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            return null;
+        }
+        int watermarkCount = buf.getInt(8);
+        int recordCount = buf.getInt(16);
+        int dayCount = buf.getInt(20);
+        int stringCount = buf.getInt(24);
+        int flags = buf.getInt(28);
+        if (watermarkCount < 0 || recordCount < 0 || dayCount < 0 || stringCount < 0) {
+            return null;
+        }
+        long fixed = HEADER_SIZE + (long) recordCount * RECORD_SIZE
+                + (long) dayCount * DAY_SIZE + TRAILER_SIZE;
+        if (fixed > size) {
+            return null;
+        }
+
+        // Verify the checksum before trusting any offsets in the string table.
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buf.duplicate();
+        body.position(0).limit(size - TRAILER_SIZE);
+        crc.update(body);
+        if (crc.getValue() != buf.getLong(size - TRAILER_SIZE)) {
+            return null;
+        }
+
+        String[] strings = new String[stringCount];
+        int pos = HEADER_SIZE + recordCount * RECORD_SIZE + dayCount * DAY_SIZE;
+        for (int i = 0; i < stringCount; i++) {
+            strings[i] = readString(buf, pos);
+            pos += 2 + (buf.getShort(pos) & 0xFFFF);
+        }
+
+        Map<String, Long> watermarks = new HashMap<>();
+        for (int i = 0; i < watermarkCount; i++) {
+            String key = readString(buf, pos);
+            pos += 2 + (buf.getShort(pos) & 0xFFFF);
+            watermarks.put(key, buf.getLong(pos));
+            pos += 8;
+        }
+
+        return new EventSnapshot(buf, watermarks, recordCount, dayCount, strings,
+                (flags & FLAG_TIME_ORDERED) != 0);
+    }
+
+    private static String readString(ByteBuffer buf, int pos) {
+        int len = buf.getShort(pos) & 0xFFFF;
+        byte[] bytes = new byte[len];
+        ByteBuffer view = buf.duplicate();
+        view.position(pos + 2);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ------------------------------------------------------------------
+    // ACCESSORS (read straight from the mapped buffer)
+    // ------------------------------------------------------------------
+
+    /** Bytes of each journal segment (by key) already contained in this snapshot. */
+    public Map<String, Long> getJournalWatermarks() {
+        return watermarks;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /** True if record timestamps never decrease, which enables binary search. */
+    public boolean isTimeOrdered() {
+        return timeOrdered;
+    }
+
+    public long getTimeMillis(int i) {
+        return buffer.getLong(HEADER_SIZE + i * RECORD_SIZE);
+    }
+
+    public float getAmount(int i) {
+        return buffer.getFloat(HEADER_SIZE + i * RECORD_SIZE + 8);
+    }
+
+    public String getType(int i) {
+        return strings[buffer.getShort(HEADER_SIZE + i * RECORD_SIZE + 12) & 0xFFFF];
+    }
+
+    public String getCupName(int i) {
+        return strings[buffer.getShort(HEADER_SIZE + i * RECORD_SIZE + 14) & 0xFFFF];
+    }
+
+    /**
+     * Materializes record i as a new WaterEvent (used for lazy fault-in).
+     * Every call for the same row returns an event with the same uniqueId.
+     */
+    public WaterEvent getEvent(int i) {
+        return new WaterEvent(getTimeMillis(i), getType(i), getAmount(i), getCupName(i),
+                firstId + i);
+    }
+
+    /**
+     * Record whose events carry the given uniqueId, or -1 if it is not one
+     * of this snapshot's IDs.
+     */
+    public int rowOfId(long uniqueId) {
+        long row = uniqueId - firstId;
+        return row >= 0 && row < recordCount ? (int) row : -1;
+    }
+
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    public long getDayStart(int d) {
+        return buffer.getLong(daysOffset + d * DAY_SIZE);
+    }
+
+    public float getDayIntake(int d) {
+        return buffer.getFloat(daysOffset + d * DAY_SIZE + 8);
+    }
+
+    public float getDayRefill(int d) {
+        return buffer.getFloat(daysOffset + d * DAY_SIZE + 12);
+    }
+
+    public int getDayIntakeCount(int d) {
+        return buffer.getInt(daysOffset + d * DAY_SIZE + 16);
+    }
+
+    public int getDayRefillCount(int d) {
+        return buffer.getInt(daysOffset + d * DAY_SIZE + 20);
+    }
+
+    /**
+     * Local midnight of the day containing the given time.
+     */
+    static long startOfDay(Calendar c, long millis) {
+        c.setTimeInMillis(millis);
+        c.set(Calendar.HOUR_OF_DAY, 0);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        return c.getTimeInMillis();
+    }
+}
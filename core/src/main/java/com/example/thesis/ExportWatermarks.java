@@ -0,0 +1,202 @@
+package com.example.thesis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-destination export watermarks, so an incremental export only streams
+ * the events added since the last export to the same destination.
+ *
+ * A watermark is the time of the last exported event plus the number of
+ * exported events that share exactly that time (several events can have the
+ * same second). Stored as "destination,patient,lastMillis,countAtLast" lines.
+ *
+ * A finished export only stages its marks (stage()); they are committed
+ * once the file was actually delivered (commit(), e.g. when the user picked
+ * a share target). Until then the previous marks stay, so a dismissed or
+ * lost export is simply included again in the next one. Staged marks live
+ * in memory only.
+ *
+ * Incremental exports rely on the list being time-ordered; an event added
+ * with an older timestamp than the watermark (e.g. after a clock change)
+ * makes the list unordered, and {@link #startIndex} then asks for a full export.
+ */
+public class ExportWatermarks {
+
+    /**
+     * Position of the last exported event.
+     */
+    public static class Mark {
+        public final long lastMillis;
+        public final int countAtLast;
+
+        public Mark(long lastMillis, int countAtLast) {
+            this.lastMillis = lastMillis;
+            this.countAtLast = countAtLast;
+        }
+    }
+
+    private final File file;
+    private final Map<String, Mark> marks = new TreeMap<>();
+    // Staged, not yet delivered exports: id => (key => mark).
+    private final Map<Integer, Map<String, Mark>> staged = new HashMap<>();
+    private int nextStage = 1;
+
+    public ExportWatermarks(File file) throws IOException {
+        this.file = file;
+        load();
+    }
+
+    public synchronized Mark get(String destination, int patientIndex) {
+        return marks.get(key(destination, patientIndex));
+    }
+
+    /**
+     * Stores the watermark after a successful export and persists all marks.
+     */
+    public synchronized void put(String destination, int patientIndex, Mark mark) throws IOException {
+        marks.put(key(destination, patientIndex), mark);
+        save();
+    }
+
+    /**
+     * Stages the marks of a finished export (patient index => mark, null
+     * marks are ignored) and returns the id to commit them with.
+     */
+    public synchronized int stage(String destination, Map<Integer, Mark> byPatient) {
+        Map<String, Mark> entry = new HashMap<>();
+        for (Map.Entry<Integer, Mark> e : byPatient.entrySet()) {
+            if (e.getValue() != null) {
+                entry.put(key(destination, e.getKey()), e.getValue());
+            }
+        }
+        int id = nextStage++;
+        staged.put(id, entry);
+        return id;
+    }
+
+    /**
+     * Commits the marks of a delivered export and persists all marks. Marks
+     * never move backwards (an older export confirmed late changes nothing).
+     * Returns false if the id is unknown or was already committed.
+     */
+    public synchronized boolean commit(int stageId) throws IOException {
+        Map<String, Mark> entry = staged.remove(stageId);
+        if (entry == null) {
+            return false;
+        }
+        for (Map.Entry<String, Mark> e : entry.entrySet()) {
+            Mark current = marks.get(e.getKey());
+            Mark next = e.getValue();
+            if (current == null || next.lastMillis > current.lastMillis
+                    || (next.lastMillis == current.lastMillis && next.countAtLast > current.countAtLast)) {
+                marks.put(e.getKey(), next);
+            }
+        }
+        save();
+        return true;
+    }
+
+    /**
+     * Drops staged marks whose export failed or was cancelled.
+     */
+    public synchronized void discard(int stageId) {
+        staged.remove(stageId);
+    }
+
+    /**
+     * Forgets all watermarks of a destination, so its next export is full.
+     */
+    public synchronized void reset(String destination) throws IOException {
+        marks.keySet().removeIf(k -> k.startsWith(destination + ","));
+        save();
+    }
+
+    /**
+     * First list position after the watermark, 0 for a full export
+     * (no watermark, or the list is not time-ordered).
+     */
+    public static int startIndex(PatientEventList list, Mark mark) {
+        if (mark == null || !list.isTimeOrdered()) {
+            return 0;
+        }
+        int i = list.lowerBound(mark.lastMillis);
+        int skipped = 0;
+        while (i < list.size() && skipped < mark.countAtLast
+                && list.getTimeMillisAt(i) == mark.lastMillis) {
+            i++;
+            skipped++;
+        }
+        return i;
+    }
+
+    /**
+     * Watermark describing the end of the list, or null if it is empty.
+     */
+    public static Mark endOf(PatientEventList list) {
+        int n = list.size();
+        if (n == 0) {
+            return null;
+        }
+        long last = list.getTimeMillisAt(n - 1);
+        int count = 0;
+        for (int i = n - 1; i >= 0 && list.getTimeMillisAt(i) == last; i--) {
+            count++;
+        }
+        return new Mark(last, count);
+    }
+
+    // ------------------------------------------------------------------
+    // PERSISTENCE
+    // ------------------------------------------------------------------
+    private static String key(String destination, int patientIndex) {
+        return destination + "," + patientIndex;
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] p = line.split(",");
+                if (p.length != 4) {
+                    continue;
+                }
+                try {
+                    marks.put(key(p[0], Integer.parseInt(p[1])),
+                            new Mark(Long.parseLong(p[2]), Integer.parseInt(p[3])));
+                } catch (NumberFormatException ignored) {
+                    // A damaged line only means the next export to it is full.
+                }
+            }
+        }
+    }
+
+    private void save() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Mark> e : marks.entrySet()) {
+                writer.write(e.getKey() + "," + e.getValue().lastMillis
+                        + "," + e.getValue().countAtLast + "\n");
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file.getName());
+        }
+    }
+}
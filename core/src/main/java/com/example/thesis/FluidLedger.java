@@ -0,0 +1,206 @@
+package com.example.thesis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Per-cup fluid ledger of one patient that reconciles refills ("R") against
+ * intakes ("I").
+ *
+ * Each cup keeps a running level: refills raise it and intakes lower it. An
+ * intake is classified when it is added:
+ *
+ * - a single drop of SPILL_GRAMS or more counts as a suspected spill rather
+ *   than a sip;
+ * - whatever a drop takes the level below -TOLERANCE_GRAMS is unexplained
+ *   weight loss (water that was never poured into this cup as a refill, e.g.
+ *   a cup filled before tracking or sensor drift), and the level restarts
+ *   at zero.
+ *
+ * Every classified amount also goes into the ledger's own AggregateIndex
+ * (drunk as "I", refills as "R", spills as "S", unexplained as "U"), so the
+ * balance of any window is a bucket query (see getBalance). An event costs
+ * one hash lookup plus one index update; seed() replays the history from
+ * the primitive columns without faulting snapshot rows in. At startup and
+ * after removals only the last SEED_DAYS are replayed (seedRecent), so the
+ * cost stays bounded as the history grows; balances reach back that far and
+ * cup levels start empty at its beginning.
+ *
+ * Thread-safe.
+ */
+public class FluidLedger {
+
+    /**
+     * A drop at least this large is a suspected spill, not a sip.
+     */
+    public static final float SPILL_GRAMS = 250f;
+
+    /**
+     * Scale noise tolerated before a drop below empty counts as unexplained.
+     */
+    public static final float TOLERANCE_GRAMS = 5f;
+
+    /**
+     * Days replayed by seedRecent(): one more than the longest window the UI
+     * shows (1 year), so a level that starts empty has settled by then.
+     */
+    public static final int SEED_DAYS = 366;
+
+    /**
+     * Running totals of one cup.
+     */
+    public static class CupAccount {
+        public final String cup;
+        public float poured;
+        public float drunk;
+        public float spilled;
+        public float unexplained;
+        public float level;
+
+        CupAccount(String cup) {
+            this.cup = cup;
+        }
+
+        CupAccount copy() {
+            CupAccount c = new CupAccount(cup);
+            c.poured = poured;
+            c.drunk = drunk;
+            c.spilled = spilled;
+            c.unexplained = unexplained;
+            c.level = level;
+            return c;
+        }
+    }
+
+    /**
+     * Reconciled totals of a window (or of all time).
+     */
+    public static class Balance {
+        public final float poured;
+        public final float drunk;
+        public final float spilled;
+        public final float unexplained;
+
+        Balance(AggregateIndex.Bucket b) {
+            this.poured = b.refillSum;
+            this.drunk = b.intakeSum;
+            this.spilled = b.spillSum;
+            this.unexplained = b.unexplainedSum;
+        }
+
+        /**
+         * Poured minus what left the cups: positive while water is still in
+         * the cups, negative if more left them than was poured.
+         */
+        public float net() {
+            return poured - drunk - spilled;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "poured=%.0f drunk=%.0f spilled=%.0f unexplained=%.0f net=%.0f",
+                    poured, drunk, spilled, unexplained, net());
+        }
+    }
+
+    private final HashMap<String, CupAccount> cups = new HashMap<>();
+    private final AggregateIndex index = new AggregateIndex();
+
+    public synchronized void add(long timeMillis, String type, float amount, String cup) {
+        CupAccount account = cups.get(cup);
+        if (account == null) {
+            account = new CupAccount(cup);
+            cups.put(cup, account);
+        }
+        if ("R".equals(type)) {
+            account.poured += amount;
+            account.level += amount;
+            index.add(timeMillis, "R", amount);
+            return;
+        }
+        if (!"I".equals(type)) {
+            return;
+        }
+        if (amount >= SPILL_GRAMS) {
+            account.spilled += amount;
+            index.add(timeMillis, "S", amount);
+        } else {
+            account.drunk += amount;
+            index.add(timeMillis, "I", amount);
+        }
+        account.level -= amount;
+        if (account.level < -TOLERANCE_GRAMS) {
+            float missing = -account.level;
+            account.unexplained += missing;
+            index.add(timeMillis, "U", missing);
+            account.level = 0f;
+        }
+    }
+
+    public synchronized void clear() {
+        cups.clear();
+        index.clear();
+    }
+
+    /**
+     * Rebuilds the ledger by replaying all events in list order.
+     */
+    public void seed(PatientEventList events) {
+        seed(events, Long.MIN_VALUE);
+    }
+
+    /**
+     * Rebuilds the ledger from the events of the last SEED_DAYS.
+     */
+    public void seedRecent(PatientEventList events, long nowMillis) {
+        seed(events, nowMillis - SEED_DAYS * 24 * 3600_000L);
+    }
+
+    /**
+     * Rebuilds the ledger by replaying the events at or after fromMillis in
+     * list order; a time-ordered list is entered by binary search.
+     */
+    public synchronized void seed(PatientEventList events, long fromMillis) {
+        clear();
+        boolean ordered = events.isTimeOrdered();
+        int from = ordered ? events.lowerBound(fromMillis) : 0;
+        for (int i = from; i < events.size(); i++) {
+            long t = events.getTimeMillisAt(i);
+            if (ordered || t >= fromMillis) {
+                add(t, events.getTypeAt(i), events.getAmountAt(i), events.getCupNameAt(i));
+            }
+        }
+    }
+
+    /**
+     * Reconciled totals of [fromMillis, toMillis) at hour resolution (see
+     * AggregateIndex#getTotals).
+     */
+    public Balance getBalance(long fromMillis, long toMillis) {
+        return new Balance(index.getTotals(fromMillis, toMillis));
+    }
+
+    /**
+     * Copies of the cup accounts, in no particular order.
+     */
+    public synchronized List<CupAccount> getCups() {
+        List<CupAccount> out = new ArrayList<>(cups.size());
+        for (CupAccount a : cups.values()) {
+            out.add(a.copy());
+        }
+        return out;
+    }
+
+    /**
+     * Water currently in the patient's cups according to the ledger.
+     */
+    public synchronized float getWaterInCups() {
+        float sum = 0f;
+        for (CupAccount a : cups.values()) {
+            sum += a.level;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.thesis;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Fixed-size in-memory ring of log records (see CoreLog).
+ *
+ * A record is stored as its parts — time, level, tag, message template,
+ * up to three arguments and an optional throwable — in parallel arrays, so
+ * adding one is a handful of array stores and never formats a string. When
+ * the ring is full the oldest records are overwritten. Records are numbered
+ * by a running sequence, which lets the file flusher resume where it
+ * stopped and notice records it missed.
+ *
+ * Arguments are kept by reference and formatted later, so they should be
+ * immutable (strings, boxed numbers).
+ */
+final class LogRing {
+
+    private static final char[] LEVEL_CHARS = {'V', 'V', 'V', 'D', 'I', 'W', 'E', 'A'};
+
+    private final int capacity;
+    private final long[] times;
+    private final byte[] levels;
+    private final String[] tags;
+    private final String[] templates;
+    private final Object[] args;
+    private final Throwable[] errors;
+
+    // Sequence number of the next record.
+    private long head;
+
+    LogRing(int capacity) {
+        this.capacity = capacity;
+        times = new long[capacity];
+        levels = new byte[capacity];
+        tags = new String[capacity];
+        templates = new String[capacity];
+        args = new Object[capacity * 3];
+        errors = new Throwable[capacity];
+    }
+
+    synchronized void add(long timeMillis, int level, String tag, String template,
+                          Object a0, Object a1, Object a2, Throwable t) {
+        int i = (int) (head % capacity);
+        times[i] = timeMillis;
+        levels[i] = (byte) level;
+        tags[i] = tag;
+        templates[i] = template;
+        args[i * 3] = a0;
+        args[i * 3 + 1] = a1;
+        args[i * 3 + 2] = a2;
+        errors[i] = t;
+        head++;
+    }
+
+    synchronized long getHead() {
+        return head;
+    }
+
+    /**
+     * Copy of the records from sequence fromSeq on (or from the oldest
+     * still held, if fromSeq was overwritten). Formatting happens on the copy,
+     * outside the lock.
+     */
+    synchronized Batch read(long fromSeq) {
+        long oldest = Math.max(0, head - capacity);
+        long start = Math.max(fromSeq, oldest);
+        int n = (int) (head - start);
+        Batch b = new Batch(start, start - fromSeq, n);
+        for (int k = 0; k < n; k++) {
+            int i = (int) ((start + k) % capacity);
+            b.times[k] = times[i];
+            b.levels[k] = levels[i];
+            b.tags[k] = tags[i];
+            b.templates[k] = templates[i];
+            System.arraycopy(args, i * 3, b.args, k * 3, 3);
+            b.errors[k] = errors[i];
+        }
+        return b;
+    }
+
+    /**
+     * Records copied out of the ring.
+     */
+    static final class Batch {
+        final long firstSeq;
+        // Records between the requested and the first copied sequence that were overwritten.
+        final long dropped;
+        final long[] times;
+        final byte[] levels;
+        final String[] tags;
+        final String[] templates;
+        final Object[] args;
+        final Throwable[] errors;
+
+        Batch(long firstSeq, long dropped, int n) {
+            this.firstSeq = firstSeq;
+            this.dropped = dropped;
+            times = new long[n];
+            levels = new byte[n];
+            tags = new String[n];
+            templates = new String[n];
+            args = new Object[n * 3];
+            errors = new Throwable[n];
+        }
+
+        int size() {
+            return times.length;
+        }
+
+        long endSeq() {
+            return firstSeq + size();
+        }
+
+        /**
+         * Appends the records at or after minTimeMillis as text lines, e.g.
+         * "2025-01-01 12:00:00.123 D/ScaleIngest: Scale 1 => I 45.23 a".
+         */
+        void format(StringBuilder out, long minTimeMillis) {
+            SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.getDefault());
+            if (dropped > 0) {
+                out.append("... ").append(dropped).append(" log records overwritten before flush\n");
+            }
+            for (int k = 0; k < size(); k++) {
+                if (times[k] < minTimeMillis) {
+                    continue;
+                }
+                out.append(fmt.format(new Date(times[k]))).append(' ')
+                        .append(LEVEL_CHARS[levels[k] & 7]).append('/').append(tags[k]).append(": ");
+                CoreLog.formatTo(out, templates[k], args[k * 3], args[k * 3 + 1], args[k * 3 + 2]);
+                out.append('\n');
+                if (errors[k] != null) {
+                    StringWriter sw = new StringWriter();
+                    errors[k].printStackTrace(new PrintWriter(sw));
+                    out.append(sw);
+                }
+            }
+        }
+    }
+}
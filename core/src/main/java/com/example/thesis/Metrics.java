@@ -0,0 +1,157 @@
+package com.example.thesis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide registry of named counters, gauges and latency histograms.
+ *
+ * Metrics are created on first lookup and never removed; hot paths look
+ * them up once and keep the reference, so recording is lock-free (a
+ * LongAdder, an AtomicLong or a LatencyHistogram). Per-scale metrics are
+ * prefixed with scale(index), e.g. "scale1.parse":
+ *
+ * - scaleN.notifications / duplicates / rejected: ScaleIngest decisions
+ * - scaleN.parse, scaleN.store, scaleN.persist, scaleN.dispatch,
+ *   scaleN.render: notification => parse => in-memory add + journal =>
+ *   journal append => listener calls => chart and summary redraw
+ * - scaleN.ui_queue: wait for the main thread before the redraw
+ * - scaleN.reconnect: disconnect to reconnect; scaleN.disconnects,
+ *   scaleN.connected and scaleN.events: connection and list size
+ * - backup.snapshot, backup.rewrite_day, backup.rollup: storage flushes
+ *
+ * dump() renders everything as text for the debug screen and log files.
+ */
+public final class Metrics {
+
+    /**
+     * Monotonic count, e.g. of notifications.
+     */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Last observed value, e.g. an event count or a connection state.
+     */
+    public static final class Gauge {
+        private final AtomicLong value = new AtomicLong();
+
+        public void set(long v) {
+            value.set(v);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Name prefix of per-scale metrics, e.g. "scale1." for patient index 0.
+     */
+    public static String scale(int patientIndex) {
+        return "scale" + (patientIndex + 1) + ".";
+    }
+
+    public static Counter counter(String name) {
+        Counter c = counters.get(name);
+        return c != null ? c : counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    public static Gauge gauge(String name) {
+        Gauge g = gauges.get(name);
+        return g != null ? g : gauges.computeIfAbsent(name, k -> new Gauge());
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        LatencyHistogram h = histograms.get(name);
+        return h != null ? h : histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * Records System.nanoTime() - startNanos into the histogram.
+     */
+    public static void recordSince(LatencyHistogram histogram, long startNanos) {
+        histogram.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Zeroes all histograms and counters (gauges keep their last value).
+     * Registered metrics stay valid.
+     */
+    public static void reset() {
+        for (LatencyHistogram h : histograms.values()) {
+            h.reset();
+        }
+        for (Counter c : counters.values()) {
+            c.value.reset();
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // DUMP
+    // ------------------------------------------------------------------
+
+    /**
+     * All metrics as an aligned text table, sorted by name. Latencies are in
+     * milliseconds.
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Counters\n");
+        for (Map.Entry<String, Counter> e : new TreeMap<>(counters).entrySet()) {
+            sb.append(String.format(Locale.US, "  %-26s %10d%n", e.getKey(), e.getValue().get()));
+        }
+        sb.append("Gauges\n");
+        for (Map.Entry<String, Gauge> e : new TreeMap<>(gauges).entrySet()) {
+            sb.append(String.format(Locale.US, "  %-26s %10d%n", e.getKey(), e.getValue().get()));
+        }
+        sb.append(String.format(Locale.US, "Latencies (ms)%14s %10s %9s %9s %9s%n",
+                "", "count", "p50", "p99", "max"));
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(histograms).entrySet()) {
+            LatencyHistogram h = e.getValue();
+            sb.append(String.format(Locale.US, "  %-26s %10d %9.3f %9.3f %9.3f%n",
+                    e.getKey(), h.getCount(), h.getPercentile(50) / 1e6,
+                    h.getPercentile(99) / 1e6, h.getMax() / 1e6));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes dump() to a file, e.g. to attach it to an incident report.
+     */
+    public static void dumpTo(File file) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(dump());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.thesis;
+
+import java.util.Arrays;
+
+/**
+ * Streaming estimate of one quantile with the P² algorithm (Jain and
+ * Chlamtac): five markers whose heights are adjusted with a piecewise
+ * parabolic fit as values arrive. Constant memory and O(1) per value; exact
+ * for the first five values.
+ */
+class P2Quantile {
+
+    private final double p;
+    private final double[] heights = new double[5];
+    private final int[] positions = new int[5];
+    private final double[] desired = new double[5];
+    private final double[] increments;
+    private long count;
+
+    P2Quantile(double p) {
+        this.p = p;
+        this.increments = new double[]{0, p / 2, p, (1 + p) / 2, 1};
+    }
+
+    void add(double x) {
+        if (count < 5) {
+            heights[(int) count++] = x;
+            if (count == 5) {
+                Arrays.sort(heights);
+                for (int i = 0; i < 5; i++) {
+                    positions[i] = i + 1;
+                }
+                desired[0] = 1;
+                desired[1] = 1 + 2 * p;
+                desired[2] = 1 + 4 * p;
+                desired[3] = 3 + 2 * p;
+                desired[4] = 5;
+            }
+            return;
+        }
+        count++;
+
+        // Cell k with heights[k] <= x < heights[k + 1], extending the extremes.
+        int k;
+        if (x < heights[0]) {
+            heights[0] = x;
+            k = 0;
+        } else if (x >= heights[4]) {
+            heights[4] = x;
+            k = 3;
+        } else {
+            k = 0;
+            while (x >= heights[k + 1]) {
+                k++;
+            }
+        }
+        for (int i = k + 1; i < 5; i++) {
+            positions[i]++;
+        }
+        for (int i = 0; i < 5; i++) {
+            desired[i] += increments[i];
+        }
+
+        for (int i = 1; i <= 3; i++) {
+            double d = desired[i] - positions[i];
+            if ((d >= 1 && positions[i + 1] - positions[i] > 1)
+                    || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+                int s = d >= 0 ? 1 : -1;
+                double h = parabolic(i, s);
+                if (heights[i - 1] < h && h < heights[i + 1]) {
+                    heights[i] = h;
+                } else {
+                    heights[i] += s * (heights[i + s] - heights[i]) / (positions[i + s] - positions[i]);
+                }
+                positions[i] += s;
+            }
+        }
+    }
+
+    /**
+     * Current estimate, or NaN before the first value.
+     */
+    double get() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (count < 5) {
+            double[] sorted = Arrays.copyOf(heights, (int) count);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.round(p * (count - 1))];
+        }
+        return heights[2];
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    private double parabolic(int i, int s) {
+        double nPrev = positions[i - 1];
+        double n = positions[i];
+        double nNext = positions[i + 1];
+        return heights[i] + s / (nNext - nPrev)
+                * ((n - nPrev + s) * (heights[i + 1] - heights[i]) / (nNext - n)
+                + (nNext - n - s) * (heights[i] - heights[i - 1]) / (n - nPrev));
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.thesis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * In-memory state of one patient: the event list (snapshot-backed after
+ * load) and its AggregateIndex, kept in sync with a PatientStore.
+ *
+ * New events are appended to the journal and a snapshot is written every
+ * PatientStore.SNAPSHOT_INTERVAL appends; removals rewrite only the touched
+ * day and leave the snapshot to the next checkpoint. Hourly and daily totals come from the index, seeded from durable
+ * rollups, the snapshot day table and the rows appended after the snapshot.
+ * An EventIndex answers event-list filters (type, cup, amount, time).
+ *
+ * Not thread-safe: callers serialize access (the app's DataManager holds its
+ * own lock around every call). The store may be null (e.g. storage could not
+ * be opened), in which case nothing is persisted.
+ */
+public class PatientData {
+
+    private final PatientStore store;
+    private PatientEventList events = new PatientEventList();
+    private final AggregateIndex index = new AggregateIndex();
+    private final EventIndex eventIndex = new EventIndex();
+
+    // Events appended since the last snapshot.
+    private int appendsSinceSnapshot;
+    // True after a removal until the next snapshot is written.
+    private boolean snapshotStale;
+    // Bumped by every change other than an append (see getEventsAppendedSince).
+    private long generation;
+
+    public PatientData(PatientStore store) {
+        this.store = store;
+    }
+
+    public PatientStore getStore() {
+        return store;
+    }
+
+    public PatientEventList getEvents() {
+        return events;
+    }
+
+    /**
+     * Live hourly/daily index (thread-safe on its own).
+     */
+    public AggregateIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Loads the events from the store (see PatientStore#load) and rebuilds the index.
+     */
+    public void load(long nowMillis) {
+        events = store != null ? store.load(nowMillis) : new PatientEventList();
+        appendsSinceSnapshot = 0;
+        snapshotStale = false;
+        generation++;
+        rebuildIndex();
+        eventIndex.rebuild(events);
+    }
+
+    // ------------------------------------------------------------------
+    // MUTATORS
+    // ------------------------------------------------------------------
+
+    public void add(WaterEvent event) {
+        events.add(event);
+        index.add(event.getTimeMillis(), event.type, event.amount);
+        eventIndex.append(events, events.size() - 1);
+        if (store == null) {
+            return;
+        }
+        // Append to the journal; snapshot every SNAPSHOT_INTERVAL events.
+        store.append(event);
+        if (++appendsSinceSnapshot >= PatientStore.SNAPSHOT_INTERVAL) {
+            store.writeSnapshot(events);
+            appendsSinceSnapshot = 0;
+            snapshotStale = false;
+        }
+    }
+
+    /**
+     * Removes the event at a list position.
+     *
+     * @return the removed event, or null for an invalid position
+     */
+    public WaterEvent remove(int position) {
+        if (position < 0 || position >= events.size()) {
+            return null;
+        }
+        WaterEvent removed = events.remove(position);
+        generation++;
+        reindexDay(removed.getTimeMillis());
+        eventIndex.rebuild(events);
+        if (store != null) {
+            store.rewriteDay(events, removed);
+            snapshotStale = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Removes an event by its stable unique ID.
+     *
+     * @return the removed event, or null if there is none with that ID
+     */
+    public WaterEvent removeById(long eventId) {
+        int position = events.indexOfId(eventId);
+        return position >= 0 ? remove(position) : null;
+    }
+
+    /**
+     * Clears all events and rollups and persists the empty list.
+     */
+    public void clear() {
+        events.clear();
+        generation++;
+        index.clear();
+        eventIndex.clear();
+        if (store != null) {
+            store.clearRollups();
+            store.rewriteAll(events);
+            appendsSinceSnapshot = 0;
+            snapshotStale = false;
+        }
+    }
+
+    /**
+     * Writes a snapshot if events were appended or removed since the last one.
+     */
+    public void checkpoint() {
+        if (store != null && (appendsSinceSnapshot > 0 || snapshotStale)) {
+            store.writeSnapshot(events);
+            appendsSinceSnapshot = 0;
+            snapshotStale = false;
+        }
+    }
+
+    /**
+     * Merges parsed import chunks into the events (see EventImporter) and, if
+     * anything new was found, commits the touched days in one batch and
+     * reloads from the fresh snapshot.
+     */
+    public EventImporter.Result applyImport(List<EventImporter.Chunk> chunks, long nowMillis)
+            throws IOException {
+        EventImporter.Result result = EventImporter.merge(events, chunks);
+        if (result.imported > 0 && store != null) {
+            store.commitImport(result.touchedDays, result.merged);
+            load(nowMillis);
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------------
+    // INDEX
+    // ------------------------------------------------------------------
+
+    /**
+     * Rebuilds the index: rolled-up days come from the durable rollups, later
+     * snapshot days from the snapshot day table, and only rows appended after
+     * the snapshot are read individually (without faulting snapshot rows in).
+     */
+    public void rebuildIndex() {
+        index.clear();
+
+        long rolledEnd = Long.MIN_VALUE;
+        if (store != null) {
+            RollupStore rollups = store.getRollups();
+            index.addRollups(rollups.getDays(null), rollups.getHours(null));
+            rolledEnd = rollups.getRolledThroughMillis();
+        }
+
+        EventSnapshot snapshot = events.getSnapshot();
+        int from = 0;
+        if (snapshot != null) {
+            index.addSnapshotDays(snapshot, rolledEnd);
+            from = snapshot.getRecordCount();
+        }
+        for (int i = from; i < events.size(); i++) {
+            long t = events.getTimeMillisAt(i);
+            if (t >= rolledEnd) {
+                index.add(t, events.getTypeAt(i), events.getAmountAt(i));
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the index buckets of one day from the raw events, e.g. after a
+     * removal (min/max cannot be narrowed incrementally).
+     */
+    private void reindexDay(long timeMillis) {
+        long dayStart = index.startOfDay(timeMillis);
+        long dayEnd = index.startOfNextDay(timeMillis);
+        index.clearDay(dayStart);
+
+        int from = 0;
+        int to = events.size();
+        if (events.isTimeOrdered()) {
+            from = events.lowerBound(dayStart);
+            to = events.lowerBound(dayEnd);
+        }
+        for (int i = from; i < to; i++) {
+            long t = events.getTimeMillisAt(i);
+            if (t >= dayStart && t < dayEnd) {
+                index.add(t, events.getTypeAt(i), events.getAmountAt(i));
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // QUERIES
+    // ------------------------------------------------------------------
+
+    /**
+     * Events matching a filter, as positions into a point-in-time copy of the
+     * list (see EventIndex#query).
+     */
+    public EventIndex.Result query(EventIndex.Filter filter) {
+        return new EventIndex.Result(events.copy(), eventIndex.query(events, filter), generation);
+    }
+
+    /**
+     * The events at positions >= from, if the list only had events appended
+     * since a query result of this generation (see EventIndex.Result); null
+     * if it was changed otherwise (removal, clear, reload), in which case the
+     * caller queries again. Costs the number of appended events.
+     */
+    public List<WaterEvent> getEventsAppendedSince(int from, long generation) {
+        if (generation != this.generation || from > events.size()) {
+            return null;
+        }
+        return new ArrayList<>(events.subList(from, events.size()));
+    }
+
+    /**
+     * Cup names that occur in the patient's events, sorted.
+     */
+    public TreeSet<String> getCupNames() {
+        return eventIndex.getCupNames();
+    }
+
+    /**
+     * Intake of all events at or after cutoff (see AggregateIndex#getIntakeSince).
+     */
+    public float getIntakeSince(long cutoffMillis) {
+        return index.getIntakeSince(events, cutoffMillis);
+    }
+
+    /**
+     * Intake of one calendar day; dayOffset=0 => today, 1 => yesterday, etc.
+     */
+    public float getIntakeForDayOffset(long nowMillis, int dayOffset) {
+        return index.getIntakeForDayOffset(nowMillis, dayOffset);
+    }
+}
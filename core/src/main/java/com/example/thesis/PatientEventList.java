@@ -0,0 +1,347 @@
+package com.example.thesis;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Event list for one patient that can be backed by a memory-mapped
+ * {@link EventSnapshot}.
+ *
+ * Rows that come from the snapshot are only turned into WaterEvent objects
+ * when they are first accessed (e.g. when the RecyclerView binds them), so
+ * startup does not allocate the whole history. Events appended at runtime
+ * live in a regular ArrayList tail. Removing a snapshot row only records its
+ * row number in a sorted tombstone array (list positions are mapped past the
+ * tombstones by binary search), so a removal neither faults in nor copies
+ * the snapshot part; inserting in the middle and set() still materialize it.
+ *
+ * Aggregation code can read the primitive columns via {@link #getTimeMillisAt},
+ * {@link #getTypeAt} and {@link #getAmountAt} without faulting rows in.
+ */
+public class PatientEventList extends AbstractList<WaterEvent> implements RandomAccess {
+
+    private EventSnapshot base;
+    private WaterEvent[] faulted;
+    // Removed snapshot rows, ascending; [0, holeCount) are valid.
+    private int[] holes = new int[0];
+    private int holeCount;
+    private final List<WaterEvent> tail = new ArrayList<>();
+
+    // True while event times never decrease, so callers may binary search.
+    private boolean timeOrdered = true;
+    private long lastMillis = Long.MIN_VALUE;
+
+    public PatientEventList() {
+    }
+
+    public PatientEventList(EventSnapshot snapshot) {
+        this.base = snapshot;
+        this.faulted = new WaterEvent[snapshot.getRecordCount()];
+        this.timeOrdered = snapshot.isTimeOrdered();
+        int n = snapshot.getRecordCount();
+        if (n > 0) {
+            lastMillis = snapshot.getTimeMillis(n - 1);
+        }
+    }
+
+    /**
+     * Point-in-time copy for readers on other threads (e.g. export). Shares
+     * the mapped snapshot and the row objects, but not the mutable state, so
+     * later appends or removals on this list do not affect the copy.
+     */
+    public PatientEventList copy() {
+        PatientEventList copy = new PatientEventList();
+        copy.base = base;
+        copy.faulted = faulted != null ? faulted.clone() : null;
+        copy.holes = Arrays.copyOf(holes, holeCount);
+        copy.holeCount = holeCount;
+        copy.tail.addAll(tail);
+        copy.timeOrdered = timeOrdered;
+        copy.lastMillis = lastMillis;
+        return copy;
+    }
+
+    // Live snapshot rows, i.e. list positions [0, baseCount()) are snapshot rows.
+    private int baseCount() {
+        return base != null ? base.getRecordCount() - holeCount : 0;
+    }
+
+    /**
+     * Snapshot row of a list position below baseCount(): the position plus
+     * the number of tombstones before that row.
+     */
+    private int row(int index) {
+        if (holeCount == 0) {
+            return index;
+        }
+        // holes[j] - j never decreases; find the first j with holes[j] - j > index.
+        int lo = 0;
+        int hi = holeCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (holes[mid] - mid <= index) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return index + lo;
+    }
+
+    @Override
+    public WaterEvent get(int index) {
+        int b = baseCount();
+        if (index < b) {
+            if (index < 0) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            int r = row(index);
+            WaterEvent e = faulted[r];
+            if (e == null) {
+                e = base.getEvent(r);
+                faulted[r] = e;
+            }
+            return e;
+        }
+        return tail.get(index - b);
+    }
+
+    @Override
+    public int size() {
+        return baseCount() + tail.size();
+    }
+
+    @Override
+    public boolean add(WaterEvent event) {
+        trackOrder(event.getTimeMillis());
+        tail.add(event);
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void add(int index, WaterEvent event) {
+        if (index == size()) {
+            add(event);
+            return;
+        }
+        materialize();
+        tail.add(index, event);
+        recomputeOrder();
+        modCount++;
+    }
+
+    @Override
+    public WaterEvent set(int index, WaterEvent event) {
+        materialize();
+        WaterEvent old = tail.set(index, event);
+        recomputeOrder();
+        return old;
+    }
+
+    /**
+     * Removes the event at a list position. A snapshot row becomes a
+     * tombstone; removing never breaks time order.
+     */
+    @Override
+    public WaterEvent remove(int index) {
+        int b = baseCount();
+        WaterEvent old;
+        if (index < b) {
+            old = get(index);
+            addHole(row(index));
+        } else {
+            old = tail.remove(index - b);
+        }
+        if (timeOrdered) {
+            int n = size();
+            lastMillis = n > 0 ? getTimeMillisAt(n - 1) : Long.MIN_VALUE;
+        }
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        base = null;
+        faulted = null;
+        holeCount = 0;
+        tail.clear();
+        timeOrdered = true;
+        lastMillis = Long.MIN_VALUE;
+        modCount++;
+    }
+
+    // ------------------------------------------------------------------
+    // PRIMITIVE COLUMN ACCESS (no fault-in for snapshot rows)
+    // ------------------------------------------------------------------
+    public long getTimeMillisAt(int index) {
+        int b = baseCount();
+        return index < b ? base.getTimeMillis(row(index)) : tail.get(index - b).getTimeMillis();
+    }
+
+    public String getTypeAt(int index) {
+        int b = baseCount();
+        return index < b ? base.getType(row(index)) : tail.get(index - b).type;
+    }
+
+    public float getAmountAt(int index) {
+        int b = baseCount();
+        return index < b ? base.getAmount(row(index)) : tail.get(index - b).amount;
+    }
+
+    public String getCupNameAt(int index) {
+        int b = baseCount();
+        return index < b ? base.getCupName(row(index)) : tail.get(index - b).cupName;
+    }
+
+    /**
+     * Position of the event with the given uniqueId, or -1. Snapshot rows
+     * carry IDs derived from their row (see EventSnapshot#getEvent), so they
+     * are located without faulting anything in; only the tail is scanned.
+     */
+    public int indexOfId(long uniqueId) {
+        int b = baseCount();
+        if (base != null) {
+            int r = base.rowOfId(uniqueId);
+            if (r >= 0) {
+                int before = Arrays.binarySearch(holes, 0, holeCount, r);
+                return before >= 0 ? -1 : r - (-before - 1);
+            }
+        }
+        for (int i = 0; i < tail.size(); i++) {
+            if (tail.get(i).getUniqueId() == uniqueId) {
+                return b + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * True if the position is backed by the snapshot (its columns are read
+     * from the mapping), false for a runtime event.
+     */
+    public boolean isSnapshotRow(int index) {
+        return index >= 0 && index < baseCount();
+    }
+
+    /**
+     * Intake of the events with startMs <= time < endMs, located by binary
+     * search when the list is time-ordered.
+     */
+    public float sumIntake(long startMs, long endMs) {
+        int from = 0;
+        int to = size();
+        if (timeOrdered) {
+            from = lowerBound(startMs);
+            to = lowerBound(endMs);
+        }
+        float sum = 0f;
+        for (int i = from; i < to; i++) {
+            if ("I".equals(getTypeAt(i))) {
+                long t = getTimeMillisAt(i);
+                if (t >= startMs && t < endMs) {
+                    sum += getAmountAt(i);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * The snapshot backing the front of the list row for row, or null once
+     * the list has been materialized or cleared, or rows of it were removed
+     * (its record and day tables then no longer match the list).
+     */
+    public EventSnapshot getSnapshot() {
+        return holeCount == 0 ? base : null;
+    }
+
+    /**
+     * True if event times are non-decreasing in list order.
+     */
+    public boolean isTimeOrdered() {
+        return timeOrdered;
+    }
+
+    /**
+     * Returns the first position whose time is >= millis.
+     * Only meaningful while {@link #isTimeOrdered()} is true.
+     */
+    public int lowerBound(long millis) {
+        int lo = 0;
+        int hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getTimeMillisAt(mid) < millis) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // ------------------------------------------------------------------
+    // INTERNALS
+    // ------------------------------------------------------------------
+    private void trackOrder(long millis) {
+        if (millis < lastMillis) {
+            timeOrdered = false;
+        }
+        lastMillis = Math.max(lastMillis, millis);
+    }
+
+    private void recomputeOrder() {
+        timeOrdered = true;
+        lastMillis = Long.MIN_VALUE;
+        for (WaterEvent e : tail) {
+            trackOrder(e.getTimeMillis());
+        }
+    }
+
+    private void addHole(int row) {
+        int at = Arrays.binarySearch(holes, 0, holeCount, row);
+        if (at >= 0) {
+            return;
+        }
+        at = -at - 1;
+        if (holeCount == holes.length) {
+            holes = Arrays.copyOf(holes, Math.max(8, holeCount * 2));
+        }
+        System.arraycopy(holes, at, holes, at + 1, holeCount - at);
+        holes[at] = row;
+        holeCount++;
+        if (holeCount == base.getRecordCount()) {
+            base = null;
+            faulted = null;
+            holeCount = 0;
+        }
+    }
+
+    /**
+     * Faults in all live snapshot rows and moves them in front of the tail.
+     */
+    private void materialize() {
+        int b = baseCount();
+        if (b == 0) {
+            base = null;
+            faulted = null;
+            holeCount = 0;
+            return;
+        }
+        List<WaterEvent> all = new ArrayList<>(b + tail.size());
+        for (int i = 0; i < b; i++) {
+            all.add(get(i));
+        }
+        all.addAll(tail);
+        base = null;
+        faulted = null;
+        holeCount = 0;
+        tail.clear();
+        tail.addAll(all);
+    }
+}
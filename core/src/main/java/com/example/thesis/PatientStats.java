@@ -0,0 +1,174 @@
+package com.example.thesis;
+
+import java.util.Locale;
+
+/**
+ * Streaming intake statistics of one patient, updated per event in constant
+ * time and memory:
+ *
+ * - sip size: count, mean and variance (Welford), median and 90th
+ *   percentile (P² estimates);
+ * - intake rate: exponentially decayed sums with a one-hour time constant
+ *   (current rate) and a one-day one (the patient's own baseline);
+ * - time of the last intake.
+ *
+ * seed() rebuilds the state from the last SEED_MILLIS of history at startup
+ * and after edits that cannot be undone incrementally (removals, imports).
+ * Thread-safe; summarize() returns an immutable snapshot for the UI.
+ */
+public class PatientStats {
+
+    public static final long RATE_TAU_MILLIS = 3600_000L;
+    public static final long BASELINE_TAU_MILLIS = 24 * 3600_000L;
+
+    /**
+     * History replayed by seed(); a week covers several baseline time constants.
+     */
+    public static final long SEED_MILLIS = 7 * 24 * 3600_000L;
+
+    /**
+     * Point-in-time view of the statistics.
+     */
+    public static class Summary {
+        public final long sipCount;
+        public final double meanSip;
+        public final double sipStdDev;
+        public final double medianSip;
+        public final double p90Sip;
+        public final double ratePerHour;
+        public final double baselinePerHour;
+        // Long.MIN_VALUE if there is no intake in the seeded history.
+        public final long lastIntakeMillis;
+
+        Summary(long sipCount, double meanSip, double sipStdDev, double medianSip, double p90Sip,
+                double ratePerHour, double baselinePerHour, long lastIntakeMillis) {
+            this.sipCount = sipCount;
+            this.meanSip = meanSip;
+            this.sipStdDev = sipStdDev;
+            this.medianSip = medianSip;
+            this.p90Sip = p90Sip;
+            this.ratePerHour = ratePerHour;
+            this.baselinePerHour = baselinePerHour;
+            this.lastIntakeMillis = lastIntakeMillis;
+        }
+
+        /**
+         * Current rate relative to the baseline (0.2 => 20 % above it), or
+         * NaN without a baseline.
+         */
+        public double trend() {
+            return baselinePerHour > 0 ? ratePerHour / baselinePerHour - 1 : Double.NaN;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "sips=%d mean=%.1f sd=%.1f median=%.1f p90=%.1f rate=%.1f/h baseline=%.1f/h",
+                    sipCount, meanSip, sipStdDev, medianSip, p90Sip, ratePerHour, baselinePerHour);
+        }
+    }
+
+    /**
+     * Exponentially decayed sum of amounts; sum / tau is a rate that follows
+     * a steady stream and forgets old intake with time constant tau.
+     */
+    static final class DecayedRate {
+        private final double tauMillis;
+        private double value;
+        private long at = Long.MIN_VALUE;
+
+        DecayedRate(long tauMillis) {
+            this.tauMillis = tauMillis;
+        }
+
+        void add(long timeMillis, double amount) {
+            if (at == Long.MIN_VALUE) {
+                value = amount;
+                at = timeMillis;
+            } else if (timeMillis >= at) {
+                value = value * Math.exp(-(timeMillis - at) / tauMillis) + amount;
+                at = timeMillis;
+            } else {
+                // Late event: decay it to the current reference time instead.
+                value += amount * Math.exp(-(at - timeMillis) / tauMillis);
+            }
+        }
+
+        double perHour(long nowMillis) {
+            if (at == Long.MIN_VALUE) {
+                return 0;
+            }
+            double v = nowMillis > at ? value * Math.exp(-(nowMillis - at) / tauMillis) : value;
+            return v * 3600_000.0 / tauMillis;
+        }
+
+        void clear() {
+            value = 0;
+            at = Long.MIN_VALUE;
+        }
+    }
+
+    private long sipCount;
+    private double mean;
+    private double m2;
+    private final P2Quantile median = new P2Quantile(0.5);
+    private final P2Quantile p90 = new P2Quantile(0.9);
+    private final DecayedRate rate = new DecayedRate(RATE_TAU_MILLIS);
+    private final DecayedRate baseline = new DecayedRate(BASELINE_TAU_MILLIS);
+    private long lastIntakeMillis = Long.MIN_VALUE;
+
+    /**
+     * Adds one event; refills are ignored.
+     */
+    public synchronized void add(long timeMillis, String type, float amount) {
+        if (!"I".equals(type)) {
+            return;
+        }
+        sipCount++;
+        double delta = amount - mean;
+        mean += delta / sipCount;
+        m2 += delta * (amount - mean);
+        median.add(amount);
+        p90.add(amount);
+        rate.add(timeMillis, amount);
+        baseline.add(timeMillis, amount);
+        lastIntakeMillis = Math.max(lastIntakeMillis, timeMillis);
+    }
+
+    public synchronized void clear() {
+        sipCount = 0;
+        mean = 0;
+        m2 = 0;
+        median.clear();
+        p90.clear();
+        rate.clear();
+        baseline.clear();
+        lastIntakeMillis = Long.MIN_VALUE;
+    }
+
+    /**
+     * Rebuilds the statistics from the events of the last SEED_MILLIS.
+     */
+    public synchronized void seed(PatientEventList events, long nowMillis) {
+        clear();
+        long from = nowMillis - SEED_MILLIS;
+        int start = events.isTimeOrdered() ? events.lowerBound(from) : 0;
+        for (int i = start; i < events.size(); i++) {
+            long t = events.getTimeMillisAt(i);
+            if (t >= from) {
+                add(t, events.getTypeAt(i), events.getAmountAt(i));
+            }
+        }
+    }
+
+    public synchronized Summary summarize(long nowMillis) {
+        return new Summary(sipCount,
+                sipCount > 0 ? mean : Double.NaN,
+                sipCount > 1 ? Math.sqrt(m2 / (sipCount - 1)) : Double.NaN,
+                median.get(),
+                p90.get(),
+                rate.perHour(nowMillis),
+                baseline.perHour(nowMillis),
+                lastIntakeMillis);
+    }
+}
@@ -0,0 +1,422 @@
+package com.example.thesis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Durable storage of one patient under a backup directory:
+ *
+ * - patient_X/seg_yyyyMMdd.txt: per-day segments (see SegmentStore) with a
+ *   manifest of time ranges and totals; lines look like
+ *   "34|2025-01-01 12:00:00,Intake,45.23,a|8ff59f8f" (length|event|crc32).
+ *   Torn segment tails are truncated at the first bad record on open.
+ * - patient_X/snapshot.bin: binary snapshot (see EventSnapshot), written
+ *   periodically so startup only replays the segment bytes written after it.
+ * - patient_X/rollups.txt: durable hourly/daily totals of sealed segments
+ *   (see RollupStore); raw segments can optionally be dropped once rolled
+ *   up (DROP_RAW_AFTER_DAYS).
+ * - patient_X_backup.txt: old single-file backup, migrated into segments on
+ *   open and renamed.
+ *
+ * Sealed segments older than COLD_AFTER_DAYS are compacted into the cold
+ * tier, and those older than RETENTION_DAYS are archived, on load.
+ *
+ * Failures of best-effort writes are logged (see CoreLog) rather than
+ * thrown, so a full disk never takes the ward view down.
+ */
+public class PatientStore {
+
+    private static final String TAG = "PatientStore";
+
+    /**
+     * Number of appended events after which a fresh snapshot is written.
+     */
+    public static final int SNAPSHOT_INTERVAL = 500;
+
+    /**
+     * Day segments older than this many days are retired on load.
+     */
+    public static final int RETENTION_DAYS = 365;
+
+    /**
+     * true => retired segments are moved to patient_X/archive/, false => deleted.
+     */
+    public static final boolean ARCHIVE_EXPIRED = true;
+
+    /**
+     * Sealed day segments older than this many days are compacted into the
+     * cold tier (delta/dictionary encoded and deflated) on load.
+     */
+    public static final int COLD_AFTER_DAYS = 7;
+
+    /**
+     * Raw day segments older than this many days are deleted once their day is
+     * covered by durable rollups. 0 => raw events are always kept.
+     */
+    public static final int DROP_RAW_AFTER_DAYS = 0;
+
+    private static final LatencyHistogram snapshotLatency = Metrics.histogram("backup.snapshot");
+    private static final LatencyHistogram rewriteDayLatency = Metrics.histogram("backup.rewrite_day");
+    private static final LatencyHistogram rollupLatency = Metrics.histogram("backup.rollup");
+
+    private final File backupDir;
+    private final int patientIndex;
+    private final SegmentStore segments;
+    private final RollupStore rollups;
+    private final LatencyHistogram persistLatency;
+
+    /**
+     * Opens (recovering torn tails) the store of a patient and migrates an
+     * old single-file backup if there is one.
+     */
+    public PatientStore(File backupDir, int patientIndex) throws IOException {
+        this.backupDir = backupDir;
+        this.patientIndex = patientIndex;
+        this.persistLatency = Metrics.histogram(Metrics.scale(patientIndex) + "persist");
+        this.segments = new SegmentStore(getPatientDirectory());
+        if (segments.getRecoveredEvents() > 0 || segments.getTruncatedBytes() > 0) {
+            CoreLog.i(TAG, "Recovered {} events from unflushed segment tails for patient {}, truncated {} bytes",
+                    segments.getRecoveredEvents(), label(), segments.getTruncatedBytes());
+        }
+        migrateLegacyBackup();
+        this.rollups = new RollupStore(getPatientDirectory());
+    }
+
+    // Use patientIndex+1 in file names so the UI numbering matches the file names.
+    private int label() {
+        return patientIndex + 1;
+    }
+
+    public File getPatientDirectory() {
+        return new File(backupDir, "patient_" + label());
+    }
+
+    private File getLegacyBackupFile() {
+        return new File(backupDir, "patient_" + label() + "_backup.txt");
+    }
+
+    private File getSnapshotFile() {
+        return new File(getPatientDirectory(), "snapshot.bin");
+    }
+
+    public SegmentStore getSegments() {
+        return segments;
+    }
+
+    public RollupStore getRollups() {
+        return rollups;
+    }
+
+    /**
+     * Splits an old patient_X_backup.txt into day segments and renames it,
+     * so the original file is kept but no longer read. The file is read line
+     * by line like the old reader did: unreadable lines are skipped and
+     * counted, and the file is only renamed once all other lines are stored.
+     */
+    private void migrateLegacyBackup() throws IOException {
+        File legacy = getLegacyBackupFile();
+        if (!legacy.exists()) {
+            return;
+        }
+        List<WaterEvent> events = new ArrayList<>();
+        int skipped = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(legacy), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                WaterEvent event = SegmentStore.parseLegacyLine(line);
+                if (event != null) {
+                    events.add(event);
+                } else {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            CoreLog.w(TAG, "Legacy backup {}: skipped {} unreadable lines", legacy.getName(), skipped);
+        }
+        if (segments.getSegments().isEmpty()) {
+            segments.rewriteAll(events);
+        } else {
+            for (WaterEvent e : events) {
+                segments.append(e);
+            }
+            segments.flushManifest();
+        }
+        File migrated = new File(backupDir, "patient_" + label() + "_backup.migrated.txt");
+        if (!legacy.renameTo(migrated)) {
+            CoreLog.w(TAG, "Could not rename migrated backup {}", legacy.getName());
+        }
+        new File(backupDir, "patient_" + label() + "_snapshot.bin").delete();
+        CoreLog.i(TAG, "Migrated {} events for patient {} into day segments", events.size(), label());
+    }
+
+    // ------------------------------------------------------------------
+    // WRITES
+    // ------------------------------------------------------------------
+
+    /**
+     * Persists all events, rewriting every day segment. Since the whole
+     * journal changes, the snapshot is rewritten as well.
+     */
+    public void rewriteAll(List<WaterEvent> events) {
+        try {
+            segments.rewriteAll(events);
+            CoreLog.d(TAG, "Backup saved for patient {} => {}", label(), segments.getDirectory());
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error saving backup for patient {}: {}", label(), e.getMessage());
+            return;
+        }
+        writeSnapshot(events);
+    }
+
+    /**
+     * Rewrites only the day segment that contains the given event, e.g. after
+     * it was removed. Other segments are left untouched; the day's rows are
+     * located by binary search when the list is time-ordered.
+     *
+     * The snapshot is deleted rather than rewritten: its watermark of the
+     * rewritten segment is no longer valid, and the caller writes a fresh one
+     * at its next checkpoint (see PatientData#checkpoint).
+     */
+    public void rewriteDay(PatientEventList events, WaterEvent changed) {
+        long start = System.nanoTime();
+        String key = SegmentStore.dayKey(changed);
+        long dayStart = SegmentStore.dayStartMillis(key);
+        long dayEnd = SegmentStore.dayEndMillis(key);
+        int from = 0;
+        int to = events.size();
+        if (events.isTimeOrdered()) {
+            from = events.lowerBound(dayStart);
+            to = events.lowerBound(dayEnd);
+        }
+        List<WaterEvent> dayEvents = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            long t = events.getTimeMillisAt(i);
+            if (t >= dayStart && t < dayEnd) {
+                dayEvents.add(events.get(i));
+            }
+        }
+        deleteSnapshot();
+        try {
+            segments.rewriteDay(key, dayEvents);
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error rewriting segment {} for patient {}: {}", key, label(), e.getMessage());
+            return;
+        }
+        Metrics.recordSince(rewriteDayLatency, start);
+    }
+
+    /**
+     * Appends a single event to the segment of its day without rewriting anything.
+     */
+    public void append(WaterEvent event) {
+        long start = System.nanoTime();
+        try {
+            segments.append(event);
+            Metrics.recordSince(persistLatency, start);
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error appending to backup for patient {}: {}", label(), e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a fresh snapshot of the given events, covering the current segments.
+     */
+    public void writeSnapshot(List<WaterEvent> events) {
+        long start = System.nanoTime();
+        try {
+            segments.flushManifest();
+            EventSnapshot.write(getSnapshotFile(), events, segments.getLengths());
+            Metrics.recordSince(snapshotLatency, start);
+            CoreLog.d(TAG, "Snapshot written for patient {} => {} events", label(), events.size());
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error writing snapshot for patient {}: {}", label(), e.getMessage());
+        }
+    }
+
+    /**
+     * Commits an import as one batch: all touched day segments are replaced
+     * together (see SegmentStore.rewriteDays), then the snapshot is rewritten
+     * from the merged list.
+     */
+    public void commitImport(Map<String, List<WaterEvent>> days, List<WaterEvent> merged)
+            throws IOException {
+        segments.rewriteDays(days);
+        writeSnapshot(merged);
+        CoreLog.i(TAG, "Import committed for patient {} => {} day segments rewritten, {} events",
+                label(), days.size(), merged.size());
+    }
+
+    /**
+     * Rolls up sealed day segments that are new or changed since the last run.
+     * If DROP_RAW_AFTER_DAYS is set, raw segments older than that which are
+     * covered by the (already durable) rollups are deleted afterwards.
+     * Intended to run off the main thread.
+     *
+     * @return number of segments rolled up
+     */
+    public int rollUp(long nowMillis) {
+        int rolled = 0;
+        long start = System.nanoTime();
+        try {
+            rolled = rollups.rollUp(segments, nowMillis);
+            Metrics.recordSince(rollupLatency, start);
+            if (rolled > 0) {
+                CoreLog.d(TAG, "Rolled up {} segments for patient {}", rolled, label());
+            }
+            if (DROP_RAW_AFTER_DAYS > 0) {
+                Calendar c = Calendar.getInstance();
+                c.setTimeInMillis(nowMillis);
+                c.add(Calendar.DAY_OF_MONTH, -DROP_RAW_AFTER_DAYS);
+                String cutoffKey = SegmentStore.dayKey(c.getTimeInMillis());
+                List<String> drop = new ArrayList<>();
+                for (SegmentStore.Segment seg : segments.getSegments()) {
+                    if (seg.key.compareTo(cutoffKey) < 0
+                            && rollups.isRolled(seg.key, seg.bytes)) {
+                        drop.add(seg.key);
+                    }
+                }
+                // Marked first, so the next roll-up keeps these days' totals.
+                rollups.markRawDropped(drop);
+                for (String key : drop) {
+                    segments.deleteSegment(key);
+                }
+                if (!drop.isEmpty()) {
+                    CoreLog.d(TAG, "Dropped {} rolled-up raw segments for patient {}", drop.size(), label());
+                }
+            }
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error rolling up segments for patient {}: {}", label(), e.getMessage());
+        }
+        return rolled;
+    }
+
+    /**
+     * Forgets the rollups, e.g. when all events are cleared.
+     */
+    public void clearRollups() {
+        rollups.clear();
+    }
+
+    /**
+     * Deletes the segments, rollups and snapshot. Archived segments are kept.
+     */
+    public void delete() {
+        segments.deleteAll();
+        clearRollups();
+        CoreLog.i(TAG, "Backup segments deleted for patient {}", label());
+        deleteSnapshot();
+    }
+
+    private void deleteSnapshot() {
+        File snapshot = getSnapshotFile();
+        if (snapshot.exists() && !snapshot.delete()) {
+            CoreLog.w(TAG, "Failed to delete snapshot for patient {}", label());
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // READS
+    // ------------------------------------------------------------------
+
+    /**
+     * Loads the events for startup.
+     *
+     * Expired segments are retired first. If a valid snapshot exists, it is
+     * memory-mapped and only the segment bytes written after it are parsed;
+     * rows are faulted in lazily by the returned list. Otherwise all segments
+     * are read and a snapshot is written so the next start is fast.
+     */
+    public PatientEventList load(long nowMillis) {
+        try {
+            Set<String> before = segments.getLengths().keySet();
+            int retired = segments.applyRetention(nowMillis, RETENTION_DAYS, ARCHIVE_EXPIRED);
+            if (retired > 0) {
+                Set<String> gone = new HashSet<>(before);
+                gone.removeAll(segments.getLengths().keySet());
+                rollups.markRawDropped(gone);
+                CoreLog.i(TAG, "Retired {} old segments for patient {}", retired, label());
+            }
+            int compacted = segments.compactOlderThan(nowMillis, COLD_AFTER_DAYS);
+            if (compacted > 0) {
+                CoreLog.d(TAG, "Compacted {} segments to cold tier for patient {}", compacted, label());
+            }
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error applying retention for patient {}: {}", label(), e.getMessage());
+        }
+
+        EventSnapshot snapshot = null;
+        try {
+            snapshot = EventSnapshot.open(getSnapshotFile());
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error mapping snapshot for patient {}: {}", label(), e.getMessage());
+        }
+
+        if (snapshot != null) {
+            try {
+                // Null means a segment was rewritten or retired after the snapshot.
+                List<WaterEvent> tail = segments.readAfter(snapshot.getJournalWatermarks());
+                if (tail != null) {
+                    PatientEventList list = new PatientEventList(snapshot);
+                    list.addAll(tail);
+                    CoreLog.d(TAG, "Snapshot loaded for patient {} => {} events + {} from journal tail",
+                            label(), snapshot.getRecordCount(), tail.size());
+                    return list;
+                }
+            } catch (IOException e) {
+                CoreLog.e(TAG, "Error reading journal tail for patient {}: {}", label(), e.getMessage());
+            }
+        }
+
+        List<WaterEvent> events = readAll();
+        PatientEventList list = new PatientEventList();
+        list.addAll(events);
+        if (!events.isEmpty()) {
+            writeSnapshot(list);
+        }
+        return list;
+    }
+
+    /**
+     * Reads all segments from disk, converting "Intake"/"Refill" back to "I"/"R".
+     * Used on load when no valid snapshot is available.
+     */
+    public List<WaterEvent> readAll() {
+        try {
+            List<WaterEvent> result = segments.readAll();
+            CoreLog.d(TAG, "readAll => {} events from {} segments in {}",
+                    result.size(), segments.getSegments().size(), segments.getDirectory());
+            return result;
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error reading backup for patient {}: {}", label(), e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Reads only the events with fromMillis <= time < toMillis, opening just
+     * the day segments that overlap the window (e.g. "last 24h", "this week").
+     */
+    public List<WaterEvent> readRange(long fromMillis, long toMillis) {
+        try {
+            return segments.read(fromMillis, toMillis);
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error reading range for patient {}: {}", label(), e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.example.thesis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Durable hourly and daily rollups for one patient, per patient and per cup.
+ *
+ * Sealed day segments (every day before today) are rolled up once; a segment
+ * is rolled again only if its byte length changed since (e.g. after a removal).
+ * A rolled segment that no longer exists (its last event was removed) loses
+ * its totals on the next run, unless its raw events were dropped on purpose
+ * (retention, DROP_RAW_AFTER_DAYS; see markRawDropped).
+ * Rollups are kept in patient_X/rollups.txt and outlive the raw segments, so
+ * long-range summaries need only bounded work and memory, and raw events can
+ * optionally be dropped once their day has been rolled up.
+ *
+ * File format, one record per line:
+ *   S,yyyyMMdd,bytes,endMillis      rolled segment, its length at that time
+ *                                   (-1 = raw events dropped) and day end
+ *   D|H,start,cup,intakeSum,intakeCount,intakeMin,intakeMax,
+ *       refillSum,refillCount,refillMin,refillMax
+ * where cup "*" stands for all cups of the patient.
+ */
+public class RollupStore {
+
+    private static final String FILE_NAME = "rollups.txt";
+    static final String ALL_CUPS = "*";
+    // rolledSegments value of a day whose raw segment was dropped on purpose.
+    private static final long RAW_DROPPED = -1L;
+
+    private final File file;
+    // segment key => text length at roll-up time, or RAW_DROPPED
+    private final Map<String, Long> rolledSegments = new TreeMap<>();
+    // cup ("*" = all) => bucket start => totals
+    private final Map<String, TreeMap<Long, AggregateIndex.Bucket>> days = new HashMap<>();
+    private final Map<String, TreeMap<Long, AggregateIndex.Bucket>> hours = new HashMap<>();
+    private final Map<String, Long> segmentEnds = new HashMap<>();
+    private long rolledThroughMillis = Long.MIN_VALUE;
+
+    public RollupStore(File dir) throws IOException {
+        this.file = new File(dir, FILE_NAME);
+        load();
+    }
+
+    /**
+     * Rolls up every sealed segment that is new or changed since the last run,
+     * drops the totals of rolled segments that were emptied since, and
+     * persists the result (fsync + rename) before returning.
+     *
+     * @return number of segments rolled up or dropped
+     */
+    public synchronized int rollUp(SegmentStore store, long nowMillis) throws IOException {
+        String todayKey = SegmentStore.dayKey(nowMillis);
+        Calendar calendar = Calendar.getInstance();
+        int rolled = 0;
+        List<SegmentStore.Segment> segments = store.getSegments();
+        Set<String> present = new HashSet<>();
+        for (SegmentStore.Segment seg : segments) {
+            present.add(seg.key);
+        }
+        Iterator<Map.Entry<String, Long>> it = rolledSegments.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            if (e.getValue() == RAW_DROPPED || present.contains(e.getKey())) {
+                continue;
+            }
+            dropRange(SegmentStore.dayStartMillis(e.getKey()), segmentEnds.remove(e.getKey()));
+            it.remove();
+            rolled++;
+        }
+        if (rolled > 0) {
+            rolledThroughMillis = Long.MIN_VALUE;
+            for (long end : segmentEnds.values()) {
+                rolledThroughMillis = Math.max(rolledThroughMillis, end);
+            }
+        }
+        for (SegmentStore.Segment seg : segments) {
+            if (seg.key.compareTo(todayKey) >= 0) {
+                continue;
+            }
+            Long bytes = rolledSegments.get(seg.key);
+            if (bytes != null && bytes == seg.bytes) {
+                continue;
+            }
+            dropRange(seg.startMillis, seg.endMillis);
+            for (WaterEvent e : store.readDay(seg.key)) {
+                long hour = startOfHour(calendar, e.getTimeMillis());
+                bucket(days, ALL_CUPS, seg.startMillis).add(e.type, e.amount);
+                bucket(hours, ALL_CUPS, hour).add(e.type, e.amount);
+                String cup = cupKey(e.cupName);
+                bucket(days, cup, seg.startMillis).add(e.type, e.amount);
+                bucket(hours, cup, hour).add(e.type, e.amount);
+            }
+            rolledSegments.put(seg.key, seg.bytes);
+            segmentEnds.put(seg.key, seg.endMillis);
+            rolledThroughMillis = Math.max(rolledThroughMillis, seg.endMillis);
+            rolled++;
+        }
+        if (rolled > 0) {
+            save();
+        }
+        return rolled;
+    }
+
+    /**
+     * Records that the raw segments of these days are removed on purpose, so
+     * their rollups are kept as the only record. Keys that were never rolled
+     * up are ignored.
+     */
+    public synchronized void markRawDropped(Collection<String> keys) throws IOException {
+        boolean changed = false;
+        for (String key : keys) {
+            Long bytes = rolledSegments.get(key);
+            if (bytes != null && bytes != RAW_DROPPED) {
+                rolledSegments.put(key, RAW_DROPPED);
+                changed = true;
+            }
+        }
+        if (changed) {
+            save();
+        }
+    }
+
+    /**
+     * True if the segment with this key and length is covered by durable rollups.
+     */
+    public synchronized boolean isRolled(String key, long bytes) {
+        Long rolled = rolledSegments.get(key);
+        return rolled != null && rolled == bytes;
+    }
+
+    /**
+     * End of the latest rolled-up day, or Long.MIN_VALUE if nothing is rolled up.
+     * Raw events before this time are represented by the rollups.
+     */
+    public synchronized long getRolledThroughMillis() {
+        return rolledThroughMillis;
+    }
+
+    /**
+     * Daily totals for one cup, or for the whole patient with cup == null.
+     */
+    public synchronized Map<Long, AggregateIndex.Bucket> getDays(String cup) {
+        return copy(days.get(cup != null ? cupKey(cup) : ALL_CUPS));
+    }
+
+    /**
+     * Hourly totals for one cup, or for the whole patient with cup == null.
+     */
+    public synchronized Map<Long, AggregateIndex.Bucket> getHours(String cup) {
+        return copy(hours.get(cup != null ? cupKey(cup) : ALL_CUPS));
+    }
+
+    /**
+     * All-time totals of one cup as listed by getCups().
+     */
+    public synchronized AggregateIndex.Bucket getTotal(String cup) {
+        AggregateIndex.Bucket total = new AggregateIndex.Bucket();
+        TreeMap<Long, AggregateIndex.Bucket> byStart = days.get(cup);
+        if (byStart != null) {
+            for (AggregateIndex.Bucket b : byStart.values()) {
+                total.merge(b);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Start of the latest hour with events of one cup as listed by getCups(),
+     * or Long.MIN_VALUE.
+     */
+    public synchronized long getLastHourMillis(String cup) {
+        TreeMap<Long, AggregateIndex.Bucket> byStart = hours.get(cup);
+        return byStart != null && !byStart.isEmpty() ? byStart.lastKey() : Long.MIN_VALUE;
+    }
+
+    /**
+     * Cup names that appear in the rollups.
+     */
+    public synchronized List<String> getCups() {
+        List<String> cups = new ArrayList<>();
+        for (String cup : days.keySet()) {
+            if (!ALL_CUPS.equals(cup)) {
+                cups.add(cup);
+            }
+        }
+        return cups;
+    }
+
+    /**
+     * Forgets all rollups and deletes the file.
+     */
+    public synchronized void clear() {
+        rolledSegments.clear();
+        segmentEnds.clear();
+        days.clear();
+        hours.clear();
+        rolledThroughMillis = Long.MIN_VALUE;
+        file.delete();
+    }
+
+    // ------------------------------------------------------------------
+    // INTERNALS
+    // ------------------------------------------------------------------
+    private static String cupKey(String cup) {
+        return cup == null || cup.isEmpty() ? "-" : cup;
+    }
+
+    private static long startOfHour(Calendar calendar, long timeMillis) {
+        calendar.setTimeInMillis(timeMillis);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    private static AggregateIndex.Bucket bucket(Map<String, TreeMap<Long, AggregateIndex.Bucket>> level,
+                                                String cup, long start) {
+        TreeMap<Long, AggregateIndex.Bucket> byStart = level.get(cup);
+        if (byStart == null) {
+            byStart = new TreeMap<>();
+            level.put(cup, byStart);
+        }
+        AggregateIndex.Bucket b = byStart.get(start);
+        if (b == null) {
+            b = new AggregateIndex.Bucket();
+            byStart.put(start, b);
+        }
+        return b;
+    }
+
+    private void dropRange(long fromMillis, long toMillis) {
+        for (TreeMap<Long, AggregateIndex.Bucket> m : days.values()) {
+            m.subMap(fromMillis, true, toMillis, false).clear();
+        }
+        for (TreeMap<Long, AggregateIndex.Bucket> m : hours.values()) {
+            m.subMap(fromMillis, true, toMillis, false).clear();
+        }
+    }
+
+    private static Map<Long, AggregateIndex.Bucket> copy(TreeMap<Long, AggregateIndex.Bucket> src) {
+        TreeMap<Long, AggregateIndex.Bucket> out = new TreeMap<>();
+        if (src != null) {
+            for (Map.Entry<Long, AggregateIndex.Bucket> e : src.entrySet()) {
+                AggregateIndex.Bucket b = new AggregateIndex.Bucket();
+                b.merge(e.getValue());
+                out.put(e.getKey(), b);
+            }
+        }
+        return out;
+    }
+
+    private void save() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             Writer writer = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> e : rolledSegments.entrySet()) {
+                writer.write("S," + e.getKey() + "," + e.getValue()
+                        + "," + segmentEnds.get(e.getKey()) + "\n");
+            }
+            writeLevel(writer, "D", days);
+            writeLevel(writer, "H", hours);
+            writer.flush();
+            // Rollups must be durable before raw segments may be dropped.
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + FILE_NAME);
+        }
+    }
+
+    private static void writeLevel(Writer writer, String tag,
+                                   Map<String, TreeMap<Long, AggregateIndex.Bucket>> level)
+            throws IOException {
+        for (Map.Entry<String, TreeMap<Long, AggregateIndex.Bucket>> cup : level.entrySet()) {
+            for (Map.Entry<Long, AggregateIndex.Bucket> e : cup.getValue().entrySet()) {
+                AggregateIndex.Bucket b = e.getValue();
+                writer.write(tag + "," + e.getKey() + "," + cup.getKey()
+                        + "," + b.intakeSum + "," + b.intakeCount
+                        + "," + b.intakeMin + "," + b.intakeMax
+                        + "," + b.refillSum + "," + b.refillCount
+                        + "," + b.refillMin + "," + b.refillMax + "\n");
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] p = line.split(",");
+                try {
+                    if ("S".equals(p[0]) && p.length == 4) {
+                        long end = Long.parseLong(p[3]);
+                        rolledSegments.put(p[1], Long.parseLong(p[2]));
+                        segmentEnds.put(p[1], end);
+                        rolledThroughMillis = Math.max(rolledThroughMillis, end);
+                    } else if (("D".equals(p[0]) || "H".equals(p[0])) && p.length == 11) {
+                        AggregateIndex.Bucket b = bucket("D".equals(p[0]) ? days : hours,
+                                p[2], Long.parseLong(p[1]));
+                        b.intakeSum = Float.parseFloat(p[3]);
+                        b.intakeCount = Integer.parseInt(p[4]);
+                        b.intakeMin = Float.parseFloat(p[5]);
+                        b.intakeMax = Float.parseFloat(p[6]);
+                        b.refillSum = Float.parseFloat(p[7]);
+                        b.refillCount = Integer.parseInt(p[8]);
+                        b.refillMin = Float.parseFloat(p[9]);
+                        b.refillMax = Float.parseFloat(p[10]);
+                    }
+                } catch (NumberFormatException ignored) {
+                    // A damaged line only loses that bucket; it is rebuilt on the next re-roll.
+                }
+            }
+        }
+    }
+}
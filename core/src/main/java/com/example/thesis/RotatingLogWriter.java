@@ -0,0 +1,55 @@
+package com.example.thesis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Appends text to name.log in a directory and rotates it to name.1.log,
+ * name.2.log, ... once it would exceed maxBytes, keeping at most maxFiles
+ * files in total.
+ */
+class RotatingLogWriter {
+
+    private final File dir;
+    private final String name;
+    private final long maxBytes;
+    private final int maxFiles;
+
+    RotatingLogWriter(File dir, String name, long maxBytes, int maxFiles) {
+        this.dir = dir;
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+    }
+
+    File getFile(int generation) {
+        return new File(dir, generation == 0 ? name + ".log" : name + "." + generation + ".log");
+    }
+
+    synchronized void append(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        File current = getFile(0);
+        if (current.length() > 0 && current.length() + bytes.length > maxBytes) {
+            rotate();
+        }
+        try (OutputStream out = new FileOutputStream(current, true)) {
+            out.write(bytes);
+        }
+    }
+
+    private void rotate() throws IOException {
+        File oldest = getFile(maxFiles - 1);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("Could not delete " + oldest.getName());
+        }
+        for (int g = maxFiles - 2; g >= 0; g--) {
+            File f = getFile(g);
+            if (f.exists() && !f.renameTo(getFile(g + 1))) {
+                throw new IOException("Could not rotate " + f.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.thesis;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Ingest path of one scale: turns raw TX notification bytes into
+ * WaterEvents and hands them to a sink.
+ *
+ * Identical payloads arriving within DUPLICATE_WINDOW_MS are dropped (the
+ * scale sometimes repeats a notification), and payloads that do not match
+ * "I 45.23 cup_a" are rejected. The event timestamp is the receive time, so
+ * the same notifications always produce the same events; this is what the
+ * BLE manager runs live and what TraceReplay runs against recorded traces.
+ *
+ * Coasters in raw-sample mode instead stream load-cell readings as
+ * "W cup_a 12.5 312.40 312.55 ..." (cup, sample interval in ms, readings in
+ * grams, oldest first). These skip the duplicate filter, are parsed without
+ * allocating and go through this scale's SipDetector, whose intake and
+ * refill events reach the sink like event lines do. The detector starts over
+ * when the coaster reports a different cup and after a disconnect
+ * (onDisconnected), so a level from before never turns into an event.
+ */
+public class ScaleIngest {
+
+    private static final String TAG = "ScaleIngest";
+
+    /**
+     * Identical payloads closer together than this are treated as duplicates.
+     */
+    public static final long DUPLICATE_WINDOW_MS = 500;
+
+    /**
+     * What happened to one notification.
+     */
+    public enum Decision {
+        ACCEPTED,
+        DUPLICATE,
+        REJECTED,
+        // Raw readings handed to the SipDetector (events, if any, went to the sink).
+        SAMPLES
+    }
+
+    /**
+     * Receives the events of accepted notifications.
+     */
+    public interface EventSink {
+        void onEvent(int patientIndex, WaterEvent event);
+    }
+
+    private final int patientIndex;
+    private final EventSink sink;
+
+    private final Metrics.Counter notifications;
+    private final Metrics.Counter duplicates;
+    private final Metrics.Counter rejected;
+    private final LatencyHistogram parseLatency;
+    private final Metrics.Counter samples;
+    private final LatencyHistogram dspLatency;
+
+    // Raw-sample mode: detector of this scale, cup of the last payload and
+    // parse position within the current payload.
+    private final SipDetector detector;
+    private String rawCup = "";
+    private int pos;
+
+    // Used to filter out duplicate payloads arriving in quick succession.
+    private long lastDataTime = 0;
+    private String lastDataValue = "";
+
+    public ScaleIngest(int patientIndex, EventSink sink) {
+        this(patientIndex, sink, new SipDetector.Config());
+    }
+
+    public ScaleIngest(int patientIndex, EventSink sink, SipDetector.Config sipConfig) {
+        this.patientIndex = patientIndex;
+        this.sink = sink;
+        String prefix = Metrics.scale(patientIndex);
+        notifications = Metrics.counter(prefix + "notifications");
+        duplicates = Metrics.counter(prefix + "duplicates");
+        rejected = Metrics.counter(prefix + "rejected");
+        parseLatency = Metrics.histogram(prefix + "parse");
+        samples = Metrics.counter(prefix + "samples");
+        dspLatency = Metrics.histogram(prefix + "dsp");
+        detector = new SipDetector(sipConfig, this::onDetectedChange);
+    }
+
+    /**
+     * Handles one TX notification received at receivedMillis.
+     */
+    public synchronized Decision onNotification(byte[] value, long receivedMillis) {
+        notifications.inc();
+        if (value.length > 1 && value[0] == 'W' && value[1] == ' ') {
+            return onRawSamples(value, receivedMillis);
+        }
+        long start = System.nanoTime();
+        String val = new String(value, StandardCharsets.UTF_8);
+        CoreLog.d(TAG, "Scale {} => {}", patientIndex + 1, val);
+
+        // Basic debounce: drop identical packets within 500 ms.
+        if (val.equals(lastDataValue) && (receivedMillis - lastDataTime < DUPLICATE_WINDOW_MS)) {
+            CoreLog.d(TAG, "Scale {}: skipping duplicate data {}", patientIndex + 1, val);
+            duplicates.inc();
+            return Decision.DUPLICATE;
+        }
+        lastDataValue = val;
+        lastDataTime = receivedMillis;
+
+        // expected format: "I 45.23 x"
+        WaterEvent ev;
+        try {
+            ev = WaterEvent.fromScalePayload(val, WaterEvent.formatTimestamp(receivedMillis));
+        } catch (NumberFormatException e) {
+            CoreLog.e(TAG, "Scale {}: unreadable payload {} ({})", patientIndex + 1, val, e.getMessage());
+            rejected.inc();
+            return Decision.REJECTED;
+        }
+        if (ev == null) {
+            CoreLog.w(TAG, "Scale {}: unexpected payload {}", patientIndex + 1, val);
+            rejected.inc();
+            return Decision.REJECTED;
+        }
+        Metrics.recordSince(parseLatency, start);
+        sink.onEvent(patientIndex, ev);
+        return Decision.ACCEPTED;
+    }
+
+    /**
+     * Forgets the raw-sample state after the link dropped: the cup may have
+     * been lifted, refilled or swapped while no readings arrived.
+     */
+    public synchronized void onDisconnected() {
+        detector.reset();
+        rawCup = "";
+    }
+
+    // ------------------------------------------------------------------
+    // RAW-SAMPLE MODE
+    // ------------------------------------------------------------------
+
+    private Decision onRawSamples(byte[] value, long receivedMillis) {
+        long start = System.nanoTime();
+        pos = 1;
+        skipSpaces(value);
+        int cupStart = pos;
+        while (pos < value.length && value[pos] != ' ') {
+            pos++;
+        }
+        int cupEnd = pos;
+        float interval = parseNumber(value);
+        int count = countTokens(value);
+        if (cupEnd == cupStart || Float.isNaN(interval) || count == 0) {
+            CoreLog.w(TAG, "Scale {}: unexpected raw payload of {} bytes", patientIndex + 1, value.length);
+            rejected.inc();
+            return Decision.REJECTED;
+        }
+        if (!isCup(value, cupStart, cupEnd)) {
+            // Only allocates when the coaster reports a different cup, whose
+            // level has nothing to do with the previous cup's.
+            rawCup = new String(value, cupStart, cupEnd - cupStart, StandardCharsets.UTF_8);
+            detector.reset();
+        }
+
+        for (int k = 0; k < count; k++) {
+            float grams = parseNumber(value);
+            if (Float.isNaN(grams)) {
+                rejected.inc();
+                return Decision.REJECTED;
+            }
+            // Readings are evenly spaced and the last one is the newest.
+            detector.process(grams, receivedMillis - (long) ((count - 1 - k) * interval));
+        }
+        samples.add(count);
+        Metrics.recordSince(dspLatency, start);
+        return Decision.SAMPLES;
+    }
+
+    private void onDetectedChange(boolean intake, float grams, long timeMillis) {
+        CoreLog.d(TAG, "Scale {}: detected {} g {}", patientIndex + 1, grams, intake ? "intake" : "refill");
+        sink.onEvent(patientIndex,
+                new WaterEvent(WaterEvent.formatTimestamp(timeMillis), intake ? "I" : "R", grams, rawCup));
+    }
+
+    private boolean isCup(byte[] value, int from, int to) {
+        if (rawCup.length() != to - from) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (rawCup.charAt(i - from) != (char) value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipSpaces(byte[] value) {
+        while (pos < value.length && (value[pos] == ' ' || value[pos] == '\r' || value[pos] == '\n')) {
+            pos++;
+        }
+    }
+
+    /**
+     * Number of space-separated tokens from pos on, without moving pos.
+     */
+    private int countTokens(byte[] value) {
+        int count = 0;
+        boolean inToken = false;
+        for (int i = pos; i < value.length; i++) {
+            boolean space = value[i] == ' ' || value[i] == '\r' || value[i] == '\n';
+            if (!space && !inToken) {
+                count++;
+            }
+            inToken = !space;
+        }
+        return count;
+    }
+
+    /**
+     * Parses a decimal like "-312.55" at pos, or returns NaN if there is none.
+     */
+    private float parseNumber(byte[] value) {
+        skipSpaces(value);
+        boolean negative = pos < value.length && value[pos] == '-';
+        if (negative) {
+            pos++;
+        }
+        long mantissa = 0;
+        int scale = 0;
+        int digits = 0;
+        boolean fraction = false;
+        for (; pos < value.length; pos++) {
+            byte b = value[pos];
+            if (b >= '0' && b <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (fraction) {
+                        scale++;
+                    }
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0 || (pos < value.length && value[pos] != ' '
+                && value[pos] != '\r' && value[pos] != '\n')) {
+            return Float.NaN;
+        }
+        double result = mantissa;
+        for (int i = 0; i < scale; i++) {
+            result /= 10;
+        }
+        return (float) (negative ? -result : result);
+    }
+}
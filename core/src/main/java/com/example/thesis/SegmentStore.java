@@ -0,0 +1,927 @@
+package com.example.thesis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Time-partitioned storage for one patient's events.
+ *
+ * Events are stored in one text segment per local day (seg_yyyyMMdd.txt),
+ * using the same line format as the old single backup file. A small
+ * manifest.txt keeps each segment's time range, byte length, event count
+ * and intake/refill totals, so range queries only open the segments that
+ * overlap the requested window and retention can drop whole old segments
+ * without touching the active one.
+ *
+ * Sealed segments older than a configurable age can be compacted into the
+ * cold tier (seg_yyyyMMdd.cold, see ColdSegmentCodec). Cold segments are
+ * decoded transparently by all read paths; the manifest keeps their logical
+ * text length so snapshot watermarks stay valid across compaction.
+ *
+ * Each line is a framed record "length|payload|crc32", where payload is the
+ * plain event line, length its UTF-8 byte count and crc32 its checksum in hex.
+ * Lines without framing (older files) are still accepted.
+ *
+ * The manifest is written lazily (on day rollover, rewrites and flush). On
+ * open, a segment that grew since the manifest is only scanned from the
+ * length recorded there, so recovery after a crash is bounded by the
+ * unflushed tail; the scan stops at the first torn or corrupt record (bad
+ * frame or checksum) and truncates the segment there. A record that is
+ * intact but whose payload does not parse is skipped and counted in
+ * "store.unreadable", so the records after it are kept.
+ */
+public class SegmentStore {
+
+    private static final String TAG = "SegmentStore";
+
+    private static final Metrics.Counter unreadable = Metrics.counter("store.unreadable");
+
+    private static final String SEGMENT_PREFIX = "seg_";
+    private static final String SEGMENT_SUFFIX = ".txt";
+    private static final String COLD_SUFFIX = ".cold";
+    private static final String MANIFEST = "manifest.txt";
+    private static final String ARCHIVE_DIR = "archive";
+
+    /**
+     * Manifest entry for one day segment.
+     */
+    public static class Segment {
+        public final String key;        // "yyyyMMdd"
+        public final long startMillis;  // local midnight
+        public final long endMillis;    // next local midnight
+        public long bytes;              // length of the text form
+        public boolean cold;            // stored in the compact cold tier
+        public int count;
+        public float intakeSum;
+        public float refillSum;
+
+        Segment(String key, long startMillis, long endMillis) {
+            this.key = key;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+        }
+
+        void add(WaterEvent e) {
+            count++;
+            if ("I".equals(e.type)) {
+                intakeSum += e.amount;
+            } else if ("R".equals(e.type)) {
+                refillSum += e.amount;
+            }
+        }
+    }
+
+    private final File dir;
+    private final TreeMap<String, Segment> segments = new TreeMap<>();
+    private String lastAppendKey;
+
+    // Outcome of the recovery scan on open.
+    private int recoveredEvents;
+    private long truncatedBytes;
+
+    public SegmentStore(File dir) throws IOException {
+        this.dir = dir;
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        loadManifest();
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Number of events read back from segment tails that were not yet
+     * covered by the manifest when the store was opened.
+     */
+    public int getRecoveredEvents() {
+        return recoveredEvents;
+    }
+
+    /**
+     * Number of bytes cut off torn or corrupt segment tails on open.
+     */
+    public long getTruncatedBytes() {
+        return truncatedBytes;
+    }
+
+    // ------------------------------------------------------------------
+    // WRITES
+    // ------------------------------------------------------------------
+
+    /**
+     * Appends one event to the segment of its day.
+     */
+    public synchronized void append(WaterEvent event) throws IOException {
+        String key = dayKey(event);
+        Segment seg = segmentFor(key);
+        if (seg.cold) {
+            thaw(seg);
+        }
+        byte[] line = encodeRecord(event);
+        try (FileOutputStream out = new FileOutputStream(segmentFile(key), true)) {
+            out.write(line);
+        }
+        seg.bytes += line.length;
+        seg.add(event);
+
+        // Persist the manifest when the active segment rolls over.
+        if (lastAppendKey != null && !lastAppendKey.equals(key)) {
+            writeManifest();
+        }
+        lastAppendKey = key;
+    }
+
+    /**
+     * Replaces the content of one day segment (e.g. after a removal).
+     * An empty list deletes the segment.
+     */
+    public synchronized void rewriteDay(String key, List<WaterEvent> dayEvents) throws IOException {
+        File file = segmentFile(key);
+        coldFile(key).delete();
+        if (dayEvents.isEmpty()) {
+            file.delete();
+            segments.remove(key);
+        } else {
+            Segment seg = newSegment(key);
+            seg.bytes = writeSegment(file, dayEvents, seg);
+            segments.put(key, seg);
+        }
+        writeManifest();
+    }
+
+    /**
+     * Rewrites the whole store from the given events, partitioned by day.
+     */
+    public synchronized void rewriteAll(List<WaterEvent> events) throws IOException {
+        Map<String, List<WaterEvent>> byDay = new TreeMap<>();
+        for (WaterEvent e : events) {
+            String key = dayKey(e);
+            List<WaterEvent> day = byDay.get(key);
+            if (day == null) {
+                day = new ArrayList<>();
+                byDay.put(key, day);
+            }
+            day.add(e);
+        }
+        for (String key : new ArrayList<>(segments.keySet())) {
+            if (!byDay.containsKey(key)) {
+                segmentFile(key).delete();
+                coldFile(key).delete();
+                segments.remove(key);
+            }
+        }
+        for (Map.Entry<String, List<WaterEvent>> entry : byDay.entrySet()) {
+            Segment seg = newSegment(entry.getKey());
+            seg.bytes = writeSegment(segmentFile(entry.getKey()), entry.getValue(), seg);
+            coldFile(entry.getKey()).delete();
+            segments.put(entry.getKey(), seg);
+        }
+        writeManifest();
+    }
+
+    /**
+     * Replaces several day segments as one batch (e.g. after an import). All
+     * new segment files are written first and only renamed into place once
+     * every write succeeded; the manifest is written once at the end.
+     */
+    public synchronized void rewriteDays(Map<String, List<WaterEvent>> days) throws IOException {
+        Map<String, Segment> staged = new TreeMap<>();
+        try {
+            for (Map.Entry<String, List<WaterEvent>> entry : days.entrySet()) {
+                Segment seg = newSegment(entry.getKey());
+                seg.bytes = writeRecords(stagingFile(entry.getKey()), entry.getValue(), seg);
+                staged.put(entry.getKey(), seg);
+            }
+        } catch (IOException e) {
+            for (String key : days.keySet()) {
+                stagingFile(key).delete();
+            }
+            throw e;
+        }
+        for (Map.Entry<String, Segment> entry : staged.entrySet()) {
+            String key = entry.getKey();
+            if (!stagingFile(key).renameTo(segmentFile(key))) {
+                stagingFile(key).delete();
+                throw new IOException("Could not replace " + segmentFile(key).getName());
+            }
+            coldFile(key).delete();
+            segments.put(key, entry.getValue());
+        }
+        writeManifest();
+    }
+
+    /**
+     * Deletes all segments and the manifest.
+     */
+    public synchronized void deleteAll() {
+        for (String key : segments.keySet()) {
+            segmentFile(key).delete();
+            coldFile(key).delete();
+        }
+        segments.clear();
+        new File(dir, MANIFEST).delete();
+        lastAppendKey = null;
+    }
+
+    /**
+     * Deletes one segment, e.g. after its day was rolled up and raw events
+     * are no longer kept.
+     */
+    public synchronized void deleteSegment(String key) throws IOException {
+        if (segments.remove(key) == null) {
+            return;
+        }
+        segmentFile(key).delete();
+        coldFile(key).delete();
+        writeManifest();
+    }
+
+    /**
+     * Persists the manifest now (e.g. from a checkpoint) so the next open
+     * does not have to rescan the active segment.
+     */
+    public synchronized void flushManifest() throws IOException {
+        writeManifest();
+    }
+
+    /**
+     * Archives (moves to archive/) or deletes sealed segments whose day ended
+     * more than keepDays before now. The segment for "today" is never touched.
+     *
+     * @return number of segments removed from the active store
+     */
+    public synchronized int applyRetention(long nowMillis, int keepDays, boolean archive)
+            throws IOException {
+        String todayKey = dayKey(nowMillis);
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(nowMillis);
+        c.add(Calendar.DAY_OF_MONTH, -keepDays);
+        String cutoffKey = dayKey(c.getTimeInMillis());
+
+        File archiveDir = new File(dir, ARCHIVE_DIR);
+        int removed = 0;
+        for (String key : new ArrayList<>(segments.headMap(cutoffKey, false).keySet())) {
+            if (key.equals(todayKey)) {
+                continue;
+            }
+            File file = segments.get(key).cold ? coldFile(key) : segmentFile(key);
+            if (archive) {
+                if (!archiveDir.exists() && !archiveDir.mkdirs()) {
+                    throw new IOException("Could not create " + archiveDir);
+                }
+                if (!file.renameTo(new File(archiveDir, file.getName()))) {
+                    continue;
+                }
+            } else if (!file.delete()) {
+                continue;
+            }
+            segments.remove(key);
+            removed++;
+        }
+        if (removed > 0) {
+            writeManifest();
+        }
+        return removed;
+    }
+
+    /**
+     * Moves sealed text segments whose day is more than afterDays old into the
+     * compact cold tier. The segment for "today" is never touched, and
+     * segments that would not round-trip exactly are left as text.
+     *
+     * @return number of segments compacted
+     */
+    public synchronized int compactOlderThan(long nowMillis, int afterDays) throws IOException {
+        String todayKey = dayKey(nowMillis);
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(nowMillis);
+        c.add(Calendar.DAY_OF_MONTH, -afterDays);
+        String cutoffKey = dayKey(c.getTimeInMillis());
+
+        int compacted = 0;
+        List<WaterEvent> events = new ArrayList<>();
+        for (Segment seg : segments.headMap(cutoffKey, false).values()) {
+            if (seg.cold || seg.key.equals(todayKey)) {
+                continue;
+            }
+            events.clear();
+            readRecords(segmentFile(seg.key), 0, events);
+            if (!ColdSegmentCodec.canEncode(events)) {
+                continue;
+            }
+            File cold = coldFile(seg.key);
+            File tmp = new File(cold.getPath() + ".tmp");
+            ColdSegmentCodec.write(tmp, events, seg.startMillis);
+            if (!tmp.renameTo(cold)) {
+                tmp.delete();
+                continue;
+            }
+            // Text wins if both exist, so deleting it last keeps a crash safe.
+            segmentFile(seg.key).delete();
+            seg.cold = true;
+            compacted++;
+        }
+        if (compacted > 0) {
+            writeManifest();
+        }
+        return compacted;
+    }
+
+    // ------------------------------------------------------------------
+    // READS
+    // ------------------------------------------------------------------
+
+    /**
+     * Reads all events in day order.
+     */
+    public synchronized List<WaterEvent> readAll() throws IOException {
+        List<WaterEvent> result = new ArrayList<>();
+        for (Segment seg : segments.values()) {
+            readSegment(seg, 0, result);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the events of one day segment; empty if there is none.
+     */
+    public synchronized List<WaterEvent> readDay(String key) throws IOException {
+        List<WaterEvent> result = new ArrayList<>();
+        Segment seg = segments.get(key);
+        if (seg != null) {
+            readSegment(seg, 0, result);
+        }
+        return result;
+    }
+
+    /**
+     * Reads events with fromMillis <= time < toMillis, opening only the
+     * segments whose day overlaps that window.
+     */
+    public synchronized List<WaterEvent> read(long fromMillis, long toMillis) throws IOException {
+        List<WaterEvent> result = new ArrayList<>();
+        List<WaterEvent> buffer = new ArrayList<>();
+        for (Segment seg : segments.values()) {
+            if (seg.endMillis <= fromMillis || seg.startMillis >= toMillis) {
+                continue;
+            }
+            boolean fullyInside = seg.startMillis >= fromMillis && seg.endMillis <= toMillis;
+            if (fullyInside) {
+                readSegment(seg, 0, result);
+                continue;
+            }
+            buffer.clear();
+            readSegment(seg, 0, buffer);
+            for (WaterEvent e : buffer) {
+                long t = e.getTimeMillis();
+                if (t >= fromMillis && t < toMillis) {
+                    result.add(e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Intake total for fromMillis <= time < toMillis. Segments fully inside
+     * the window are answered from the manifest; only the boundary days are read.
+     */
+    public synchronized float getIntakeSum(long fromMillis, long toMillis) throws IOException {
+        float sum = 0f;
+        List<WaterEvent> buffer = new ArrayList<>();
+        for (Segment seg : segments.values()) {
+            if (seg.endMillis <= fromMillis || seg.startMillis >= toMillis) {
+                continue;
+            }
+            if (seg.startMillis >= fromMillis && seg.endMillis <= toMillis) {
+                sum += seg.intakeSum;
+                continue;
+            }
+            buffer.clear();
+            readSegment(seg, 0, buffer);
+            for (WaterEvent e : buffer) {
+                long t = e.getTimeMillis();
+                if ("I".equals(e.type) && t >= fromMillis && t < toMillis) {
+                    sum += e.amount;
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Current byte length of every segment, used as snapshot watermark.
+     */
+    public synchronized Map<String, Long> getLengths() {
+        Map<String, Long> lengths = new HashMap<>();
+        for (Segment seg : segments.values()) {
+            lengths.put(seg.key, seg.bytes);
+        }
+        return lengths;
+    }
+
+    /**
+     * Reads everything written after the given watermarks (segment key => bytes).
+     * Returns null if the watermarks no longer describe a prefix of the store,
+     * e.g. because a segment was rewritten or expired.
+     */
+    public synchronized List<WaterEvent> readAfter(Map<String, Long> watermarks) throws IOException {
+        for (String key : watermarks.keySet()) {
+            if (!segments.containsKey(key)) {
+                return null;
+            }
+        }
+        List<WaterEvent> result = new ArrayList<>();
+        for (Segment seg : segments.values()) {
+            Long covered = watermarks.get(seg.key);
+            long offset = covered != null ? covered : 0L;
+            if (offset > seg.bytes) {
+                return null;
+            }
+            if (offset < seg.bytes) {
+                if (seg.cold && offset > 0) {
+                    // Byte offsets of the text form cannot be mapped into a cold segment.
+                    return null;
+                }
+                readSegment(seg, offset, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Manifest entries in day order.
+     */
+    public synchronized List<Segment> getSegments() {
+        return new ArrayList<>(segments.values());
+    }
+
+    // ------------------------------------------------------------------
+    // LINE FORMAT
+    // ------------------------------------------------------------------
+
+    /**
+     * Formats one line, e.g. "2025-01-01 12:00:00,Intake,45.23,a".
+     * Always uses '.' as decimal separator so the comma split stays valid.
+     */
+    static String formatLine(WaterEvent event) {
+        String displayType = event.type.equals("I") ? "Intake"
+                : event.type.equals("R") ? "Refill"
+                : event.type;
+        return String.format(Locale.US, "%s,%s,%.2f,%s",
+                event.timestamp, displayType, event.amount, event.cupName);
+    }
+
+    /**
+     * Parses one line. Returns null for lines that do not have 4 parts; the
+     * cup name is the rest of the line and may contain commas.
+     */
+    static WaterEvent parseLine(String line) {
+        String[] parts = line.split(",", 4);
+        if (parts.length != 4) {
+            return null;
+        }
+        String timestamp = parts[0];
+        String displayType = parts[1];
+        float amount = Float.parseFloat(parts[2]);
+        String cupName = parts[3];
+
+        String shortType;
+        if ("Intake".equalsIgnoreCase(displayType)) {
+            shortType = "I";
+        } else if ("Refill".equalsIgnoreCase(displayType)) {
+            shortType = "R";
+        } else {
+            shortType = displayType;
+        }
+        return new WaterEvent(timestamp, shortType, amount, cupName);
+    }
+
+    /**
+     * Parses one line of an old single backup file. Besides the regular
+     * format it accepts amounts the old writer formatted with a decimal comma
+     * in the device locale ("2025-01-01 12:00:00,Intake,45,23,a").
+     * Returns null for lines that cannot be read.
+     */
+    static WaterEvent parseLegacyLine(String line) {
+        String[] parts = line.split(",", 5);
+        try {
+            if (parts.length == 5 && isDigits(parts[2]) && isDigits(parts[3])) {
+                WaterEvent e = parseLine(parts[0] + "," + parts[1] + "," + parts[2] + "." + parts[3]
+                        + "," + parts[4]);
+                if (e != null) {
+                    return e;
+                }
+            }
+            return parseLine(line);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isDigits(String s) {
+        if (s.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Frames one event as "length|payload|crc32\n" (UTF-8 bytes).
+     */
+    static byte[] encodeRecord(WaterEvent event) {
+        byte[] payload = formatLine(event).getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        byte[] prefix = (payload.length + "|").getBytes(StandardCharsets.US_ASCII);
+        byte[] suffix = String.format(Locale.US, "|%08x\n", crc.getValue())
+                .getBytes(StandardCharsets.US_ASCII);
+        byte[] record = new byte[prefix.length + payload.length + suffix.length];
+        System.arraycopy(prefix, 0, record, 0, prefix.length);
+        System.arraycopy(payload, 0, record, prefix.length, payload.length);
+        System.arraycopy(suffix, 0, record, prefix.length + payload.length, suffix.length);
+        return record;
+    }
+
+    /**
+     * Decodes one record (without the newline). Returns null if the frame,
+     * length or checksum does not match or the payload does not parse.
+     * Unframed lines from older files are parsed as plain event lines.
+     */
+    static WaterEvent decodeRecord(byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        int bar = 0;
+        while (bar < length && bar < 6 && line[bar] >= '0' && line[bar] <= '9') {
+            bar++;
+        }
+        try {
+            if (bar == 0 || bar >= length || line[bar] != '|') {
+                return parseLine(new String(line, 0, length, StandardCharsets.UTF_8));
+            }
+            int payloadLength = Integer.parseInt(new String(line, 0, bar, StandardCharsets.US_ASCII));
+            int payloadStart = bar + 1;
+            int crcStart = payloadStart + payloadLength + 1;
+            if (crcStart + 8 != length || line[crcStart - 1] != '|') {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(line, payloadStart, payloadLength);
+            long stored = Long.parseLong(new String(line, crcStart, 8, StandardCharsets.US_ASCII), 16);
+            if (stored != crc.getValue()) {
+                return null;
+            }
+            return parseLine(new String(line, payloadStart, payloadLength, StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether a line starts like a framed record ("length|") but its length,
+     * separators or checksum do not match, i.e. the bytes themselves are
+     * damaged. Unframed lines and intact frames return false.
+     */
+    static boolean isDamagedFrame(byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        int bar = 0;
+        while (bar < length && bar < 6 && line[bar] >= '0' && line[bar] <= '9') {
+            bar++;
+        }
+        if (bar == 0 || bar >= length || line[bar] != '|') {
+            return false;
+        }
+        try {
+            int payloadLength = Integer.parseInt(new String(line, 0, bar, StandardCharsets.US_ASCII));
+            int payloadStart = bar + 1;
+            int crcStart = payloadStart + payloadLength + 1;
+            if (crcStart + 8 != length || line[crcStart - 1] != '|') {
+                return true;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(line, payloadStart, payloadLength);
+            return Long.parseLong(new String(line, crcStart, 8, StandardCharsets.US_ASCII), 16)
+                    != crc.getValue();
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Reads records from a file, starting at a byte offset on a record boundary.
+     * Stops at the first torn (unterminated) or damaged record; intact records
+     * whose payload does not parse are skipped and counted.
+     *
+     * @return offset just past the last valid record
+     */
+    static long readRecords(File file, long offset, List<WaterEvent> out) throws IOException {
+        long pos = offset;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            long skipped = 0;
+            while (skipped < offset) {
+                long n = in.skip(offset - skipped);
+                if (n <= 0) break;
+                skipped += n;
+            }
+            ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                if (line.size() > 0) {
+                    byte[] bytes = line.toByteArray();
+                    WaterEvent event = decodeRecord(bytes, bytes.length);
+                    if (event != null) {
+                        out.add(event);
+                    } else if (isDamagedFrame(bytes, bytes.length)) {
+                        return pos;
+                    } else {
+                        unreadable.inc();
+                        CoreLog.w(TAG, "Skipping unreadable record in {} at byte {}", file.getName(), pos);
+                    }
+                }
+                pos += line.size() + 1;
+                line.reset();
+            }
+        }
+        return pos;
+    }
+
+    // ------------------------------------------------------------------
+    // PARTITIONING
+    // ------------------------------------------------------------------
+
+    /**
+     * Day key "yyyyMMdd" of an event, taken straight from its timestamp string.
+     */
+    public static String dayKey(WaterEvent event) {
+        String ts = event.timestamp;
+        if (ts != null && ts.length() >= 10 && ts.charAt(4) == '-' && ts.charAt(7) == '-') {
+            return ts.substring(0, 4) + ts.substring(5, 7) + ts.substring(8, 10);
+        }
+        return dayKey(event.getTimeMillis());
+    }
+
+    public static String dayKey(long timeMillis) {
+        return new SimpleDateFormat("yyyyMMdd", Locale.US).format(new Date(timeMillis));
+    }
+
+    /**
+     * Local midnight starting the day of a segment key (yyyyMMdd).
+     */
+    static long dayStartMillis(String key) {
+        Calendar c = Calendar.getInstance();
+        c.clear();
+        c.set(Integer.parseInt(key.substring(0, 4)),
+                Integer.parseInt(key.substring(4, 6)) - 1,
+                Integer.parseInt(key.substring(6, 8)));
+        return c.getTimeInMillis();
+    }
+
+    /**
+     * Local midnight ending the day of a segment key (yyyyMMdd).
+     */
+    static long dayEndMillis(String key) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(dayStartMillis(key));
+        c.add(Calendar.DAY_OF_MONTH, 1);
+        return c.getTimeInMillis();
+    }
+
+    private Segment newSegment(String key) {
+        return new Segment(key, dayStartMillis(key), dayEndMillis(key));
+    }
+
+    private Segment segmentFor(String key) {
+        Segment seg = segments.get(key);
+        if (seg == null) {
+            seg = newSegment(key);
+            segments.put(key, seg);
+        }
+        return seg;
+    }
+
+    private File segmentFile(String key) {
+        return new File(dir, SEGMENT_PREFIX + key + SEGMENT_SUFFIX);
+    }
+
+    private File coldFile(String key) {
+        return new File(dir, SEGMENT_PREFIX + key + COLD_SUFFIX);
+    }
+
+    // ------------------------------------------------------------------
+    // SEGMENT + MANIFEST I/O
+    // ------------------------------------------------------------------
+
+    private void readSegment(Segment seg, long offset, List<WaterEvent> out) throws IOException {
+        if (seg.cold) {
+            ColdSegmentCodec.read(coldFile(seg.key), out);
+            return;
+        }
+        File file = segmentFile(seg.key);
+        if (file.exists()) {
+            readRecords(file, offset, out);
+        }
+    }
+
+    /**
+     * Turns a cold segment back into text, e.g. before appending to it.
+     */
+    private void thaw(Segment seg) throws IOException {
+        List<WaterEvent> events = new ArrayList<>();
+        ColdSegmentCodec.read(coldFile(seg.key), events);
+        Segment fresh = newSegment(seg.key);
+        seg.bytes = writeSegment(segmentFile(seg.key), events, fresh);
+        coldFile(seg.key).delete();
+        seg.cold = false;
+    }
+
+    private File stagingFile(String key) {
+        return new File(segmentFile(key).getPath() + ".tmp");
+    }
+
+    private static long writeSegment(File file, List<WaterEvent> events, Segment seg)
+            throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        writeRecords(tmp, events, seg);
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file.getName());
+        }
+        return file.length();
+    }
+
+    private static long writeRecords(File file, List<WaterEvent> events, Segment seg)
+            throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            for (WaterEvent e : events) {
+                out.write(encodeRecord(e));
+                seg.add(e);
+            }
+        }
+        return file.length();
+    }
+
+    private void writeManifest() throws IOException {
+        File file = new File(dir, MANIFEST);
+        File tmp = new File(dir, MANIFEST + ".tmp");
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            for (Segment seg : segments.values()) {
+                writer.write(String.format(Locale.US, "%s,%d,%d,%d,%d,%.2f,%.2f,%s\n",
+                        seg.key, seg.startMillis, seg.endMillis, seg.bytes,
+                        seg.count, seg.intakeSum, seg.refillSum, seg.cold ? "cold" : "text"));
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + MANIFEST);
+        }
+    }
+
+    /**
+     * Rebuilds the manifest entry of a text segment that changed since the
+     * manifest was written. If it only grew, the prefix covered by the manifest
+     * is trusted and just the tail is scanned; otherwise the whole file is.
+     * A torn or damaged record ends the segment: the file is truncated there.
+     */
+    private Segment recover(String key, File f, Segment known) throws IOException {
+        long length = f.length();
+        Segment seg;
+        long from;
+        if (known != null && !known.cold && known.bytes < length) {
+            seg = known;
+            from = known.bytes;
+        } else {
+            seg = newSegment(key);
+            from = 0;
+        }
+        List<WaterEvent> events = new ArrayList<>();
+        long validEnd = readRecords(f, from, events);
+        for (WaterEvent e : events) {
+            seg.add(e);
+        }
+        if (validEnd < length) {
+            try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                raf.setLength(validEnd);
+            }
+            truncatedBytes += length - validEnd;
+        }
+        seg.bytes = validEnd;
+        recoveredEvents += events.size();
+        return seg;
+    }
+
+    /**
+     * Loads the manifest and reconciles it with the segment files on disk.
+     */
+    private void loadManifest() throws IOException {
+        File file = new File(dir, MANIFEST);
+        Map<String, Segment> fromManifest = new HashMap<>();
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] p = line.split(",");
+                    if (p.length != 7 && p.length != 8) {
+                        continue;
+                    }
+                    try {
+                        Segment seg = new Segment(p[0], Long.parseLong(p[1]), Long.parseLong(p[2]));
+                        seg.bytes = Long.parseLong(p[3]);
+                        seg.count = Integer.parseInt(p[4]);
+                        seg.intakeSum = Float.parseFloat(p[5]);
+                        seg.refillSum = Float.parseFloat(p[6]);
+                        seg.cold = p.length == 8 && "cold".equals(p[7]);
+                        fromManifest.put(seg.key, seg);
+                    } catch (NumberFormatException ignored) {
+                        // Entry is rebuilt from the segment file below.
+                    }
+                }
+            }
+        }
+
+        boolean changed = false;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (!name.startsWith(SEGMENT_PREFIX)) {
+                    continue;
+                }
+                boolean isCold = name.endsWith(COLD_SUFFIX);
+                if (!isCold && !name.endsWith(SEGMENT_SUFFIX)) {
+                    continue;
+                }
+                String key = name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - (isCold ? COLD_SUFFIX : SEGMENT_SUFFIX).length());
+                if (key.length() != 8) {
+                    continue;
+                }
+                Segment seg = fromManifest.get(key);
+                if (isCold) {
+                    if (segmentFile(key).exists()) {
+                        // Interrupted compaction or thaw: the text form wins.
+                        f.delete();
+                        changed = true;
+                        continue;
+                    }
+                    if (seg == null || !seg.cold) {
+                        seg = newSegment(key);
+                        List<WaterEvent> events = new ArrayList<>();
+                        ColdSegmentCodec.read(f, events);
+                        for (WaterEvent e : events) {
+                            seg.add(e);
+                            seg.bytes += encodeRecord(e).length;
+                        }
+                        seg.cold = true;
+                        changed = true;
+                    }
+                } else if (seg == null || seg.cold || seg.bytes != f.length()) {
+                    seg = recover(key, f, seg);
+                    changed = true;
+                }
+                segments.put(key, seg);
+            }
+        }
+        if (changed || fromManifest.size() != segments.size()) {
+            writeManifest();
+        }
+    }
+}
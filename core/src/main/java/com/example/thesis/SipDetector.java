@@ -0,0 +1,159 @@
+package com.example.thesis;
+
+/**
+ * Streaming detection of intake and refill events from raw load-cell
+ * readings of one coaster (see ScaleIngest's raw-sample payloads).
+ *
+ * Per sample: a moving median over Config.medianWindow readings removes
+ * spikes from bumps and taps; the filtered weight counts as stable once it
+ * stays within Config.stableBand for Config.stableMillis; cup presence uses
+ * hysteresis (present above presentOn, lifted below presentOff). Whenever
+ * the cup is present and stable, the level is compared with the last
+ * committed level: a drop of at least minChange is an intake, a rise a
+ * refill, and the new level is committed. Lifting the cup to drink and
+ * putting it back therefore yields one intake of the difference.
+ *
+ * Allocation-free after construction, and not thread-safe: one detector per
+ * device, owned by its ScaleIngest and fed from the shared ingest thread
+ * (ScaleIngest serializes all calls). It is reset when the reported cup
+ * changes and after a disconnect.
+ */
+public class SipDetector {
+
+    /**
+     * Receives derived events; intake == false means refill.
+     */
+    public interface Listener {
+        void onChange(boolean intake, float grams, long timeMillis);
+    }
+
+    /**
+     * Detection parameters. The defaults suit the clinical cups at 10-80 Hz.
+     */
+    public static class Config {
+        // Readings in the moving median (odd).
+        public int medianWindow = 5;
+        // Filtered weight must stay within this band (grams)...
+        public float stableBand = 1.5f;
+        // ...for this long to count as stable.
+        public long stableMillis = 600;
+        // Smaller level changes are treated as noise or drift (grams).
+        public float minChange = 3f;
+        // Cup present above presentOn, lifted below presentOff (grams).
+        public float presentOn = 20f;
+        public float presentOff = 10f;
+    }
+
+    private final Config config;
+    private final Listener listener;
+
+    // Moving median: readings in arrival order and the same readings sorted.
+    private final float[] window;
+    private final float[] sorted;
+    private int windowCount;
+    private int windowNext;
+
+    // Stability: band of filtered weights since stableSince.
+    private float bandMin;
+    private float bandMax;
+    private long stableSince = Long.MIN_VALUE;
+
+    private boolean present;
+    // Last committed level with the cup present; NaN until the first placement.
+    private float committed = Float.NaN;
+
+    public SipDetector(Config config, Listener listener) {
+        this.config = config;
+        this.listener = listener;
+        this.window = new float[config.medianWindow];
+        this.sorted = new float[config.medianWindow];
+    }
+
+    /**
+     * Processes one reading in grams taken at timeMillis.
+     */
+    public void process(float grams, long timeMillis) {
+        if (Float.isNaN(grams) || Float.isInfinite(grams)) {
+            return;
+        }
+        float filtered = median(grams);
+
+        if (present ? filtered < config.presentOff : filtered > config.presentOn) {
+            present = !present;
+        }
+
+        if (stableSince == Long.MIN_VALUE
+                || Math.max(bandMax, filtered) - Math.min(bandMin, filtered) > config.stableBand) {
+            bandMin = filtered;
+            bandMax = filtered;
+            stableSince = timeMillis;
+            return;
+        }
+        bandMin = Math.min(bandMin, filtered);
+        bandMax = Math.max(bandMax, filtered);
+        if (!present || timeMillis - stableSince < config.stableMillis) {
+            return;
+        }
+
+        float level = (bandMin + bandMax) / 2f;
+        if (Float.isNaN(committed)) {
+            committed = level;
+            return;
+        }
+        float delta = level - committed;
+        if (Math.abs(delta) >= config.minChange) {
+            committed = level;
+            listener.onChange(delta < 0, Math.round(Math.abs(delta) * 100f) / 100f, timeMillis);
+        }
+    }
+
+    /**
+     * Last committed cup level, or NaN before the cup was first placed.
+     */
+    public float getCommittedLevel() {
+        return committed;
+    }
+
+    public boolean isCupPresent() {
+        return present;
+    }
+
+    /**
+     * Forgets the filter state and the committed level, e.g. after a reconnect.
+     */
+    public void reset() {
+        windowCount = 0;
+        windowNext = 0;
+        stableSince = Long.MIN_VALUE;
+        present = false;
+        committed = Float.NaN;
+    }
+
+    /**
+     * Adds a reading to the window and returns the window's median.
+     */
+    private float median(float value) {
+        int n = window.length;
+        if (windowCount == n) {
+            // Remove the oldest reading from the sorted copy.
+            float oldest = window[windowNext];
+            int i = 0;
+            while (sorted[i] != oldest) {
+                i++;
+            }
+            System.arraycopy(sorted, i + 1, sorted, i, windowCount - i - 1);
+            windowCount--;
+        }
+        window[windowNext] = value;
+        windowNext = (windowNext + 1) % n;
+
+        int j = windowCount;
+        while (j > 0 && sorted[j - 1] > value) {
+            sorted[j] = sorted[j - 1];
+            j--;
+        }
+        sorted[j] = value;
+        windowCount++;
+        return sorted[windowCount / 2];
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.thesis;
+
+import java.util.Arrays;
+
+/**
+ * Sum of the amounts added within a sliding time window, kept in a ring of
+ * fixed-width time slots with a running total.
+ *
+ * Adding and reading are O(1) amortized: moving the window forward clears
+ * only the slots that expired since the last call. Amounts older than the
+ * window are ignored, and the window's edge is rounded to whole slots.
+ */
+class SlidingWindowSum {
+
+    private final long slotMillis;
+    private final double[] slots;
+    // Absolute index (time / slotMillis) of the newest slot.
+    private long headSlot = Long.MIN_VALUE;
+    private double total;
+
+    SlidingWindowSum(long windowMillis, long slotMillis) {
+        this.slotMillis = slotMillis;
+        this.slots = new double[(int) Math.max(1, (windowMillis + slotMillis - 1) / slotMillis)];
+    }
+
+    void add(long timeMillis, float amount) {
+        long slot = Math.floorDiv(timeMillis, slotMillis);
+        advance(slot);
+        if (slot <= headSlot - slots.length) {
+            return;
+        }
+        slots[index(slot)] += amount;
+        total += amount;
+    }
+
+    /**
+     * Sum of the amounts within the window ending at nowMillis.
+     */
+    double sum(long nowMillis) {
+        advance(Math.floorDiv(nowMillis, slotMillis));
+        return total;
+    }
+
+    void clear() {
+        Arrays.fill(slots, 0);
+        total = 0;
+        headSlot = Long.MIN_VALUE;
+    }
+
+    private void advance(long slot) {
+        if (headSlot == Long.MIN_VALUE) {
+            headSlot = slot;
+            return;
+        }
+        if (slot <= headSlot) {
+            return;
+        }
+        long steps = Math.min(slot - headSlot, slots.length);
+        for (long i = 1; i <= steps; i++) {
+            int k = index(headSlot + i);
+            total -= slots[k];
+            slots[k] = 0;
+        }
+        if (steps == slots.length) {
+            // Everything expired: drop accumulated rounding error as well.
+            total = 0;
+        }
+        headSlot = slot;
+    }
+
+    private int index(long slot) {
+        return (int) Math.floorMod(slot, (long) slots.length);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.thesis;
+
+/**
+ * Thread-confinement check for state that only one thread may touch, e.g. a
+ * scale's GATT thread, the shared ingest thread or the main thread.
+ *
+ * check() compares the calling thread with the bound owner: one volatile
+ * read and a reference compare. A violation is counted in
+ * "thread.violations" and logged with a stack trace; in strict mode (debug
+ * builds, tests) it is thrown as an IllegalStateException instead. An
+ * unbound guard accepts every thread.
+ */
+public final class ThreadGuard {
+
+    private static final String TAG = "ThreadGuard";
+
+    private static volatile boolean strict;
+    private static final Metrics.Counter violations = Metrics.counter("thread.violations");
+
+    private final String name;
+    private volatile Thread owner;
+
+    public ThreadGuard(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Throw on violations instead of only logging them.
+     */
+    public static void setStrict(boolean enabled) {
+        strict = enabled;
+    }
+
+    public void bind(Thread thread) {
+        owner = thread;
+    }
+
+    public boolean isOwner() {
+        Thread t = owner;
+        return t == null || t == Thread.currentThread();
+    }
+
+    /**
+     * Verifies that operation runs on the owning thread.
+     */
+    public void check(String operation) {
+        if (isOwner()) {
+            return;
+        }
+        violations.inc();
+        IllegalStateException e = new IllegalStateException(operation + " called on "
+                + Thread.currentThread().getName() + ", confined to " + name);
+        if (strict) {
+            throw e;
+        }
+        CoreLog.e(TAG, e.getMessage(), e);
+    }
+}
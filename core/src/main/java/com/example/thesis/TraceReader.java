@@ -0,0 +1,94 @@
+package com.example.thesis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Reads trace files written by TraceWriter.
+ *
+ * Lines that cannot be parsed (e.g. a line torn by a crash during capture)
+ * are skipped and counted rather than failing the whole trace.
+ */
+public class TraceReader {
+
+    /**
+     * One recorded notification or connection change.
+     */
+    public static class Record {
+        public final boolean notification;
+        public final long timeMillis;
+        public final int patientIndex;
+        // Raw TX bytes (notifications only).
+        public final byte[] value;
+        // Connection status (connection changes only).
+        public final String status;
+
+        Record(boolean notification, long timeMillis, int patientIndex, byte[] value, String status) {
+            this.notification = notification;
+            this.timeMillis = timeMillis;
+            this.patientIndex = patientIndex;
+            this.value = value;
+            this.status = status;
+        }
+    }
+
+    private final List<Record> records = new ArrayList<>();
+    private int skippedLines;
+
+    public TraceReader(File file) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                Record r = parseLine(line);
+                if (r != null) {
+                    records.add(r);
+                } else {
+                    skippedLines++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses one trace line, or returns null if it is malformed.
+     */
+    static Record parseLine(String line) {
+        String[] parts = line.split(",", 4);
+        if (parts.length < 4 || parts[0].length() != 1) {
+            return null;
+        }
+        try {
+            long time = Long.parseLong(parts[1]);
+            int patient = Integer.parseInt(parts[2]);
+            switch (parts[0].charAt(0)) {
+                case TraceWriter.NOTIFICATION:
+                    return new Record(true, time, patient, Base64.getDecoder().decode(parts[3]), null);
+                case TraceWriter.CONNECTION:
+                    return new Record(false, time, patient, null, parts[3]);
+                default:
+                    return null;
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public List<Record> getRecords() {
+        return records;
+    }
+
+    public int getSkippedLines() {
+        return skippedLines;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.thesis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Feeds a recorded BLE trace (see TraceWriter) back through the ingest path
+ * (ScaleIngest => PatientData => PatientStore) and reports what happened, so
+ * two builds can be compared against the same real-world load.
+ *
+ * Records are dispatched at their recorded pace scaled by a speed factor
+ * (1 => real time, 100 => 100x faster) or as fast as possible (MAX_SPEED).
+ * The report has the notification counts per ingest decision, histograms of
+ * the ingest latency and of the lag behind the recorded schedule, and per
+ * patient the event count and a CRC32 over all hourly and daily aggregates.
+ * Event times are the recorded receive times, so the checksums of a correct
+ * build only depend on the trace and the time zone.
+ *
+ * Run from the command line with
+ * "TraceReplay trace.txt [1|100|max] [storeDir]"; without a store directory
+ * nothing is persisted, otherwise storeDir should be empty.
+ */
+public class TraceReplay {
+
+    private static final String TAG = "TraceReplay";
+
+    /**
+     * Speed value meaning "no pacing".
+     */
+    public static final double MAX_SPEED = 0;
+
+    /**
+     * Outcome of one replay.
+     */
+    public static class Report {
+        public int notifications;
+        public int accepted;
+        public int duplicates;
+        public int rejected;
+        // Raw-sample notifications (their derived events count in eventsPerPatient).
+        public int sampleBatches;
+        public int connectionEvents;
+        // Records for a patient index outside the replayed patients.
+        public int unknownPatient;
+        public long wallMillis;
+        public final int[] eventsPerPatient;
+        public final long[] checksums;
+        // Time spent in ScaleIngest per notification, persistence included.
+        public final LatencyHistogram ingestLatency = new LatencyHistogram();
+        // How late each record was dispatched (paced replays only).
+        public final LatencyHistogram scheduleLag = new LatencyHistogram();
+
+        Report(int patientCount) {
+            eventsPerPatient = new int[patientCount];
+            checksums = new long[patientCount];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Notifications: ").append(notifications)
+                    .append(" (accepted ").append(accepted)
+                    .append(", duplicates ").append(duplicates)
+                    .append(", rejected ").append(rejected)
+                    .append(", raw sample batches ").append(sampleBatches).append(")\n");
+            sb.append("Connection events: ").append(connectionEvents)
+                    .append(", unknown patient: ").append(unknownPatient).append('\n');
+            sb.append("Wall time: ").append(wallMillis).append(" ms\n");
+            sb.append("Ingest latency: ").append(ingestLatency).append('\n');
+            if (scheduleLag.getCount() > 0) {
+                sb.append("Schedule lag: ").append(scheduleLag).append('\n');
+            }
+            for (int i = 0; i < checksums.length; i++) {
+                sb.append(String.format(Locale.US, "Patient %d: %d events, aggregate checksum %08x%n",
+                        i + 1, eventsPerPatient[i], checksums[i]));
+            }
+            return sb.toString();
+        }
+    }
+
+    private final PatientData[] patients;
+
+    /**
+     * @param patients loaded patient state, indexed like the trace's patient indices
+     */
+    public TraceReplay(PatientData[] patients) {
+        this.patients = patients;
+    }
+
+    /**
+     * Replays the records in order at the given speed (see MAX_SPEED) and
+     * checkpoints every patient at the end.
+     */
+    public Report replay(List<TraceReader.Record> records, double speed) throws InterruptedException {
+        Report report = new Report(patients.length);
+        ScaleIngest[] ingest = new ScaleIngest[patients.length];
+        for (int i = 0; i < patients.length; i++) {
+            ingest[i] = new ScaleIngest(i, (index, event) -> patients[index].add(event));
+        }
+
+        long wallStart = System.nanoTime();
+        long traceStart = records.isEmpty() ? 0 : records.get(0).timeMillis;
+        for (TraceReader.Record r : records) {
+            if (speed > 0) {
+                long due = (long) ((r.timeMillis - traceStart) * 1_000_000.0 / speed);
+                long wait = due - (System.nanoTime() - wallStart);
+                if (wait > 0) {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                }
+                report.scheduleLag.record(Math.max(0, System.nanoTime() - wallStart - due));
+            }
+            if (r.patientIndex < 0 || r.patientIndex >= patients.length) {
+                report.unknownPatient++;
+                continue;
+            }
+            if (!r.notification) {
+                report.connectionEvents++;
+                continue;
+            }
+
+            report.notifications++;
+            long t0 = System.nanoTime();
+            ScaleIngest.Decision decision = ingest[r.patientIndex].onNotification(r.value, r.timeMillis);
+            report.ingestLatency.record(System.nanoTime() - t0);
+            switch (decision) {
+                case ACCEPTED:
+                    report.accepted++;
+                    break;
+                case DUPLICATE:
+                    report.duplicates++;
+                    break;
+                case SAMPLES:
+                    report.sampleBatches++;
+                    break;
+                default:
+                    report.rejected++;
+                    break;
+            }
+        }
+
+        for (int i = 0; i < patients.length; i++) {
+            patients[i].checkpoint();
+            report.eventsPerPatient[i] = patients[i].getEvents().size();
+            report.checksums[i] = checksum(patients[i].getIndex());
+        }
+        report.wallMillis = (System.nanoTime() - wallStart) / 1_000_000;
+        return report;
+    }
+
+    /**
+     * CRC32 over all day and hour buckets (start, counts and sums) of an index.
+     */
+    static long checksum(AggregateIndex index) {
+        CRC32 crc = new CRC32();
+        ByteBuffer buf = ByteBuffer.allocate(24);
+        for (Map<Long, AggregateIndex.Bucket> buckets : List.of(
+                index.getDays(Long.MIN_VALUE, Long.MAX_VALUE),
+                index.getHours(Long.MIN_VALUE, Long.MAX_VALUE))) {
+            for (Map.Entry<Long, AggregateIndex.Bucket> e : buckets.entrySet()) {
+                AggregateIndex.Bucket b = e.getValue();
+                buf.clear();
+                buf.putLong(e.getKey())
+                        .putInt(b.intakeCount)
+                        .putInt(b.refillCount)
+                        .putFloat(b.intakeSum)
+                        .putFloat(b.refillSum);
+                crc.update(buf.array(), 0, buf.position());
+            }
+        }
+        return crc.getValue();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: TraceReplay <trace file> [1|100|max] [store dir]");
+            System.exit(2);
+        }
+        TraceReader trace = new TraceReader(new File(args[0]));
+        double speed = args.length > 1 && !"max".equals(args[1]) ? Double.parseDouble(args[1]) : MAX_SPEED;
+
+        long now = System.currentTimeMillis();
+        PatientData[] patients = new PatientData[3];
+        for (int i = 0; i < patients.length; i++) {
+            PatientStore store = args.length > 2 ? new PatientStore(new File(args[2]), i) : null;
+            patients[i] = new PatientData(store);
+            patients[i].load(now);
+        }
+
+        CoreLog.d(TAG, "Replaying {} records from {}", trace.getRecords().size(), args[0]);
+        Report report = new TraceReplay(patients).replay(trace.getRecords(), speed);
+        System.out.println("Trace: " + args[0] + " (" + trace.getRecords().size() + " records, "
+                + trace.getSkippedLines() + " unreadable lines), speed "
+                + (speed > 0 ? speed + "x" : "max"));
+        System.out.print(report);
+    }
+}
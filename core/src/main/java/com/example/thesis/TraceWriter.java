@@ -0,0 +1,83 @@
+package com.example.thesis;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Records what the BLE layer sees into a trace file, for replaying ward
+ * incidents later (see TraceReplay).
+ *
+ * One line per record, in receive order:
+ * "N,receivedMillis,patientIndex,base64(raw TX bytes)" for notifications and
+ * "C,millis,patientIndex,status" for connection changes. The raw bytes are
+ * recorded before the duplicate filter and the parser, so a replay sees
+ * exactly what the app saw. Every record is flushed, so a crash loses at
+ * most the line being written.
+ *
+ * Safe to share between the BLE managers of all scales.
+ */
+public class TraceWriter implements Closeable {
+
+    private static final String TAG = "TraceWriter";
+
+    static final String HEADER = "# scale-water trace v1";
+    static final char NOTIFICATION = 'N';
+    static final char CONNECTION = 'C';
+
+    private final File file;
+    private final Writer out;
+    private int records;
+
+    public TraceWriter(File file) throws IOException {
+        this.file = file;
+        this.out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8));
+        out.write(HEADER);
+        out.write('\n');
+        out.flush();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized int getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Records the raw bytes of one TX notification.
+     */
+    public void recordNotification(int patientIndex, byte[] value, long receivedMillis) {
+        write(NOTIFICATION, receivedMillis, patientIndex, Base64.getEncoder().encodeToString(value));
+    }
+
+    /**
+     * Records a connection change, e.g. "Connected" or "Disconnected".
+     */
+    public void recordConnection(int patientIndex, String status, long timeMillis) {
+        write(CONNECTION, timeMillis, patientIndex, status.replace(',', ' ').replace('\n', ' '));
+    }
+
+    private synchronized void write(char kind, long timeMillis, int patientIndex, String value) {
+        try {
+            out.write(kind + "," + timeMillis + "," + patientIndex + "," + value + "\n");
+            out.flush();
+            records++;
+        } catch (IOException e) {
+            CoreLog.e(TAG, "Error writing trace " + file.getName(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
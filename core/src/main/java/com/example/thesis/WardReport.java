@@ -0,0 +1,249 @@
+package com.example.thesis;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Per-patient daily and hourly intake/refill summaries for a time window.
+ *
+ * Tables are read from each patient's AggregateIndex; only days whose hourly
+ * buckets are incomplete (seeded from the snapshot day table) are re-bucketed
+ * from the raw events. Patients, and those days within a patient, are
+ * processed as tasks on a fork-join pool. Every task checks the cancel flag
+ * before it starts and while it scans raw events, so cancelling stops the
+ * whole pool's work rather than only the final write.
+ *
+ * Balance is refill minus intake, i.e. water poured into the cup that has
+ * not (yet) been drunk.
+ */
+public class WardReport {
+
+    public static final String HEADER =
+            "Patient,Level,Start,Intake (g),Intakes,Refill (g),Refills,Balance (g)\n";
+
+    /**
+     * Summary tables of one patient.
+     */
+    public static class PatientReport {
+        public final int patientIndex;
+        public final TreeMap<Long, AggregateIndex.Bucket> days;
+        public final TreeMap<Long, AggregateIndex.Bucket> hours;
+        public final AggregateIndex.Bucket total = new AggregateIndex.Bucket();
+
+        PatientReport(int patientIndex, TreeMap<Long, AggregateIndex.Bucket> days,
+                      TreeMap<Long, AggregateIndex.Bucket> hours) {
+            this.patientIndex = patientIndex;
+            this.days = days;
+            this.hours = hours;
+            for (AggregateIndex.Bucket b : days.values()) {
+                total.merge(b);
+            }
+        }
+    }
+
+    /**
+     * Builds the report for [fromMillis, toMillis), which should be local
+     * midnights. indexes.get(i) and events.get(i) belong to patient i; events
+     * must be consistent copies (only read for days without hourly buckets).
+     */
+    public static List<PatientReport> build(List<AggregateIndex> indexes,
+                                            List<PatientEventList> events,
+                                            long fromMillis, long toMillis,
+                                            ForkJoinPool pool) {
+        return build(indexes, events, fromMillis, toMillis, pool, () -> false);
+    }
+
+    /**
+     * Like build() above, but stops with a CancellationException as soon as
+     * cancelled returns true.
+     */
+    public static List<PatientReport> build(List<AggregateIndex> indexes,
+                                            List<PatientEventList> events,
+                                            long fromMillis, long toMillis,
+                                            ForkJoinPool pool, BooleanSupplier cancelled) {
+        return pool.invoke(new WardTask(indexes, events, fromMillis, toMillis, cancelled));
+    }
+
+    /**
+     * Writes the report as one CSV table; Level is Day, Hour or Total.
+     */
+    public static void writeCsv(List<PatientReport> reports, Writer out) throws IOException {
+        out.write(HEADER);
+        for (PatientReport r : reports) {
+            int patient = r.patientIndex + 1;
+            for (Map.Entry<Long, AggregateIndex.Bucket> e : r.days.entrySet()) {
+                out.write(row(patient, "Day",
+                        String.format(Locale.US, "%tF", e.getKey()), e.getValue()));
+            }
+            for (Map.Entry<Long, AggregateIndex.Bucket> e : r.hours.entrySet()) {
+                out.write(row(patient, "Hour",
+                        String.format(Locale.US, "%1$tF %1$tH:00", e.getKey()), e.getValue()));
+            }
+            out.write(row(patient, "Total", "", r.total));
+        }
+    }
+
+    private static String row(int patient, String level, String start, AggregateIndex.Bucket b) {
+        return String.format(Locale.US, "%d,%s,%s,%.2f,%d,%.2f,%d,%.2f\n",
+                patient, level, start, b.intakeSum, b.intakeCount,
+                b.refillSum, b.refillCount, b.refillSum - b.intakeSum);
+    }
+
+    // ------------------------------------------------------------------
+    // FORK-JOIN TASKS
+    // ------------------------------------------------------------------
+
+    // Raw rows scanned between two cancel checks.
+    private static final int CANCEL_CHECK_ROWS = 4096;
+
+    private static void checkCancelled(BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Ward report cancelled");
+        }
+    }
+
+    /**
+     * Forks one task per patient and joins them in patient order.
+     */
+    private static class WardTask extends RecursiveTask<List<PatientReport>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<AggregateIndex> indexes;
+        private final List<PatientEventList> events;
+        private final long from;
+        private final long to;
+        private final BooleanSupplier cancelled;
+
+        WardTask(List<AggregateIndex> indexes, List<PatientEventList> events, long from, long to,
+                 BooleanSupplier cancelled) {
+            this.indexes = indexes;
+            this.events = events;
+            this.from = from;
+            this.to = to;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected List<PatientReport> compute() {
+            checkCancelled(cancelled);
+            List<PatientTask> tasks = new ArrayList<>();
+            for (int i = 0; i < indexes.size(); i++) {
+                tasks.add(new PatientTask(i, indexes.get(i), events.get(i), from, to, cancelled));
+            }
+            invokeAll(tasks);
+            List<PatientReport> reports = new ArrayList<>();
+            for (PatientTask t : tasks) {
+                reports.add(t.join());
+            }
+            return reports;
+        }
+    }
+
+    /**
+     * Copies a patient's day and hour buckets and forks a re-bucketing task
+     * for every day that only has daily totals.
+     */
+    private static class PatientTask extends RecursiveTask<PatientReport> {
+        private static final long serialVersionUID = 1L;
+
+        private final int patientIndex;
+        private final AggregateIndex index;
+        private final PatientEventList events;
+        private final long from;
+        private final long to;
+        private final BooleanSupplier cancelled;
+
+        PatientTask(int patientIndex, AggregateIndex index, PatientEventList events,
+                    long from, long to, BooleanSupplier cancelled) {
+            this.patientIndex = patientIndex;
+            this.index = index;
+            this.events = events;
+            this.from = from;
+            this.to = to;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected PatientReport compute() {
+            checkCancelled(cancelled);
+            TreeMap<Long, AggregateIndex.Bucket> days = index.getDays(from, to);
+            TreeMap<Long, AggregateIndex.Bucket> hours = index.getHours(from, to);
+            List<HoursTask> tasks = new ArrayList<>();
+            for (Map.Entry<Long, AggregateIndex.Bucket> e : days.entrySet()) {
+                if (!e.getValue().hourly) {
+                    tasks.add(new HoursTask(events, e.getKey(), index.startOfNextDay(e.getKey()),
+                            cancelled));
+                }
+            }
+            invokeAll(tasks);
+            for (HoursTask t : tasks) {
+                hours.subMap(t.dayStart, true, t.dayEnd, false).clear();
+                hours.putAll(t.join());
+            }
+            return new PatientReport(patientIndex, days, hours);
+        }
+    }
+
+    /**
+     * Hour buckets of one day, computed from the raw events.
+     */
+    private static class HoursTask extends RecursiveTask<TreeMap<Long, AggregateIndex.Bucket>> {
+        private static final long serialVersionUID = 1L;
+
+        private final PatientEventList events;
+        final long dayStart;
+        final long dayEnd;
+        private final BooleanSupplier cancelled;
+
+        HoursTask(PatientEventList events, long dayStart, long dayEnd, BooleanSupplier cancelled) {
+            this.events = events;
+            this.dayStart = dayStart;
+            this.dayEnd = dayEnd;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected TreeMap<Long, AggregateIndex.Bucket> compute() {
+            checkCancelled(cancelled);
+            TreeMap<Long, AggregateIndex.Bucket> hours = new TreeMap<>();
+            int from = 0;
+            int to = events.size();
+            if (events.isTimeOrdered()) {
+                from = events.lowerBound(dayStart);
+                to = events.lowerBound(dayEnd);
+            }
+            Calendar calendar = Calendar.getInstance();
+            for (int i = from; i < to; i++) {
+                if ((i - from) % CANCEL_CHECK_ROWS == CANCEL_CHECK_ROWS - 1) {
+                    checkCancelled(cancelled);
+                }
+                long t = events.getTimeMillisAt(i);
+                if (t < dayStart || t >= dayEnd) {
+                    continue;
+                }
+                calendar.setTimeInMillis(t);
+                calendar.set(Calendar.MINUTE, 0);
+                calendar.set(Calendar.SECOND, 0);
+                calendar.set(Calendar.MILLISECOND, 0);
+                long hour = calendar.getTimeInMillis();
+                AggregateIndex.Bucket b = hours.get(hour);
+                if (b == null) {
+                    b = new AggregateIndex.Bucket();
+                    hours.put(hour, b);
+                }
+                b.add(events.getTypeAt(i), events.getAmountAt(i));
+            }
+            return hours;
+        }
+    }
+}
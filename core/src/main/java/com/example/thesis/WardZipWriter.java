@@ -0,0 +1,222 @@
+package com.example.thesis;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the events of all patients into one ZIP in a single pass:
+ * patient_1.csv .. patient_N.csv plus a manifest.csv describing them.
+ *
+ * Each patient's rows are formatted on its own worker thread into a small
+ * bounded queue of UTF-8 chunks; the calling thread drains the queues in
+ * patient order straight into the archive entries. ZipOutputStream itself
+ * is sequential, so formatting runs in parallel while deflating does not,
+ * and no patient is ever buffered as a whole file (memory stays at a few
+ * chunks per patient).
+ */
+public class WardZipWriter {
+
+    public static final String MANIFEST_NAME = "manifest.csv";
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int QUEUE_CHUNKS = 4;
+    private static final byte[] END = new byte[0];
+
+    /**
+     * Totals of one patient entry, as listed in the manifest.
+     */
+    public static class Entry {
+        public final String name;
+        public int rows;
+        public String firstTimestamp = "";
+        public String lastTimestamp = "";
+
+        Entry(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Writes the ZIP. events.get(i) belongs to patient i; each list must be a
+     * consistent copy that does not change while this runs. from[i] is the
+     * first row exported for patient i (incremental export), or null for all.
+     *
+     * @return one manifest entry per patient
+     */
+    public static List<Entry> write(List<PatientEventList> events, int[] from, OutputStream out,
+                                    EventCsvWriter.Progress progress) throws IOException {
+        int patients = events.size();
+        int[] start = from != null ? from : new int[patients];
+        int totalRows = 0;
+        for (int i = 0; i < patients; i++) {
+            totalRows += events.get(i).size() - start[i];
+        }
+        List<Entry> entries = new ArrayList<>();
+        List<BlockingQueue<byte[]>> queues = new ArrayList<>();
+        // Written by a worker before its END marker, read by the consumer after it.
+        Exception[] failures = new Exception[patients];
+        AtomicInteger written = new AtomicInteger();
+        AtomicBoolean stopped = new AtomicBoolean();
+        int total = totalRows;
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, patients));
+        try {
+            for (int i = 0; i < patients; i++) {
+                PatientEventList list = events.get(i);
+                int first = start[i];
+                Entry entry = new Entry("patient_" + (i + 1) + ".csv");
+                if (first < list.size()) {
+                    entry.firstTimestamp = list.get(first).timestamp;
+                    entry.lastTimestamp = list.get(list.size() - 1).timestamp;
+                }
+                entries.add(entry);
+                BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CHUNKS);
+                queues.add(queue);
+                int patient = i;
+                workers.execute(() -> {
+                    QueueOutputStream sink = new QueueOutputStream(queue);
+                    int[] reported = new int[1];
+                    try {
+                        Writer writer = new BufferedWriter(
+                                new OutputStreamWriter(sink, StandardCharsets.UTF_8));
+                        writer.write(EventCsvWriter.HEADER);
+                        entry.rows = new EventCsvWriter().writeRows(list, first, list.size(), writer,
+                                (rows, patientTotal) -> {
+                                    // Per-patient progress is summed into ward progress.
+                                    int done = written.addAndGet(rows - reported[0]);
+                                    reported[0] = rows;
+                                    return !stopped.get()
+                                            && (progress == null || progress.onProgress(done, total));
+                                });
+                        writer.flush();
+                    } catch (IOException | RuntimeException e) {
+                        failures[patient] = e;
+                    } finally {
+                        sink.finish(failures[patient] == null);
+                    }
+                });
+            }
+
+            ZipOutputStream zip = new ZipOutputStream(out);
+            for (int i = 0; i < patients; i++) {
+                zip.putNextEntry(new ZipEntry(entries.get(i).name));
+                BlockingQueue<byte[]> queue = queues.get(i);
+                byte[] chunk;
+                while ((chunk = take(queue)) != END) {
+                    zip.write(chunk);
+                }
+                Exception failure = failures[i];
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                } else if (failure != null) {
+                    throw (RuntimeException) failure;
+                }
+                zip.closeEntry();
+            }
+
+            zip.putNextEntry(new ZipEntry(MANIFEST_NAME));
+            Writer manifest = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+            manifest.write("Patient,File,Rows,First,Last\n");
+            for (int i = 0; i < patients; i++) {
+                Entry e = entries.get(i);
+                manifest.write((i + 1) + "," + e.name + "," + e.rows + ","
+                        + e.firstTimestamp + "," + e.lastTimestamp + "\n");
+            }
+            manifest.flush();
+            zip.closeEntry();
+            zip.finish();
+            return entries;
+        } finally {
+            stopped.set(true);
+            workers.shutdownNow();
+        }
+    }
+
+    private static byte[] take(BlockingQueue<byte[]> queue) throws InterruptedIOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ward export interrupted");
+        }
+    }
+
+    /**
+     * Cuts the byte stream into CHUNK_SIZE chunks and hands them to the queue;
+     * finish() hands over the last chunk and appends the END marker.
+     */
+    private static class QueueOutputStream extends OutputStream {
+        private final BlockingQueue<byte[]> queue;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+
+        QueueOutputStream(BlockingQueue<byte[]> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                emit();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    emit();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        void finish(boolean complete) {
+            try {
+                if (complete) {
+                    emit();
+                }
+                put(END);
+            } catch (IOException ignored) {
+                // Interrupted: the consumer has already given up on this export.
+            }
+        }
+
+        private void emit() throws IOException {
+            if (count > 0) {
+                put(Arrays.copyOf(buffer, count));
+                count = 0;
+            }
+        }
+
+        private void put(byte[] chunk) throws IOException {
+            try {
+                queue.put(chunk);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Ward export interrupted");
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.thesis;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable record of a single water event (intake or refill).
+ * Stores a stable unique ID per run so list operations can use it
+ * as a key independent of RecyclerView positions.
+ */
+public class WaterEvent {
+    public String timestamp;  // "yyyy-MM-dd HH:mm:ss"
+    public String type;       // "I" or "R"
+    public float amount;
+    public String cupName;
+
+    // Monotonically increasing counter to assign stable IDs in memory.
+    private static final AtomicLong eventCounter = new AtomicLong();
+    public final long uniqueId;
+
+    // Parsed epoch time, filled on first use (or up front when known).
+    private long timeMillis;
+    private boolean timeParsed;
+
+    public WaterEvent(String timestamp, String type, float amount, String cupName) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.amount = amount;
+        this.cupName = cupName;
+
+        // Unique ID for each event during the app run.
+        this.uniqueId = eventCounter.incrementAndGet();
+    }
+
+    /**
+     * Builds an event whose epoch time is already known (e.g. from a binary
+     * snapshot), so the timestamp string never has to be parsed again.
+     */
+    WaterEvent(long timeMillis, String type, float amount, String cupName) {
+        this(formatTimestamp(timeMillis), type, amount, cupName);
+        this.timeMillis = timeMillis;
+        this.timeParsed = true;
+    }
+
+    /**
+     * Like the constructor above, but with an ID reserved earlier (see
+     * reserveIds), so every copy of a snapshot row gets the same ID.
+     */
+    WaterEvent(long timeMillis, String type, float amount, String cupName, long uniqueId) {
+        this.timestamp = formatTimestamp(timeMillis);
+        this.type = type;
+        this.amount = amount;
+        this.cupName = cupName;
+        this.uniqueId = uniqueId;
+        this.timeMillis = timeMillis;
+        this.timeParsed = true;
+    }
+
+    /**
+     * Reserves count consecutive IDs that no constructed event will get and
+     * returns the first one.
+     */
+    static long reserveIds(int count) {
+        return eventCounter.getAndAdd(count) + 1;
+    }
+
+    /**
+     * Parses the timestamp using the fixed event format and returns
+     * the epoch time in milliseconds. Returns 0 if parsing fails.
+     * The result is cached, so repeated aggregation passes parse only once.
+     */
+    public long getTimeMillis() {
+        if (!timeParsed) {
+            timeMillis = parseTimestamp(timestamp);
+            timeParsed = true;
+        }
+        return timeMillis;
+    }
+
+    /**
+     * Parses a scale notification payload such as "I 45.23 x" (type, grams,
+     * cup) into an event at the given timestamp.
+     *
+     * @return the event, or null if the payload has fewer than three tokens
+     * @throws NumberFormatException if the amount is not a number
+     */
+    static WaterEvent fromScalePayload(String data, String timestamp) {
+        String[] tokens = data.split("\\s+");
+        if (tokens.length < 3) {
+            return null;
+        }
+        return new WaterEvent(timestamp, tokens[0], Float.parseFloat(tokens[1]), tokens[2]);
+    }
+
+    public long getUniqueId() {
+        return uniqueId;
+    }
+
+    /**
+     * Parses "yyyy-MM-dd HH:mm:ss" into epoch millis. Returns 0 if parsing fails.
+     */
+    static long parseTimestamp(String timestamp) {
+        try {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss",
+                    Locale.getDefault()).parse(timestamp).getTime();
+        } catch (ParseException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Formats epoch millis using the fixed event format.
+     */
+    static String formatTimestamp(long timeMillis) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss",
+                Locale.getDefault()).format(new Date(timeMillis));
+    }
+}
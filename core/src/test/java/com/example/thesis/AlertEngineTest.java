@@ -0,0 +1,108 @@
+package com.example.thesis;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for incremental alert evaluation.
+ */
+public class AlertEngineTest {
+
+    private static final long MIN = 60_000L;
+    private static final long HOUR = 3600_000L;
+
+    // 2025-01-01 10:00 local time: day-limit tests stay within one day.
+    private final long start = EventSnapshot.startOfDay(Calendar.getInstance(),
+            1_735_725_600_000L) + 10 * HOUR;
+
+    private final List<String> raised = new ArrayList<>();
+    private final List<String> cleared = new ArrayList<>();
+
+    private AlertEngine engine(AlertRule... rules) {
+        AlertEngine engine = new AlertEngine(1);
+        engine.setRules(0, Arrays.asList(rules));
+        engine.setListener((alert, up) -> (up ? raised : cleared).add(alert.rule.kind.name()));
+        return engine;
+    }
+
+    @Test
+    public void parsesRules() {
+        AlertRule low = AlertRule.parse("low_intake 4 200 remind");
+        assertEquals(AlertRule.Kind.LOW_INTAKE, low.kind);
+        assertEquals(4 * HOUR, low.windowMillis);
+        assertTrue(low.autoRemind);
+        assertEquals("< 200 g in 4 h", low.describe());
+        assertEquals(120 * MIN, AlertRule.parse("NO_INTAKE 120").windowMillis);
+        assertEquals(1500f, AlertRule.parse("day_limit 1500").grams, 0f);
+        assertNull(AlertRule.parse("low_intake 4"));
+        assertNull(AlertRule.parse("day_limit -5"));
+        assertNull(AlertRule.parse("thirst 3"));
+    }
+
+    @Test
+    public void lowIntakeRaisesAfterWindowAndClearsOnIntake() {
+        AlertEngine engine = engine(AlertRule.lowIntake(2, 200f, false));
+        engine.onEvent(0, start, "R", 300f, start);
+        engine.onEvent(0, start + 10 * MIN, "I", 150f, start + 10 * MIN);
+        // Not monitored for a whole window yet.
+        engine.evaluate(start + 90 * MIN);
+        assertTrue(raised.isEmpty());
+
+        engine.evaluate(start + 2 * HOUR);
+        assertEquals(Arrays.asList("LOW_INTAKE"), raised);
+
+        engine.onEvent(0, start + 2 * HOUR + MIN, "I", 100f, start + 2 * HOUR + MIN);
+        assertEquals(Arrays.asList("LOW_INTAKE"), cleared);
+
+        // The first sip leaves the window: 100 g in the last two hours.
+        engine.evaluate(start + 2 * HOUR + 11 * MIN);
+        assertEquals(2, raised.size());
+        assertEquals(1, engine.getActiveAlerts(0).size());
+    }
+
+    @Test
+    public void noIntakeAndDayLimit() {
+        AlertEngine engine = engine(AlertRule.noIntake(60, true), AlertRule.dayLimit(500f, false));
+        engine.onEvent(0, start, "I", 300f, start);
+        engine.evaluate(start + 59 * MIN);
+        assertTrue(raised.isEmpty());
+        engine.evaluate(start + 60 * MIN);
+        assertEquals(Arrays.asList("NO_INTAKE"), raised);
+
+        engine.onEvent(0, start + 61 * MIN, "I", 250f, start + 61 * MIN);
+        assertEquals(Arrays.asList("NO_INTAKE"), cleared);
+        assertEquals(Arrays.asList("NO_INTAKE", "DAY_LIMIT"), raised);
+
+        // A patient without events for a day is no longer monitored.
+        engine.evaluate(start + 61 * MIN + AlertEngine.ACTIVE_MILLIS);
+        assertTrue(engine.getActiveAlerts(0).isEmpty());
+    }
+
+    @Test
+    public void seedMatchesIncrementalState() {
+        PatientEventList events = new PatientEventList();
+        for (int i = 0; i < 9; i++) {
+            long t = start - 3 * HOUR + i * 20 * MIN;
+            events.add(new WaterEvent(WaterEvent.formatTimestamp(t), "I", 60f, "cup"));
+        }
+        AlertEngine engine = engine(AlertRule.lowIntake(1, 100f, false));
+        // Sips every 20 minutes until 20 minutes ago: 120 g in the last hour.
+        engine.seed(0, events, start);
+        assertTrue(raised.isEmpty());
+        engine.evaluate(start + 21 * MIN);
+        assertEquals(Arrays.asList("LOW_INTAKE"), raised);
+
+        // Reseeding keeps the raised alert without notifying again.
+        engine.seed(0, events, start + 21 * MIN);
+        assertEquals(1, raised.size());
+        assertTrue(cleared.isEmpty());
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.thesis;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JVM tests for the rate-limited dashboard refresh.
+ */
+public class CoalescingRefresherTest {
+
+    private long now = 1_000L;
+    private final List<Runnable> queue = new ArrayList<>();
+    private final List<Long> delays = new ArrayList<>();
+    private final List<BitSet> refreshed = new ArrayList<>();
+
+    private void runQueued() {
+        List<Runnable> tasks = new ArrayList<>(queue);
+        queue.clear();
+        for (Runnable r : tasks) {
+            r.run();
+        }
+    }
+
+    @Test
+    public void coalescesBurstsAndKeepsMinimumInterval() {
+        CoalescingRefresher refresher = new CoalescingRefresher("test", 500,
+                (task, delay) -> {
+                    queue.add(task);
+                    delays.add(delay);
+                },
+                refreshed::add, () -> now);
+
+        // A burst of events on two beds: one refresh, right away.
+        for (int i = 0; i < 1000; i++) {
+            refresher.markDirty(i % 2 == 0 ? 0 : 7);
+        }
+        assertEquals(1, queue.size());
+        assertEquals(0L, (long) delays.get(0));
+        runQueued();
+        assertEquals("{0, 7}", refreshed.get(0).toString());
+
+        // The next change 100 ms later waits for the rest of the interval.
+        now += 100;
+        refresher.markDirty(3);
+        refresher.markDirty(3);
+        assertEquals(400L, (long) delays.get(1));
+        runQueued();
+        assertEquals("{3}", refreshed.get(1).toString());
+
+        // A cancelled refresh does not run; the rows stay dirty for the next one.
+        now += 1000;
+        refresher.markDirty(1);
+        refresher.cancel();
+        runQueued();
+        assertEquals(2, refreshed.size());
+        refresher.markAllDirty(3);
+        runQueued();
+        assertEquals("{0, 1, 2}", refreshed.get(2).toString());
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.thesis;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JVM tests for the per-scale connection telemetry.
+ */
+public class ConnectionHealthTest {
+
+    private static final long MINUTE = ConnectionHealth.MINUTE_MILLIS;
+
+    @Test
+    public void countsRateGapsUptimeAndReconnects() {
+        ConnectionHealth health = new ConnectionHealth();
+        long t0 = 100 * MINUTE;
+        health.onConnected(t0);
+        // 12 notifications per minute for five minutes, sequence 0..59 with 3 missing.
+        int seq = 0;
+        for (int m = 0; m < 5; m++) {
+            for (int k = 0; k < 12; k++) {
+                long t = t0 + m * MINUTE + k * 5000;
+                health.onNotification(t);
+                health.onSequence(seq, t);
+                seq += (seq == 10 || seq == 40) ? (seq == 10 ? 2 : 3) : 1;
+            }
+            health.onRssi(-60 - 2 * m, t0 + m * MINUTE);
+        }
+        health.onSequence(seq - 1, t0 + 5 * MINUTE);  // reordered, not a gap
+        health.onDuplicate(t0 + 5 * MINUTE);
+
+        ConnectionHealth.Summary s = health.summarize(t0 + 5 * MINUTE);
+        assertEquals(12.0, s.notificationsPerMinute, 1e-9);
+        assertEquals(3, s.gaps);
+        assertEquals(1, s.duplicates);
+        assertEquals(-68, s.lastRssi);
+        assertEquals(-64.0, s.meanRssi, 1e-9);
+        assertEquals(5 * MINUTE, s.currentUptimeMillis);
+
+        // Disconnected for 4 s, then back: one reconnect, uptime accumulates.
+        health.onDisconnected(t0 + 5 * MINUTE);
+        health.onConnected(t0 + 5 * MINUTE + 4000);
+        s = health.summarize(t0 + 6 * MINUTE);
+        assertEquals(2, s.connections);
+        assertEquals(1, s.reconnects);
+        assertEquals(4000.0, s.reconnectP50Millis, 4000 * 0.125);
+        assertEquals(6 * MINUTE - 4000, s.totalUptimeMillis);
+
+        // An hour later the per-minute ring has forgotten the old counts.
+        s = health.summarize(t0 + 70 * MINUTE);
+        assertEquals(0, s.gaps);
+        assertEquals(0.0, s.notificationsPerMinute, 1e-9);
+    }
+
+    @Test
+    public void findsTrailingSequenceToken() {
+        byte[] tagged = "I 45.23 cup_a #65\r\n".getBytes(StandardCharsets.UTF_8);
+        int at = ConnectionHealth.sequenceAt(tagged);
+        assertEquals(13, at);
+        assertEquals(65, ConnectionHealth.parseSequence(tagged, at));
+        assertEquals(-1, ConnectionHealth.sequenceAt("I 45.23 cup_a".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(-1, ConnectionHealth.sequenceAt("I 45.23 cup#5".getBytes(StandardCharsets.UTF_8)));
+    }
+}
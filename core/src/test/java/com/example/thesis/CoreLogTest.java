@@ -0,0 +1,89 @@
+package com.example.thesis;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for the structured logger, its ring and the rotating log file.
+ */
+public class CoreLogTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @After
+    public void restoreLevels() {
+        CoreLog.setRingLevel(CoreLog.DEBUG);
+        CoreLog.setSinkLevel(CoreLog.INFO);
+    }
+
+    @Test
+    public void templates_areFormattedOnlyWhenRead() {
+        StringBuilder sb = new StringBuilder();
+        CoreLog.formatTo(sb, "Scale {} => {} ({})", 1, "I 45.23 a", null);
+        assertEquals("Scale 1 => I 45.23 a (null)", sb.toString());
+
+        CoreLog.d("CoreLogTest", "ring record {} of {}", 7, "abc");
+        assertTrue(CoreLog.dumpRecent(60_000).contains("D/CoreLogTest: ring record 7 of abc"));
+
+        CoreLog.d("CoreLogTest", "{} + {} + {} = {}", 1, 2, 3, 6);
+        assertTrue(CoreLog.dumpRecent(60_000).contains("D/CoreLogTest: 1 + 2 + 3 = 6"));
+    }
+
+    @Test
+    public void levels_gateRingAndSink() {
+        CoreLog.setRingLevel(CoreLog.OFF);
+        CoreLog.setSinkLevel(CoreLog.OFF);
+        assertFalse(CoreLog.isLoggable(CoreLog.ERROR));
+        CoreLog.e("CoreLogTest", "dropped {} {}", "record", 1);
+        assertFalse(CoreLog.dumpRecent(60_000).contains("dropped record"));
+
+        CoreLog.setRingLevel(CoreLog.INFO);
+        assertTrue(CoreLog.isLoggable(CoreLog.INFO));
+        assertFalse(CoreLog.isLoggable(CoreLog.DEBUG));
+    }
+
+    @Test
+    public void ring_overwritesOldestAndReportsDrops() {
+        LogRing ring = new LogRing(4);
+        for (int i = 0; i < 6; i++) {
+            ring.add(i, CoreLog.INFO, "T", "record {}", i, null, null, null);
+        }
+        LogRing.Batch batch = ring.read(0);
+        assertEquals(4, batch.size());
+        assertEquals(2, batch.dropped);
+        assertEquals(6, batch.endSeq());
+
+        StringBuilder sb = new StringBuilder();
+        batch.format(sb, Long.MIN_VALUE);
+        String text = sb.toString();
+        assertTrue(text.startsWith("... 2 log records overwritten"));
+        assertTrue(text.contains("I/T: record 2\n"));
+        assertTrue(text.contains("I/T: record 5\n"));
+        assertEquals(0, ring.read(6).size());
+    }
+
+    @Test
+    public void rotatingWriter_keepsAtMostMaxFiles() throws IOException {
+        File dir = tmp.newFolder("logs");
+        RotatingLogWriter writer = new RotatingLogWriter(dir, "ingest", 100, 3);
+        for (int i = 0; i < 10; i++) {
+            writer.append("line " + i + " .........................................\n");
+        }
+        assertEquals(3, dir.listFiles().length);
+        String newest = new String(Files.readAllBytes(writer.getFile(0).toPath()), StandardCharsets.UTF_8);
+        assertTrue(newest.endsWith("line 9 .........................................\n"));
+        assertTrue(writer.getFile(0).length() <= 100);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.thesis;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for the persistent cup dictionary.
+ */
+public class CupRegistryTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void idsAndTaresSurviveReopen() throws IOException {
+        File file = new File(tmp.getRoot(), "cups.txt");
+        CupRegistry cups = new CupRegistry(file);
+        assertEquals(0, cups.register("blue"));
+        assertEquals(1, cups.register("red,large"));
+        assertEquals(0, cups.register("blue"));
+        cups.setTare("red,large", 182.5f);
+
+        CupRegistry reopened = new CupRegistry(file);
+        assertEquals(2, reopened.size());
+        assertEquals(1, reopened.idOf("red,large"));
+        assertEquals("blue", reopened.nameOf(0));
+        assertEquals(CupRegistry.UNKNOWN, reopened.idOf("green"));
+        assertNull(reopened.nameOf(5));
+        List<CupRegistry.Cup> list = reopened.getCups();
+        assertTrue(Float.isNaN(list.get(0).tareGrams));
+        assertEquals(182.5f, list.get(1).tareGrams, 0f);
+        assertEquals(2, reopened.register("green"));
+    }
+
+    @Test
+    public void damagedLineKeepsTheIdsOfLaterCups() throws IOException {
+        File file = new File(tmp.getRoot(), "cups.txt");
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            w.write("0,,blue\n1,x1,red\n2,,green\n");
+        }
+        CupRegistry cups = new CupRegistry(file);
+        assertEquals(2, cups.size());
+        assertEquals(CupRegistry.UNKNOWN, cups.idOf("red"));
+        assertEquals(2, cups.idOf("green"));
+        assertNull(cups.nameOf(1));
+        // The gap is never reused, also not after a reopen.
+        assertEquals(3, cups.register("red"));
+        CupRegistry reopened = new CupRegistry(file);
+        assertEquals(2, reopened.idOf("green"));
+        assertEquals(3, reopened.idOf("red"));
+        assertEquals(4, reopened.register("white"));
+    }
+
+    @Test
+    public void seedsFromRollupsAndTailAndAppliesRemovals() throws IOException {
+        File dir = tmp.newFolder("patient_1");
+        SegmentStore store = new SegmentStore(dir);
+        PatientEventList events = new PatientEventList();
+        WaterEvent[] all = {
+                new WaterEvent("2025-01-01 10:00:00", "R", 300f, "blue"),
+                new WaterEvent("2025-01-01 11:00:00", "I", 40f, "blue"),
+                new WaterEvent("2025-01-02 09:00:00", "I", 25f, "blue"),
+        };
+        for (WaterEvent e : all) {
+            store.append(e);
+            events.add(e);
+        }
+        RollupStore rollups = new RollupStore(dir);
+        rollups.rollUp(store, all[2].getTimeMillis());
+
+        CupRegistry cups = new CupRegistry(null);
+        cups.seed(rollups, events);
+        CupRegistry.Cup blue = cups.getCups().get(cups.idOf("blue"));
+        assertEquals(2, blue.intakeCount);
+        assertEquals(65f, blue.intakeSum, 0f);
+        assertEquals(300f, blue.refillSum, 0f);
+        assertEquals(all[2].getTimeMillis(), blue.lastSeenMillis);
+
+        cups.unrecord("blue", "I", 25f);
+        assertEquals(1, cups.getCups().get(cups.idOf("blue")).intakeCount);
+        cups.record("blue", all[2].getTimeMillis(), "I", 25f);
+        cups.unseed(rollups, events);
+        blue = cups.getCups().get(cups.idOf("blue"));
+        assertEquals(0, blue.intakeCount);
+        assertEquals(0f, blue.intakeSum, 0f);
+        assertEquals(0, blue.refillCount);
+    }
+
+    @Test
+    public void internsNamesAndKeepsRunningAggregates() throws IOException {
+        CupRegistry cups = new CupRegistry(null);
+        String parsed = new String("blue");
+        assertSame(cups.intern("blue"), cups.intern(parsed));
+
+        PatientEventList events = new PatientEventList();
+        events.add(new WaterEvent(1000L, "R", 300f, "blue"));
+        events.add(new WaterEvent(2000L, "I", 40f, "blue"));
+        events.add(new WaterEvent(3000L, "I", 25f, "red"));
+        cups.recordAll(events);
+        cups.record("blue", 4000L, "I", 10f);
+
+        CupRegistry.Cup blue = cups.getCups().get(cups.idOf("blue"));
+        assertEquals(2, blue.intakeCount);
+        assertEquals(50f, blue.intakeSum, 0f);
+        assertEquals(300f, blue.refillSum, 0f);
+        assertEquals(4000L, blue.lastSeenMillis);
+
+        cups.clearStats();
+        assertEquals(0, cups.getCups().get(cups.idOf("red")).intakeCount);
+        assertEquals(2, cups.size());
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.thesis;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * JVM tests for the streaming CSV row writer, the ward ZIP export, the
+ * incremental export watermarks and the columnar export.
+ */
+public class EventCsvWriterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void writeRows_formatsSnapshotAndTailRowsAlike() throws IOException {
+        List<WaterEvent> events = new ArrayList<>();
+        events.add(new WaterEvent("2025-01-01 08:05:09", "I", 100f, "a"));
+        events.add(new WaterEvent("2025-01-01 09:30:00", "R", 250.456f, "b"));
+        File file = tmp.newFile("snap.bin");
+        EventSnapshot.write(file, events, Collections.<String, Long>emptyMap());
+
+        PatientEventList list = new PatientEventList(EventSnapshot.open(file));
+        list.add(new WaterEvent("2025-01-01 09:45:00", "I", 0.5f, "a"));
+        PatientEventList copy = list.copy();
+        list.add(new WaterEvent("2025-01-01 10:00:00", "I", 1f, "a"));
+
+        StringWriter out = new StringWriter();
+        int rows = new EventCsvWriter().writeRows(copy, 0, copy.size(), out, null);
+        assertEquals(3, rows);
+        assertEquals("2025-01-01 08:05:09,Intake,100.00,a\n"
+                + "2025-01-01 09:30:00,Refill,250.46,b\n"
+                + "2025-01-01 09:45:00,Intake,0.50,a\n", out.toString());
+    }
+
+    @Test
+    public void writeRows_filtersByCup() throws IOException {
+        List<WaterEvent> events = new ArrayList<>();
+        events.add(new WaterEvent("2025-01-01 08:05:09", "I", 100f, "a"));
+        events.add(new WaterEvent("2025-01-01 09:30:00", "R", 250f, "b"));
+        File file = tmp.newFile("snap.bin");
+        EventSnapshot.write(file, events, Collections.<String, Long>emptyMap());
+
+        PatientEventList list = new PatientEventList(EventSnapshot.open(file));
+        list.add(new WaterEvent("2025-01-01 09:45:00", "I", 0.5f, "b"));
+
+        StringWriter out = new StringWriter();
+        int rows = new EventCsvWriter().setCupFilter("b").writeRows(list, 0, list.size(), out, null);
+        assertEquals(2, rows);
+        assertEquals("2025-01-01 09:30:00,Refill,250.00,b\n"
+                + "2025-01-01 09:45:00,Intake,0.50,b\n", out.toString());
+    }
+
+    @Test
+    public void writeRows_withCupFilter_reportsProgressOverScannedRows() throws IOException {
+        PatientEventList list = new PatientEventList();
+        for (int i = 0; i < EventCsvWriter.PROGRESS_STEP * 2; i++) {
+            list.add(new WaterEvent("2025-01-01 08:00:00", "I", 1f, i % 100 == 0 ? "b" : "a"));
+        }
+        List<Integer> reported = new ArrayList<>();
+        int rows = new EventCsvWriter().setCupFilter("b").writeRows(list, 0, list.size(),
+                new StringWriter(), (scanned, total) -> {
+                    assertEquals(list.size(), total);
+                    reported.add(scanned);
+                    return true;
+                });
+        assertEquals((list.size() + 99) / 100, rows);
+        assertEquals(Arrays.asList(EventCsvWriter.PROGRESS_STEP, list.size()), reported);
+    }
+
+    @Test
+    public void writeRows_stopsWhenProgressCancels() throws IOException {
+        PatientEventList list = new PatientEventList();
+        for (int i = 0; i < EventCsvWriter.PROGRESS_STEP * 3; i++) {
+            list.add(new WaterEvent("2025-01-01 08:00:00", "I", 1f, "a"));
+        }
+        int[] calls = new int[1];
+        try {
+            new EventCsvWriter().writeRows(list, 0, list.size(), new StringWriter(),
+                    (written, total) -> ++calls[0] < 2);
+            fail("Expected cancellation");
+        } catch (CancellationException expected) {
+            assertEquals(2, calls[0]);
+        }
+    }
+
+    @Test
+    public void wardZip_containsOneEntryPerPatientAndManifest() throws IOException {
+        List<PatientEventList> ward = new ArrayList<>();
+        for (int p = 0; p < 3; p++) {
+            PatientEventList list = new PatientEventList();
+            for (int i = 0; i < 5000 * p; i++) {
+                list.add(new WaterEvent("2025-01-01 08:00:00", "I", 1f, "cup" + p));
+            }
+            ward.add(list);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WardZipWriter.write(ward, null, out, null);
+
+        Map<String, String> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = zip.read(buf)) > 0) {
+                    content.write(buf, 0, n);
+                }
+                entries.put(entry.getName(), content.toString("UTF-8"));
+            }
+        }
+        assertEquals(4, entries.size());
+        assertEquals(EventCsvWriter.HEADER, entries.get("patient_1.csv"));
+        assertEquals(10001, entries.get("patient_3.csv").split("\n").length);
+        assertTrue(entries.get(WardZipWriter.MANIFEST_NAME).contains(
+                "2,patient_2.csv,5000,2025-01-01 08:00:00,2025-01-01 08:00:00\n"));
+    }
+
+    @Test
+    public void watermarks_resumeAfterLastExportedEventAndPersist() throws IOException {
+        PatientEventList list = new PatientEventList();
+        list.add(new WaterEvent("2025-01-01 08:00:00", "I", 1f, "a"));
+        list.add(new WaterEvent("2025-01-01 09:00:00", "I", 2f, "a"));
+        list.add(new WaterEvent("2025-01-01 09:00:00", "R", 3f, "a"));
+
+        File file = tmp.newFile("marks.txt");
+        ExportWatermarks marks = new ExportWatermarks(file);
+        assertEquals(0, ExportWatermarks.startIndex(list, marks.get("pc", 0)));
+        marks.put("pc", 0, ExportWatermarks.endOf(list));
+
+        // A third event in the same second arrives after the export.
+        list.add(new WaterEvent("2025-01-01 09:00:00", "I", 4f, "a"));
+        list.add(new WaterEvent("2025-01-01 10:00:00", "I", 5f, "a"));
+        ExportWatermarks reopened = new ExportWatermarks(file);
+        assertEquals(3, ExportWatermarks.startIndex(list, reopened.get("pc", 0)));
+        assertEquals(0, ExportWatermarks.startIndex(list, reopened.get("other", 0)));
+
+        reopened.reset("pc");
+        assertEquals(0, ExportWatermarks.startIndex(list, new ExportWatermarks(file).get("pc", 0)));
+    }
+
+    @Test
+    public void watermarks_advanceOnlyOnCommitAndPerDestination() throws IOException {
+        PatientEventList list = new PatientEventList();
+        list.add(new WaterEvent("2025-01-01 08:00:00", "I", 1f, "a"));
+        list.add(new WaterEvent("2025-01-01 09:00:00", "I", 2f, "a"));
+
+        File file = tmp.newFile("marks.txt");
+        ExportWatermarks marks = new ExportWatermarks(file);
+
+        // The patient flow exports patient 0 and delivers it.
+        int patient = marks.stage("share.patient",
+                Collections.singletonMap(0, ExportWatermarks.endOf(list)));
+        assertEquals(0, ExportWatermarks.startIndex(list, marks.get("share.patient", 0)));
+        assertTrue(marks.commit(patient));
+        assertEquals(2, ExportWatermarks.startIndex(list, marks.get("share.patient", 0)));
+
+        // The ward flow still sees all of patient 0; its share is dismissed.
+        assertEquals(0, ExportWatermarks.startIndex(list, marks.get("share.ward", 0)));
+        Map<Integer, ExportWatermarks.Mark> ward = new HashMap<>();
+        ward.put(0, ExportWatermarks.endOf(list));
+        ward.put(1, null);
+        marks.stage("share.ward", ward);
+        assertEquals(0, ExportWatermarks.startIndex(list,
+                new ExportWatermarks(file).get("share.ward", 0)));
+
+        // A late commit of an older export does not move a mark back.
+        PatientEventList first = new PatientEventList();
+        first.add(list.get(0));
+        int older = marks.stage("share.patient",
+                Collections.singletonMap(0, ExportWatermarks.endOf(first)));
+        assertTrue(marks.commit(older));
+        assertEquals(2, ExportWatermarks.startIndex(list, marks.get("share.patient", 0)));
+        assertFalse(marks.commit(older));
+    }
+
+    @Test
+    public void columnar_roundTripsAndSkipsBlocksOutsideTheRange() throws IOException {
+        PatientEventList list = new PatientEventList();
+        long start = new WaterEvent("2025-01-01 00:00:00", "I", 0f, "").getTimeMillis();
+        int rows = ColumnarReader.BLOCK_ROWS * 3 + 5;
+        for (int i = 0; i < rows; i++) {
+            list.add(new WaterEvent(start + i * 60_000L, i % 4 == 0 ? "R" : "I",
+                    (i % 500) / 4f, "cup" + (i % 3)));
+        }
+        File file = tmp.newFile("patient_1.swcf");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            assertEquals(rows, new ColumnarWriter().write(list, 0, rows, out, null));
+        }
+        StringWriter csv = new StringWriter();
+        new EventCsvWriter().writeRows(list, 0, rows, csv, null);
+        assertTrue(file.length() * 3 < csv.toString().length());
+
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            assertEquals(rows, reader.getRowCount());
+            assertEquals(4, reader.getBlocks().size());
+            ColumnarReader.Block first = reader.readBlock(0);
+            assertEquals(start, first.timeMillis[0]);
+            assertEquals("R", reader.getDictionary()[first.typeId[0]]);
+            assertEquals(0.25f, first.amount[1], 0f);
+            assertEquals("cup1", reader.getDictionary()[first.cupId[1]]);
+
+            // Rows of the second block only: the other blocks' stats exclude them.
+            long from = start + ColumnarReader.BLOCK_ROWS * 60_000L;
+            long to = from + 10 * 60_000L;
+            int overlapping = 0;
+            for (ColumnarReader.BlockInfo b : reader.getBlocks()) {
+                overlapping += b.overlaps(from, to) ? 1 : 0;
+            }
+            assertEquals(1, overlapping);
+            List<Long> seen = new ArrayList<>();
+            assertEquals(10, reader.scan(from, to, (t, amount, type, cup) -> seen.add(t)));
+            assertEquals(Long.valueOf(from), seen.get(0));
+        }
+    }
+}
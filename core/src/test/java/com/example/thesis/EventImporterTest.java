@@ -0,0 +1,106 @@
+package com.example.thesis;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JVM tests for importing and merging another tablet's backup files.
+ */
+public class EventImporterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File writeFile(String name, String content) throws IOException {
+        File file = tmp.newFile(name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    @Test
+    public void parseChunk_splitsAtLineBoundariesWithoutLosingRows() throws IOException {
+        StringBuilder content = new StringBuilder(EventCsvWriter.HEADER);
+        for (int i = 0; i < 50; i++) {
+            WaterEvent e = new WaterEvent(String.format("2025-01-01 10:%02d:00", i), "I", i, "a");
+            content.append(new String(SegmentStore.encodeRecord(e), StandardCharsets.UTF_8));
+        }
+        content.append("garbage\n2025-01-01 11:00:00,Refill,200.00,a");
+        File file = writeFile("patient_1_backup.txt", content.toString());
+
+        long length = file.length();
+        for (int parts : new int[]{1, 3, 7, 64}) {
+            int events = 0;
+            int rejected = 0;
+            for (int i = 0; i < parts; i++) {
+                EventImporter.Chunk chunk = EventImporter.parseChunk(
+                        file, length * i / parts, length * (i + 1) / parts);
+                events += chunk.events.size();
+                rejected += chunk.rejected;
+            }
+            assertEquals("parts=" + parts, 51, events);
+            assertEquals("parts=" + parts, 1, rejected);
+        }
+    }
+
+    @Test
+    public void merge_ordersByTimeDropsDuplicatesAndCommitsTouchedDays() throws IOException {
+        List<WaterEvent> existing = new ArrayList<>();
+        existing.add(new WaterEvent("2025-01-01 08:00:00", "I", 10f, "a"));
+        existing.add(new WaterEvent("2025-01-03 08:00:00", "I", 30f, "a"));
+
+        File other = writeFile("patient_1_backup.txt",
+                "2025-01-01 08:00:00,Intake,10.00,a\n"      // duplicate of an existing event
+                        + "2025-01-02 09:00:00,Refill,250.00,b\n"
+                        + "2025-01-01 07:00:00,Intake,5.00,b\n");
+        File csv = writeFile("patient_1.csv", EventCsvWriter.HEADER
+                + "2025-01-02 09:00:00,Refill,250.00,b\n"   // same event from a second tablet
+                + "2025-01-02 10:00:00,Intake,20.00,b\n");
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            EventImporter.Result result = EventImporter.merge(existing,
+                    EventImporter.parse(Arrays.asList(other, csv), pool));
+            assertEquals(3, result.imported);
+            assertEquals(2, result.duplicates);
+            assertEquals(0, result.rejected);
+            assertEquals(5, result.merged.size());
+            assertEquals("2025-01-01 07:00:00", result.merged.get(0).timestamp);
+            assertEquals("2025-01-03 08:00:00", result.merged.get(4).timestamp);
+            assertEquals(Arrays.asList("20250101", "20250102"),
+                    new ArrayList<>(result.touchedDays.keySet()));
+
+            SegmentStore store = new SegmentStore(tmp.newFolder("patient_1"));
+            for (WaterEvent e : existing) {
+                store.append(e);
+            }
+            store.rewriteDays(result.touchedDays);
+            SegmentStore reopened = new SegmentStore(store.getDirectory());
+            assertEquals(3, reopened.getSegments().size());
+            assertEquals(5, reopened.readAll().size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void patientIndexOf_readsNumberFromFileName() {
+        assertEquals(1, EventImporter.patientIndexOf("patient_2_backup.txt"));
+        assertEquals(0, EventImporter.patientIndexOf("1_patient_1.csv"));
+        assertEquals(-1, EventImporter.patientIndexOf("seg_20250101.txt"));
+    }
+}
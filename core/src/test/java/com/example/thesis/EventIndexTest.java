@@ -0,0 +1,102 @@
+package com.example.thesis;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for the event-list filter indexes.
+ */
+public class EventIndexTest {
+
+    private static final long START = 1_735_725_600_000L;
+
+    private static int[] scan(PatientEventList events, EventIndex.Filter f) {
+        List<Integer> out = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            if (f.matches(events, i)) {
+                out.add(i);
+            }
+        }
+        return out.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void queriesMatchFullScan() {
+        Random random = new Random(3);
+        PatientEventList events = new PatientEventList();
+        EventIndex index = new EventIndex();
+        String[] cups = {"a", "b", "c"};
+        for (int i = 0; i < 2000; i++) {
+            events.add(new WaterEvent(START + i * 60_000L, random.nextInt(4) == 0 ? "R" : "I",
+                    random.nextInt(300), cups[random.nextInt(3)]));
+            index.append(events, i);
+        }
+
+        EventIndex.Filter f = new EventIndex.Filter();
+        assertEquals(2000, index.query(events, f).length);
+
+        f.type = "R";
+        f.cup = "b";
+        f.minAmount = 50f;
+        f.maxAmount = 200f;
+        f.fromMillis = START + 300 * 60_000L;
+        f.toMillis = START + 1500 * 60_000L;
+        assertArrayEquals(scan(events, f), index.query(events, f));
+
+        f.type = null;
+        f.minAmount = Float.NaN;
+        assertArrayEquals(scan(events, f), index.query(events, f));
+
+        f.cup = "missing";
+        assertEquals(0, index.query(events, f).length);
+    }
+
+    @Test
+    public void patientDataKeepsIndexInSyncAcrossEdits() {
+        PatientData data = new PatientData(null);
+        for (int i = 0; i < 10; i++) {
+            data.add(new WaterEvent(START + i * 60_000L, "I", 10f + i, i % 2 == 0 ? "even" : "odd"));
+        }
+        EventIndex.Filter f = new EventIndex.Filter();
+        f.cup = "odd";
+        assertEquals(5, data.query(f).size());
+
+        data.remove(1);
+        EventIndex.Result r = data.query(f);
+        assertEquals(4, r.size());
+        assertEquals(13f, r.get(0).amount, 0f);
+        assertEquals(9, r.total());
+        assertEquals("[even, odd]", data.getCupNames().toString());
+
+        data.clear();
+        assertEquals(0, data.query(f).size());
+    }
+
+    @Test
+    public void appendedEventsExtendAResultUntilTheListIsRewritten() {
+        PatientData data = new PatientData(null);
+        data.add(new WaterEvent(START, "I", 10f, "odd"));
+        EventIndex.Filter f = new EventIndex.Filter();
+        f.cup = "odd";
+        EventIndex.Result r = data.query(f);
+
+        data.add(new WaterEvent(START + 60_000L, "I", 11f, "even"));
+        data.add(new WaterEvent(START + 120_000L, "I", 12f, "odd"));
+        List<WaterEvent> more = data.getEventsAppendedSince(r.total(), r.generation);
+        assertEquals(2, more.size());
+        assertFalse(f.matches(more.get(0)));
+        assertTrue(f.matches(more.get(1)));
+
+        data.remove(0);
+        assertNull(data.getEventsAppendedSince(r.total() + more.size(), r.generation));
+    }
+}
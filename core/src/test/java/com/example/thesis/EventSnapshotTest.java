@@ -0,0 +1,129 @@
+package com.example.thesis;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for the binary snapshot and the lazily faulted event list.
+ */
+public class EventSnapshotTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static List<WaterEvent> sampleEvents() {
+        List<WaterEvent> events = new ArrayList<>();
+        events.add(new WaterEvent("2025-01-01 08:00:00", "I", 100f, "a"));
+        events.add(new WaterEvent("2025-01-01 09:30:00", "R", 250f, "a"));
+        events.add(new WaterEvent("2025-01-01 12:00:00", "I", 45.5f, "b"));
+        events.add(new WaterEvent("2025-01-02 07:15:00", "I", 80f, "a"));
+        return events;
+    }
+
+    @Test
+    public void snapshot_roundTripsRecordsAndDayAggregates() throws IOException {
+        File file = tmp.newFile("snap.bin");
+        List<WaterEvent> events = sampleEvents();
+        EventSnapshot.write(file, events, Collections.singletonMap("20250101", 1234L));
+
+        EventSnapshot snap = EventSnapshot.open(file);
+        assertNotNull(snap);
+        assertEquals(Long.valueOf(1234L), snap.getJournalWatermarks().get("20250101"));
+        assertEquals(4, snap.getRecordCount());
+        assertTrue(snap.isTimeOrdered());
+
+        for (int i = 0; i < events.size(); i++) {
+            WaterEvent e = snap.getEvent(i);
+            assertEquals(events.get(i).timestamp, e.timestamp);
+            assertEquals(events.get(i).type, e.type);
+            assertEquals(events.get(i).amount, e.amount, 0.0001f);
+            assertEquals(events.get(i).cupName, e.cupName);
+        }
+
+        assertEquals(2, snap.getDayCount());
+        assertEquals(145.5f, snap.getDayIntake(0), 0.001f);
+        assertEquals(250f, snap.getDayRefill(0), 0.001f);
+        assertEquals(2, snap.getDayIntakeCount(0));
+        assertEquals(80f, snap.getDayIntake(1), 0.001f);
+    }
+
+    @Test
+    public void snapshot_withBadChecksum_isRejected() throws IOException {
+        File file = tmp.newFile("snap.bin");
+        EventSnapshot.write(file, sampleEvents(), Collections.<String, Long>emptyMap());
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(40);
+            raf.write(0x7F);
+        }
+        assertNull(EventSnapshot.open(file));
+    }
+
+    @Test
+    public void eventList_faultsInLazilyAndSupportsRemoval() throws IOException {
+        File file = tmp.newFile("snap.bin");
+        EventSnapshot.write(file, sampleEvents(), Collections.<String, Long>emptyMap());
+
+        PatientEventList list = new PatientEventList(EventSnapshot.open(file));
+        list.add(new WaterEvent("2025-01-03 10:00:00", "I", 10f, "c"));
+        assertEquals(5, list.size());
+
+        // The same row returns the same object (stable uniqueId for the adapter).
+        assertTrue(list.get(1) == list.get(1));
+
+        assertEquals(2, list.lowerBound(list.getTimeMillisAt(2)));
+
+        list.remove(0);
+        assertEquals(4, list.size());
+        assertEquals("R", list.getTypeAt(0));
+        assertEquals("c", list.get(3).cupName);
+    }
+
+    @Test
+    public void eventList_removesSnapshotRowsWithoutMaterializing() throws IOException {
+        File file = tmp.newFile("snap.bin");
+        List<WaterEvent> events = sampleEvents();
+        EventSnapshot.write(file, events, Collections.<String, Long>emptyMap());
+
+        PatientEventList list = new PatientEventList(EventSnapshot.open(file));
+        list.add(new WaterEvent("2025-01-03 10:00:00", "I", 10f, "c"));
+        WaterEvent kept = list.get(3);
+        PatientEventList before = list.copy();
+
+        assertEquals("a", list.remove(1).cupName);
+        assertEquals("b", list.remove(1).cupName);
+        assertNull(list.getSnapshot());
+        assertTrue(list.isSnapshotRow(1));
+        assertEquals(3, list.size());
+        assertEquals(events.get(3).getTimeMillis(), list.getTimeMillisAt(1));
+        assertTrue(kept == list.get(1));
+        assertEquals("c", list.getCupNameAt(2));
+        assertEquals(1, list.lowerBound(events.get(3).getTimeMillis()));
+        assertTrue(list.isTimeOrdered());
+
+        // The copy taken before the removals still sees every row.
+        assertEquals(5, before.size());
+        assertNotNull(before.getSnapshot());
+        assertEquals("R", before.getTypeAt(1));
+
+        // Removing the last snapshot rows drops the snapshot.
+        list.remove(0);
+        list.remove(0);
+        assertEquals(1, list.size());
+        assertTrue(!list.isSnapshotRow(0));
+        assertEquals("c", list.get(0).cupName);
+    }
+}
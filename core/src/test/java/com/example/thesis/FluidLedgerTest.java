@@ -0,0 +1,87 @@
+package com.example.thesis;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JVM tests for the per-cup fluid ledger and windowed index totals.
+ */
+public class FluidLedgerTest {
+
+    private static final long HOUR = 3600_000L;
+
+    // 2025-01-01 08:00 local time.
+    private final long start = EventSnapshot.startOfDay(Calendar.getInstance(),
+            1_735_725_600_000L) + 8 * HOUR;
+
+    @Test
+    public void reconcilesRefillsIntakesSpillsAndLoss() {
+        FluidLedger ledger = new FluidLedger();
+        ledger.add(start, "R", 300f, "A");
+        ledger.add(start + HOUR, "I", 100f, "A");
+        ledger.add(start + 2 * HOUR, "I", 150f, "A");
+        // 50 g left, 80 g gone: 30 g were never poured.
+        ledger.add(start + 3 * HOUR, "I", 80f, "A");
+        ledger.add(start + 4 * HOUR, "R", 300f, "A");
+        ledger.add(start + 5 * HOUR, "I", 280f, "A");
+        // Within the noise tolerance of an empty cup.
+        ledger.add(start + 5 * HOUR, "I", 3f, "B");
+
+        FluidLedger.Balance all = ledger.getBalance(0L, Long.MAX_VALUE);
+        assertEquals(600f, all.poured, 0f);
+        assertEquals(333f, all.drunk, 0f);
+        assertEquals(280f, all.spilled, 0f);
+        assertEquals(30f, all.unexplained, 0f);
+        assertEquals(-13f, all.net(), 0f);
+
+        List<FluidLedger.CupAccount> cups = ledger.getCups();
+        assertEquals(2, cups.size());
+        assertEquals(20f - 3f, ledger.getWaterInCups(), 0f);
+
+        // Hours 2..4: the 150 g sip, the 80 g drop (30 g unexplained) and the second refill.
+        FluidLedger.Balance window = ledger.getBalance(start + 2 * HOUR, start + 5 * HOUR);
+        assertEquals(230f, window.drunk, 0f);
+        assertEquals(300f, window.poured, 0f);
+        assertEquals(30f, window.unexplained, 0f);
+        assertEquals(0f, window.spilled, 0f);
+    }
+
+    @Test
+    public void seedRecent_replaysOnlyTheLastSeedDays() {
+        long day = 24 * HOUR;
+        long now = start + 400 * day;
+        PatientEventList events = new PatientEventList();
+        events.add(new WaterEvent(WaterEvent.formatTimestamp(start), "R", 300f, "A"));
+        events.add(new WaterEvent(WaterEvent.formatTimestamp(now - 10 * day), "R", 200f, "A"));
+        events.add(new WaterEvent(WaterEvent.formatTimestamp(now - 10 * day + HOUR), "I", 150f, "A"));
+
+        FluidLedger ledger = new FluidLedger();
+        ledger.seedRecent(events, now);
+        FluidLedger.Balance all = ledger.getBalance(0L, Long.MAX_VALUE);
+        assertEquals(200f, all.poured, 0f);
+        assertEquals(150f, all.drunk, 0f);
+        assertEquals(50f, ledger.getWaterInCups(), 0f);
+
+        ledger.seed(events);
+        assertEquals(500f, ledger.getBalance(0L, Long.MAX_VALUE).poured, 0f);
+    }
+
+    @Test
+    public void windowTotalsSpanDays() {
+        AggregateIndex index = new AggregateIndex();
+        long day = EventSnapshot.startOfDay(Calendar.getInstance(), start);
+        for (int d = 0; d < 3; d++) {
+            for (int h = 0; h < 24; h += 6) {
+                index.add(day + d * 24 * HOUR + h * HOUR + 60_000L, "I", 10f);
+            }
+        }
+        // From 12:00 on day 0 to 07:00 on day 2: 2 + 4 + 2 events (DST aside).
+        AggregateIndex.Bucket b = index.getTotals(day + 12 * HOUR, day + 55 * HOUR);
+        assertEquals(8, b.intakeCount);
+        assertEquals(80f, b.intakeSum, 0f);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.thesis;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for the metrics registry and the ingest instrumentation.
+ */
+public class MetricsTest {
+
+    @Test
+    public void registry_returnsSameMetricAndDumpsIt() throws InterruptedException {
+        LatencyHistogram h = Metrics.histogram("test.stage");
+        assertSame(h, Metrics.histogram("test.stage"));
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    Metrics.counter("test.count").inc();
+                    h.record(2_000_000L);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(4000, Metrics.counter("test.count").get());
+        assertEquals(4000, h.getCount());
+
+        String dump = Metrics.dump();
+        assertTrue(dump.contains("test.count"));
+        assertTrue(dump.contains("test.stage"));
+        assertTrue(dump.contains("2.000"));
+
+        Metrics.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, Metrics.counter("test.count").get());
+    }
+
+    @Test
+    public void scaleIngest_countsDecisionsPerScale() {
+        Metrics.reset();
+        ScaleIngest ingest = new ScaleIngest(2, (index, event) -> {
+        });
+        ingest.onNotification("I 10 a".getBytes(StandardCharsets.UTF_8), 1000);
+        ingest.onNotification("I 10 a".getBytes(StandardCharsets.UTF_8), 1100);
+        ingest.onNotification("bad".getBytes(StandardCharsets.UTF_8), 5000);
+
+        assertEquals(3, Metrics.counter("scale3.notifications").get());
+        assertEquals(1, Metrics.counter("scale3.duplicates").get());
+        assertEquals(1, Metrics.counter("scale3.rejected").get());
+        assertEquals(1, Metrics.histogram("scale3.parse").getCount());
+    }
+}
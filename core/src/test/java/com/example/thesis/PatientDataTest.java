@@ -0,0 +1,118 @@
+package com.example.thesis;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for the per-patient state on top of a PatientStore.
+ */
+public class PatientDataTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static WaterEvent event(long timeMillis, String type, float amount) {
+        return new WaterEvent(WaterEvent.formatTimestamp(timeMillis), type, amount, "a");
+    }
+
+    @Test
+    public void addRemove_persistAndKeepIndexInSync() throws IOException {
+        File dir = tmp.newFolder("Scale Water");
+        long now = System.currentTimeMillis();
+        long hourAgo = now - 3600_000L;
+
+        PatientData data = new PatientData(new PatientStore(dir, 0));
+        data.load(now);
+        data.add(event(hourAgo, "I", 100f));
+        data.add(event(hourAgo + 1000, "R", 300f));
+        data.add(event(hourAgo + 2000, "I", 50f));
+        assertEquals(150f, data.getIntakeSince(now - 2 * 3600_000L), 0.001f);
+
+        WaterEvent removed = data.remove(2);
+        assertEquals(50f, removed.amount, 0f);
+        assertNull(data.remove(5));
+        assertEquals(100f, data.getIntakeSince(now - 2 * 3600_000L), 0.001f);
+
+        // A fresh instance over the same directory sees the same events.
+        PatientData reloaded = new PatientData(new PatientStore(dir, 0));
+        reloaded.load(now);
+        assertEquals(2, reloaded.getEvents().size());
+        assertEquals(100f, reloaded.getIntakeSince(now - 2 * 3600_000L), 0.001f);
+    }
+
+    @Test
+    public void removeById_deletesSnapshotRowsSeenThroughAQueryResult() throws IOException {
+        File dir = tmp.newFolder("Scale Water");
+        long now = System.currentTimeMillis();
+        long hourAgo = now - 3600_000L;
+        PatientData data = new PatientData(new PatientStore(dir, 0));
+        data.load(now);
+        for (int i = 0; i < 5; i++) {
+            data.add(event(hourAgo + i * 1000, "I", 10f * (i + 1)));
+        }
+        data.checkpoint();
+
+        PatientData reloaded = new PatientData(new PatientStore(dir, 0));
+        reloaded.load(now);
+        assertTrue(reloaded.getEvents().getSnapshot() != null);
+        WaterEvent live = event(hourAgo + 10_000, "I", 60f);
+        reloaded.add(live);
+
+        // The result reads rows through its own copy of the list.
+        EventIndex.Result result = reloaded.query(new EventIndex.Filter());
+        WaterEvent third = result.get(2);
+        WaterEvent fourth = result.get(3);
+        assertEquals(30f, reloaded.removeById(third.getUniqueId()).amount, 0f);
+        assertEquals(5, reloaded.getEvents().size());
+        assertNull(reloaded.removeById(third.getUniqueId()));
+        assertEquals(40f, reloaded.removeById(fourth.getUniqueId()).amount, 0f);
+        assertEquals(60f, reloaded.removeById(result.get(5).getUniqueId()).amount, 0f);
+        assertEquals(3, reloaded.getEvents().size());
+        assertEquals(50f, reloaded.getEvents().getAmountAt(2), 0f);
+    }
+
+    @Test
+    public void legacyBackup_skipsBadLinesAndMigratesTheRest() throws IOException {
+        File dir = tmp.newFolder("Scale Water");
+        long now = System.currentTimeMillis();
+        String t1 = WaterEvent.formatTimestamp(now - 3 * 3600_000L);
+        String t2 = WaterEvent.formatTimestamp(now - 2 * 3600_000L);
+        String t3 = WaterEvent.formatTimestamp(now - 3600_000L);
+        File legacy = new File(dir, "patient_1_backup.txt");
+        try (FileOutputStream out = new FileOutputStream(legacy)) {
+            out.write((t1 + ",Intake,40.00,a\n"
+                    + "garbage line\n"
+                    + t2 + ",Intake,45,23,a\n"   // written in a decimal-comma locale
+                    + t3 + ",Refill,200.00,a\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        PatientData data = new PatientData(new PatientStore(dir, 0));
+        data.load(now);
+        assertEquals(3, data.getEvents().size());
+        assertEquals(85.23f, data.getIntakeSince(now - 4 * 3600_000L), 0.001f);
+        assertFalse(legacy.exists());
+        assertTrue(new File(dir, "patient_1_backup.migrated.txt").exists());
+    }
+
+    @Test
+    public void nullStore_keepsEventsInMemoryOnly() {
+        PatientData data = new PatientData(null);
+        long now = System.currentTimeMillis();
+        data.load(now);
+        data.add(event(now, "I", 80f));
+        data.checkpoint();
+        assertEquals(1, data.getEvents().size());
+        assertEquals(80f, data.getIntakeForDayOffset(now, 0), 0.001f);
+    }
+}
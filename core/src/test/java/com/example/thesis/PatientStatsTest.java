@@ -0,0 +1,75 @@
+package com.example.thesis;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for the streaming per-patient statistics.
+ */
+public class PatientStatsTest {
+
+    private static final long MIN = 60_000L;
+    private static final long START = 1_735_725_600_000L;
+
+    @Test
+    public void sipMomentsAndQuantiles() {
+        Random random = new Random(7);
+        PatientStats stats = new PatientStats();
+        double[] sips = new double[5000];
+        for (int i = 0; i < sips.length; i++) {
+            sips[i] = 10 + random.nextInt(41);
+            stats.add(START + i * MIN, "I", (float) sips[i]);
+            stats.add(START + i * MIN, "R", 200f);
+        }
+        PatientStats.Summary s = stats.summarize(START + sips.length * MIN);
+
+        double mean = Arrays.stream(sips).average().getAsDouble();
+        double var = Arrays.stream(sips).map(x -> (x - mean) * (x - mean)).sum() / (sips.length - 1);
+        assertEquals(sips.length, s.sipCount);
+        assertEquals(mean, s.meanSip, 1e-9);
+        assertEquals(Math.sqrt(var), s.sipStdDev, 1e-9);
+
+        Arrays.sort(sips);
+        assertEquals(sips[sips.length / 2], s.medianSip, 1.5);
+        assertEquals(sips[(int) (sips.length * 0.9)], s.p90Sip, 1.5);
+    }
+
+    @Test
+    public void decayedRatesFollowSteadyIntake() {
+        PatientStats stats = new PatientStats();
+        // 20 g every 10 minutes => 120 g/h for five days (several baseline time constants).
+        long t = START;
+        for (; t < START + 5 * 24 * 60 * MIN; t += 10 * MIN) {
+            stats.add(t, "I", 20f);
+        }
+        PatientStats.Summary steady = stats.summarize(t);
+        assertEquals(120, steady.ratePerHour, 15);
+        assertEquals(120, steady.baselinePerHour, 15);
+        assertEquals(t - 10 * MIN, steady.lastIntakeMillis);
+
+        // Three hours without drinking: the short rate drops well below the baseline.
+        PatientStats.Summary idle = stats.summarize(t + 180 * MIN);
+        assertTrue(idle.ratePerHour < 10);
+        assertTrue(idle.trend() < -0.8);
+    }
+
+    @Test
+    public void seedMatchesIncrementalUpdates() {
+        PatientEventList events = new PatientEventList();
+        PatientStats live = new PatientStats();
+        for (int i = 0; i < 50; i++) {
+            long t = START + i * 30 * MIN;
+            events.add(new WaterEvent(WaterEvent.formatTimestamp(t), "I", 10f + i % 7, "cup"));
+            live.add(events.getTimeMillisAt(i), "I", 10f + i % 7);
+        }
+        PatientStats seeded = new PatientStats();
+        long now = START + 50 * 30 * MIN;
+        seeded.seed(events, now);
+        assertEquals(live.summarize(now).toString(), seeded.summarize(now).toString());
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.thesis;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for the day-partitioned segment store.
+ */
+public class SegmentStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static long millis(String ts) {
+        return new WaterEvent(ts, "I", 0f, "").getTimeMillis();
+    }
+
+    @Test
+    public void append_partitionsByDayAndSurvivesReopen() throws IOException {
+        File dir = tmp.newFolder("patient_1");
+        SegmentStore store = new SegmentStore(dir);
+        store.append(new WaterEvent("2025-01-01 10:00:00", "I", 100f, "a"));
+        store.append(new WaterEvent("2025-01-01 11:00:00", "R", 200f, "a"));
+        store.append(new WaterEvent("2025-01-02 09:00:00", "I", 50f, "b"));
+
+        // Reopen without flushing: the manifest is reconciled with the files.
+        SegmentStore reopened = new SegmentStore(dir);
+        List<SegmentStore.Segment> segments = reopened.getSegments();
+        assertEquals(2, segments.size());
+        assertEquals("20250101", segments.get(0).key);
+        assertEquals(100f, segments.get(0).intakeSum, 0.001f);
+        assertEquals(200f, segments.get(0).refillSum, 0.001f);
+        assertEquals(3, reopened.readAll().size());
+    }
+
+    @Test
+    public void read_onlyReturnsEventsInsideTheWindow() throws IOException {
+        SegmentStore store = new SegmentStore(tmp.newFolder("patient_1"));
+        store.append(new WaterEvent("2025-01-01 10:00:00", "I", 100f, "a"));
+        store.append(new WaterEvent("2025-01-02 09:00:00", "I", 50f, "a"));
+        store.append(new WaterEvent("2025-01-02 18:00:00", "I", 25f, "a"));
+        store.append(new WaterEvent("2025-01-03 08:00:00", "I", 10f, "a"));
+
+        List<WaterEvent> day2 = store.read(millis("2025-01-02 00:00:00"),
+                millis("2025-01-02 12:00:00"));
+        assertEquals(1, day2.size());
+        assertEquals(50f, day2.get(0).amount, 0.001f);
+
+        assertEquals(75f, store.getIntakeSum(millis("2025-01-02 00:00:00"),
+                millis("2025-01-03 00:00:00")), 0.001f);
+    }
+
+    @Test
+    public void readAfter_returnsOnlyTheTailAndDetectsRewrites() throws IOException {
+        SegmentStore store = new SegmentStore(tmp.newFolder("patient_1"));
+        WaterEvent first = new WaterEvent("2025-01-01 10:00:00", "I", 100f, "a");
+        store.append(first);
+        Map<String, Long> watermark = store.getLengths();
+
+        store.append(new WaterEvent("2025-01-01 11:00:00", "I", 20f, "a"));
+        store.append(new WaterEvent("2025-01-02 11:00:00", "I", 30f, "a"));
+        assertEquals(2, store.readAfter(watermark).size());
+
+        store.rewriteDay("20250101", Collections.<WaterEvent>emptyList());
+        assertNull(store.readAfter(watermark));
+    }
+
+    @Test
+    public void retention_archivesOldSegmentsButKeepsToday() throws IOException {
+        File dir = tmp.newFolder("patient_1");
+        SegmentStore store = new SegmentStore(dir);
+        store.append(new WaterEvent("2025-01-01 10:00:00", "I", 100f, "a"));
+        store.append(new WaterEvent("2025-03-01 10:00:00", "I", 100f, "a"));
+
+        int removed = store.applyRetention(millis("2025-03-01 12:00:00"), 30, true);
+        assertEquals(1, removed);
+        assertEquals(1, store.getSegments().size());
+        assertTrue(new File(dir, "archive/seg_20250101.txt").exists());
+    }
+
+    @Test
+    public void compaction_keepsEventsReadableAndShrinksSegment() throws IOException {
+        File dir = tmp.newFolder("patient_1");
+        SegmentStore store = new SegmentStore(dir);
+        for (int i = 0; i < 200; i++) {
+            String ts = String.format(Locale.US, "2025-01-01 %02d:%02d:00", i / 60, i % 60);
+            store.append(new WaterEvent(ts, i % 2 == 0 ? "I" : "R", 45.23f + i, "cup_a"));
+        }
+        store.append(new WaterEvent("2025-02-01 10:00:00", "I", 1f, "cup_a"));
+        long textBytes = new File(dir, "seg_20250101.txt").length();
+
+        assertEquals(1, store.compactOlderThan(millis("2025-02-01 12:00:00"), 7));
+        File cold = new File(dir, "seg_20250101.cold");
+        assertTrue(cold.exists());
+        assertTrue(cold.length() * 4 < textBytes);
+
+        // Reads and reopen are transparent to the tier.
+        List<WaterEvent> all = new SegmentStore(dir).readAll();
+        assertEquals(201, all.size());
+        assertEquals("2025-01-01 00:03:00", all.get(3).timestamp);
+        assertEquals("R", all.get(3).type);
+        assertEquals(48.23f, all.get(3).amount, 0.001f);
+        assertEquals("cup_a", all.get(3).cupName);
+    }
+
+    @Test
+    public void rollups_coverSealedDaysAndFollowRewrites() throws IOException {
+        File dir = tmp.newFolder("patient_1");
+        SegmentStore store = new SegmentStore(dir);
+        store.append(new WaterEvent("2025-01-01 10:15:00", "I", 100f, "a"));
+        store.append(new WaterEvent("2025-01-01 10:45:00", "I", 40f, "b"));
+        store.append(new WaterEvent("2025-01-02 09:00:00", "I", 50f, "a"));
+
+        RollupStore rollups = new RollupStore(dir);
+        // "Today" (2025-01-02) is still open and must not be rolled up.
+        assertEquals(1, rollups.rollUp(store, millis("2025-01-02 12:00:00")));
+        assertEquals(0, rollups.rollUp(store, millis("2025-01-02 12:00:00")));
+        assertEquals(millis("2025-01-02 00:00:00"), rollups.getRolledThroughMillis());
+
+        RollupStore reopened = new RollupStore(dir);
+        AggregateIndex.Bucket hour = reopened.getHours(null).get(millis("2025-01-01 10:00:00"));
+        assertEquals(140f, hour.intakeSum, 0.001f);
+        assertEquals(40f, hour.intakeMin, 0.001f);
+        assertEquals(100f, reopened.getDays("a").get(millis("2025-01-01 00:00:00")).intakeSum, 0.001f);
+
+        store.rewriteDay("20250101", Collections.singletonList(
+                new WaterEvent("2025-01-01 10:15:00", "I", 100f, "a")));
+        assertEquals(1, reopened.rollUp(store, millis("2025-01-02 12:00:00")));
+        assertEquals(100f, reopened.getDays(null).get(millis("2025-01-01 00:00:00")).intakeSum, 0.001f);
+    }
+
+    @Test
+    public void rollups_dropEmptiedDaysButKeepDeliberatelyDroppedOnes() throws IOException {
+        File dir = tmp.newFolder("patient_1");
+        SegmentStore store = new SegmentStore(dir);
+        store.append(new WaterEvent("2025-01-01 10:15:00", "I", 100f, "a"));
+        store.append(new WaterEvent("2025-01-02 10:15:00", "I", 70f, "a"));
+        store.append(new WaterEvent("2025-01-03 09:00:00", "I", 50f, "a"));
+        RollupStore rollups = new RollupStore(dir);
+        assertEquals(2, rollups.rollUp(store, millis("2025-01-03 12:00:00")));
+
+        // The raw 01-01 segment is dropped on purpose; 01-02 loses its last event.
+        rollups.markRawDropped(Collections.singletonList("20250101"));
+        store.deleteSegment("20250101");
+        store.rewriteDay("20250102", Collections.<WaterEvent>emptyList());
+        assertEquals(1, rollups.rollUp(store, millis("2025-01-03 12:00:00")));
+
+        RollupStore reopened = new RollupStore(dir);
+        assertEquals(100f, reopened.getDays(null).get(millis("2025-01-01 00:00:00")).intakeSum, 0.001f);
+        assertNull(reopened.getDays(null).get(millis("2025-01-02 00:00:00")));
+        assertNull(reopened.getDays("a").get(millis("2025-01-02 00:00:00")));
+        assertNull(reopened.getHours(null).get(millis("2025-01-02 10:00:00")));
+        assertEquals(millis("2025-01-02 00:00:00"), reopened.getRolledThroughMillis());
+        assertEquals(0, reopened.rollUp(store, millis("2025-01-03 12:00:00")));
+    }
+
+    @Test
+    public void recovery_truncatesTornTailAndKeepsValidRecords() throws IOException {
+        File dir = tmp.newFolder("patient_1");
+        SegmentStore store = new SegmentStore(dir);
+        store.append(new WaterEvent("2025-01-01 10:00:00", "I", 100f, "a"));
+        store.flushManifest();
+        store.append(new WaterEvent("2025-01-01 11:00:00", "I", 20f, "a"));
+        File seg = new File(dir, "seg_20250101.txt");
+        long validLength = seg.length();
+
+        // Crash mid-write: a half record without its checksum or newline.
+        try (FileOutputStream out = new FileOutputStream(seg, true)) {
+            out.write("34|2025-01-01 12:00:00,Int".getBytes(StandardCharsets.UTF_8));
+        }
+
+        SegmentStore reopened = new SegmentStore(dir);
+        assertEquals(1, reopened.getRecoveredEvents());
+        assertEquals(26, reopened.getTruncatedBytes());
+        assertEquals(validLength, seg.length());
+        assertEquals(2, reopened.readAll().size());
+        assertEquals(120f, reopened.getSegments().get(0).intakeSum, 0.001f);
+    }
+
+    @Test
+    public void recovery_skipsIntactButUnreadableRecordAndKeepsTheRest() throws IOException {
+        File dir = tmp.newFolder("patient_1");
+        SegmentStore store = new SegmentStore(dir);
+        store.append(new WaterEvent("2025-01-01 10:00:00", "I", 100f, "a"));
+        File seg = new File(dir, "seg_20250101.txt");
+
+        // A well-framed record whose payload does not parse, then more good data.
+        byte[] odd = SegmentStore.encodeRecord(new WaterEvent("2025-01-01 10:30:00", "I", 1f, "a"));
+        String text = new String(odd, StandardCharsets.UTF_8).replace("1.00", "x.yz");
+        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+        String payload = text.substring(text.indexOf('|') + 1, text.lastIndexOf('|'));
+        crc.update(payload.getBytes(StandardCharsets.UTF_8));
+        try (FileOutputStream out = new FileOutputStream(seg, true)) {
+            out.write(String.format(Locale.US, "%d|%s|%08x\n", payload.length(), payload, crc.getValue())
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        store.append(new WaterEvent("2025-01-01 11:00:00", "I", 20f, "cup, large"));
+        long length = seg.length();
+
+        long before = Metrics.counter("store.unreadable").get();
+        SegmentStore reopened = new SegmentStore(dir);
+        assertEquals(1, Metrics.counter("store.unreadable").get() - before);
+        assertEquals(0, reopened.getTruncatedBytes());
+        assertEquals(length, seg.length());
+        List<WaterEvent> events = reopened.readAll();
+        assertEquals(2, events.size());
+        assertEquals("cup, large", events.get(1).cupName);
+    }
+
+    @Test
+    public void decodeRecord_rejectsBadChecksumAndAcceptsUnframedLines() {
+        byte[] record = SegmentStore.encodeRecord(new WaterEvent("2025-01-01 10:00:00", "I", 45.23f, "a"));
+        assertEquals("34|2025-01-01 10:00:00,Intake,45.23,a|",
+                new String(record, 0, 38, StandardCharsets.UTF_8));
+        assertEquals(45.23f, SegmentStore.decodeRecord(record, record.length - 1).amount, 0.001f);
+
+        record[10] = '9';
+        assertNull(SegmentStore.decodeRecord(record, record.length - 1));
+
+        byte[] legacy = "2025-01-01 10:00:00,Refill,200.00,a".getBytes(StandardCharsets.UTF_8);
+        assertEquals("R", SegmentStore.decodeRecord(legacy, legacy.length).type);
+        byte[] broken = "2025-01-01 10:00:00,Intake,abc,a".getBytes(StandardCharsets.UTF_8);
+        assertNull(SegmentStore.decodeRecord(broken, broken.length));
+    }
+}
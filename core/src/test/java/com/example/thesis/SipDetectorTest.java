@@ -0,0 +1,125 @@
+package com.example.thesis;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JVM tests for streaming sip detection from raw load-cell readings.
+ */
+public class SipDetectorTest {
+
+    private static final int HZ = 50;
+    private static final long PERIOD_MS = 1000 / HZ;
+
+    private final Random noise = new Random(42);
+    private long time = 1_735_725_600_000L;
+
+    /**
+     * Readings of `grams` with +-0.3 g noise for the given duration.
+     */
+    private List<Float> hold(float grams, long millis) {
+        List<Float> readings = new ArrayList<>();
+        for (long t = 0; t < millis; t += PERIOD_MS) {
+            readings.add(grams + (noise.nextFloat() - 0.5f) * 0.6f);
+        }
+        return readings;
+    }
+
+    private void feed(SipDetector detector, List<Float> readings) {
+        for (float g : readings) {
+            detector.process(g, time);
+            time += PERIOD_MS;
+        }
+    }
+
+    @Test
+    public void liftDrinkAndPutBack_yieldsOneIntake() {
+        List<String> events = new ArrayList<>();
+        SipDetector detector = new SipDetector(new SipDetector.Config(),
+                (intake, grams, t) -> events.add((intake ? "I " : "R ") + Math.round(grams)));
+
+        feed(detector, hold(300f, 2000));          // cup placed
+        feed(detector, hold(0f, 3000));            // lifted to drink
+        List<Float> back = hold(280f, 2000);       // put back 20 g lighter...
+        back.set(10, 900f);                        // ...with a knock on the coaster
+        feed(detector, back);
+        feed(detector, hold(281f, 2000));          // 1 g drift is not an event
+        feed(detector, hold(0f, 2000));            // lifted and refilled
+        feed(detector, hold(350f, 2000));
+
+        assertEquals(2, events.size());
+        assertEquals("I 20", events.get(0));
+        assertEquals("R 70", events.get(1));
+    }
+
+    private void send(ScaleIngest ingest, String cup, List<Float> readings) {
+        for (int i = 0; i + 10 <= readings.size(); i += 10) {
+            StringBuilder payload = new StringBuilder("W " + cup + " " + PERIOD_MS);
+            for (int k = i; k < i + 10; k++) {
+                payload.append(String.format(Locale.US, " %.2f", readings.get(k)));
+            }
+            time += 10 * PERIOD_MS;
+            ingest.onNotification(payload.toString().getBytes(StandardCharsets.UTF_8), time);
+        }
+    }
+
+    @Test
+    public void cupChangeAndDisconnect_startTheDetectorOver() {
+        List<WaterEvent> events = new ArrayList<>();
+        ScaleIngest ingest = new ScaleIngest(0, (index, event) -> events.add(event));
+
+        send(ingest, "cup_b", hold(250f, 2000));
+        // A lighter cup is not an intake from the previous one.
+        send(ingest, "cup_c", hold(120f, 2000));
+        assertEquals(0, events.size());
+
+        // Nor is a level seen after the link was down.
+        ingest.onDisconnected();
+        send(ingest, "cup_c", hold(60f, 2000));
+        assertEquals(0, events.size());
+
+        send(ingest, "cup_c", hold(0f, 2000));
+        send(ingest, "cup_c", hold(40f, 2000));
+        assertEquals(1, events.size());
+        assertEquals("I", events.get(0).type);
+        assertEquals(20f, events.get(0).amount, 1f);
+    }
+
+    @Test
+    public void rawPayloads_goThroughDetectorIntoSink() {
+        List<WaterEvent> events = new ArrayList<>();
+        ScaleIngest ingest = new ScaleIngest(0, (index, event) -> events.add(event));
+
+        List<Float> readings = new ArrayList<>();
+        readings.addAll(hold(250f, 2000));
+        readings.addAll(hold(0f, 2000));
+        readings.addAll(hold(205f, 2000));
+        // One notification per 10 readings (200 ms), like a 50 Hz coaster.
+        for (int i = 0; i < readings.size(); i += 10) {
+            StringBuilder payload = new StringBuilder("W cup_b " + PERIOD_MS);
+            for (int k = i; k < i + 10; k++) {
+                payload.append(String.format(Locale.US, " %.2f", readings.get(k)));
+            }
+            time += 10 * PERIOD_MS;
+            assertEquals(ScaleIngest.Decision.SAMPLES,
+                    ingest.onNotification(payload.toString().getBytes(StandardCharsets.UTF_8), time));
+        }
+
+        assertEquals(1, events.size());
+        assertEquals("I", events.get(0).type);
+        assertEquals(45f, events.get(0).amount, 1f);
+        assertEquals("cup_b", events.get(0).cupName);
+
+        assertEquals(ScaleIngest.Decision.REJECTED,
+                ingest.onNotification("W cup_b 20 1.0 x2".getBytes(StandardCharsets.UTF_8), time));
+        assertEquals(ScaleIngest.Decision.REJECTED,
+                ingest.onNotification("W cup_b".getBytes(StandardCharsets.UTF_8), time));
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.thesis;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for the thread-confinement check.
+ */
+public class ThreadGuardTest {
+
+    @After
+    public void tearDown() {
+        ThreadGuard.setStrict(false);
+    }
+
+    @Test
+    public void rejectsOtherThreadsOnlyOnceBound() throws Exception {
+        ThreadGuard guard = new ThreadGuard("test");
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ThreadGuard.setStrict(true);
+
+        Thread other = new Thread(() -> {
+            try {
+                guard.check("unbound");
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        other.start();
+        other.join();
+        assertNull(failure.get());
+
+        guard.bind(Thread.currentThread());
+        guard.check("owner");
+        other = new Thread(() -> {
+            try {
+                guard.check("write");
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "intruder");
+        other.start();
+        other.join();
+        assertTrue(failure.get() instanceof IllegalStateException);
+        assertEquals("write called on intruder, confined to test", failure.get().getMessage());
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.thesis;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for BLE trace capture and replay.
+ */
+public class TraceReplayTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static PatientData[] memoryPatients() {
+        PatientData[] patients = new PatientData[3];
+        for (int i = 0; i < patients.length; i++) {
+            patients[i] = new PatientData(null);
+        }
+        return patients;
+    }
+
+    private File writeTrace() throws IOException {
+        File file = tmp.newFile("trace.txt");
+        long t = 1_735_725_600_000L;
+        try (TraceWriter w = new TraceWriter(file)) {
+            w.recordConnection(0, "Connected", t);
+            w.recordNotification(0, bytes("I 45.23 a"), t + 1000);
+            w.recordNotification(0, bytes("I 45.23 a"), t + 1200);   // duplicate
+            w.recordNotification(0, bytes("I 45.23 a"), t + 5000);   // outside the window
+            w.recordNotification(1, bytes("R 300.00 b"), t + 6000);
+            w.recordNotification(1, bytes("garbage"), t + 7000);     // rejected
+            w.recordNotification(1, bytes("I x.y b"), t + 8000);     // rejected
+            w.recordNotification(5, bytes("I 1 c"), t + 9000);       // unknown scale
+        }
+        // A line torn by a crash during capture.
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(bytes("N,17357256"));
+        }
+        return file;
+    }
+
+    @Test
+    public void replay_countsDecisionsAndIsDeterministic() throws Exception {
+        TraceReader trace = new TraceReader(writeTrace());
+        assertEquals(8, trace.getRecords().size());
+        assertEquals(1, trace.getSkippedLines());
+
+        TraceReplay.Report a = new TraceReplay(memoryPatients())
+                .replay(trace.getRecords(), TraceReplay.MAX_SPEED);
+        assertEquals(6, a.notifications);
+        assertEquals(3, a.accepted);
+        assertEquals(1, a.duplicates);
+        assertEquals(2, a.rejected);
+        assertEquals(1, a.connectionEvents);
+        assertEquals(1, a.unknownPatient);
+        assertEquals(2, a.eventsPerPatient[0]);
+        assertEquals(1, a.eventsPerPatient[1]);
+        assertEquals(6, a.ingestLatency.getCount());
+        assertNotEquals(a.checksums[0], a.checksums[1]);
+
+        TraceReplay.Report b = new TraceReplay(memoryPatients())
+                .replay(trace.getRecords(), TraceReplay.MAX_SPEED);
+        assertEquals(a.checksums[0], b.checksums[0]);
+        assertEquals(a.checksums[1], b.checksums[1]);
+    }
+
+    @Test
+    public void replay_pacedRunFollowsRecordedTimes() throws Exception {
+        TraceReader trace = new TraceReader(writeTrace());
+        // The trace spans 9 s; at 100x that is about 90 ms.
+        TraceReplay.Report report = new TraceReplay(memoryPatients()).replay(trace.getRecords(), 100);
+        assertTrue(report.wallMillis >= 85);
+        assertEquals(8, report.scheduleLag.getCount());
+    }
+
+    @Test
+    public void latencyHistogram_percentilesWithinBucketPrecision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(1_000_000L, h.getMax());
+        long p50 = h.getPercentile(50);
+        assertTrue(p50 >= 500_000L && p50 <= 500_000L * 1.125);
+        assertEquals(1_000_000L, h.getPercentile(100));
+    }
+}
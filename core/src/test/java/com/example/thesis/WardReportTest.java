@@ -0,0 +1,89 @@
+package com.example.thesis;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JVM tests for the parallel ward report.
+ */
+public class WardReportTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void build_rebucketsDaysWithoutHourlyTotals() throws IOException {
+        List<WaterEvent> sealed = new ArrayList<>();
+        sealed.add(new WaterEvent("2025-01-01 08:05:00", "I", 100f, "a"));
+        sealed.add(new WaterEvent("2025-01-01 08:40:00", "I", 50f, "a"));
+        sealed.add(new WaterEvent("2025-01-01 09:10:00", "R", 300f, "a"));
+        File file = tmp.newFile("snap.bin");
+        EventSnapshot.write(file, sealed, Collections.<String, Long>emptyMap());
+        EventSnapshot snapshot = EventSnapshot.open(file);
+
+        // Day 1 is only known as a snapshot daily total, day 2 was appended
+        // live and has hourly buckets.
+        AggregateIndex index = new AggregateIndex();
+        index.addSnapshotDays(snapshot, 0L);
+        PatientEventList events = new PatientEventList(snapshot);
+        WaterEvent live = new WaterEvent("2025-01-02 10:00:00", "I", 20f, "a");
+        events.add(live);
+        index.add(live.getTimeMillis(), live.type, live.amount);
+
+        Calendar c = Calendar.getInstance();
+        c.clear();
+        c.set(2025, Calendar.JANUARY, 1);
+        long from = c.getTimeInMillis();
+        c.add(Calendar.DAY_OF_MONTH, 2);
+        long to = c.getTimeInMillis();
+
+        List<AggregateIndex> indexes = new ArrayList<>();
+        List<PatientEventList> ward = new ArrayList<>();
+        indexes.add(index);
+        ward.add(events);
+        indexes.add(new AggregateIndex());
+        ward.add(new PatientEventList());
+
+        List<WardReport.PatientReport> reports =
+                WardReport.build(indexes, ward, from, to, new ForkJoinPool(2));
+        WardReport.PatientReport r = reports.get(0);
+        assertEquals(2, r.days.size());
+        assertEquals(3, r.hours.size());
+        assertEquals(170f, r.total.intakeSum, 0.001f);
+        assertEquals(300f, r.total.refillSum, 0.001f);
+        assertEquals(0, reports.get(1).days.size());
+
+        StringWriter out = new StringWriter();
+        WardReport.writeCsv(reports, out);
+        String csv = out.toString();
+        assertTrue(csv.startsWith(WardReport.HEADER));
+        assertTrue(csv.contains("1,Hour,2025-01-01 08:00,150.00,2,0.00,0,-150.00\n"));
+        assertTrue(csv.contains("1,Total,,170.00,3,300.00,1,130.00\n"));
+        assertTrue(csv.contains("2,Total,,0.00,0,0.00,0,0.00\n"));
+    }
+
+    @Test(expected = CancellationException.class)
+    public void build_stopsInsideTheTasksOnceCancelled() {
+        List<AggregateIndex> indexes = new ArrayList<>();
+        List<PatientEventList> ward = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            indexes.add(new AggregateIndex());
+            ward.add(new PatientEventList());
+        }
+        WardReport.build(indexes, ward, 0L, Long.MAX_VALUE, new ForkJoinPool(2), () -> true);
+    }
+}
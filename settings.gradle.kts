@@ -23,4 +23,6 @@ dependencyResolutionManagement {
 }
 
 rootProject.name = "thesis"
-include(":app")
\ No newline at end of file
+include(":app")
+include(":core")
+include(":benchmarks")